@@ -0,0 +1,61 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import parser.Parser;
+
+/**
+ * Export of the trackers of a website in its CSV file (Parser.exportTrackers),
+ * in a temporary directory (the file of the website is rewritten by every call).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExportBenchmark {
+	@Param({"10", "1000"})
+	private int trackers;
+
+	private ArrayList<String> data;
+	private File outputDirectory;
+
+	@Setup
+	public void setup() throws IOException {
+		outputDirectory = Files.createTempDirectory("benchmark").toFile();
+		Fixtures.initializeParser(outputDirectory);
+		String[] urls = Fixtures.getUrls();
+		data = new ArrayList<String>();
+		for(int i = 0; i < trackers; i++) {
+			data.add(urls[i % urls.length]);
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		Fixtures.delete(outputDirectory);
+	}
+
+	@Benchmark
+	public int exportTrackers() {
+		return Parser.exportTrackers("site0.com", "urls", data);
+	}
+}
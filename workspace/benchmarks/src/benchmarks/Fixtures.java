@@ -0,0 +1,236 @@
+package benchmarks;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import parser.FixtureSoaResolver;
+import parser.Parser;
+import parser.ResultSink;
+import parser.WebsiteResults;
+import utils.AsyncLogger;
+import crawler.HarJsonWriter;
+import crawler.RecordedEntry;
+
+/**
+ * Fixtures of the benchmarks (generated by the build, in the directory "target/fixtures" of the module):
+ * - ghostery.json: Ghostery file (about 2000 patterns, the size of the real file);
+ * - soa.txt: SOA records of all the hosts of the HAR files (see FixtureSoaResolver);
+ * - har/*.har: HAR files of synthetic websites (about 100 entries each);
+ * - urls.txt: the URLs of the entries of the HAR files.
+ *
+ * The directory is given by the system property "benchmarks.fixtures" (default: "target/fixtures").
+ *
+ * Usage: java benchmarks.Fixtures [<directory>]
+ * Generates the fixtures (deterministic: the same files are generated every time).
+ */
+public class Fixtures {
+	private static final int NUMBER_WEBSITES = 20;
+	private static final int NUMBER_ENTRIES = 100;
+	private static final int NUMBER_PATTERNS = 2000;
+	private static final int NUMBER_THIRD_PARTIES = 150;
+	// Hosts of the Ghostery patterns also used by the websites (the others never match)
+	private static final int NUMBER_TRACKERS_USED = 40;
+
+	private static final String[] MIMETYPES = {"text/html", "text/css", "application/javascript", "text/javascript; charset=utf-8",
+		"image/png", "image/gif", "application/json", "application/x-shockwave-flash", "font/woff"};
+
+	/**
+	 * Results of the websites are not written by the benchmarks.
+	 */
+	public static final ResultSink NO_SINK = new ResultSink() {
+		public void write(WebsiteResults results) {
+		}
+
+		public void flush() {
+		}
+
+		public void close() {
+		}
+	};
+
+	public static File getDirectory() {
+		return new File(System.getProperty("benchmarks.fixtures", "target/fixtures"));
+	}
+
+	public static File getGhosteryFile() {
+		return new File(getDirectory(), "ghostery.json");
+	}
+
+	public static File getSoaFile() {
+		return new File(getDirectory(), "soa.txt");
+	}
+
+	public static File[] getHarFiles() {
+		File[] files = new File(getDirectory(), "har").listFiles(new FilenameFilter() {
+			public boolean accept(File directory, String name) {
+				return name.endsWith(".har");
+			}
+		});
+		if(files == null || files.length == 0) {
+			throw new IllegalStateException("No HAR file in " + new File(getDirectory(), "har").getPath());
+		}
+		Arrays.sort(files);
+		return files;
+	}
+
+	/**
+	 * @return the URLs of the entries of the HAR files
+	 * @throws IOException
+	 */
+	public static String[] getUrls() throws IOException {
+		List<String> urls = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new FileReader(new File(getDirectory(), "urls.txt")));
+		try {
+			String line;
+			while((line = reader.readLine()) != null) {
+				urls.add(line);
+			}
+		} finally {
+			reader.close();
+		}
+		return urls.toArray(new String[urls.size()]);
+	}
+
+	/**
+	 * Initializes the analysis of the parser with the fixtures: Ghostery file of the fixtures,
+	 * SOA records of the fixtures (no DNS lookup), no output of the results of the websites.
+	 * Only the errors are printed.
+	 *
+	 * @param outputDirectory the directory of the files written by the parser (e.g. exportTrackers)
+	 * @throws IOException
+	 */
+	public static void initializeParser(File outputDirectory) throws IOException {
+		AsyncLogger.setLevel(AsyncLogger.ERROR);
+		File results = new File(outputDirectory, "results");
+		if(!results.isDirectory() && !results.mkdirs()) {
+			throw new IOException("Cannot create the directory " + results.getPath());
+		}
+		Parser.initializeAnalysis(outputDirectory.getPath(), getGhosteryFile().getPath(), NO_SINK, new FixtureSoaResolver(getSoaFile()));
+	}
+
+	/**
+	 * Deletes a directory and its content (the output of a benchmark).
+	 */
+	public static void delete(File file) {
+		File[] children = file.listFiles();
+		if(children != null) {
+			for(File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	public static void main(String[] args) throws IOException {
+		File directory = (args.length > 0) ? new File(args[0]) : getDirectory();
+		File harDirectory = new File(directory, "har");
+		if(!harDirectory.isDirectory() && !harDirectory.mkdirs()) {
+			throw new IOException("Cannot create the directory " + harDirectory.getPath());
+		}
+		Random random = new Random(42);
+
+		/* ----- GHOSTERY ----- */
+		// Patterns on a host (e.g. "adserver12\.com\/") or on a path (e.g. "\/js\/track34\.js")
+		String[] trackerHosts = new String[NUMBER_PATTERNS];
+		BufferedWriter ghostery = new BufferedWriter(new FileWriter(new File(directory, "ghostery.json")));
+		try {
+			ghostery.write("{\"bugsVersion\": 1, \"bugs\": [");
+			ghostery.newLine();
+			for(int i = 0; i < NUMBER_PATTERNS; i++) {
+				String pattern;
+				if(i % 4 == 3) {
+					pattern = "\\\\/js\\\\/track" + i + "\\\\.js";
+				}
+				else {
+					trackerHosts[i] = "adserver" + i + ((i % 2 == 0) ? ".com" : ".net");
+					pattern = trackerHosts[i].replace(".", "\\\\.") + "\\\\/";
+				}
+				ghostery.write("{\"pattern\":\"" + pattern + "\",\"name\":\"Tracker " + (i % 500) + "\"}" + ((i < NUMBER_PATTERNS - 1) ? "," : ""));
+				ghostery.newLine();
+			}
+			ghostery.write("]}");
+			ghostery.newLine();
+		} finally {
+			ghostery.close();
+		}
+
+		/* ----- WEBSITES ----- */
+		Set<String> urls = new LinkedHashSet<String>();
+		Set<String> soaRecords = new LinkedHashSet<String>();
+		for(int i = 0; i < NUMBER_THIRD_PARTIES; i++) {
+			// A few third parties share the administrator of their SOA (e.g. a CDN of a website)
+			soaRecords.add("party" + i + ".net\thostmaster.party" + (i - i % 3) + ".net.");
+		}
+		for(int i = 0; i < NUMBER_PATTERNS; i++) {
+			if(trackerHosts[i] != null) {
+				soaRecords.add(trackerHosts[i] + "\tdns.adserver" + i + ".com.");
+			}
+		}
+		long pageStart = 1400000000000L;
+		for(int site = 0; site < NUMBER_WEBSITES; site++) {
+			String website = "site" + site + ".com";
+			soaRecords.add(website + "\thostmaster." + website + ".");
+			List<RecordedEntry> entries = new ArrayList<RecordedEntry>();
+			for(int i = 0; i < NUMBER_ENTRIES; i++) {
+				String mimeType = (i == 0) ? "text/html" : MIMETYPES[random.nextInt(MIMETYPES.length)];
+				boolean image = mimeType.startsWith("image/");
+				String url;
+				int kind = (i == 0) ? 0 : random.nextInt(10);
+				// Note: the images of the third parties are trackers of Ghostery, their dimensions are not downloaded
+				if(kind < 4) {
+					url = "http://" + ((kind % 2 == 0) ? "www." : "static.") + website + "/" + (image ? "img/" + i + ".png" : "assets/" + i);
+				}
+				else if(kind < 8 && !image) {
+					url = "http://cdn.party" + random.nextInt(NUMBER_THIRD_PARTIES) + ".net/lib/" + i + ".js"
+							+ ((random.nextInt(3) == 0) ? "?id=" + random.nextInt(100000) + "&site=" + site : "");
+				}
+				else {
+					int tracker = random.nextInt(NUMBER_TRACKERS_USED);
+					url = (trackerHosts[tracker] != null)
+							? "http://" + trackerHosts[tracker] + "/pixel.gif?r=" + random.nextInt(100000)
+							: "http://www." + website + "/js/track" + tracker + ".js";
+				}
+				RecordedEntry entry = new RecordedEntry(pageStart + i * 10, "GET", url, "HTTP/1.1");
+				entry.setStatus(200, "OK");
+				entry.setMimeType(mimeType);
+				entry.setBodySize(100 + random.nextInt(50000));
+				if(random.nextInt(8) == 0) {
+					String host = url.substring(7, url.indexOf('/', 7));
+					entry.getCookies().add(new String[] {"." + host, "uid", Long.toHexString(random.nextLong()), "/"});
+				}
+				entries.add(entry);
+				urls.add(url);
+			}
+			HarJsonWriter.write(new File(harDirectory, website + ".har"), "http://www." + website + "/", pageStart, entries);
+			pageStart += 60000;
+		}
+
+		write(new File(directory, "soa.txt"), soaRecords);
+		write(new File(directory, "urls.txt"), urls);
+		System.out.println(NUMBER_WEBSITES + " HAR files, " + urls.size() + " URLs, " + NUMBER_PATTERNS + " patterns and "
+				+ soaRecords.size() + " SOA records written in " + directory.getPath());
+	}
+
+	private static void write(File file, Set<String> lines) throws IOException {
+		BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+		try {
+			for(String line : lines) {
+				writer.write(line);
+				writer.newLine();
+			}
+		} finally {
+			writer.close();
+		}
+	}
+}
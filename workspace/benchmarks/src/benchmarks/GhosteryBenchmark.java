@@ -0,0 +1,81 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import parser.GhosteryHostFilter;
+import parser.Parser;
+import parser.RegexGhostery;
+import utils.UrlScanner;
+
+/**
+ * Matching of one URL against the patterns of Ghostery:
+ * - match: all the patterns are tried (first time a URL is seen);
+ * - matchHostFilter: through the filter of the hosts never matched (the hosts of the fixtures are
+ *   proven in the first round, then most URLs are not tested);
+ * - checkRegexGhostery: through the cache of the verdicts of the parser (the URLs of the fixtures
+ *   fit in the cache: every call after the first round is a hit).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GhosteryBenchmark {
+	private RegexGhostery regexGhostery;
+	private GhosteryHostFilter hostFilter;
+	private UrlScanner scanner = new UrlScanner();
+	private String[] urls;
+	private int next = 0;
+	private File outputDirectory;
+
+	@Setup
+	public void setup() throws IOException {
+		outputDirectory = Files.createTempDirectory("benchmark").toFile();
+		Fixtures.initializeParser(outputDirectory);
+		regexGhostery = new RegexGhostery(false, Fixtures.getGhosteryFile().getPath());
+		hostFilter = new GhosteryHostFilter(regexGhostery);
+		urls = Fixtures.getUrls();
+	}
+
+	@TearDown
+	public void tearDown() {
+		Fixtures.delete(outputDirectory);
+	}
+
+	@Benchmark
+	public String match() {
+		return regexGhostery.match(nextUrl());
+	}
+
+	@Benchmark
+	public String matchHostFilter() {
+		return hostFilter.match(nextUrl(), scanner);
+	}
+
+	@Benchmark
+	public String checkRegexGhostery() {
+		return Parser.checkRegexGhostery(nextUrl());
+	}
+
+	private String nextUrl() {
+		String url = urls[next];
+		next = (next + 1 == urls.length) ? 0 : next + 1;
+		return url;
+	}
+}
@@ -0,0 +1,62 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import parser.Parser;
+import parser.WebsiteResults;
+
+/**
+ * Parsing and analysis of a whole HAR file (Parser.parseHARfile): reading of the JSON,
+ * Ghostery, SOA (resolved from the fixtures, no DNS lookup) and classification of the entries.
+ * The results of the websites are not written.
+ * The caches of the parser are filled by the warmup: the benchmark measures a steady state.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HarParsingBenchmark {
+	private File[] files;
+	private int next = 0;
+	private File outputDirectory;
+
+	@Setup
+	public void setup() throws IOException {
+		outputDirectory = Files.createTempDirectory("benchmark").toFile();
+		Fixtures.initializeParser(outputDirectory);
+		files = Fixtures.getHarFiles();
+	}
+
+	@TearDown
+	public void tearDown() {
+		Fixtures.delete(outputDirectory);
+	}
+
+	@Benchmark
+	public WebsiteResults parseHARfile() {
+		File file = files[next];
+		next = (next + 1 == files.length) ? 0 : next + 1;
+		WebsiteResults results = Parser.parseHARfile(file);
+		if(results == null) {
+			throw new IllegalStateException("Cannot parse " + file.getPath());
+		}
+		return results;
+	}
+}
@@ -0,0 +1,77 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import parser.Parser;
+
+/**
+ * Lookup of the SOA of a host in the cache of the parser (Parser.resolveSOA once the cache is filled),
+ * and extraction of the host of a URL before the lookup (as in Parser.analyzeEntries).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SoaCacheBenchmark {
+	private String[] urls;
+	private String[] hosts;
+	private int nextHost = 0;
+	private int nextUrl = 0;
+	private File outputDirectory;
+
+	@Setup
+	public void setup() throws IOException {
+		outputDirectory = Files.createTempDirectory("benchmark").toFile();
+		Fixtures.initializeParser(outputDirectory);
+		urls = Fixtures.getUrls();
+		Set<String> distinctHosts = new LinkedHashSet<String>();
+		for(String url : urls) {
+			distinctHosts.add(Parser.getHost(url));
+		}
+		hosts = distinctHosts.toArray(new String[distinctHosts.size()]);
+		// Fill up the cache
+		for(String host : hosts) {
+			if(Parser.resolveSOA(host, "URL") == null) {
+				throw new IllegalStateException("No SOA in the fixtures for " + host);
+			}
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		Fixtures.delete(outputDirectory);
+	}
+
+	@Benchmark
+	public String resolveSOA() {
+		String host = hosts[nextHost];
+		nextHost = (nextHost + 1 == hosts.length) ? 0 : nextHost + 1;
+		return Parser.resolveSOA(host, "URL");
+	}
+
+	@Benchmark
+	public String resolveSOAOfUrl() throws IOException {
+		String url = urls[nextUrl];
+		nextUrl = (nextUrl + 1 == urls.length) ? 0 : nextUrl + 1;
+		return Parser.resolveSOA(Parser.getHost(url), "URL");
+	}
+}
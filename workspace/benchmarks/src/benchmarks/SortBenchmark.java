@@ -0,0 +1,50 @@
+package benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import utils.Counters;
+import utils.Interner;
+
+/**
+ * Sort of the statistics by count (Counters.getSortedIds), on counters of the size
+ * of the statistics of a large crawl (counts with a long tail, as the mimetypes or the trackers).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SortBenchmark {
+	@Param({"1000", "100000", "1000000"})
+	private int size;
+
+	private Counters counters;
+
+	@Setup
+	public void setup() {
+		Random random = new Random(42);
+		counters = new Counters(new Interner());
+		for(int i = 0; i < size; i++) {
+			counters.set("http://host" + random.nextInt(size) + ".com/" + i, 1000 / (1 + random.nextInt(1000)));
+		}
+	}
+
+	@Benchmark
+	public int[] getSortedIds() {
+		return counters.getSortedIds();
+	}
+}
@@ -0,0 +1,59 @@
+package benchmarks;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import utils.UrlScanner;
+
+/**
+ * Host and query flag of one URL, as needed by the parser: java.net.URL against UrlScanner
+ * (the hosts of the URLs fit in the cache of the scanner).
+ * The allocation per URL is given by the profiler of the garbage collector:
+ * java -jar target/benchmarks.jar UrlScannerBenchmark -prof gc (gc.alloc.rate.norm, in bytes per operation).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UrlScannerBenchmark {
+	private UrlScanner scanner = new UrlScanner();
+	private String[] urls;
+	private int next = 0;
+
+	@Setup
+	public void setup() {
+		// URLs of a crawl: a few hundred hosts, various paths and queries
+		urls = new String[4096];
+		for(int i = 0; i < urls.length; i++) {
+			int host = i % 300;
+			urls[i] = "http://" + ((host % 3 == 0) ? "www." : "cdn" + (host % 7) + ".") + "host" + host + ".com"
+					+ "/path/" + i + "/script.js" + ((i % 2 == 0) ? "?id=" + i + "&v=2" : "");
+		}
+	}
+
+	@Benchmark
+	public int url() throws MalformedURLException {
+		String url = urls[next++ & (urls.length - 1)];
+		return new URL(url).getHost().length() + (url.contains("?") ? 1 : 0);
+	}
+
+	@Benchmark
+	public int scanner() {
+		scanner.scan(urls[next++ & (urls.length - 1)]);
+		return scanner.getHost().length() + (scanner.hasQuery() ? 1 : 0);
+	}
+}
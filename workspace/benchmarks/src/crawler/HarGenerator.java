@@ -0,0 +1,503 @@
+package crawler;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.PosixParser;
+
+import parser.Parser;
+import utils.ShardedLayout;
+
+/**
+ * Generates a corpus of synthetic HAR files (one page per website), to test the parser at scale
+ * without crawling the web. The files are in the format of NetExport (see HarJsonWriter).
+ *
+ * Every page has a log-normal number of entries; each entry is on the website (first party),
+ * on a third party or on a tracker. The third parties and the trackers are drawn with a Zipf law
+ * (a few of them are on most of the websites, as on the web). The mimetypes are drawn from weights;
+ * the images of the third parties are named after their dimensions ("/img/1x1.gif" for a pixel,
+ * "/img/300x250.png"), so that a local HTTP server can serve them (see the harness of the parser).
+ *
+ * Files written in the output directory, besides the HAR files:
+ * - ghostery.json: Ghostery file with one pattern per tracker ("tracker12\.com\/");
+ * - soa.txt: SOA records of all the invented domains (see parser.FixtureSoaResolver).
+ * The websites are named site0.com, site1.com, etc. The generation is deterministic (seed)
+ * and the files are written by several threads.
+ *
+ * Usage: java crawler.HarGenerator -dir <directory> -websites <number> [options] (-h for the options)
+ */
+public class HarGenerator {
+	private static final String CREATOR = "HarGenerator";
+	private static final String DEFAULT_MIMETYPES = "application/javascript=25,text/javascript=5,text/css=10,text/html=5,"
+			+ "image/png=15,image/gif=10,image/jpeg=15,application/json=5,text/plain=5,font/woff=3,application/x-shockwave-flash=2";
+	// Dimensions of the images which are not pixels
+	private static final int[][] IMAGE_SIZES = {{300, 250}, {728, 90}, {160, 600}, {64, 64}, {16, 16}, {1200, 630}};
+	// Start of the pages (the pages are spread over one day from this time)
+	private static final long PAGES_START = 1400000000000L;
+
+	private int websites;
+	private int medianEntries = 80;
+	private int maxEntries = 500;
+	private double thirdPartyShare = 0.35;
+	private int thirdParties = 10000;
+	private double trackerShare = 0.1;
+	private int trackers = 2000;
+	private double cookieShare = 0.1;
+	private double queryShare = 0.3;
+	private double pixelShare = 0.3;
+	private String[] mimeTypes;
+	private double[] mimeWeights;
+	private boolean sharded;
+	private boolean compressed;
+	private boolean pretty;
+	private long seed = 42;
+	private int threads = Runtime.getRuntime().availableProcessors();
+
+	// Cumulative probabilities of the Zipf laws
+	private double[] thirdPartiesCumulative;
+	private double[] trackersCumulative;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param websites the number of websites (HAR files)
+	 */
+	public HarGenerator(int websites) {
+		this.websites = websites;
+		setMimeTypes(DEFAULT_MIMETYPES);
+	}
+
+	public void setMedianEntries(int medianEntries) {
+		this.medianEntries = medianEntries;
+	}
+
+	public void setMaxEntries(int maxEntries) {
+		this.maxEntries = maxEntries;
+	}
+
+	/**
+	 * @param thirdPartyShare the share of the entries on a third party (not a tracker of Ghostery)
+	 */
+	public void setThirdPartyShare(double thirdPartyShare) {
+		this.thirdPartyShare = thirdPartyShare;
+	}
+
+	/**
+	 * @param thirdParties the number of third-party domains
+	 */
+	public void setThirdParties(int thirdParties) {
+		this.thirdParties = thirdParties;
+	}
+
+	/**
+	 * @param trackerShare the share of the entries matching a pattern of Ghostery
+	 */
+	public void setTrackerShare(double trackerShare) {
+		this.trackerShare = trackerShare;
+	}
+
+	/**
+	 * @param trackers the number of trackers (patterns of the Ghostery file)
+	 */
+	public void setTrackers(int trackers) {
+		this.trackers = trackers;
+	}
+
+	/**
+	 * @param cookieShare the share of the entries setting a cookie
+	 */
+	public void setCookieShare(double cookieShare) {
+		this.cookieShare = cookieShare;
+	}
+
+	/**
+	 * @param queryShare the share of the URLs (except the images) with a query
+	 */
+	public void setQueryShare(double queryShare) {
+		this.queryShare = queryShare;
+	}
+
+	/**
+	 * @param pixelShare the share of the images of the third parties and the trackers which are pixels (1x1)
+	 */
+	public void setPixelShare(double pixelShare) {
+		this.pixelShare = pixelShare;
+	}
+
+	/**
+	 * Sets the mimetypes and their weights.
+	 *
+	 * @param weights "mimetype=weight" separated by commas (e.g. "text/javascript=3,image/png=1")
+	 * @throws IllegalArgumentException if the weights are malformed
+	 */
+	public void setMimeTypes(String weights) {
+		String[] pairs = weights.split(",");
+		mimeTypes = new String[pairs.length];
+		mimeWeights = new double[pairs.length];
+		double total = 0;
+		for(int i = 0; i < pairs.length; i++) {
+			int equal = pairs[i].lastIndexOf('=');
+			if(equal <= 0) {
+				throw new IllegalArgumentException("Invalid weight of mimetype: " + pairs[i]);
+			}
+			mimeTypes[i] = pairs[i].substring(0, equal).trim();
+			total += Double.parseDouble(pairs[i].substring(equal + 1));
+			mimeWeights[i] = total;
+		}
+		for(int i = 0; i < pairs.length; i++) {
+			mimeWeights[i] /= total;
+		}
+	}
+
+	public void setSharded(boolean sharded) {
+		this.sharded = sharded;
+	}
+
+	/**
+	 * @param compressed true to compress the HAR files with gzip (".har.gz", read by the parser)
+	 */
+	public void setCompressed(boolean compressed) {
+		this.compressed = compressed;
+	}
+
+	/**
+	 * @param pretty true to indent the JSON as NetExport (larger and slower to write)
+	 */
+	public void setPretty(boolean pretty) {
+		this.pretty = pretty;
+	}
+
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	/**
+	 * Generates the corpus.
+	 *
+	 * @param directory the output directory (created if needed)
+	 * @return the number of entries written
+	 * @throws IOException if a file cannot be written
+	 */
+	public long generate(final File directory) throws IOException {
+		if(!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Cannot create the directory " + directory.getPath());
+		}
+		thirdPartiesCumulative = zipf(thirdParties);
+		trackersCumulative = zipf(trackers);
+		writeGhostery(new File(directory, "ghostery.json"));
+		writeSOA(new File(directory, "soa.txt"));
+
+		final AtomicInteger next = new AtomicInteger();
+		final AtomicLong entries = new AtomicLong();
+		final AtomicReference<IOException> error = new AtomicReference<IOException>();
+		Thread[] workers = new Thread[Math.max(1, threads)];
+		for(int i = 0; i < workers.length; i++) {
+			workers[i] = new Thread("generator-" + i) {
+				public void run() {
+					int website;
+					while(error.get() == null && (website = next.getAndIncrement()) < websites) {
+						try {
+							entries.addAndGet(writeWebsite(directory, website));
+						} catch (IOException ioe) {
+							error.compareAndSet(null, ioe);
+						}
+						if(website > 0 && website % 100000 == 0) {
+							System.out.println(website + " files written");
+						}
+					}
+				}
+			};
+			workers[i].start();
+		}
+		for(Thread worker : workers) {
+			try {
+				worker.join();
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted", ie);
+			}
+		}
+		if(error.get() != null) {
+			throw error.get();
+		}
+		return entries.get();
+	}
+
+	/**
+	 * Writes the HAR file of a website.
+	 *
+	 * @return the number of entries
+	 */
+	private int writeWebsite(File directory, int index) throws IOException {
+		// Note: one generator per website, the files do not depend on the number of threads
+		Random random = new Random(mix(seed * 0x9e3779b97f4a7c15L + index));
+		String website = "site" + index + ".com";
+		long pageStart = PAGES_START + (index * 86400000L / Math.max(1, websites));
+		int numberEntries = (int) Math.round(medianEntries * Math.exp(0.8 * random.nextGaussian()));
+		numberEntries = Math.max(1, Math.min(maxEntries, numberEntries));
+
+		List<RecordedEntry> entries = new ArrayList<RecordedEntry>(numberEntries);
+		RecordedEntry document = new RecordedEntry(pageStart, "GET", "http://www." + website + "/", "HTTP/1.1");
+		document.setTime(50 + random.nextInt(500));
+		document.setStatus(200, "OK");
+		document.setMimeType("text/html; charset=utf-8");
+		document.setBodySize(5000 + random.nextInt(100000));
+		entries.add(document);
+		for(int i = 1; i < numberEntries; i++) {
+			String mimeType = mimeTypes[draw(mimeWeights, random)];
+			boolean image = mimeType.startsWith("image/");
+			String extension = extension(mimeType);
+			StringBuilder url = new StringBuilder(96).append("http://");
+			String cookieDomain;
+			double kind = random.nextDouble();
+			if(kind < trackerShare) {
+				int tracker = draw(trackersCumulative, random);
+				cookieDomain = ".tracker" + tracker + ".com";
+				url.append("tracker").append(tracker).append(".com/");
+				if(image) {
+					url.append("img/").append(imageSize(random)).append(extension).append("?r=").append(random.nextInt(1000000));
+				}
+				else {
+					url.append("t/").append(i).append(extension).append("?site=").append(website);
+				}
+			}
+			else if(kind < trackerShare + thirdPartyShare) {
+				int thirdParty = draw(thirdPartiesCumulative, random);
+				cookieDomain = ".party" + thirdParty + ".net";
+				url.append((random.nextBoolean()) ? "cdn" : "static").append(".party").append(thirdParty).append(".net/");
+				if(image) {
+					url.append("img/").append(imageSize(random)).append(extension);
+				}
+				else {
+					url.append("lib/").append(i).append(extension);
+					if(random.nextDouble() < queryShare) {
+						url.append("?id=").append(random.nextInt(1000000)).append("&ref=").append(website);
+					}
+				}
+			}
+			else {
+				cookieDomain = "." + website;
+				url.append((random.nextInt(3) == 0) ? "static." : "www.").append(website).append("/assets/").append(i).append(extension);
+				if(!image && random.nextDouble() < queryShare) {
+					url.append("?v=").append(random.nextInt(100));
+				}
+			}
+
+			RecordedEntry entry = new RecordedEntry(pageStart + 20 * i, "GET", url.toString(), "HTTP/1.1");
+			entry.setTime(5 + random.nextInt(300));
+			entry.setStatus(200, "OK");
+			entry.setMimeType(mimeType);
+			entry.setBodySize(image ? 43 + random.nextInt(100000) : 200 + random.nextInt(200000));
+			if(random.nextDouble() < cookieShare) {
+				entry.getCookies().add(new String[] {cookieDomain, "uid", Long.toHexString(random.nextLong()), "/"});
+			}
+			entries.add(entry);
+		}
+
+		File file = ShardedLayout.getFileForWriting(directory, website, website + (compressed ? Parser.COMPRESSED_HAR_SUFFIX : Parser.HAR_SUFFIX), sharded);
+		OutputStream output;
+		if(compressed) {
+			// Note: the fastest level of compression (the default level is more than twice slower for a few % of size)
+			output = new GZIPOutputStream(new FileOutputStream(file), 65536) {
+				{
+					def.setLevel(Deflater.BEST_SPEED);
+				}
+			};
+		}
+		else {
+			output = new BufferedOutputStream(new FileOutputStream(file), 65536);
+		}
+		HarJsonWriter.write(output, CREATOR, document.getUrl(), pageStart, entries, pretty);
+		return numberEntries;
+	}
+
+	/**
+	 * Writes the Ghostery file: one pattern per tracker.
+	 */
+	private void writeGhostery(File file) throws IOException {
+		BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+		try {
+			writer.write("{\"bugsVersion\": 1, \"bugs\": [");
+			writer.newLine();
+			for(int i = 0; i < trackers; i++) {
+				writer.write("{\"pattern\":\"tracker" + i + "\\\\.com\\\\/\",\"name\":\"Tracker " + i + "\"}" + ((i < trackers - 1) ? "," : ""));
+				writer.newLine();
+			}
+			writer.write("]}");
+			writer.newLine();
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * Writes the SOA records of the websites, of the third parties and of the trackers.
+	 * A third party shares the administrator of its SOA with the two next ones (e.g. a CDN and its company).
+	 */
+	private void writeSOA(File file) throws IOException {
+		BufferedWriter writer = new BufferedWriter(new FileWriter(file), 65536);
+		try {
+			writer.write("# Generated by crawler.HarGenerator: domain<tab>administrator of the SOA");
+			writer.newLine();
+			for(int i = 0; i < websites; i++) {
+				writer.write("site" + i + ".com\thostmaster.site" + i + ".com.");
+				writer.newLine();
+			}
+			for(int i = 0; i < thirdParties; i++) {
+				writer.write("party" + i + ".net\thostmaster.party" + (i - i % 3) + ".net.");
+				writer.newLine();
+			}
+			for(int i = 0; i < trackers; i++) {
+				writer.write("tracker" + i + ".com\tdns.tracker" + i + ".com.");
+				writer.newLine();
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	private String imageSize(Random random) {
+		if(random.nextDouble() < pixelShare) {
+			return "1x1";
+		}
+		int[] size = IMAGE_SIZES[random.nextInt(IMAGE_SIZES.length)];
+		return size[0] + "x" + size[1];
+	}
+
+	private static String extension(String mimeType) {
+		switch(mimeType) {
+		case "image/png":
+			return ".png";
+		case "image/gif":
+			return ".gif";
+		case "image/jpeg":
+			return ".jpg";
+		case "text/css":
+			return ".css";
+		case "text/html":
+			return ".html";
+		case "application/json":
+			return ".json";
+		case "application/x-shockwave-flash":
+			return ".swf";
+		default:
+			return mimeType.contains("javascript") ? ".js" : "";
+		}
+	}
+
+	/**
+	 * Cumulative probabilities of a Zipf law (exponent 1) over n items.
+	 */
+	private static double[] zipf(int n) {
+		double[] cumulative = new double[Math.max(1, n)];
+		double total = 0;
+		for(int i = 0; i < cumulative.length; i++) {
+			total += 1.0 / (i + 1);
+			cumulative[i] = total;
+		}
+		for(int i = 0; i < cumulative.length; i++) {
+			cumulative[i] /= total;
+		}
+		return cumulative;
+	}
+
+	/**
+	 * Mixes the bits of a seed (the first values of java.util.Random are correlated for close seeds).
+	 */
+	private static long mix(long seed) {
+		seed ^= seed >>> 33;
+		seed *= 0xff51afd7ed558ccdL;
+		seed ^= seed >>> 33;
+		seed *= 0xc4ceb9fe1a85ec53L;
+		seed ^= seed >>> 33;
+		return seed;
+	}
+
+	/**
+	 * Draws an index from cumulative probabilities.
+	 */
+	private static int draw(double[] cumulative, Random random) {
+		int index = Arrays.binarySearch(cumulative, random.nextDouble());
+		index = (index >= 0) ? index : -index - 1;
+		return Math.min(index, cumulative.length - 1);
+	}
+
+	public static void main(String[] args) throws IOException {
+		Options options = new Options();
+		options.addOption("dir", true, "required: output directory");
+		options.addOption("websites", true, "required: number of websites (HAR files)");
+		options.addOption("entries", true, "median number of entries per page (80 by default)");
+		options.addOption("maxentries", true, "maximum number of entries per page (500 by default)");
+		options.addOption("thirdparty", true, "share of the entries on third parties (0.35 by default)");
+		options.addOption("thirdparties", true, "number of third-party domains (10000 by default)");
+		options.addOption("tracker", true, "share of the entries matching Ghostery (0.1 by default)");
+		options.addOption("trackers", true, "number of trackers in the Ghostery file (2000 by default)");
+		options.addOption("cookie", true, "share of the entries setting a cookie (0.1 by default)");
+		options.addOption("query", true, "share of the URLs with a query (0.3 by default)");
+		options.addOption("pixel", true, "share of the images of the third parties which are pixels (0.3 by default)");
+		options.addOption("mimetypes", true, "weights of the mimetypes: \"type=weight,...\"");
+		options.addOption("sharded", false, "write the HAR files in hash-prefixed subdirectories (as -sharded of the parser)");
+		options.addOption("gzip", false, "compress the HAR files (.har.gz)");
+		options.addOption("pretty", false, "indent the JSON (as NetExport)");
+		options.addOption("seed", true, "seed of the generator (42 by default)");
+		options.addOption("threads", true, "number of threads (number of processors by default)");
+		options.addOption("h", false, "help");
+
+		try {
+			CommandLine cmd = new PosixParser().parse(options, args);
+			if(cmd.hasOption("h") || !cmd.hasOption("dir") || !cmd.hasOption("websites")) {
+				new HelpFormatter().printHelp("java crawler.HarGenerator -dir <directory> -websites <number>", options);
+				return;
+			}
+			HarGenerator generator = new HarGenerator(Integer.parseInt(cmd.getOptionValue("websites")));
+			if(cmd.hasOption("entries")) generator.setMedianEntries(Integer.parseInt(cmd.getOptionValue("entries")));
+			if(cmd.hasOption("maxentries")) generator.setMaxEntries(Integer.parseInt(cmd.getOptionValue("maxentries")));
+			if(cmd.hasOption("thirdparty")) generator.setThirdPartyShare(Double.parseDouble(cmd.getOptionValue("thirdparty")));
+			if(cmd.hasOption("thirdparties")) generator.setThirdParties(Integer.parseInt(cmd.getOptionValue("thirdparties")));
+			if(cmd.hasOption("tracker")) generator.setTrackerShare(Double.parseDouble(cmd.getOptionValue("tracker")));
+			if(cmd.hasOption("trackers")) generator.setTrackers(Integer.parseInt(cmd.getOptionValue("trackers")));
+			if(cmd.hasOption("cookie")) generator.setCookieShare(Double.parseDouble(cmd.getOptionValue("cookie")));
+			if(cmd.hasOption("query")) generator.setQueryShare(Double.parseDouble(cmd.getOptionValue("query")));
+			if(cmd.hasOption("pixel")) generator.setPixelShare(Double.parseDouble(cmd.getOptionValue("pixel")));
+			if(cmd.hasOption("mimetypes")) generator.setMimeTypes(cmd.getOptionValue("mimetypes"));
+			if(cmd.hasOption("seed")) generator.setSeed(Long.parseLong(cmd.getOptionValue("seed")));
+			if(cmd.hasOption("threads")) generator.setThreads(Integer.parseInt(cmd.getOptionValue("threads")));
+			generator.setSharded(cmd.hasOption("sharded"));
+			generator.setCompressed(cmd.hasOption("gzip"));
+			generator.setPretty(cmd.hasOption("pretty"));
+
+			long start = System.nanoTime();
+			long entries = generator.generate(new File(cmd.getOptionValue("dir")));
+			double seconds = (System.nanoTime() - start) / 1e9;
+			System.out.println(cmd.getOptionValue("websites") + " HAR files (" + entries + " entries) written in "
+					+ String.format("%.1f", seconds) + " s (" + Math.round(Integer.parseInt(cmd.getOptionValue("websites")) / seconds) + " files/s)");
+		} catch (ParseException pe) {
+			System.out.println("Arguments not recognized!");
+			new HelpFormatter().printHelp("java crawler.HarGenerator -dir <directory> -websites <number>", options);
+		} catch (IllegalArgumentException iae) {
+			System.out.println("Invalid argument: " + iae.getMessage());
+		}
+	}
+}
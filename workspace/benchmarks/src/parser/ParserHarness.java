@@ -0,0 +1,188 @@
+package parser;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.PosixParser;
+import org.xbill.DNS.Lookup;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.SimpleResolver;
+
+import crawler.HarManifest;
+import utils.AsyncLogger;
+import utils.Metrics;
+import utils.ShardedLayout;
+
+/**
+ * Hermetic end-to-end run of the parser (Parser.launchParser) over a corpus of HAR files,
+ * to measure its throughput without network:
+ * - the SOA queries of the parser are answered by a stub DNS server (StubDnsServer) from the SOA records of the corpus;
+ * - the images are downloaded from a stub HTTP server (StubImageServer), used as the HTTP proxy of the JVM.
+ * The parser itself is unchanged: same resolver (dnsjava), same downloads, same outputs.
+ *
+ * The corpus is typically generated by crawler.HarGenerator (HAR files, ghostery.json and soa.txt).
+ * The corpus is not modified: the parser runs in an output directory (new or empty) holding links to the HAR files
+ * of the corpus (and to the manifest of the crawler), and writes its logs and results in it.
+ *
+ * Report: wall time, files/s, entries/s and the time spent in each stage of the parser
+ * (see the histograms "parser.*" of utils.Metrics). With -report, a line is also appended to a CSV file,
+ * to compare the builds of the parser.
+ *
+ * Usage: java parser.ParserHarness -dir <corpus> [-out <directory>] [-ghostery <file>] [-soa <file>] [-sharded] [-report <CSV file>]
+ */
+public class ParserHarness {
+	// Stages of the parser, in the order of the analysis of a file
+	private static final String[] STAGES = {"har_read", "ghostery", "dns_lookup", "image_probe", "export", "merge"};
+
+	public static void main(String[] args) throws IOException {
+		Options options = new Options();
+		options.addOption("dir", true, "required: directory of the HAR files (not modified)");
+		options.addOption("out", true, "directory of the logs and of the results (new or empty; a new temporary directory by default)");
+		options.addOption("ghostery", true, "Ghostery file (<dir>/ghostery.json by default, none if it does not exist)");
+		options.addOption("soa", true, "SOA records served by the stub DNS server (<dir>/soa.txt by default)");
+		options.addOption("sharded", false, "the HAR files are in the sharded layout");
+		options.addOption("output", true, "output of the results of the websites: csv (by default), segments or sqlite");
+		options.addOption("loglevel", true, "minimum level of the messages of the parser (error by default)");
+		options.addOption("report", true, "CSV file to which the results of the run are appended");
+		options.addOption("h", false, "help");
+
+		CommandLine cmd;
+		try {
+			cmd = new PosixParser().parse(options, args);
+		} catch (ParseException pe) {
+			System.out.println("Arguments not recognized!");
+			new HelpFormatter().printHelp("java parser.ParserHarness -dir <corpus>", options);
+			return;
+		}
+		if(cmd.hasOption("h") || !cmd.hasOption("dir")) {
+			new HelpFormatter().printHelp("java parser.ParserHarness -dir <corpus>", options);
+			return;
+		}
+		String directory = cmd.getOptionValue("dir");
+		if(!new File(directory).isDirectory()) {
+			System.out.println("Directory not found! " + directory);
+			System.exit(1);
+		}
+		File soaFile = new File(cmd.getOptionValue("soa", directory + "/soa.txt"));
+		String ghostery = cmd.getOptionValue("ghostery", new File(directory, "ghostery.json").isFile() ? directory + "/ghostery.json" : "");
+		int level = AsyncLogger.parseLevel(cmd.getOptionValue("loglevel", "error"));
+		if(level == -1) {
+			System.out.println("The log level must be debug, info, warn or error!");
+			System.exit(1);
+		}
+		AsyncLogger.setLevel(level);
+
+		/* ----- STUB SERVERS ----- */
+		StubDnsServer dnsServer = new StubDnsServer(new FixtureSoaResolver(soaFile));
+		StubImageServer imageServer = new StubImageServer();
+		// DNS: the default resolver of dnsjava (used by DnsSoaResolver), without search path (one query per domain)
+		SimpleResolver resolver = new SimpleResolver("127.0.0.1");
+		resolver.setPort(dnsServer.getPort());
+		Lookup.setDefaultResolver(resolver);
+		Lookup.setDefaultSearchPath((Name[]) null);
+		// HTTP: all the downloads of the JVM go through the stub server
+		System.setProperty("http.proxyHost", "127.0.0.1");
+		System.setProperty("http.proxyPort", String.valueOf(imageServer.getPort()));
+		System.out.println("Stub DNS server on 127.0.0.1:" + dnsServer.getPort() + " (" + soaFile.getPath() + "), "
+				+ "stub image server on 127.0.0.1:" + imageServer.getPort());
+
+		/* ----- RUN ----- */
+		File output = cmd.hasOption("out") ? new File(cmd.getOptionValue("out")) : Files.createTempDirectory("harness").toFile();
+		String[] existing = output.list();
+		if(existing != null && existing.length > 0) {
+			System.out.println("The output directory is not empty! " + output.getPath());
+			System.exit(1);
+		}
+		linkCorpus(new File(directory), output);
+		System.out.println("Output directory: " + output.getPath());
+		ParserOptions parserOptions = new ParserOptions();
+		parserOptions.setSharded(cmd.hasOption("sharded"));
+		if(cmd.hasOption("output")) {
+			parserOptions.setOutput(cmd.getOptionValue("output"));
+		}
+		long start = System.nanoTime();
+		Parser.launchParser(output.getPath(), false, false, ghostery, parserOptions);
+		double wallSeconds = (System.nanoTime() - start) / 1e9;
+		dnsServer.close();
+		imageServer.close();
+
+		/* ----- REPORT ----- */
+		long files = Metrics.counter("parser.files").get();
+		long entries = Metrics.counter("parser.entries").get();
+		System.out.println();
+		System.out.println("----- Harness -----");
+		System.out.println(String.format(Locale.ROOT, "%d files, %d entries in %.1f s: %.1f files/s, %.0f entries/s",
+				files, entries, wallSeconds, files / wallSeconds, entries / wallSeconds));
+		System.out.println(dnsServer.getQueries() + " DNS queries, " + imageServer.getRequests() + " image requests");
+		System.out.println(String.format(Locale.ROOT, "%-12s %10s %10s %7s %10s %10s %10s", "stage", "count", "total (s)", "wall", "mean (ms)", "p50 (ms)", "p99 (ms)"));
+		double stagesSeconds = 0;
+		StringBuilder csv = new StringBuilder();
+		for(String stage : STAGES) {
+			Metrics.Histogram histogram = Metrics.histogram("parser." + stage);
+			double seconds = histogram.getTotal() / 1000;
+			stagesSeconds += seconds;
+			System.out.println(String.format(Locale.ROOT, "%-12s %10d %10.2f %6.1f%% %10.3f %10.3f %10.3f", stage, histogram.getCount(), seconds,
+					100 * seconds / wallSeconds, histogram.getMean(), histogram.getPercentile(0.5), histogram.getPercentile(0.99)));
+			csv.append(String.format(Locale.ROOT, ",%.3f", seconds));
+		}
+		double otherSeconds = Math.max(0, wallSeconds - stagesSeconds);
+		System.out.println(String.format(Locale.ROOT, "%-12s %10s %10.2f %6.1f%%", "other", "", otherSeconds, 100 * otherSeconds / wallSeconds));
+
+		if(cmd.hasOption("report")) {
+			File report = new File(cmd.getOptionValue("report"));
+			boolean header = !report.isFile();
+			BufferedWriter writer = new BufferedWriter(new FileWriter(report, true));
+			try {
+				if(header) {
+					writer.write("time,directory,files,entries,wall_s,files_per_s");
+					for(String stage : STAGES) {
+						writer.write("," + stage + "_s");
+					}
+					writer.newLine();
+				}
+				writer.write(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date()) + "," + directory + "," + files + "," + entries
+						+ String.format(Locale.ROOT, ",%.3f,%.2f", wallSeconds, files / wallSeconds) + csv);
+				writer.newLine();
+			} finally {
+				writer.close();
+			}
+		}
+	}
+
+	/**
+	 * Links the inputs of the parser in the output directory: the HAR files and the subdirectories of the sharded layout
+	 * of the corpus, and the manifest of the crawler.
+	 */
+	private static void linkCorpus(File corpus, File output) throws IOException {
+		output.mkdirs();
+		File[] files = corpus.listFiles();
+		for(File file : files) {
+			if(file.isFile() && Parser.getHarSuffix(file.getName()) != null) {
+				link(file, new File(output, file.getName()));
+			}
+		}
+		for(File shard : ShardedLayout.listShards(corpus)) {
+			link(shard, new File(output, shard.getName()));
+		}
+		File manifest = new File(corpus, HarManifest.FILENAME);
+		if(manifest.isFile()) {
+			File link = new File(output, HarManifest.FILENAME);
+			link.getParentFile().mkdirs();
+			link(manifest, link);
+		}
+	}
+
+	private static void link(File target, File link) throws IOException {
+		Files.createSymbolicLink(link.toPath(), target.getAbsoluteFile().toPath());
+	}
+}
@@ -0,0 +1,118 @@
+package parser;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.SOARecord;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.Type;
+
+/**
+ * Stub DNS server (UDP, on the loopback interface) answering the SOA queries from the records
+ * of a FixtureSoaResolver: the parser can then resolve the SOAs with its real resolver
+ * (DnsSoaResolver) without network (see ParserHarness).
+ *
+ * A domain of the fixture gets its SOA record, the other domains get NXDOMAIN (the parser then
+ * tries their parent). The other types of queries get an empty answer.
+ */
+public class StubDnsServer {
+	private static final long TTL = 3600;
+
+	private final FixtureSoaResolver records;
+	private final DatagramSocket socket;
+	private final Thread thread;
+	private final AtomicLong queries = new AtomicLong();
+
+	/**
+	 * Constructor: starts the server on a free port.
+	 *
+	 * @param records the SOA records
+	 * @throws SocketException if the socket cannot be opened
+	 */
+	public StubDnsServer(FixtureSoaResolver records) throws SocketException {
+		this.records = records;
+		socket = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+		thread = new Thread("stub-dns") {
+			public void run() {
+				serve();
+			}
+		};
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * @return the port of the server (on 127.0.0.1)
+	 */
+	public int getPort() {
+		return socket.getLocalPort();
+	}
+
+	/**
+	 * @return the number of queries answered
+	 */
+	public long getQueries() {
+		return queries.get();
+	}
+
+	/**
+	 * Stops the server.
+	 */
+	public void close() {
+		socket.close();
+	}
+
+	private void serve() {
+		byte[] buffer = new byte[512];
+		while(!socket.isClosed()) {
+			DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+			try {
+				socket.receive(packet);
+			} catch (IOException ioe) {
+				// Closed
+				return;
+			}
+			try {
+				Message query = new Message(Arrays.copyOf(packet.getData(), packet.getLength()));
+				byte[] response = answer(query).toWire(512);
+				socket.send(new DatagramPacket(response, response.length, packet.getSocketAddress()));
+				queries.incrementAndGet();
+			} catch (IOException ioe) {
+				// Malformed query (or closed): no answer
+			}
+		}
+	}
+
+	private Message answer(Message query) throws IOException {
+		Record question = query.getQuestion();
+		Message response = new Message(query.getHeader().getID());
+		response.getHeader().setFlag(Flags.QR);
+		response.getHeader().setFlag(Flags.AA);
+		if(question == null) {
+			response.getHeader().setRcode(Rcode.FORMERR);
+			return response;
+		}
+		response.addRecord(question, Section.QUESTION);
+		Name name = question.getName();
+		String admin = records.lookup(name.toString(true).toLowerCase());
+		if(admin == null) {
+			response.getHeader().setRcode(Rcode.NXDOMAIN);
+		}
+		else if(question.getType() == Type.SOA) {
+			Name adminName = Name.fromString(admin.endsWith(".") ? admin : admin + ".");
+			response.addRecord(new SOARecord(name, DClass.IN, TTL, new Name("ns1", name), adminName, 1, 3600, 600, 86400, TTL), Section.ANSWER);
+		}
+		return response;
+	}
+}
@@ -0,0 +1,97 @@
+package parser;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.imageio.ImageIO;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Stub HTTP server (on the loopback interface) serving the images of a synthetic corpus
+ * (see crawler.HarGenerator): the dimensions of an image are in its name ("/img/1x1.gif",
+ * "/img/300x250.png"), the image is generated at the first request and kept in memory.
+ * The other paths get a 404.
+ *
+ * The server is used as the HTTP proxy of the JVM (http.proxyHost and http.proxyPort, see ParserHarness):
+ * the parser downloads the images of any host from this server.
+ */
+public class StubImageServer {
+	private static final Pattern IMAGE_NAME = Pattern.compile("(\\d{1,4})x(\\d{1,4})\\.(png|gif|jpg)$");
+
+	private final HttpServer server;
+	private final ConcurrentHashMap<String, byte[]> images = new ConcurrentHashMap<String, byte[]>();
+	private final AtomicLong requests = new AtomicLong();
+
+	/**
+	 * Constructor: starts the server on a free port.
+	 *
+	 * @throws IOException if the server cannot be started
+	 */
+	public StubImageServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				requests.incrementAndGet();
+				byte[] image = null;
+				Matcher matcher = IMAGE_NAME.matcher(exchange.getRequestURI().getPath());
+				if(matcher.find()) {
+					image = getImage(matcher.group(0), Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)), matcher.group(3));
+				}
+				if(image == null) {
+					exchange.sendResponseHeaders(404, -1);
+					exchange.close();
+					return;
+				}
+				exchange.getResponseHeaders().set("Content-Type", "image/" + (matcher.group(3).equals("jpg") ? "jpeg" : matcher.group(3)));
+				exchange.sendResponseHeaders(200, image.length);
+				OutputStream body = exchange.getResponseBody();
+				body.write(image);
+				body.close();
+			}
+		});
+		server.start();
+	}
+
+	/**
+	 * @return the port of the server (on 127.0.0.1)
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * @return the number of requests received
+	 */
+	public long getRequests() {
+		return requests.get();
+	}
+
+	/**
+	 * Stops the server.
+	 */
+	public void close() {
+		server.stop(0);
+	}
+
+	private byte[] getImage(String name, int width, int height, String format) throws IOException {
+		byte[] image = images.get(name);
+		if(image == null && width > 0 && height > 0) {
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), format.equals("jpg") ? "jpeg" : format, output);
+			image = output.toByteArray();
+			images.putIfAbsent(name, image);
+		}
+		return image;
+	}
+}
@@ -0,0 +1,106 @@
+package utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the flat layout and the sharded layout (see ShardedLayout) of a directory:
+ * time to create the files, to list them and to open a random sample of them.
+ *
+ * Usage: java utils.LayoutBenchmark <directory> <number of files> [<number of files to open>]
+ * The directory must not exist: it is created and deleted by the benchmark.
+ */
+public class LayoutBenchmark {
+
+	public static void main(String[] args) throws IOException {
+		if(args.length < 2) {
+			System.out.println("Usage: java utils.LayoutBenchmark <directory> <number of files> [<number of files to open>]");
+			System.exit(1);
+		}
+		File baseDirectory = new File(args[0]);
+		int numberFiles = Integer.parseInt(args[1]);
+		int numberOpened = (args.length > 2) ? Integer.parseInt(args[2]) : 10000;
+		if(baseDirectory.exists()) {
+			System.out.println("The directory " + baseDirectory.getPath() + " already exists!");
+			System.exit(1);
+		}
+
+		System.out.println(numberFiles + " files, " + numberOpened + " files opened");
+		System.out.println("layout,create (ms),list (ms),open (ms)");
+		for(boolean sharded : new boolean[] {false, true}) {
+			File directory = new File(baseDirectory, sharded ? "sharded" : "flat");
+			if(!directory.mkdirs()) {
+				throw new IOException("Cannot create the directory " + directory.getPath());
+			}
+			long[] times = run(directory, numberFiles, numberOpened, sharded);
+			System.out.println((sharded ? "sharded" : "flat") + "," + times[0] + "," + times[1] + "," + times[2]);
+			delete(directory);
+		}
+		delete(baseDirectory);
+	}
+
+	/**
+	 * Creates, lists and opens the files in a layout.
+	 *
+	 * @return the times (in milliseconds) to create, list and open the files
+	 */
+	private static long[] run(File directory, int numberFiles, int numberOpened, boolean sharded) throws IOException {
+		long[] times = new long[3];
+
+		// Create
+		long start = System.nanoTime();
+		for(int i = 0; i < numberFiles; i++) {
+			String website = "website" + i + ".com";
+			FileOutputStream output = new FileOutputStream(ShardedLayout.getFileForWriting(directory, website, website + ".har", sharded));
+			output.write('{');
+			output.close();
+		}
+		times[0] = TimeUnit.MILLISECONDS.convert(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+		// List
+		start = System.nanoTime();
+		int listed;
+		if(sharded) {
+			listed = ShardedLayout.listFiles(directory, ".har").size();
+		}
+		else {
+			listed = directory.listFiles(new FilenameFilter() {
+				public boolean accept(File file, String name) {
+					return name.endsWith(".har");
+				}
+			}).length;
+		}
+		times[1] = TimeUnit.MILLISECONDS.convert(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		if(listed != numberFiles) {
+			throw new IOException(listed + " files listed instead of " + numberFiles);
+		}
+
+		// Open
+		Random random = new Random(42);
+		start = System.nanoTime();
+		for(int i = 0; i < numberOpened; i++) {
+			String website = "website" + random.nextInt(numberFiles) + ".com";
+			FileInputStream input = new FileInputStream(ShardedLayout.getFile(directory, website, website + ".har", sharded));
+			input.read();
+			input.close();
+		}
+		times[2] = TimeUnit.MILLISECONDS.convert(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+		return times;
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if(children != null) {
+			for(File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}
@@ -7,6 +7,7 @@ import java.io.FileFilter;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -17,16 +18,9 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 import java.util.Scanner;
-import java.util.Map.Entry;
 import java.util.concurrent.TimeUnit;
 
 import org.openqa.selenium.TimeoutException;
@@ -41,20 +35,68 @@ import org.openqa.selenium.remote.UnreachableBrowserException;
 import crawler.WebsitesList;
 import crawler.Website;
 import crawler.CounterAndDeleterFileVisitor;
+import utils.AsyncLogger;
+import utils.Counters;
+import utils.Interner;
+import utils.Metrics;
+import utils.ShardedLayout;
 
 public class Crawler {
 
 	private static boolean debug;
 	private static WebDriver driver;
-	private static FileWriter logsFile;
-	private static SimpleDateFormat dateFormat = new SimpleDateFormat("dd/MM/yyyy - HH:mm:ss");
+	private static AsyncLogger logger;
+	// One format per thread: SimpleDateFormat is not thread-safe
+	private static final ThreadLocal<SimpleDateFormat> dateFormat = new ThreadLocal<SimpleDateFormat>() {
+		protected SimpleDateFormat initialValue() {
+			return new SimpleDateFormat("dd/MM/yyyy - HH:mm:ss");
+		}
+	};
 	private static ArrayList<String> websitesFailed = new ArrayList<String>();
 	private static ArrayList<String> websitesTimeout = new ArrayList<String>();
 	private static int websitesVisited = 0;
 	private static Scanner scanner;
 	private static String flashCookiesPath;
-	private static Map<String, Integer> flashCookiesPerWebsite;
+	private static Counters flashCookiesPerWebsite;
 	private static String firefoxCookiesDB;
+	private static HarManifest harManifest;
+	private static int blankPagesVisited = 0;
+	private static boolean sharded;
+	private static HarListener harListener;
+	private static volatile int websitesTotal = 0;
+	private static volatile boolean crawlFinished = false;
+	private static RecordingProxy proxy;
+	private static boolean proxyHar;
+	// Number of HTTPS requests recorded as opaque tunnels by the proxy (see RecordingProxy)
+	private static int opaqueRequests = 0;
+	// Id of the crawl (time of its launch), given with the pages recorded (see HarListener)
+	private static String crawlId;
+	// Metrics (see utils.Metrics), written in logs/metrics.csv every minute
+	private static final int METRICS_INTERVAL = 60;
+	private static final Metrics.Counter pagesMetric = Metrics.counter("crawler.pages");
+	private static final Metrics.Counter failuresMetric = Metrics.counter("crawler.failures");
+	private static final Metrics.Counter timeoutsMetric = Metrics.counter("crawler.timeouts");
+	private static final Metrics.Histogram pageLoadMetric = Metrics.histogram("crawler.page_load");
+
+	/**
+	 * Sets the listener receiving the HAR files as soon as they are written (streaming mode).
+	 * Must be called before launchCrawler.
+	 *
+	 * @param listener the listener
+	 */
+	public static void setHarListener(HarListener listener) {
+		harListener = listener;
+	}
+
+	/**
+	 * Gets the progress of the crawler (e.g. for the combined progress of the crawler and the parser).
+	 *
+	 * @return the progress (one line)
+	 */
+	public static String getProgress() {
+		return websitesVisited + " websites visited out of " + websitesTotal
+				+ " (" + websitesFailed.size() + " failed)";
+	}
 
 	/**
 	 * Starts the crawler
@@ -68,11 +110,19 @@ public class Crawler {
 	 * @param showDebug
 	 * @param restart
 	 * @param timeout
+	 * @param shardedLayout move the HAR files in hash-prefixed subdirectories (see ShardedLayout)
+	 * @param proxyPort the port of the recording proxy replacing Firebug and NetExport (0 for any free port), or -1 to use NetExport
+	 * @param writeHar with the recording proxy: write the HAR files even if the pages are handed to a listener
 	 */
 	public static void launchCrawler(final String directoryName, String ffprofile, String websitesFile,
-			int startIndex, int endIndex, int attempts, boolean showDebug, int restart, int timeout) {
+			int startIndex, int endIndex, int attempts, boolean showDebug, int restart, int timeout, boolean shardedLayout,
+			int proxyPort, boolean writeHar) {
 		debug = showDebug;
-		String start = dateFormat.format(new Date()) + " - Launching crawler...\n"
+		sharded = shardedLayout;
+		proxyHar = writeHar;
+		crawlId = new SimpleDateFormat("yyyyMMddHHmmss").format(new Date());
+		String start = dateFormat.get().format(new Date()) + " - Launching crawler...\n"
+				+ "   crawl: " + crawlId + "\n"
 				+ "   directory: " + directoryName + "\n"
 				+ "   websites file: " + websitesFile + "\n"
 				+ "   start index: " + startIndex + ", end index: " + endIndex + "\n"
@@ -80,6 +130,8 @@ public class Crawler {
 				+ "   restart value: " + restart + "\n"
 				+ "   number of attempts per website: " + attempts + "\n"
 				+ "   timeout: " + timeout + " seconds\n"
+				+ "   sharded layout: " + sharded + "\n"
+				+ "   recording proxy: " + ((proxyPort >= 0) ? "port " + proxyPort : "no (NetExport)") + "\n"
 				+ "   debug: " + debug;
 		System.out.println(start);
 
@@ -89,19 +141,40 @@ public class Crawler {
 		// Check the file system permissions
 		try {
 			if(!checkDirectories(directoryName)) {
-				System.out.println(dateFormat.format(new Date()) + " - Error: cannot create the required directory.\n"
+				System.out.println(dateFormat.get().format(new Date()) + " - Error: cannot create the required directory.\n"
 						+ "> Please check your file system permissions.");
 				System.exit(1);
 			}
-			logsFile = new FileWriter(new File(directoryName+"/logs/log_crawler.txt"), true);
-			logsFile.write(start);
-			logsFile.write(System.getProperty("line.separator"));
+			logger = new AsyncLogger(new File(directoryName+"/logs/log_crawler.txt"), "crawler-log");
+			logger.logToFile(start);
+			// Note: shared with the parser when it runs in the same process
+			Metrics.start(new File(directoryName+"/logs/metrics.csv"), METRICS_INTERVAL);
 		} catch (IOException ioe) {
-			System.out.println(dateFormat.format(new Date()) + " - Error: cannot write the log file.\n"
+			System.out.println(dateFormat.get().format(new Date()) + " - Error: cannot write the log file.\n"
 					+ "> Please check your file system permissions.");
 			System.exit(1);
 		}
 
+		// Manifest of the HAR files (read by the parser)
+		try {
+			harManifest = new HarManifest(directoryName);
+		} catch (IOException ioe) {
+			logMessage("Error: cannot write the manifest of the HAR files.", 3);
+			if(debug) ioe.printStackTrace();
+		}
+
+		// Recording proxy
+		if(proxyPort >= 0) {
+			try {
+				proxy = new RecordingProxy(proxyPort);
+				logMessage("Info: recording proxy listening on port " + proxy.getPort() + ".", 2);
+			} catch (IOException ioe) {
+				logMessage("Error: cannot start the recording proxy on the port " + proxyPort + ".", 3);
+				if(debug) ioe.printStackTrace();
+				System.exit(1);
+			}
+		}
+
 		// FLASH COOKIES
 		findAndInitializeFlashCookiesStats();
 
@@ -117,7 +190,12 @@ public class Crawler {
 			{
 				logMessage("Terminating now...", 1);
 				haltDriver();
+				if(proxy != null) {
+					proxy.close();
+				}
+				notifyCrawlFinished(true);
 				deleteUselessFiles(directoryName);
+				closeHarManifest();
 				detailProblematicWebsites();
 				writeCookiesStats(directoryName);
 				scanner.close();
@@ -136,6 +214,7 @@ public class Crawler {
 		else {
 			logMessage("Info: " + websites.getStatus(), 2);
 		}
+		websitesTotal = websites.getWebsites().size();
 
 		// Initialize the driver
 		logMessage("Initializing the driver...", 1);
@@ -150,34 +229,49 @@ public class Crawler {
 			}
 
 			boolean success = false;
+			boolean error = false;
 			int attempt = 1;
+			List<RecordedEntry> pageEntries = null;
 
 			do {
 				try {
 					logMessage("Crawling website #" + website.getPosition() + " - " + website.getUrl()
 							+ " (attempt #" + attempt + ").", 1);
+					if(proxy != null) {
+						proxy.startPage();
+					}
+					long loadStart = System.nanoTime();
 					if(website.getUrl().contains("http")) {
 						driver.get(website.getUrl());
 					}
 					else {
 						driver.get("http://" + website.getUrl());
 					}
+					pageLoadMetric.record(System.nanoTime() - loadStart);
 
 					// Flash cookies
 					int flashCookies = countAndDeleteFlashCookies();
 					logMessage("Number of Flash cookies found and deleted: " + flashCookies, 2);
-					flashCookiesPerWebsite.put(website.getUrl(), flashCookies);
+					flashCookiesPerWebsite.set(website.getUrl(), flashCookies);
 
-					// Wait till HAR is exported
-					try {
-						System.out.println("                        Waiting 8 seconds"
-								+ " for the HAR file to be exported...");
-						Thread.sleep(8000);
-					} catch (InterruptedException e) {
-						if(debug) e.printStackTrace();
+					if(proxy != null) {
+						// Wait for the last requests of the page
+						pageEntries = proxy.endPage();
+						logMessage("Number of requests recorded: " + pageEntries.size(), 2);
+					}
+					else {
+						// Wait till HAR is exported
+						try {
+							System.out.println("                        Waiting 8 seconds"
+									+ " for the HAR file to be exported...");
+							Thread.sleep(8000);
+						} catch (InterruptedException e) {
+							if(debug) e.printStackTrace();
+						}
 					}
 					success = true;
 				} catch (TimeoutException te) {
+					timeoutsMetric.increment();
 					logMessage("Error: website " + website.getUrl()
 							+ " was not successfully loaded (timeout).", 3);
 					attempt++;
@@ -188,6 +282,7 @@ public class Crawler {
 					if(debug) te.printStackTrace();
 					// Move to the blank page before retrying to load the website
 					try {
+						blankPagesVisited++;
 						driver.get("about:blank");
 						Thread.sleep(5000); // It's necessary to give time to the browser
 					} catch (InterruptedException ie) {
@@ -204,19 +299,41 @@ public class Crawler {
 					if(debug) e.printStackTrace();
 					// Skip the website and consider it as failed
 					websitesFailed.add(website.getUrl());
+					error = true;
 					break;
 				}
 			} while(attempt <= attempts && !success);
 			websitesVisited++;
+			pagesMetric.increment();
+			if(!success) {
+				failuresMetric.increment();
+			}
 
 			// The website failed after several attempts
 			if(attempt >= attempts && !success) {
 				websitesFailed.add(website.getUrl());
 				// Note: Keep the website in the timed out list: can distinguish between the fails and timeouts in the failed list.
 			}
+
+			if(proxy != null) {
+				if(pageEntries == null) {
+					// Failed: keep what has been recorded before the timeout or the error
+					pageEntries = proxy.endPage();
+				}
+				recordPage(directoryName, website, success ? "success" : (error ? "error" : "timeout"), pageEntries);
+			}
+			else {
+				recordVisit(directoryName, website, success ? "success" : (error ? "error" : "timeout"));
+			}
 		}
 
 		logMessage("Info: the crawling of the websites is done!", 1);
+		if(opaqueRequests > 0) {
+			logMessage("Warning: " + opaqueRequests + " HTTPS requests were not decrypted by the proxy (opaque):"
+					+ " the statistics only cover the plain HTTP requests.", 3);
+		}
+		Metrics.dump();
+		notifyCrawlFinished(false);
 		System.exit(0);
 	}
 
@@ -230,14 +347,10 @@ public class Crawler {
 			// Flash cookies
 			BufferedWriter flashCookiesFile = new BufferedWriter(new FileWriter(new File(directoryName+"/logs/stats_flash-cookies.csv"), false));
 
-			Map<String, Integer> sortedFlashCookiesStats = sortByValueInDescendingOrder(flashCookiesPerWebsite);
-
-			for(String name : sortedFlashCookiesStats.keySet()) {
-				int trackerCount = sortedFlashCookiesStats.get(name);
-				if(trackerCount != 0) {
-					flashCookiesFile.write(name + "," + trackerCount);
-					flashCookiesFile.newLine();
-				}
+			// Note: the websites without Flash cookies (zero) are not written
+			for(int id : flashCookiesPerWebsite.getSortedIds()) {
+				flashCookiesFile.write(flashCookiesPerWebsite.getInterner().getName(id) + "," + flashCookiesPerWebsite.get(id));
+				flashCookiesFile.newLine();
 			}
 			flashCookiesFile.close();
 
@@ -355,7 +468,7 @@ public class Crawler {
 			flashCookiesPath = cookieFlashFolder.getAbsolutePath();
 		}
 		logMessage("Flash cookies folder: " + flashCookiesPath, 0);
-		flashCookiesPerWebsite = new HashMap<String, Integer>();
+		flashCookiesPerWebsite = new Counters(new Interner());
 
 		// Delete the Flash cookies before starting the crawl
 		logMessage("Number of Flash cookies found and deleted: " + countAndDeleteFlashCookies(), 2);
@@ -451,29 +564,6 @@ public class Crawler {
 		return count;
 	}
 
-	/**
-	 * Orders a Map in a descending order
-	 *
-	 * @param mapToSort the map to sort
-	 * @return a LinkedHashMap containing the values of the map
-	 */
-	public static LinkedHashMap<String, Integer> sortByValueInDescendingOrder (Map<String, Integer> mapToSort) {
-		List<Map.Entry<String, Integer>> entries = new LinkedList<Map.Entry<String, Integer>>(mapToSort.entrySet());
-		Collections.sort(entries, new Comparator<Map.Entry<String, Integer>>() {
-			@Override
-			public int compare(Entry<String, Integer> o1, Entry<String, Integer> o2) {
-				return o2.getValue().compareTo(o1.getValue());
-			}
-		});
-
-		LinkedHashMap<String, Integer> sortedMap = new LinkedHashMap<String, Integer>();
-		for(Map.Entry<String, Integer> entry: entries){
-			sortedMap.put(entry.getKey(), entry.getValue());
-		}
-
-		return sortedMap;
-	}
-
 	/**
 	 * Initialize the driver.
 	 *
@@ -489,9 +579,25 @@ public class Crawler {
 			DesiredCapabilities capabilities = new DesiredCapabilities();
 			capabilities.setCapability(FirefoxDriver.PROFILE, profile);
 
-			// ----- Firebug + NetExport -----
 			// Set default Firefox preferences
 			profile.setPreference("app.update.enabled", false);
+
+			// ----- Recording proxy -----
+			if(proxy != null) {
+				profile.setPreference("network.proxy.type", 1); // Manual configuration
+				profile.setPreference("network.proxy.http", "127.0.0.1");
+				profile.setPreference("network.proxy.http_port", proxy.getPort());
+				profile.setPreference("network.proxy.ssl", "127.0.0.1");
+				profile.setPreference("network.proxy.ssl_port", proxy.getPort());
+				profile.setPreference("network.proxy.no_proxies_on", "");
+
+				driver = new FirefoxDriver(capabilities);
+				driver.manage().timeouts().pageLoadTimeout(timeout, TimeUnit.SECONDS);
+				logMessage("Info: WebDriver is ready.", 2);
+				return;
+			}
+
+			// ----- Firebug + NetExport -----
 			String domain = "extensions.firebug.";
 
 			// Set default Firebug preferences
@@ -532,13 +638,195 @@ public class Crawler {
 		}
 	}
 
+	/**
+	 * Appends the visit of a website to the manifest of the HAR files and hands the HAR file to the listener (if any).
+	 * The HAR file is searched under the host of the current page (NetExport uses it after the redirections)
+	 * and under the host of the website.
+	 *
+	 * @param directoryName the directory in which the files are written
+	 * @param website the website
+	 * @param outcome "success", "timeout" or "error"
+	 */
+	private static void recordVisit(String directoryName, Website website, String outcome) {
+		if(harManifest == null && harListener == null) {
+			return;
+		}
+		ArrayList<String> hosts = new ArrayList<String>();
+		try {
+			String currentUrl = driver.getCurrentUrl();
+			if(currentUrl.startsWith("http")) {
+				hosts.add(new URL(currentUrl).getHost());
+			}
+		} catch (Exception e) {
+			// The current page is unknown: only use the host of the website
+		}
+		try {
+			hosts.add(new URL(website.getUrl().contains("http") ? website.getUrl() : "http://" + website.getUrl()).getHost());
+		} catch (Exception e) {
+			if(debug) e.printStackTrace();
+		}
+
+		File directory = new File(directoryName);
+		HarManifest.Visit visit = new HarManifest.Visit(website.getUrl(), website.getPosition(), "", -1, 0, outcome);
+		File harFileFound = null;
+		for(String host : hosts) {
+			int version = HarManifest.findLatestVersion(directory, host);
+			if(version >= 0) {
+				String harFile = HarManifest.getHarFilename(host, version);
+				File file = new File(directory, harFile);
+				// Move the file into the subdirectory of the host (with the next version available there)
+				if(sharded) {
+					String shard = ShardedLayout.getShard(host);
+					version = HarManifest.findLatestVersion(new File(directory, shard), host) + 1;
+					harFile = shard + "/" + HarManifest.getHarFilename(host, version);
+					try {
+						file = ShardedLayout.moveIntoShard(file, directory, host, HarManifest.getHarFilename(host, version));
+					} catch (IOException ioe) {
+						logMessage("Error: cannot move the HAR file " + file.getName() + " into its subdirectory.", 3);
+						if(debug) ioe.printStackTrace();
+						break;
+					}
+				}
+				visit = new HarManifest.Visit(website.getUrl(), website.getPosition(), harFile, version,
+						file.length(), outcome);
+				harFileFound = file;
+				break;
+			}
+		}
+		if(harManifest != null) {
+			try {
+				harManifest.append(visit);
+			} catch (IOException ioe) {
+				logMessage("Error: cannot write the manifest of the HAR files.", 3);
+				if(debug) ioe.printStackTrace();
+			}
+		}
+		if(harListener != null && harFileFound != null) {
+			harListener.harWritten(harFileFound, website.getUrl());
+		}
+	}
+
+	/**
+	 * Records the visit of a website made through the recording proxy: hands the requests of the page
+	 * to the listener (if any) and writes them in a HAR file named as NetExport does
+	 * (if there is no listener or if the HAR files are requested).
+	 *
+	 * @param directoryName the directory in which the files are written
+	 * @param website the website
+	 * @param outcome "success", "timeout" or "error"
+	 * @param entries the requests of the page
+	 */
+	private static void recordPage(String directoryName, Website website, String outcome, List<RecordedEntry> entries) {
+		int opaqueEntries = 0;
+		for(RecordedEntry entry : entries) {
+			if(entry.isOpaque()) {
+				opaqueEntries++;
+			}
+		}
+		if(opaqueEntries > 0) {
+			opaqueRequests += opaqueEntries;
+			logMessage("Warning: " + opaqueEntries + " HTTPS requests of " + website.getUrl()
+					+ " recorded as opaque (excluded from the statistics).", 3);
+		}
+
+		// Host of the current page (after the redirections), as NetExport
+		String host = null;
+		try {
+			String currentUrl = driver.getCurrentUrl();
+			if(currentUrl.startsWith("http")) {
+				host = new URL(currentUrl).getHost();
+			}
+		} catch (Exception e) {
+			// The current page is unknown: use the host of the website
+		}
+		try {
+			if(host == null) {
+				host = new URL(website.getUrl().contains("http") ? website.getUrl() : "http://" + website.getUrl()).getHost();
+			}
+		} catch (Exception e) {
+			if(debug) e.printStackTrace();
+			return;
+		}
+
+		HarManifest.Visit visit = new HarManifest.Visit(website.getUrl(), website.getPosition(), "", -1, 0, outcome);
+		if(!entries.isEmpty() && (proxyHar || harListener == null)) {
+			File directory = new File(directoryName);
+			File hostDirectory = sharded ? new File(directory, ShardedLayout.getShard(host)) : directory;
+			int version = HarManifest.findLatestVersion(hostDirectory, host) + 1;
+			String harFile = HarManifest.getHarFilename(host, version);
+			try {
+				File file = ShardedLayout.getFileForWriting(directory, host, harFile, sharded);
+				long pageStart = entries.get(0).getStartedDateTime();
+				HarJsonWriter.write(file, website.getUrl(), pageStart, entries);
+				visit = new HarManifest.Visit(website.getUrl(), website.getPosition(),
+						sharded ? ShardedLayout.getShard(host) + "/" + harFile : harFile, version, file.length(), outcome);
+			} catch (IOException ioe) {
+				logMessage("Error: cannot write the HAR file " + harFile + ".", 3);
+				if(debug) ioe.printStackTrace();
+			}
+		}
+		if(harManifest != null) {
+			try {
+				harManifest.append(visit);
+			} catch (IOException ioe) {
+				logMessage("Error: cannot write the manifest of the HAR files.", 3);
+				if(debug) ioe.printStackTrace();
+			}
+		}
+		if(harListener != null && !entries.isEmpty()) {
+			harListener.pageRecorded(crawlId, host, entries);
+		}
+	}
+
+	/**
+	 * Notifies the listener of the HAR files that the crawler stops (once).
+	 *
+	 * @param interrupted true if the crawler is interrupted (signal)
+	 */
+	private static synchronized void notifyCrawlFinished(boolean interrupted) {
+		if(harListener != null && !crawlFinished) {
+			crawlFinished = true;
+			harListener.crawlFinished(interrupted);
+		}
+	}
+
+	/**
+	 * Closes the manifest of the HAR files.
+	 */
+	private static void closeHarManifest() {
+		if(harManifest != null) {
+			try {
+				harManifest.close();
+			} catch (IOException ioe) {
+				logMessage("Error: the manifest of the HAR files was not closed successfully.", 3);
+				if(debug) ioe.printStackTrace();
+			}
+		}
+	}
+
 	/**
 	 * Deletes the useless files.
 	 * These are the files generated when visiting the "about:blank" page when retrying another attempt.
+	 * NetExport names them ".har", "-1.har", "-2.har", etc.: when the manifest is written,
+	 * only these names are checked instead of listing the whole directory.
+	 * Note: in the sharded layout, these files are never moved into the subdirectories.
 	 *
 	 * @param directoryName the name of the directory containing the files
 	 */
 	public static void deleteUselessFiles(String directoryName) {
+		if(harManifest != null) {
+			File file = new File(directoryName, ".har");
+			int version = 0;
+			// Note: continue after the number of visits of "about:blank" if files left by a previous crawl remain
+			while(file.isFile() || version < blankPagesVisited) {
+				if(file.isFile() && !file.delete()) {
+					logMessage("Error: cannot delete the following file: " + file.getName(), 3);
+				}
+				version++;
+				file = new File(directoryName, "-" + version + ".har");
+			}
+			return;
+		}
 		for (File file : new File(directoryName).listFiles()) {
 			if(file.isFile()) {
 				String filename = file.getName();
@@ -596,7 +884,8 @@ public class Crawler {
 	}
 
 	/**
-	 * Prints a message in the console and writes a message in the log file.
+	 * Prints a message in the console and writes a message in the log file (asynchronously, see AsyncLogger).
+	 * The messages of type 3 are errors, the others are information.
 	 * @param message the message to print and write.
 	 * @param type type of the message:<br>
 	 * 		- 0 (normal): just show the message.<br>
@@ -605,21 +894,14 @@ public class Crawler {
 	 *		- 3 (focus): add spaces and ">" to focus on a message.<br>
 	 */
 	public static void logMessage(String message, int type) {
-		switch(type) {
-		case 1: message = dateFormat.format(new Date()) + " - " + message; break;
-		case 2: message = "                        " + message; break;
-		case 3: message = "             >>>>>>>>>> " + message; break;
-		}
-
-		System.out.println(message);
-		try {
-			logsFile.write(message);
-			logsFile.write(System.getProperty("line.separator"));
-			logsFile.flush();
-		} catch (IOException ioe) {
-			System.out.println("The message was not successfully written in the log file.");
-			if(debug) ioe.printStackTrace();
+		int level = (type == 3) ? AsyncLogger.ERROR : AsyncLogger.INFO;
+		if(logger == null) {
+			if(AsyncLogger.isEnabled(level)) {
+				System.out.println(AsyncLogger.format(message, type, System.currentTimeMillis(), new SimpleDateFormat("dd/MM/yyyy - HH:mm:ss")));
+			}
+			return;
 		}
+		logger.log(message, type, level);
 	}
 
 	/**
@@ -628,12 +910,10 @@ public class Crawler {
 	 */
 	public static void closeLogFile() {
 		try {
-			logsFile.write("----------------------------------------");
-			logsFile.write(System.getProperty("line.separator"));
-			logsFile.close();
-			System.out.println(dateFormat.format(new Date()) + " - Info: log file successfully closed.");
+			logger.close("----------------------------------------");
+			System.out.println(dateFormat.get().format(new Date()) + " - Info: log file successfully closed.");
 		} catch (IOException ioe) {
-			System.out.println(dateFormat.format(new Date()) + " - Error: cannot close the logs file.\n> It may be corrupted.");
+			System.out.println(dateFormat.get().format(new Date()) + " - Error: cannot close the logs file.\n> It may be corrupted.");
 			if(debug) ioe.printStackTrace();
 		}
 	}
@@ -0,0 +1,153 @@
+package crawler;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Writes HAR files in the format of NetExport (HAR 1.1), readable by the parser.
+ * Only the fields known by the recording proxy are written (no timings detail, no content).
+ */
+public class HarJsonWriter {
+	private static final JsonFactory jsonFactory = new JsonFactory();
+
+	/**
+	 * Writes a HAR file containing one page.
+	 *
+	 * @param file the HAR file
+	 * @param pageUrl the URL of the page (title of the page)
+	 * @param pageStart the time of the visit of the page (in milliseconds since the epoch)
+	 * @param entries the requests of the page
+	 * @throws IOException
+	 */
+	public static void write(File file, String pageUrl, long pageStart, List<RecordedEntry> entries) throws IOException {
+		write(new FileOutputStream(file), "RecordingProxy", pageUrl, pageStart, entries, true);
+	}
+
+	/**
+	 * Writes a HAR containing one page in a stream (e.g. a compressed file).
+	 *
+	 * @param output the stream (closed by this method)
+	 * @param creator the name of the creator of the HAR
+	 * @param pageUrl the URL of the page (title of the page)
+	 * @param pageStart the time of the visit of the page (in milliseconds since the epoch)
+	 * @param entries the requests of the page
+	 * @param pretty true to indent the JSON (readable), false to write it on one line (smaller and faster)
+	 * @throws IOException
+	 */
+	public static void write(OutputStream output, String creator, String pageUrl, long pageStart, List<RecordedEntry> entries, boolean pretty) throws IOException {
+		SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+		dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+		JsonGenerator json = jsonFactory.createGenerator(output, JsonEncoding.UTF8);
+		try {
+			if(pretty) {
+				json.useDefaultPrettyPrinter();
+			}
+			json.writeStartObject();
+			json.writeObjectFieldStart("log");
+			json.writeStringField("version", "1.1");
+			json.writeObjectFieldStart("creator");
+			json.writeStringField("name", creator);
+			json.writeStringField("version", "1.0");
+			json.writeEndObject();
+
+			json.writeArrayFieldStart("pages");
+			json.writeStartObject();
+			json.writeStringField("startedDateTime", dateFormat.format(new Date(pageStart)));
+			json.writeStringField("id", "page_1");
+			json.writeStringField("title", pageUrl);
+			json.writeObjectFieldStart("pageTimings");
+			json.writeEndObject();
+			json.writeEndObject();
+			json.writeEndArray();
+
+			json.writeArrayFieldStart("entries");
+			for(RecordedEntry entry : entries) {
+				writeEntry(json, entry, dateFormat);
+			}
+			json.writeEndArray();
+
+			json.writeEndObject();
+			json.writeEndObject();
+		} finally {
+			json.close();
+		}
+	}
+
+	private static void writeEntry(JsonGenerator json, RecordedEntry entry, SimpleDateFormat dateFormat) throws IOException {
+		json.writeStartObject();
+		json.writeStringField("pageref", "page_1");
+		json.writeStringField("startedDateTime", dateFormat.format(new Date(entry.getStartedDateTime())));
+		json.writeNumberField("time", entry.getTime());
+
+		json.writeObjectFieldStart("request");
+		json.writeStringField("method", entry.getMethod());
+		json.writeStringField("url", entry.getUrl());
+		json.writeStringField("httpVersion", entry.getHttpVersion());
+		json.writeArrayFieldStart("cookies");
+		json.writeEndArray();
+		writeHeaders(json, entry.getRequestHeaders());
+		json.writeArrayFieldStart("queryString");
+		json.writeEndArray();
+		json.writeNumberField("headersSize", -1);
+		json.writeNumberField("bodySize", -1);
+		json.writeEndObject();
+
+		json.writeObjectFieldStart("response");
+		json.writeNumberField("status", entry.getStatus());
+		json.writeStringField("statusText", entry.getStatusText());
+		json.writeStringField("httpVersion", entry.getHttpVersion());
+		json.writeArrayFieldStart("cookies");
+		for(String[] cookie : entry.getCookies()) {
+			json.writeStartObject();
+			json.writeStringField("name", cookie[1]);
+			json.writeStringField("value", cookie[2]);
+			if(cookie[3] != null) json.writeStringField("path", cookie[3]);
+			if(cookie[0] != null) json.writeStringField("domain", cookie[0]);
+			json.writeEndObject();
+		}
+		json.writeEndArray();
+		writeHeaders(json, entry.getResponseHeaders());
+		json.writeObjectFieldStart("content");
+		json.writeNumberField("size", Math.max(0, entry.getBodySize()));
+		json.writeStringField("mimeType", entry.getMimeType());
+		json.writeEndObject();
+		json.writeStringField("redirectURL", "");
+		json.writeNumberField("headersSize", -1);
+		json.writeNumberField("bodySize", entry.getBodySize());
+		json.writeEndObject();
+
+		json.writeObjectFieldStart("cache");
+		json.writeEndObject();
+		json.writeObjectFieldStart("timings");
+		json.writeNumberField("send", 0);
+		json.writeNumberField("wait", entry.getTime());
+		json.writeNumberField("receive", 0);
+		json.writeEndObject();
+		if(entry.isOpaque()) {
+			json.writeStringField("comment", RecordedEntry.OPAQUE_COMMENT);
+		}
+		json.writeEndObject();
+	}
+
+	private static void writeHeaders(JsonGenerator json, List<String[]> headers) throws IOException {
+		json.writeArrayFieldStart("headers");
+		for(String[] header : headers) {
+			json.writeStartObject();
+			json.writeStringField("name", header[0]);
+			json.writeStringField("value", header[1]);
+			json.writeEndObject();
+		}
+		json.writeEndArray();
+	}
+}
@@ -0,0 +1,36 @@
+package crawler;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Receives the HAR files as soon as they are written by the crawler
+ * (e.g. to parse them while the next websites are visited), or the pages recorded by its proxy.
+ */
+public interface HarListener {
+
+	/**
+	 * Called after the visit of a website, when its HAR file has been found.
+	 *
+	 * @param harFile the HAR file
+	 * @param website the URL of the website
+	 */
+	void harWritten(File harFile, String website);
+
+	/**
+	 * Called after the visit of a website when the crawler records the pages itself (see RecordingProxy).
+	 *
+	 * @param crawlId the id of the crawl (a website visited by two crawls gives two different pages)
+	 * @param host the host of the page (name of the website for the parser)
+	 * @param entries the requests of the page
+	 */
+	void pageRecorded(String crawlId, String host, List<RecordedEntry> entries);
+
+	/**
+	 * Called when the crawler stops. Must wait for the HAR files received to be processed,
+	 * unless the crawler is interrupted.
+	 *
+	 * @param interrupted true if the crawler is interrupted (signal), false if all the websites have been visited
+	 */
+	void crawlFinished(boolean interrupted);
+}
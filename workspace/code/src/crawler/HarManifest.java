@@ -0,0 +1,240 @@
+package crawler;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Manifest of the HAR files written during a crawl.
+ *
+ * The crawler appends one line per visited website:
+ * website,rank,HAR file (relative to the directory),version,size,outcome.
+ * The fields with a comma, a quote or a line break (e.g. the URL of a website) are quoted as in RFC 4180.
+ * The parser reads this file instead of listing the whole directory (see Parser.loadFiles).
+ */
+public class HarManifest {
+	public static final String FILENAME = "logs/manifest_crawler.csv";
+
+	private BufferedWriter writer;
+
+	/**
+	 * Object containing a line of the manifest.
+	 */
+	public static class Visit {
+		private String website;
+		private int rank;
+		private String harFile;
+		private int version;
+		private long size;
+		private String outcome;
+
+		public Visit(String website, int rank, String harFile, int version, long size, String outcome) {
+			this.website = website;
+			this.rank = rank;
+			this.harFile = harFile;
+			this.version = version;
+			this.size = size;
+			this.outcome = outcome;
+		}
+
+		public String getWebsite() {
+			return website;
+		}
+
+		public int getRank() {
+			return rank;
+		}
+
+		/**
+		 * @return the path of the HAR file relative to the directory, or an empty String if no HAR file was found
+		 */
+		public String getHarFile() {
+			return harFile;
+		}
+
+		public int getVersion() {
+			return version;
+		}
+
+		public long getSize() {
+			return size;
+		}
+
+		/**
+		 * @return "success", "timeout" or "error"
+		 */
+		public String getOutcome() {
+			return outcome;
+		}
+	}
+
+	/**
+	 * Constructor.
+	 * Opens the manifest of a directory in append mode.
+	 *
+	 * @param directoryName the directory of the crawl
+	 * @throws IOException
+	 */
+	public HarManifest(String directoryName) throws IOException {
+		writer = new BufferedWriter(new FileWriter(new File(directoryName, FILENAME), true));
+	}
+
+	/**
+	 * Appends a visit to the manifest.
+	 * The line is flushed immediately so that it survives a crash of the crawler.
+	 *
+	 * @param visit the visit
+	 * @throws IOException
+	 */
+	public synchronized void append(Visit visit) throws IOException {
+		writer.write(quote(visit.getWebsite()) + "," + visit.getRank() + "," + quote(visit.getHarFile()) + ","
+				+ visit.getVersion() + "," + visit.getSize() + "," + quote(visit.getOutcome()));
+		writer.newLine();
+		writer.flush();
+	}
+
+	/**
+	 * Closes the manifest.
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void close() throws IOException {
+		writer.close();
+	}
+
+	/**
+	 * Checks if a directory contains a manifest.
+	 *
+	 * @param directoryName the directory of the crawl
+	 * @return true if the manifest exists, false otherwise
+	 */
+	public static boolean exists(String directoryName) {
+		return new File(directoryName, FILENAME).isFile();
+	}
+
+	/**
+	 * Reads the manifest of a directory.
+	 * The malformed lines (e.g. truncated by a crash) are skipped.
+	 *
+	 * @param directoryName the directory of the crawl
+	 * @return the list of visits, in the order of the crawl
+	 * @throws IOException
+	 */
+	public static ArrayList<Visit> read(String directoryName) throws IOException {
+		ArrayList<Visit> visits = new ArrayList<Visit>();
+		BufferedReader reader = new BufferedReader(new FileReader(new File(directoryName, FILENAME)));
+		try {
+			String line;
+			while((line = reader.readLine()) != null) {
+				String[] tokens = split(line);
+				// A quoted field with a line break continues on the next line
+				String next;
+				while(tokens == null && (next = reader.readLine()) != null) {
+					line += "\n" + next;
+					tokens = split(line);
+				}
+				if(tokens == null || tokens.length != 6) {
+					continue;
+				}
+				try {
+					visits.add(new Visit(tokens[0], Integer.parseInt(tokens[1]), tokens[2],
+							Integer.parseInt(tokens[3]), Long.parseLong(tokens[4]), tokens[5]));
+				} catch (NumberFormatException nfe) {
+					// Skip the malformed line
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return visits;
+	}
+
+	/**
+	 * Quotes a field if it contains a comma, a quote or a line break (the quotes are doubled).
+	 */
+	private static String quote(String field) {
+		if(field.indexOf(',') < 0 && field.indexOf('"') < 0 && field.indexOf('\n') < 0 && field.indexOf('\r') < 0) {
+			return field;
+		}
+		return "\"" + field.replace("\"", "\"\"") + "\"";
+	}
+
+	/**
+	 * Splits a line into its fields (see quote).
+	 *
+	 * @return the fields, or null if a quoted field is not terminated
+	 */
+	private static String[] split(String line) {
+		ArrayList<String> fields = new ArrayList<String>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		for(int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if(quoted) {
+				if(c != '"') {
+					field.append(c);
+				}
+				else if(i + 1 < line.length() && line.charAt(i + 1) == '"') {
+					field.append(c);
+					i++;
+				}
+				else {
+					quoted = false;
+				}
+			}
+			else if(c == '"') {
+				quoted = true;
+			}
+			else if(c == ',') {
+				fields.add(field.toString());
+				field.setLength(0);
+			}
+			else {
+				field.append(c);
+			}
+		}
+		if(quoted) {
+			return null;
+		}
+		fields.add(field.toString());
+		return fields.toArray(new String[fields.size()]);
+	}
+
+	/**
+	 * Finds the latest HAR file exported by NetExport for a host.
+	 * NetExport names the files "host.har", then "host-1.har", "host-2.har", etc.
+	 * Only the candidate names are checked: the directory is not listed.
+	 *
+	 * @param directory the directory of the crawl
+	 * @param host the host of the page
+	 * @return the version of the latest file (0 for "host.har"), or -1 if no file exists
+	 */
+	public static int findLatestVersion(File directory, String host) {
+		if(!new File(directory, host + ".har").isFile()) {
+			return -1;
+		}
+		int version = 0;
+		while(new File(directory, host + "-" + (version+1) + ".har").isFile()) {
+			version++;
+		}
+		return version;
+	}
+
+	/**
+	 * Gets the name of the HAR file of a given version.
+	 *
+	 * @param host the host of the page
+	 * @param version the version of the file
+	 * @return the name of the file
+	 */
+	public static String getHarFilename(String host, int version) {
+		if(version == 0) {
+			return host + ".har";
+		}
+		return host + "-" + version + ".har";
+	}
+}
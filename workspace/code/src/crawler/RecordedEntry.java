@@ -0,0 +1,139 @@
+package crawler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Request (and its response) recorded by the recording proxy during the visit of a page.
+ * Contains the fields of a HAR entry used by the parser.
+ */
+public class RecordedEntry {
+	// Comment of the HAR entries of the HTTPS tunnels (see isOpaque)
+	public static final String OPAQUE_COMMENT = "opaque";
+	private long startedDateTime;
+	private volatile long time;
+	private String method;
+	private String url;
+	private String httpVersion;
+	private volatile int status;
+	private volatile String statusText = "";
+	private volatile String mimeType = "";
+	private volatile long bodySize = -1;
+	private List<String[]> requestHeaders = new ArrayList<String[]>();
+	private List<String[]> responseHeaders = new ArrayList<String[]>();
+	private List<String[]> cookies = new ArrayList<String[]>();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param startedDateTime the time of the request (in milliseconds since the epoch)
+	 * @param method the method of the request (CONNECT for the HTTPS tunnels)
+	 * @param url the URL of the request
+	 * @param httpVersion the version of HTTP of the request
+	 */
+	public RecordedEntry(long startedDateTime, String method, String url, String httpVersion) {
+		this.startedDateTime = startedDateTime;
+		this.method = method;
+		this.url = url;
+		this.httpVersion = httpVersion;
+	}
+
+	public long getStartedDateTime() {
+		return startedDateTime;
+	}
+
+	/**
+	 * @return the duration of the request and of its response (in milliseconds)
+	 */
+	public long getTime() {
+		return time;
+	}
+
+	public void setTime(long time) {
+		this.time = time;
+	}
+
+	public String getMethod() {
+		return method;
+	}
+
+	/**
+	 * @return true for an HTTPS tunnel (CONNECT): only its host is known (no path, content type, size or cookies),
+	 * it is excluded from the statistics of the parser
+	 */
+	public boolean isOpaque() {
+		return isOpaque(method);
+	}
+
+	/**
+	 * @param method the method of a request
+	 * @return true if the request is an HTTPS tunnel (see isOpaque())
+	 */
+	public static boolean isOpaque(String method) {
+		return "CONNECT".equals(method);
+	}
+
+	public String getUrl() {
+		return url;
+	}
+
+	public String getHttpVersion() {
+		return httpVersion;
+	}
+
+	public int getStatus() {
+		return status;
+	}
+
+	public String getStatusText() {
+		return statusText;
+	}
+
+	public void setStatus(int status, String statusText) {
+		this.status = status;
+		this.statusText = statusText;
+	}
+
+	/**
+	 * @return the content type of the response (empty if unknown)
+	 */
+	public String getMimeType() {
+		return mimeType;
+	}
+
+	public void setMimeType(String mimeType) {
+		this.mimeType = mimeType;
+	}
+
+	/**
+	 * @return the size of the body of the response (in bytes), or -1 if unknown
+	 */
+	public long getBodySize() {
+		return bodySize;
+	}
+
+	public void setBodySize(long bodySize) {
+		this.bodySize = bodySize;
+	}
+
+	/**
+	 * @return the headers of the request: {name, value}
+	 */
+	public List<String[]> getRequestHeaders() {
+		return requestHeaders;
+	}
+
+	/**
+	 * @return the headers of the response: {name, value}
+	 */
+	public List<String[]> getResponseHeaders() {
+		return responseHeaders;
+	}
+
+	/**
+	 * @return the cookies set by the response: {domain, name, value, path} (domain and path may be null)
+	 */
+	public List<String[]> getCookies() {
+		return cookies;
+	}
+}
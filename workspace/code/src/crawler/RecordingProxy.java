@@ -0,0 +1,482 @@
+package crawler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * HTTP proxy recording the requests of the browser (replaces Firebug and NetExport).
+ *
+ * Firefox is configured to use the proxy (see Crawler.initializeDriver). The requests of the page
+ * being visited (between startPage and endPage) are recorded in memory: URL, status, content type,
+ * cookies set by the responses and size of the bodies.
+ *
+ * The plain HTTP requests are recorded entirely. The HTTPS requests are only seen as tunnels
+ * (CONNECT): the proxy does not decrypt them (no certificate generation), so only the host
+ * of an HTTPS request is recorded ("https://host/"), without its path, content type or cookies.
+ * These entries are opaque (see RecordedEntry.isOpaque): the parser excludes them from the statistics.
+ *
+ * Every connection of the browser is closed after one request (Connection: close). The end of a response
+ * is found from its framing (Content-Length or chunks), so a server keeping its connection open
+ * does not delay the response. The requests which fail are logged and not recorded.
+ */
+public class RecordingProxy {
+	private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+	private static final int MAX_HEAD_SIZE = 65536;
+	private static final int TIMEOUT = 30000; // in milliseconds
+	// Time (in milliseconds) without request after which a page is considered loaded
+	private static final long QUIET_DELAY = 500;
+	// Maximum time (in milliseconds) to wait for the requests of a page after its loading
+	private static final long MAX_WAIT = 5000;
+
+	private ServerSocket serverSocket;
+	private ExecutorService executor;
+	private volatile List<RecordedEntry> entries;
+	private AtomicInteger requestsInProgress = new AtomicInteger();
+	private volatile long lastActivity;
+
+	/**
+	 * Constructor: listens on localhost.
+	 *
+	 * @param port the port of the proxy (0 for any free port)
+	 * @throws IOException if the port is not available
+	 */
+	public RecordingProxy(int port) throws IOException {
+		serverSocket = new ServerSocket();
+		serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+		executor = Executors.newCachedThreadPool(new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "recording-proxy");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		executor.submit(new Runnable() {
+			public void run() {
+				accept();
+			}
+		});
+	}
+
+	/**
+	 * @return the port of the proxy
+	 */
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * Starts recording the requests of a page (the previous requests are discarded).
+	 */
+	public void startPage() {
+		entries = new ArrayList<RecordedEntry>();
+		lastActivity = System.currentTimeMillis();
+	}
+
+	/**
+	 * Stops recording the requests of the page. Waits for the requests in progress
+	 * (at most 5 seconds) and until no request has been made for a short time.
+	 *
+	 * @return the requests recorded since startPage
+	 */
+	public List<RecordedEntry> endPage() {
+		long start = System.currentTimeMillis();
+		try {
+			while(System.currentTimeMillis() - start < MAX_WAIT
+					&& (requestsInProgress.get() > 0 || System.currentTimeMillis() - lastActivity < QUIET_DELAY)) {
+				Thread.sleep(50);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		List<RecordedEntry> page = entries;
+		entries = null;
+		if(page == null) {
+			return new ArrayList<RecordedEntry>();
+		}
+		synchronized(page) {
+			return new ArrayList<RecordedEntry>(page);
+		}
+	}
+
+	/**
+	 * Stops the proxy.
+	 */
+	public void close() {
+		try {
+			serverSocket.close();
+		} catch (IOException ioe) {
+			// Nothing to do
+		}
+		executor.shutdownNow();
+	}
+
+	private void accept() {
+		while(!serverSocket.isClosed()) {
+			try {
+				final Socket client = serverSocket.accept();
+				executor.submit(new Runnable() {
+					public void run() {
+						handle(client);
+					}
+				});
+			} catch (IOException ioe) {
+				// The proxy is closed
+			}
+		}
+	}
+
+	/**
+	 * Adds an entry to the page being recorded (if any).
+	 */
+	private void record(RecordedEntry entry) {
+		List<RecordedEntry> page = entries;
+		if(page != null) {
+			synchronized(page) {
+				page.add(entry);
+			}
+		}
+	}
+
+	/**
+	 * Handles a connection of the browser: one request.
+	 */
+	private void handle(Socket client) {
+		requestsInProgress.incrementAndGet();
+		boolean inProgress = true;
+		lastActivity = System.currentTimeMillis();
+		Socket server = null;
+		String url = null;
+		try {
+			client.setSoTimeout(TIMEOUT);
+			InputStream clientInput = client.getInputStream();
+			OutputStream clientOutput = client.getOutputStream();
+			List<String> head = readHead(clientInput);
+			if(head == null || head.isEmpty()) {
+				return;
+			}
+			String[] requestLine = head.get(0).split(" ");
+			if(requestLine.length < 3) {
+				return;
+			}
+			String method = requestLine[0];
+			String target = requestLine[1];
+			String httpVersion = requestLine[2];
+			long start = System.currentTimeMillis();
+
+			// HTTPS: tunnel
+			if(RecordedEntry.isOpaque(method)) {
+				url = target;
+				int colon = target.lastIndexOf(':');
+				String host = (colon > 0) ? target.substring(0, colon) : target;
+				int port = (colon > 0) ? Integer.parseInt(target.substring(colon+1)) : 443;
+				RecordedEntry entry = new RecordedEntry(start, method, "https://" + host + ((port != 443) ? ":" + port : "") + "/", httpVersion);
+				record(entry);
+				server = new Socket();
+				server.connect(new InetSocketAddress(host, port), TIMEOUT);
+				clientOutput.write("HTTP/1.1 200 Connection established\r\n\r\n".getBytes(ISO_8859_1));
+				clientOutput.flush();
+				entry.setStatus(200, "Connection established");
+				// Note: the tunnel is not counted as a request in progress (it may stay open)
+				requestsInProgress.decrementAndGet();
+				inProgress = false;
+				try {
+					final Socket tunnelServer = server;
+					final Socket tunnelClient = client;
+					executor.submit(new Runnable() {
+						public void run() {
+							try {
+								pipe(tunnelClient.getInputStream(), tunnelServer.getOutputStream());
+							} catch (IOException ioe) {
+								// The tunnel is closed
+							}
+							closeQuietly(tunnelServer);
+						}
+					});
+					client.setSoTimeout(0);
+					entry.setBodySize(pipe(server.getInputStream(), clientOutput));
+				} finally {
+					entry.setTime(System.currentTimeMillis() - start);
+				}
+				return;
+			}
+
+			// HTTP: forward the request
+			url = target;
+			URL parsedUrl = new URL(target);
+			RecordedEntry entry = new RecordedEntry(start, method, target, httpVersion);
+			int port = (parsedUrl.getPort() != -1) ? parsedUrl.getPort() : 80;
+			server = new Socket();
+			server.connect(new InetSocketAddress(parsedUrl.getHost(), port), TIMEOUT);
+			server.setSoTimeout(TIMEOUT);
+			OutputStream serverOutput = server.getOutputStream();
+			StringBuilder request = new StringBuilder();
+			String path = parsedUrl.getFile().isEmpty() ? "/" : parsedUrl.getFile();
+			request.append(method).append(" ").append(path).append(" ").append(httpVersion).append("\r\n");
+			long contentLength = 0;
+			for(int i = 1; i < head.size(); i++) {
+				String[] header = splitHeader(head.get(i));
+				if(header == null) continue;
+				entry.getRequestHeaders().add(header);
+				String name = header[0].toLowerCase();
+				if(name.equals("proxy-connection") || name.equals("connection") || name.equals("keep-alive")) {
+					continue;
+				}
+				if(name.equals("content-length")) {
+					contentLength = Long.parseLong(header[1].trim());
+				}
+				request.append(header[0]).append(": ").append(header[1]).append("\r\n");
+			}
+			request.append("Connection: close\r\n\r\n");
+			serverOutput.write(request.toString().getBytes(ISO_8859_1));
+			copy(clientInput, serverOutput, contentLength);
+			serverOutput.flush();
+
+			// Response
+			InputStream serverInput = server.getInputStream();
+			List<String> responseHead = readHead(serverInput);
+			if(responseHead == null || responseHead.isEmpty()) {
+				return;
+			}
+			String[] statusLine = responseHead.get(0).split(" ", 3);
+			int status = Integer.parseInt(statusLine[1]);
+			entry.setStatus(status, (statusLine.length > 2) ? statusLine[2] : "");
+			StringBuilder response = new StringBuilder(responseHead.get(0)).append("\r\n");
+			boolean chunked = false;
+			long responseLength = -1;
+			for(int i = 1; i < responseHead.size(); i++) {
+				String[] header = splitHeader(responseHead.get(i));
+				if(header == null) continue;
+				entry.getResponseHeaders().add(header);
+				String name = header[0].toLowerCase();
+				if(name.equals("connection") || name.equals("keep-alive") || name.equals("proxy-connection")) {
+					continue;
+				}
+				if(name.equals("content-type")) {
+					// As NetExport: without the parameters (e.g. "; charset=UTF-8")
+					int semicolon = header[1].indexOf(';');
+					entry.setMimeType(((semicolon >= 0) ? header[1].substring(0, semicolon) : header[1]).trim().toLowerCase());
+				}
+				else if(name.equals("set-cookie")) {
+					entry.getCookies().add(parseCookie(header[1]));
+				}
+				else if(name.equals("transfer-encoding")) {
+					chunked = header[1].toLowerCase().contains("chunked");
+				}
+				else if(name.equals("content-length")) {
+					responseLength = Long.parseLong(header[1].trim());
+				}
+				response.append(header[0]).append(": ").append(header[1]).append("\r\n");
+			}
+			response.append("Connection: close\r\n\r\n");
+			clientOutput.write(response.toString().getBytes(ISO_8859_1));
+			if(method.equals("HEAD") || status / 100 == 1 || status == 204 || status == 304) {
+				entry.setBodySize(0);
+			}
+			else if(chunked) {
+				entry.setBodySize(copyChunks(serverInput, clientOutput));
+			}
+			else if(responseLength >= 0) {
+				entry.setBodySize(copy(serverInput, clientOutput, responseLength));
+			}
+			else {
+				// No framing: the body ends when the server closes the connection
+				entry.setBodySize(pipe(serverInput, clientOutput));
+			}
+			clientOutput.flush();
+			entry.setTime(System.currentTimeMillis() - start);
+			record(entry);
+		} catch (Exception e) {
+			// The request failed: nothing is recorded (as NetExport for the aborted requests)
+			if(url != null) {
+				Crawler.logMessage("Warning: request not recorded: " + url + " (" + e + ").", 2);
+			}
+		} finally {
+			closeQuietly(server);
+			closeQuietly(client);
+			lastActivity = System.currentTimeMillis();
+			if(inProgress) {
+				requestsInProgress.decrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Reads the head of a request or of a response (until the empty line).
+	 *
+	 * @return the lines of the head, or null if the connection is closed before the end of the head
+	 */
+	private static List<String> readHead(InputStream input) throws IOException {
+		List<String> lines = new ArrayList<String>();
+		ByteArrayOutputStream line = new ByteArrayOutputStream();
+		int total = 0;
+		int b;
+		while((b = input.read()) != -1) {
+			if(++total > MAX_HEAD_SIZE) {
+				throw new IOException("Head too large");
+			}
+			if(b == '\n') {
+				String text = new String(line.toByteArray(), ISO_8859_1);
+				if(text.endsWith("\r")) {
+					text = text.substring(0, text.length()-1);
+				}
+				if(text.isEmpty()) {
+					return lines;
+				}
+				lines.add(text);
+				line.reset();
+			}
+			else {
+				line.write(b);
+			}
+		}
+		return null;
+	}
+
+	private static String[] splitHeader(String line) {
+		int colon = line.indexOf(':');
+		if(colon <= 0) {
+			return null;
+		}
+		return new String[] {line.substring(0, colon), line.substring(colon+1).trim()};
+	}
+
+	/**
+	 * Parses the value of a Set-Cookie header.
+	 *
+	 * @return {domain, name, value, path} (domain and path are null if not given)
+	 */
+	private static String[] parseCookie(String header) {
+		String[] attributes = header.split(";");
+		String[] cookie = new String[4];
+		int equals = attributes[0].indexOf('=');
+		cookie[1] = (equals >= 0) ? attributes[0].substring(0, equals).trim() : attributes[0].trim();
+		cookie[2] = (equals >= 0) ? attributes[0].substring(equals+1).trim() : "";
+		for(int i = 1; i < attributes.length; i++) {
+			String attribute = attributes[i].trim();
+			int separator = attribute.indexOf('=');
+			if(separator < 0) continue;
+			String name = attribute.substring(0, separator).trim().toLowerCase();
+			if(name.equals("domain")) {
+				cookie[0] = attribute.substring(separator+1).trim();
+			}
+			else if(name.equals("path")) {
+				cookie[3] = attribute.substring(separator+1).trim();
+			}
+		}
+		return cookie;
+	}
+
+	/**
+	 * Copies a stream until its end.
+	 *
+	 * @return the number of bytes copied
+	 */
+	private static long pipe(InputStream input, OutputStream output) throws IOException {
+		byte[] buffer = new byte[16384];
+		long total = 0;
+		int read;
+		try {
+			while((read = input.read(buffer)) != -1) {
+				output.write(buffer, 0, read);
+				output.flush();
+				total += read;
+			}
+		} catch (SocketException se) {
+			// Connection closed by the other side
+		}
+		return total;
+	}
+
+	/**
+	 * Copies a given number of bytes.
+	 *
+	 * @return the number of bytes copied (less than the length if the stream ends before)
+	 */
+	private static long copy(InputStream input, OutputStream output, long length) throws IOException {
+		byte[] buffer = new byte[16384];
+		long remaining = length;
+		while(remaining > 0) {
+			int read = input.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+			if(read == -1) {
+				break;
+			}
+			output.write(buffer, 0, read);
+			remaining -= read;
+		}
+		return length - remaining;
+	}
+
+	/**
+	 * Copies a body in chunks (Transfer-Encoding: chunked) until its last chunk and its trailer.
+	 *
+	 * @return the size of the body (without the sizes of the chunks)
+	 */
+	private static long copyChunks(InputStream input, OutputStream output) throws IOException {
+		long total = 0;
+		while(true) {
+			String line = readLine(input);
+			output.write((line + "\r\n").getBytes(ISO_8859_1));
+			int semicolon = line.indexOf(';');
+			long size = Long.parseLong(((semicolon >= 0) ? line.substring(0, semicolon) : line).trim(), 16);
+			if(size == 0) {
+				// Trailer, until the empty line
+				do {
+					line = readLine(input);
+					output.write((line + "\r\n").getBytes(ISO_8859_1));
+				}
+				while(!line.isEmpty());
+				return total;
+			}
+			if(copy(input, output, size) < size) {
+				throw new IOException("Truncated chunk");
+			}
+			total += size;
+			readLine(input);
+			output.write("\r\n".getBytes(ISO_8859_1));
+		}
+	}
+
+	/**
+	 * Reads a line (without its end, "\r\n" or "\n").
+	 */
+	private static String readLine(InputStream input) throws IOException {
+		ByteArrayOutputStream line = new ByteArrayOutputStream();
+		int b;
+		while((b = input.read()) != '\n') {
+			if(b == -1) {
+				throw new IOException("Connection closed");
+			}
+			if(line.size() >= MAX_HEAD_SIZE) {
+				throw new IOException("Line too large");
+			}
+			line.write(b);
+		}
+		String text = new String(line.toByteArray(), ISO_8859_1);
+		return text.endsWith("\r") ? text.substring(0, text.length()-1) : text;
+	}
+
+	private static void closeQuietly(Socket socket) {
+		if(socket != null) {
+			try {
+				socket.close();
+			} catch (IOException ioe) {
+				// Nothing to do
+			}
+		}
+	}
+}
@@ -0,0 +1,256 @@
+package parser;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.zip.CRC32;
+
+import utils.HyperLogLog;
+import utils.Interner;
+import utils.MappedHashTable;
+
+/**
+ * Cache of the facts resolved by the parser for the URLs of all the websites, outside of the heap
+ * (see utils.MappedHashTable): the SOA of the hosts and the dimensions of the images.
+ * The keys are the 64-bit fingerprints of the hosts and of the URLs, the values are compact:
+ * - SOA of a host: id of the SOA in a dictionary of the SOAs (few distinct SOAs, kept on the heap)
+ *   and a check of the SOA (an id which is not in the dictionary anymore is a miss);
+ * - dimensions of an image (the failures of the downloads are not cached).
+ *
+ * The cache is bounded (old entries are evicted) and may be persistent: the table is mapped from
+ * a file (locked: one process at a time), the dictionary of the SOAs is written next to it
+ * (file + ".soa", one SOA per line with its CRC32). A torn last line (crash) is truncated at the loading.
+ * Thread-safe.
+ */
+public class ClassificationCache {
+	// Format of the values (kind in the 8 high bits)
+	private static final long KIND_SOA = 1L << 56;
+	private static final long KIND_IMAGE = 2L << 56;
+	private static final long KIND_MASK = 0xffL << 56;
+	// Check of the SOA of an id (24 bits, above the id)
+	private static final long SOA_CHECK_MASK = 0xffffffL;
+	private static final long TAG = 2;
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final MappedHashTable table;
+	private final Interner soas = new Interner();
+	private final FileOutputStream soasOutput;
+	private final Writer soasWriter;
+	// Number of SOAs written in the dictionary
+	private int soasWritten = 0;
+
+	/**
+	 * Constructor: opens (or creates) the cache.
+	 *
+	 * @param file the file of the cache, or null to keep the cache in memory (not persistent)
+	 * @param capacityBytes the maximum size of the cache (outside of the heap)
+	 * @throws IOException if the file of the cache or its dictionary cannot be opened
+	 */
+	public ClassificationCache(File file, long capacityBytes) throws IOException {
+		table = new MappedHashTable(file, capacityBytes, TAG);
+		if(file == null) {
+			soasOutput = null;
+			soasWriter = null;
+			return;
+		}
+		File soasFile = new File(file.getPath() + ".soa");
+		try {
+			if(table.isLoaded() && soasFile.isFile()) {
+				loadSOAs(soasFile);
+			}
+			// Note: the dictionary of a table reset is reset too (its ids are not used anymore)
+			soasOutput = new FileOutputStream(soasFile, table.isLoaded());
+		} catch (IOException ioe) {
+			table.close();
+			throw ioe;
+		}
+		soasWriter = new OutputStreamWriter(soasOutput, UTF_8);
+	}
+
+	/**
+	 * @return true if the entries of a previous run have been loaded
+	 */
+	public boolean isLoaded() {
+		return table.isLoaded();
+	}
+
+	/**
+	 * Gets the SOA of a host.
+	 *
+	 * @param host the host (or a parent domain)
+	 * @return the SOA, or null if the host is not in the cache
+	 */
+	public String getSOA(String host) {
+		long value = table.get(HyperLogLog.hash(host, 0, host.length()));
+		if((value & KIND_MASK) != KIND_SOA) {
+			return null;
+		}
+		int id = (int) value;
+		if(id < 0 || id >= soas.size()) {
+			return null;
+		}
+		String soa = soas.getName(id);
+		return (((value >>> 32) & SOA_CHECK_MASK) == checkOf(soa)) ? soa : null;
+	}
+
+	/**
+	 * Puts the SOA of a host.
+	 *
+	 * @param host the host (or a parent domain)
+	 * @param soa the SOA
+	 */
+	public void putSOA(String host, String soa) {
+		int id = soas.getId(soa);
+		if(soasWriter != null && id >= soasWritten) {
+			writeSOAs();
+		}
+		table.put(HyperLogLog.hash(host, 0, host.length()), KIND_SOA | (checkOf(soa) << 32) | id);
+	}
+
+	/**
+	 * Gets the dimensions of an image.
+	 *
+	 * @param url the URL of the image
+	 * @return {width, height}, or null if the URL is not in the cache
+	 */
+	public int[] getImageDimensions(String url) {
+		long value = table.get(HyperLogLog.hash(url, 0, url.length()));
+		if((value & KIND_MASK) != KIND_IMAGE) {
+			return null;
+		}
+		return new int[] {(int) (value >>> 24) & 0xffffff, (int) value & 0xffffff};
+	}
+
+	/**
+	 * Puts the dimensions of an image (the dimensions beyond 2^24 are not cached).
+	 *
+	 * @param url the URL of the image
+	 * @param dimensions {width, height}
+	 */
+	public void putImageDimensions(String url, int[] dimensions) {
+		if(dimensions[0] < 0 || dimensions[1] < 0 || dimensions[0] > 0xffffff || dimensions[1] > 0xffffff) {
+			return;
+		}
+		table.put(HyperLogLog.hash(url, 0, url.length()), KIND_IMAGE | ((long) dimensions[0] << 24) | dimensions[1]);
+	}
+
+	/**
+	 * @return the number of entries (hosts and images)
+	 */
+	public long size() {
+		return table.size();
+	}
+
+	/**
+	 * @return the number of entries evicted in this run
+	 */
+	public long getEvictions() {
+		return table.getEvictions();
+	}
+
+	/**
+	 * Writes the cache in its file (e.g. before a snapshot of the statistics): the dictionary of the SOAs
+	 * is synchronized on the disk first.
+	 */
+	public void flush() {
+		syncSOAs();
+		table.flush();
+	}
+
+	/**
+	 * Writes the cache in its file and closes it.
+	 *
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		syncSOAs();
+		table.close();
+		if(soasWriter != null) {
+			soasWriter.close();
+		}
+	}
+
+	/**
+	 * Loads the dictionary of the SOAs: one SOA per line, after the CRC32 of the SOA ("crc\tSOA").
+	 * The dictionary is truncated at the first line which is not complete or not valid (crash while writing):
+	 * the SOAs of the next lines would not get their ids.
+	 */
+	private void loadSOAs(File soasFile) throws IOException {
+		byte[] bytes = Files.readAllBytes(soasFile.toPath());
+		int start = 0;
+		while(start < bytes.length) {
+			int end = start;
+			while(end < bytes.length && bytes[end] != '\n') {
+				end++;
+			}
+			if(end == bytes.length) {
+				break;
+			}
+			String line = new String(bytes, start, end - start, UTF_8);
+			int tab = line.indexOf('\t');
+			if(tab < 0 || !line.substring(0, tab).equals(Long.toHexString(crcOf(line.substring(tab + 1))))) {
+				break;
+			}
+			soas.getId(line.substring(tab + 1));
+			start = end + 1;
+		}
+		soasWritten = soas.size();
+		if(start < bytes.length) {
+			Parser.logMessage("Warning: the dictionary of the SOAs of the cache is truncated after " + soasWritten + " SOAs (torn line).", 3);
+			RandomAccessFile truncated = new RandomAccessFile(soasFile, "rw");
+			try {
+				truncated.setLength(start);
+			} finally {
+				truncated.close();
+			}
+		}
+	}
+
+	/**
+	 * Appends the new SOAs to the dictionary, before their ids are written in the table.
+	 * Note: the dictionary is only synchronized on the disk by flush: after a crash of the system, an id of the table
+	 * may not be in the dictionary or be the id of another SOA (the check of the SOA makes it a miss).
+	 */
+	private synchronized void writeSOAs() {
+		try {
+			while(soasWritten < soas.size()) {
+				String soa = soas.getName(soasWritten);
+				soasWriter.write(Long.toHexString(crcOf(soa)) + "\t" + soa + "\n");
+				soasWritten++;
+			}
+			soasWriter.flush();
+		} catch (IOException ioe) {
+			Parser.logMessage("Error: cannot write the dictionary of the SOAs of the cache.", 3);
+		}
+	}
+
+	private synchronized void syncSOAs() {
+		if(soasOutput == null) {
+			return;
+		}
+		try {
+			soasWriter.flush();
+			soasOutput.getFD().sync();
+		} catch (IOException ioe) {
+			Parser.logMessage("Error: cannot write the dictionary of the SOAs of the cache.", 3);
+		}
+	}
+
+	private static long crcOf(String soa) {
+		CRC32 crc = new CRC32();
+		crc.update(soa.getBytes(UTF_8));
+		return crc.getValue();
+	}
+
+	/**
+	 * @return the check of a SOA stored with its id in the table
+	 */
+	private static long checkOf(String soa) {
+		return crcOf(soa) & SOA_CHECK_MASK;
+	}
+}
@@ -0,0 +1,910 @@
+package parser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import utils.HyperLogLog;
+import utils.Interner;
+import utils.LongIntMap;
+
+/**
+ * Inverted index of the values of the third-party cookies (see WebsiteResults.getCookies): from the
+ * fingerprint of a value (64-bit hash) to the websites, the domains and the names of the cookies with this value.
+ * A value set on several websites, or by several domains, is a candidate of cookie syncing
+ * (an identifier shared by the trackers).
+ *
+ * Built during the parsing in a bounded memory: the postings (fingerprint, website, domain, name) are buffered,
+ * sorted and written in runs of RUN_SIZE postings, and the runs are merged by close. The names of the websites
+ * are written as they come; the domains and the names of the cookies are interned (few distinct values).
+ * The values shorter than MIN_VALUE_LENGTH (e.g. "1", "true") are not indexed.
+ * A website indexed again (e.g. a file which changed, or parsed again after a resumption) replaces its previous postings.
+ * The websites stay in memory: 24 to 48 bytes per website (fingerprint of its name and latest id, see LongIntMap)
+ * and 1 bit per id given (the ids replaced), e.g. 25 MB for 1M websites.
+ *
+ * The index can be kept across the runs (resumption, incremental run, worker run again): commit makes the runs
+ * durable (e.g. with the snapshot of the statistics), and the next run starts from the committed state
+ * (the previous index and the committed runs). The indexes of the workers are combined by addIndex.
+ *
+ * Files (in the directory of the index, e.g. results/cookie_index):
+ * - sites.txt, domains.txt, names.txt: the dictionaries (the id is the line number, from 0);
+ * - postings.bin: the postings sorted by fingerprint (without duplicates), POSTING_SIZE bytes each:
+ *   fingerprint (long), ids of the website, of the domain and of the name (int);
+ * - values.bin: the indexed values sorted by fingerprint: fingerprint (long) and value (UTF);
+ * - shared.bin: the values of several postings, sorted by fingerprint: fingerprint, number of websites,
+ *   number of domains (int), index of the first posting (long), number of postings (int) and the value (UTF);
+ * - index.txt: the committed state: number of websites and number of runs (run-N.tmp, not merged yet).
+ *
+ * Usage: java parser.CookieIndex <directory of the index> [-minsites K] [-limit N] [-value <value>]
+ * Prints the values seen on more than K websites (1 by default) and their domains and names,
+ * or the postings of a value.
+ */
+public class CookieIndex {
+	public static final String DIRECTORY = "results/cookie_index";
+	public static final int MIN_VALUE_LENGTH = 8;
+	private static final int RUN_SIZE = 1 << 18;
+	private static final int POSTING_SIZE = 20;
+	// Websites printed per value by main
+	private static final int SITES_PRINTED = 5;
+	private static final String STATE_FILE = "index.txt";
+
+	private final File directory;
+	private final int runSize;
+	private final Interner domains = new Interner();
+	private final Interner names = new Interner();
+	// Latest id of each website (by fingerprint of its name), and the ids replaced by a later analysis of their website
+	private final LongIntMap siteIds = new LongIntMap();
+	private final BitSet replaced = new BitSet();
+	private final BufferedWriter sitesWriter;
+	private int nextSite = 0;
+	private int runs = 0;
+	// Indexes merged with the runs by close: the previous index of the directory and the indexes added
+	private final List<IndexSource> sources = new ArrayList<IndexSource>();
+	// Buffer of the postings (the next run)
+	private final long[] fingerprints;
+	private final int[] sites;
+	private final int[] domainIds;
+	private final int[] nameIds;
+	private final String[] values;
+	private int size = 0;
+	private long postings = 0;
+	private long sharedValues = 0;
+
+	/**
+	 * A value of several postings, with its postings.
+	 */
+	public static class SharedValue {
+		private long fingerprint;
+		private String value;
+		private int sites;
+		private int domains;
+		// Location in the postings
+		private long firstPosting;
+		private int postingsCount;
+		// Ids of the website, the domain and the name of each posting
+		private int[][] postings;
+
+		public long getFingerprint() {
+			return fingerprint;
+		}
+
+		public String getValue() {
+			return value;
+		}
+
+		/**
+		 * @return the number of distinct websites
+		 */
+		public int getSites() {
+			return sites;
+		}
+
+		/**
+		 * @return the number of distinct domains of the cookies
+		 */
+		public int getDomains() {
+			return domains;
+		}
+
+		/**
+		 * @return the ids (see the dictionaries) of the website, the domain and the name of each posting
+		 */
+		public int[][] getPostings() {
+			return postings;
+		}
+	}
+
+	/**
+	 * An index merged by close, with the ids of its websites, domains and names in this index.
+	 */
+	private static class IndexSource {
+		private final File directory;
+		private final int[] siteMap;
+		private final int[] domainMap;
+		private final int[] nameMap;
+
+		IndexSource(File directory, int[] siteMap, int[] domainMap, int[] nameMap) {
+			this.directory = directory;
+			this.siteMap = siteMap;
+			this.domainMap = domainMap;
+			this.nameMap = nameMap;
+		}
+	}
+
+	/**
+	 * Constructor: opens the index of a directory.
+	 *
+	 * @param directory the directory of the index
+	 * @param keep true to continue the committed index of the directory (if any), false to start a new index
+	 *        (the files of a previous index in the directory are deleted)
+	 * @throws IOException if the directory cannot be created, or if the committed index cannot be read
+	 */
+	public CookieIndex(File directory, boolean keep) throws IOException {
+		this(directory, keep, RUN_SIZE);
+	}
+
+	/**
+	 * Constructor with the number of postings of a run (e.g. small runs for the tests).
+	 */
+	CookieIndex(File directory, boolean keep, int runSize) throws IOException {
+		this.directory = directory;
+		this.runSize = runSize;
+		fingerprints = new long[runSize];
+		sites = new int[runSize];
+		domainIds = new int[runSize];
+		nameIds = new int[runSize];
+		values = new String[runSize];
+		if(!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Cannot create the directory " + directory.getPath());
+		}
+		if(keep && new File(directory, STATE_FILE).isFile()) {
+			loadState();
+		}
+		else {
+			File[] files = directory.listFiles();
+			if(files != null) {
+				for(File file : files) {
+					file.delete();
+				}
+			}
+		}
+		sitesWriter = new BufferedWriter(new FileWriter(new File(directory, "sites.txt"), true));
+	}
+
+	/**
+	 * Loads the committed state of the index: the dictionaries, the runs and the previous index
+	 * (the websites and the runs written after the last commit are discarded).
+	 */
+	private void loadState() throws IOException {
+		List<String> state = readLines(new File(directory, STATE_FILE));
+		int committedSites;
+		try {
+			String[] counts = state.get(0).split(",");
+			committedSites = Integer.parseInt(counts[0]);
+			runs = Integer.parseInt(counts[1]);
+		} catch (RuntimeException re) {
+			throw new IOException("Invalid state of the index " + directory.getPath());
+		}
+		File sitesFile = new File(directory, "sites.txt");
+		List<String> siteNames = sitesFile.isFile() ? readLines(sitesFile) : new ArrayList<String>();
+		if(siteNames.size() < committedSites) {
+			throw new IOException("The websites of the index " + directory.getPath() + " are truncated");
+		}
+		if(siteNames.size() > committedSites) {
+			siteNames = siteNames.subList(0, committedSites);
+			writeLines(siteNames, sitesFile);
+		}
+		for(String siteName : siteNames) {
+			addSite(siteName);
+		}
+		for(String domain : readLines(new File(directory, "domains.txt"))) {
+			domains.getId(domain);
+		}
+		for(String name : readLines(new File(directory, "names.txt"))) {
+			names.getId(name);
+		}
+		// Runs not committed
+		for(int run = runs; getRunFile(run).exists(); run++) {
+			getRunFile(run).delete();
+		}
+		if(new File(directory, "postings.bin").isFile()) {
+			sources.add(new IndexSource(directory, null, null, null));
+		}
+	}
+
+	/**
+	 * Adds the cookies of a website.
+	 *
+	 * @param website the name of the website
+	 * @param cookies the cookies: domain, name, value (and path)
+	 * @throws IOException if a run cannot be written
+	 */
+	public synchronized void addWebsite(String website, List<String[]> cookies) throws IOException {
+		int site = addSite(website);
+		sitesWriter.write(website);
+		sitesWriter.newLine();
+		for(String[] cookie : cookies) {
+			String value = cookie[2];
+			if(value == null || value.length() < MIN_VALUE_LENGTH) {
+				continue;
+			}
+			if(size == runSize) {
+				writeRun();
+			}
+			fingerprints[size] = HyperLogLog.hash(value, 0, value.length());
+			sites[size] = site;
+			domainIds[size] = domains.getId((cookie[0] != null) ? cookie[0] : "");
+			nameIds[size] = names.getId((cookie[1] != null) ? cookie[1] : "");
+			values[size] = value;
+			size++;
+		}
+	}
+
+	/**
+	 * Adds a closed index (e.g. the index of a worker): its postings are merged by close.
+	 * Its websites replace the websites of the same name already in this index.
+	 *
+	 * @param other the directory of the index
+	 * @throws IOException if the index cannot be read or is not closed
+	 */
+	public synchronized void addIndex(File other) throws IOException {
+		List<String> state = readLines(new File(other, STATE_FILE));
+		if(state.isEmpty() || !state.get(0).endsWith(",0")) {
+			throw new IOException("The index " + other.getPath() + " is not closed");
+		}
+		List<String> otherSites = readLines(new File(other, "sites.txt"));
+		List<String> otherDomains = readLines(new File(other, "domains.txt"));
+		List<String> otherNames = readLines(new File(other, "names.txt"));
+		int[] siteMap = new int[otherSites.size()];
+		for(int i = 0; i < siteMap.length; i++) {
+			siteMap[i] = addSite(otherSites.get(i));
+			sitesWriter.write(otherSites.get(i));
+			sitesWriter.newLine();
+		}
+		int[] domainMap = new int[otherDomains.size()];
+		for(int i = 0; i < domainMap.length; i++) {
+			domainMap[i] = domains.getId(otherDomains.get(i));
+		}
+		int[] nameMap = new int[otherNames.size()];
+		for(int i = 0; i < nameMap.length; i++) {
+			nameMap[i] = names.getId(otherNames.get(i));
+		}
+		sources.add(new IndexSource(other, siteMap, domainMap, nameMap));
+	}
+
+	/**
+	 * @param website the name of a website
+	 * @return true if the website is in the index
+	 */
+	public synchronized boolean contains(String website) {
+		return siteIds.containsKey(HyperLogLog.hash(website, 0, website.length()));
+	}
+
+	/**
+	 * @return the number of websites of the index (a website indexed several times is counted once)
+	 */
+	public synchronized int getSites() {
+		return siteIds.size();
+	}
+
+	/**
+	 * @return the number of postings of the index (after close)
+	 */
+	public long getPostings() {
+		return postings;
+	}
+
+	/**
+	 * @return the number of values of several postings (after close)
+	 */
+	public long getSharedValues() {
+		return sharedValues;
+	}
+
+	/**
+	 * Makes the websites added durable: writes the buffer in a run, the dictionaries and the state of the index.
+	 * A run resumed later starts from this state.
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void commit() throws IOException {
+		if(size > 0) {
+			writeRun();
+		}
+		sitesWriter.flush();
+		writeDictionary(domains, new File(directory, "domains.txt"));
+		writeDictionary(names, new File(directory, "names.txt"));
+		writeState(runs);
+	}
+
+	/**
+	 * Commits the index and merges the previous index, the indexes added and the runs in the files of the index.
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void close() throws IOException {
+		commit();
+		sitesWriter.close();
+		mergeRuns();
+		writeState(0);
+		for(int run = 0; run < runs; run++) {
+			getRunFile(run).delete();
+		}
+		runs = 0;
+	}
+
+	/**
+	 * Gives an id to a website, the previous id of the website is replaced.
+	 */
+	private int addSite(String website) {
+		int site = nextSite++;
+		int previous = siteIds.put(HyperLogLog.hash(website, 0, website.length()), site);
+		if(previous != -1) {
+			replaced.set(previous);
+		}
+		return site;
+	}
+
+	/**
+	 * Sorts the buffer by fingerprint and writes it in a run.
+	 */
+	private void writeRun() throws IOException {
+		// Sort a primitive array: the high bits of the fingerprint and the index of the posting are packed in a long
+		long indexMask = (1L << (32 - Integer.numberOfLeadingZeros(runSize - 1))) - 1;
+		long[] keys = new long[size];
+		for(int i = 0; i < size; i++) {
+			keys[i] = (fingerprints[i] & ~indexMask) | i;
+		}
+		Arrays.sort(keys);
+		int[] order = new int[size];
+		for(int i = 0; i < size; i++) {
+			order[i] = (int) (keys[i] & indexMask);
+		}
+		// Postings of the same high bits: insertion sort on the whole fingerprint (stable, few postings)
+		for(int i = 1; i < size; i++) {
+			int current = order[i];
+			int j = i;
+			while(j > 0 && fingerprints[order[j - 1]] > fingerprints[current]) {
+				order[j] = order[j - 1];
+				j--;
+			}
+			order[j] = current;
+		}
+
+		DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(getRunFile(runs))));
+		try {
+			for(int index : order) {
+				output.writeLong(fingerprints[index]);
+				output.writeInt(sites[index]);
+				output.writeInt(domainIds[index]);
+				output.writeInt(nameIds[index]);
+				output.writeUTF(truncate(values[index]));
+			}
+		} finally {
+			output.close();
+		}
+		Arrays.fill(values, 0, size, null);
+		size = 0;
+		runs++;
+	}
+
+	/**
+	 * Merges the indexes and the runs: writes the postings (without duplicates and without the websites replaced),
+	 * the values and the values of several postings.
+	 * The files are written next to the files of the index, then renamed (values.bin first: its values cover
+	 * the postings of the previous index and of the new one).
+	 */
+	private void mergeRuns() throws IOException {
+		PriorityQueue<PostingReader> queue = new PriorityQueue<PostingReader>(Math.max(1, runs + sources.size()), new Comparator<PostingReader>() {
+			public int compare(PostingReader first, PostingReader second) {
+				return Long.compare(first.fingerprint, second.fingerprint);
+			}
+		});
+		File postingsFile = new File(directory, "postings.bin.tmp");
+		File valuesFile = new File(directory, "values.bin.tmp");
+		File sharedFile = new File(directory, "shared.bin.tmp");
+		DataOutputStream postingsOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(postingsFile)));
+		DataOutputStream valuesOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(valuesFile)));
+		DataOutputStream sharedOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(sharedFile)));
+		postings = 0;
+		sharedValues = 0;
+		try {
+			for(IndexSource source : sources) {
+				PostingReader reader = new IndexReader(source);
+				if(reader.next()) {
+					queue.add(reader);
+				}
+				else {
+					reader.close();
+				}
+			}
+			for(int run = 0; run < runs; run++) {
+				PostingReader reader = new RunReader(getRunFile(run));
+				if(reader.next()) {
+					queue.add(reader);
+				}
+				else {
+					reader.close();
+				}
+			}
+			// Postings of the current value: website, domain, name
+			List<int[]> valuePostings = new ArrayList<int[]>();
+			Set<Integer> valueDomains = new HashSet<Integer>();
+			while(!queue.isEmpty()) {
+				long fingerprint = queue.peek().fingerprint;
+				String value = null;
+				valuePostings.clear();
+				while(!queue.isEmpty() && queue.peek().fingerprint == fingerprint) {
+					PostingReader reader = queue.poll();
+					if(!replaced.get(reader.site)) {
+						valuePostings.add(new int[] {reader.site, reader.domain, reader.name});
+						if(value == null) {
+							value = reader.value;
+						}
+					}
+					if(reader.next()) {
+						queue.add(reader);
+					}
+					else {
+						reader.close();
+					}
+				}
+				if(valuePostings.isEmpty()) {
+					continue;
+				}
+				// Postings in the order of the websites, the duplicates are consecutive
+				Collections.sort(valuePostings, new Comparator<int[]>() {
+					public int compare(int[] first, int[] second) {
+						for(int i = 0; i < first.length; i++) {
+							if(first[i] != second[i]) {
+								return Integer.compare(first[i], second[i]);
+							}
+						}
+						return 0;
+					}
+				});
+				long firstPosting = postings;
+				int valueSites = 0;
+				valueDomains.clear();
+				int[] previous = null;
+				for(int[] posting : valuePostings) {
+					if(previous != null && Arrays.equals(previous, posting)) {
+						continue;
+					}
+					if(previous == null || previous[0] != posting[0]) {
+						valueSites++;
+					}
+					valueDomains.add(posting[1]);
+					postingsOutput.writeLong(fingerprint);
+					postingsOutput.writeInt(posting[0]);
+					postingsOutput.writeInt(posting[1]);
+					postingsOutput.writeInt(posting[2]);
+					postings++;
+					previous = posting;
+				}
+				if(value == null) {
+					value = "";
+				}
+				valuesOutput.writeLong(fingerprint);
+				valuesOutput.writeUTF(value);
+				if(postings - firstPosting > 1) {
+					sharedOutput.writeLong(fingerprint);
+					sharedOutput.writeInt(valueSites);
+					sharedOutput.writeInt(valueDomains.size());
+					sharedOutput.writeLong(firstPosting);
+					sharedOutput.writeInt((int) (postings - firstPosting));
+					sharedOutput.writeUTF(value);
+					sharedValues++;
+				}
+			}
+		} finally {
+			for(PostingReader reader : queue) {
+				reader.close();
+			}
+			postingsOutput.close();
+			valuesOutput.close();
+			sharedOutput.close();
+		}
+		replace(valuesFile, new File(directory, "values.bin"));
+		replace(postingsFile, new File(directory, "postings.bin"));
+		replace(sharedFile, new File(directory, "shared.bin"));
+		sources.clear();
+		sources.add(new IndexSource(directory, null, null, null));
+	}
+
+	private File getRunFile(int run) {
+		return new File(directory, "run-" + run + ".tmp");
+	}
+
+	/**
+	 * Writes the state of the index: number of websites and number of runs.
+	 */
+	private void writeState(int committedRuns) throws IOException {
+		writeLines(Collections.singletonList(nextSite + "," + committedRuns), new File(directory, STATE_FILE));
+	}
+
+	/**
+	 * Reader of postings sorted by fingerprint.
+	 */
+	private static abstract class PostingReader {
+		protected long fingerprint;
+		protected int site;
+		protected int domain;
+		protected int name;
+		protected String value;
+
+		/**
+		 * @return false at the end of the postings
+		 */
+		abstract boolean next() throws IOException;
+
+		abstract void close() throws IOException;
+	}
+
+	/**
+	 * Reader of the postings of a run.
+	 */
+	private static class RunReader extends PostingReader {
+		private final DataInputStream input;
+
+		RunReader(File file) throws IOException {
+			this.input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		}
+
+		boolean next() throws IOException {
+			try {
+				fingerprint = input.readLong();
+			} catch (EOFException eofe) {
+				return false;
+			}
+			site = input.readInt();
+			domain = input.readInt();
+			name = input.readInt();
+			value = input.readUTF();
+			return true;
+		}
+
+		void close() throws IOException {
+			input.close();
+		}
+	}
+
+	/**
+	 * Reader of the postings of an index (postings.bin and values.bin), with the ids of this index.
+	 */
+	private static class IndexReader extends PostingReader {
+		private final IndexSource source;
+		private final DataInputStream postingsInput;
+		private final DataInputStream valuesInput;
+		private long valueFingerprint;
+		private String nextValue;
+		private boolean valuesEnd = false;
+
+		IndexReader(IndexSource source) throws IOException {
+			this.source = source;
+			this.postingsInput = new DataInputStream(new BufferedInputStream(new FileInputStream(new File(source.directory, "postings.bin"))));
+			File valuesFile = new File(source.directory, "values.bin");
+			this.valuesInput = valuesFile.isFile() ? new DataInputStream(new BufferedInputStream(new FileInputStream(valuesFile))) : null;
+			valuesEnd = (valuesInput == null);
+			nextValue();
+		}
+
+		boolean next() throws IOException {
+			try {
+				fingerprint = postingsInput.readLong();
+			} catch (EOFException eofe) {
+				return false;
+			}
+			site = map(source.siteMap, postingsInput.readInt());
+			domain = map(source.domainMap, postingsInput.readInt());
+			name = map(source.nameMap, postingsInput.readInt());
+			while(!valuesEnd && valueFingerprint < fingerprint) {
+				nextValue();
+			}
+			value = (!valuesEnd && valueFingerprint == fingerprint) ? nextValue : null;
+			return true;
+		}
+
+		private void nextValue() throws IOException {
+			if(valuesEnd) {
+				return;
+			}
+			try {
+				valueFingerprint = valuesInput.readLong();
+				nextValue = valuesInput.readUTF();
+			} catch (EOFException eofe) {
+				valuesEnd = true;
+			}
+		}
+
+		private static int map(int[] ids, int id) {
+			return (ids != null) ? ids[id] : id;
+		}
+
+		void close() throws IOException {
+			postingsInput.close();
+			if(valuesInput != null) {
+				valuesInput.close();
+			}
+		}
+	}
+
+	/**
+	 * Gets the values seen on more than a number of websites.
+	 *
+	 * @param directory the directory of the index
+	 * @param minimumSites the values seen on more websites are returned
+	 * @param limit the maximum number of values, at least 1 (the values of the most websites are returned)
+	 * @return the values, from the most websites to the least
+	 * @throws IOException
+	 */
+	public static List<SharedValue> findSharedValues(File directory, int minimumSites, int limit) throws IOException {
+		// Read the summaries of the shared values (sequentially), keep the values of the most websites
+		PriorityQueue<SharedValue> selected = new PriorityQueue<SharedValue>(Math.max(1, limit), new Comparator<SharedValue>() {
+			public int compare(SharedValue first, SharedValue second) {
+				return Integer.compare(first.sites, second.sites);
+			}
+		});
+		DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(new File(directory, "shared.bin"))));
+		try {
+			while(true) {
+				SharedValue shared = new SharedValue();
+				try {
+					shared.fingerprint = input.readLong();
+				} catch (EOFException eofe) {
+					break;
+				}
+				shared.sites = input.readInt();
+				shared.domains = input.readInt();
+				shared.firstPosting = input.readLong();
+				shared.postingsCount = input.readInt();
+				shared.value = input.readUTF();
+				if(shared.sites <= minimumSites) {
+					continue;
+				}
+				if(selected.size() == limit) {
+					if(selected.peek().sites >= shared.sites) {
+						continue;
+					}
+					selected.poll();
+				}
+				selected.add(shared);
+			}
+		} finally {
+			input.close();
+		}
+
+		List<SharedValue> result = new ArrayList<SharedValue>(selected);
+		Collections.sort(result, Collections.reverseOrder(selected.comparator()));
+		for(SharedValue shared : result) {
+			shared.postings = readPostings(directory, shared.firstPosting, shared.postingsCount);
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the postings of a value (binary search of its fingerprint in the postings).
+	 *
+	 * @param directory the directory of the index
+	 * @param value the value of a cookie
+	 * @return the ids (see the dictionaries) of the website, the domain and the name of each posting
+	 * @throws IOException
+	 */
+	public static int[][] findPostings(File directory, String value) throws IOException {
+		long fingerprint = HyperLogLog.hash(value, 0, value.length());
+		RandomAccessFile file = new RandomAccessFile(new File(directory, "postings.bin"), "r");
+		try {
+			// First posting of the fingerprint
+			long low = 0;
+			long high = file.length() / POSTING_SIZE;
+			while(low < high) {
+				long middle = (low + high) >>> 1;
+				file.seek(middle * POSTING_SIZE);
+				if(file.readLong() < fingerprint) {
+					low = middle + 1;
+				}
+				else {
+					high = middle;
+				}
+			}
+			List<int[]> result = new ArrayList<int[]>();
+			file.seek(low * POSTING_SIZE);
+			while(file.getFilePointer() < file.length() && file.readLong() == fingerprint) {
+				result.add(new int[] {file.readInt(), file.readInt(), file.readInt()});
+			}
+			return result.toArray(new int[result.size()][]);
+		} finally {
+			file.close();
+		}
+	}
+
+	/**
+	 * Reads a dictionary of the index (sites.txt, domains.txt or names.txt), or only some of its ids.
+	 *
+	 * @param file the dictionary
+	 * @param ids the ids to read, or null for all
+	 * @return the names by id
+	 * @throws IOException
+	 */
+	public static Map<Integer, String> readDictionary(File file, Set<Integer> ids) throws IOException {
+		Map<Integer, String> dictionary = new HashMap<Integer, String>();
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			int id = 0;
+			while((line = reader.readLine()) != null) {
+				if(ids == null || ids.contains(id)) {
+					dictionary.put(id, line);
+				}
+				id++;
+			}
+		} finally {
+			reader.close();
+		}
+		return dictionary;
+	}
+
+	private static int[][] readPostings(File directory, long first, int count) throws IOException {
+		int[][] result = new int[count][];
+		RandomAccessFile file = new RandomAccessFile(new File(directory, "postings.bin"), "r");
+		try {
+			file.seek(first * POSTING_SIZE);
+			for(int i = 0; i < count; i++) {
+				file.readLong();
+				result[i] = new int[] {file.readInt(), file.readInt(), file.readInt()};
+			}
+		} finally {
+			file.close();
+		}
+		return result;
+	}
+
+	private static void writeDictionary(Interner dictionary, File file) throws IOException {
+		List<String> lines = new ArrayList<String>(dictionary.size());
+		for(int id = 0; id < dictionary.size(); id++) {
+			lines.add(dictionary.getName(id));
+		}
+		writeLines(lines, file);
+	}
+
+	/**
+	 * Writes the lines of a file (in a temporary file renamed: the previous content is kept if the writing fails).
+	 */
+	private static void writeLines(List<String> lines, File file) throws IOException {
+		File temporaryFile = new File(file.getPath() + ".tmp");
+		BufferedWriter writer = new BufferedWriter(new FileWriter(temporaryFile));
+		try {
+			for(String line : lines) {
+				writer.write(line);
+				writer.newLine();
+			}
+		} finally {
+			writer.close();
+		}
+		replace(temporaryFile, file);
+	}
+
+	private static List<String> readLines(File file) throws IOException {
+		List<String> lines = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			while((line = reader.readLine()) != null) {
+				lines.add(line);
+			}
+		} finally {
+			reader.close();
+		}
+		return lines;
+	}
+
+	private static void replace(File temporaryFile, File file) throws IOException {
+		Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * The values of the cookies are short, writeUTF is limited to 64 KB.
+	 */
+	private static String truncate(String value) {
+		return (value.length() > 16384) ? value.substring(0, 16384) : value;
+	}
+
+	public static void main(String[] args) {
+		if(args.length < 1) {
+			System.out.println("Usage: CookieIndex <directory of the index> [-minsites K] [-limit N] [-value <value>]");
+			System.exit(1);
+		}
+		File directory = new File(args[0]);
+		int minimumSites = 1;
+		int limit = 100;
+		String value = null;
+		try {
+			for(int i = 1; i + 1 < args.length; i += 2) {
+				if(args[i].equals("-minsites")) {
+					minimumSites = Integer.parseInt(args[i + 1]);
+				}
+				else if(args[i].equals("-limit")) {
+					limit = Math.max(1, Integer.parseInt(args[i + 1]));
+				}
+				else if(args[i].equals("-value")) {
+					value = args[i + 1];
+				}
+			}
+		} catch (NumberFormatException nfe) {
+			System.out.println("The number of websites and the limit must be integers!");
+			System.exit(1);
+		}
+
+		try {
+			Map<Integer, String> domainsDictionary = readDictionary(new File(directory, "domains.txt"), null);
+			Map<Integer, String> namesDictionary = readDictionary(new File(directory, "names.txt"), null);
+			if(value != null) {
+				int[][] postings = findPostings(directory, value);
+				Set<Integer> siteIds = new HashSet<Integer>();
+				for(int[] posting : postings) {
+					siteIds.add(posting[0]);
+				}
+				Map<Integer, String> sitesDictionary = readDictionary(new File(directory, "sites.txt"), siteIds);
+				System.out.println(postings.length + " cookies with the value " + value);
+				for(int[] posting : postings) {
+					System.out.println(sitesDictionary.get(posting[0]) + "\t" + domainsDictionary.get(posting[1]) + "\t" + namesDictionary.get(posting[2]));
+				}
+				return;
+			}
+
+			List<SharedValue> sharedValues = findSharedValues(directory, minimumSites, limit);
+			// Names of the websites printed (the dictionary of the websites may be large)
+			Set<Integer> siteIds = new HashSet<Integer>();
+			for(SharedValue shared : sharedValues) {
+				Set<Integer> valueSites = new HashSet<Integer>();
+				for(int i = 0; i < shared.postings.length && valueSites.size() < SITES_PRINTED; i++) {
+					valueSites.add(shared.postings[i][0]);
+				}
+				siteIds.addAll(valueSites);
+			}
+			Map<Integer, String> sitesDictionary = readDictionary(new File(directory, "sites.txt"), siteIds);
+			System.out.println(sharedValues.size() + " values seen on more than " + minimumSites + " websites (value, websites, domains, cookies)");
+			for(SharedValue shared : sharedValues) {
+				System.out.println(shared.value + "\t" + shared.sites + "\t" + shared.domains + "\t" + shared.postings.length);
+				// Distinct domains and names of the cookies, and the first websites
+				Set<String> cookies = new HashSet<String>();
+				Set<String> websites = new HashSet<String>();
+				for(int[] posting : shared.postings) {
+					cookies.add(domainsDictionary.get(posting[1]) + " " + namesDictionary.get(posting[2]));
+					if(websites.size() < SITES_PRINTED && sitesDictionary.containsKey(posting[0])) {
+						websites.add(sitesDictionary.get(posting[0]));
+					}
+				}
+				System.out.println("   cookies: " + cookies);
+				System.out.println("   websites: " + websites + ((shared.sites > websites.size()) ? "..." : ""));
+			}
+		} catch (IOException ioe) {
+			System.out.println("Error: cannot read the index: " + ioe.getMessage());
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package parser;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+
+/**
+ * Writes the results of every website in nine CSV files in the subdirectory "results"
+ * (website_mimetypes.csv, website_urls.csv, website_ghostery.csv, etc.), even if they are empty.
+ */
+public class CsvResultSink implements ResultSink {
+
+	public void write(WebsiteResults results) throws IOException {
+		String website = results.getWebsite();
+
+		// Write mimetypes of URLs with different SOA
+		BufferedWriter mimetypeDifferentSOA_websiteFile = new BufferedWriter(new FileWriter(Parser.getOutputFile("results", website, "_mimetypes.csv"), false));
+		for(String line : results.getRecords("mimetypes")) {
+			mimetypeDifferentSOA_websiteFile.write(line);
+			mimetypeDifferentSOA_websiteFile.newLine();
+		}
+		mimetypeDifferentSOA_websiteFile.close();
+
+		// Write URLs of different SOA
+		BufferedWriter urlsDifferentSOA_websiteFile = new BufferedWriter(new FileWriter(Parser.getOutputFile("results", website, "_urls.csv"), false));
+		for (String url : results.getUrlsSOA()) {
+			urlsDifferentSOA_websiteFile.write(url);
+			urlsDifferentSOA_websiteFile.newLine();
+		}
+		urlsDifferentSOA_websiteFile.close();
+
+		// Trackers
+		Parser.exportTrackers(website, "ghostery", results.getTrackersGhostery());
+		Parser.exportTrackers(website, "js", results.getTrackersJavaScript());
+		Parser.exportTrackers(website, "js-query", results.getTrackersJavaScriptWithQuery());
+		Parser.exportTrackers(website, "flash", results.getTrackersFlash());
+		Parser.exportTrackers(website, "pixels", results.getTrackersPixels());
+		Parser.exportTrackers(website, "cookies", results.getTrackersCookies());
+		Parser.exportTrackers(website, "parameters", results.getTrackersURLsParameters());
+	}
+
+	public void flush() {
+		// Nothing to do: the files are closed after each website
+	}
+
+	public void close() {
+		// Nothing to do
+	}
+}
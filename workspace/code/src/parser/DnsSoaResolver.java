@@ -0,0 +1,32 @@
+package parser;
+
+import java.io.IOException;
+
+import org.xbill.DNS.Lookup;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.SOARecord;
+import org.xbill.DNS.TextParseException;
+import org.xbill.DNS.Type;
+
+/**
+ * Resolves the SOA records with DNS lookups (dnsjava, default resolver of dnsjava).
+ */
+public class DnsSoaResolver implements SoaResolver {
+
+	public String lookup(String domain) throws IOException {
+		Record records[];
+		try {
+			records = new Lookup(Name.fromString(domain), Type.SOA).run();
+		} catch (TextParseException tpe) {
+			throw new IOException("Invalid domain: " + domain, tpe);
+		}
+		if(records == null) {
+			return null;
+		}
+		if(records.length > 0 && records[0] instanceof SOARecord) {
+			return ((SOARecord)records[0]).getAdmin().toString();
+		}
+		throw new IOException("Not a SOA record: " + domain);
+	}
+}
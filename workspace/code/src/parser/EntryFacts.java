@@ -0,0 +1,159 @@
+package parser;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Object containing the facts resolved for an entry of a HAR file:
+ * its URL, mimetype and cookies, the SOA of its host and the dimensions of the image (if any).
+ *
+ * These facts are the costly part of the analysis (DNS lookups, downloads of images)
+ * and do not depend on the rules used to detect the trackers.
+ */
+public class EntryFacts {
+	private static final String SEPARATOR = "\t";
+	private static final String NULL_VALUE = "\\N"; // Never produced by URLEncoder
+
+	private String url;
+	private String mimeType;
+	private MimeClassifier.Category mimeCategory;
+	private String soa;
+	private int imageWidth = -1;
+	private int imageHeight = -1;
+	private List<String[]> cookies;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param url the URL of the request
+	 * @param mimeType the mimetype of the response
+	 */
+	public EntryFacts(String url, String mimeType) {
+		this.url = url;
+		this.mimeType = mimeType;
+		cookies = new ArrayList<String[]>();
+	}
+
+	public String getUrl() {
+		return url;
+	}
+
+	public String getMimeType() {
+		return mimeType;
+	}
+
+	/**
+	 * @return the category of the mimetype (classified once per entry)
+	 */
+	public MimeClassifier.Category getMimeCategory() {
+		if(mimeCategory == null) {
+			mimeCategory = MimeClassifier.classify(mimeType);
+		}
+		return mimeCategory;
+	}
+
+	/**
+	 * @return the SOA of the host of the URL, or null if it has not been resolved
+	 */
+	public String getSOA() {
+		return soa;
+	}
+
+	public void setSOA(String soa) {
+		this.soa = soa;
+	}
+
+	/**
+	 * @return the width of the image, or -1 if unknown
+	 */
+	public int getImageWidth() {
+		return imageWidth;
+	}
+
+	/**
+	 * @return the height of the image, or -1 if unknown
+	 */
+	public int getImageHeight() {
+		return imageHeight;
+	}
+
+	public void setImageDimensions(int width, int height) {
+		imageWidth = width;
+		imageHeight = height;
+	}
+
+	/**
+	 * @return the cookies of the response as arrays {domain, name, value, path}
+	 */
+	public List<String[]> getCookies() {
+		return cookies;
+	}
+
+	public void addCookie(String domain, String name, String value, String path) {
+		cookies.add(new String[] {domain, name, value, path});
+	}
+
+	/**
+	 * Converts the facts into a single line (tab-separated, the fields are URL-encoded).
+	 *
+	 * @return the line
+	 */
+	public String toLine() {
+		StringBuilder line = new StringBuilder();
+		line.append(encode(url)).append(SEPARATOR)
+			.append(encode(mimeType)).append(SEPARATOR)
+			.append(encode(soa)).append(SEPARATOR)
+			.append(imageWidth).append(SEPARATOR)
+			.append(imageHeight);
+		for(String[] cookie : cookies) {
+			for(String field : cookie) {
+				line.append(SEPARATOR).append(encode(field));
+			}
+		}
+		return line.toString();
+	}
+
+	/**
+	 * Creates the facts from a line produced by toLine.
+	 *
+	 * @param line the line
+	 * @return the facts
+	 */
+	public static EntryFacts fromLine(String line) {
+		String[] fields = line.split(SEPARATOR, -1);
+		EntryFacts facts = new EntryFacts(decode(fields[0]), decode(fields[1]));
+		facts.setSOA(decode(fields[2]));
+		facts.setImageDimensions(Integer.parseInt(fields[3]), Integer.parseInt(fields[4]));
+		for(int i = 5; i + 3 < fields.length; i += 4) {
+			facts.addCookie(decode(fields[i]), decode(fields[i+1]), decode(fields[i+2]), decode(fields[i+3]));
+		}
+		return facts;
+	}
+
+	private static String encode(String value) {
+		if(value == null) {
+			return NULL_VALUE;
+		}
+		try {
+			return URLEncoder.encode(value, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			// UTF-8 is always supported
+			return value;
+		}
+	}
+
+	private static String decode(String value) {
+		if(value.equals(NULL_VALUE)) {
+			return null;
+		}
+		try {
+			return URLDecoder.decode(value, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			// UTF-8 is always supported
+			return value;
+		}
+	}
+}
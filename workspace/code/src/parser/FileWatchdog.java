@@ -0,0 +1,251 @@
+package parser;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Enforces a time budget and a memory budget on the analysis of a file.
+ *
+ * The file is analyzed in a separate thread, checked every second. When a budget is exceeded,
+ * the thread is interrupted (the parser stops at the next entry) and the file is quarantined:
+ * it is written in the quarantine list to be processed again later. If the thread does not stop
+ * (e.g. blocked in a DNS lookup), it is abandoned and the next files are analyzed in other threads.
+ * Several files can be analyzed at the same time (one thread per file).
+ * An abandoned thread does not publish its results (see startPublishing): a file which exceeded its budget
+ * is not exported, and a file being exported is not abandoned.
+ *
+ * The memory budget is the growth of the live heap (measured after the garbage collections) since the start
+ * of the file. When several files are analyzed at the same time, the growth is charged to the file whose thread
+ * allocated the most bytes since its start (com.sun.management.ThreadMXBean, if supported by the JVM).
+ */
+public class FileWatchdog {
+	private static final long POLL_INTERVAL = 1000; // in milliseconds
+	// States of the analysis of a file
+	private static final int RUNNING = 0;
+	private static final int PUBLISHING = 1;
+	private static final int ABANDONED = 2;
+	// Analysis running in the current thread (null outside of the watchdog)
+	private static final ThreadLocal<Analysis> currentAnalysis = new ThreadLocal<Analysis>();
+
+	private long timeout;
+	private long memory;
+	private File quarantineFile;
+	private ExecutorService executor;
+	private com.sun.management.ThreadMXBean threadBean;
+	private final Set<Analysis> running = Collections.newSetFromMap(new ConcurrentHashMap<Analysis, Boolean>());
+
+	/**
+	 * Analysis of a file: its thread and its state (the token of the publication of its results).
+	 */
+	private static class Analysis {
+		private final AtomicInteger state = new AtomicInteger(RUNNING);
+		private volatile long threadId = -1;
+		private volatile long allocatedAtStart;
+	}
+
+	/**
+	 * Exception thrown when a file exceeds its budget.
+	 */
+	public static class BudgetExceededException extends Exception {
+		private static final long serialVersionUID = 1L;
+
+		public BudgetExceededException(String reason) {
+			super(reason);
+		}
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param timeoutSeconds the time budget of a file (in seconds, 0 for no limit)
+	 * @param memoryMegabytes the memory budget of a file (growth of the live heap in megabytes, 0 for no limit)
+	 * @param quarantineFile the file listing the quarantined files
+	 */
+	public FileWatchdog(int timeoutSeconds, int memoryMegabytes, File quarantineFile) {
+		this.timeout = TimeUnit.NANOSECONDS.convert(timeoutSeconds, TimeUnit.SECONDS);
+		this.memory = (long) memoryMegabytes * 1024 * 1024;
+		this.quarantineFile = quarantineFile;
+		executor = newExecutor();
+
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if(memory > 0 && bean instanceof com.sun.management.ThreadMXBean
+				&& ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+			threadBean = (com.sun.management.ThreadMXBean) bean;
+			threadBean.setThreadAllocatedMemoryEnabled(true);
+		}
+	}
+
+	/**
+	 * @return false if the memory budget is requested but the live heap cannot be measured by this JVM
+	 */
+	public boolean isMemorySupported() {
+		return memory == 0 || getLiveHeap() >= 0;
+	}
+
+	/**
+	 * Called by the analysis of a file before it publishes its results (facts and results files):
+	 * the file cannot be abandoned anymore.
+	 *
+	 * @return false if the analysis running in the current thread has been abandoned (its results must not be published),
+	 * true otherwise (or if the current thread is not watched)
+	 */
+	public static boolean startPublishing() {
+		Analysis analysis = currentAnalysis.get();
+		return analysis == null || analysis.state.compareAndSet(RUNNING, PUBLISHING) || analysis.state.get() == PUBLISHING;
+	}
+
+	/**
+	 * Runs the analysis of a file within the budgets.
+	 *
+	 * @param task the analysis of the file
+	 * @return the results of the analysis (may be null if the analysis failed)
+	 * @throws BudgetExceededException if a budget is exceeded (the message is the reason)
+	 */
+	public WebsiteResults run(final Callable<WebsiteResults> task) throws BudgetExceededException {
+		final Analysis analysis = new Analysis();
+		Future<WebsiteResults> future = executor.submit(new Callable<WebsiteResults>() {
+			public WebsiteResults call() throws Exception {
+				long id = Thread.currentThread().getId();
+				if(threadBean != null) {
+					analysis.allocatedAtStart = threadBean.getThreadAllocatedBytes(id);
+				}
+				analysis.threadId = id;
+				currentAnalysis.set(analysis);
+				try {
+					return task.call();
+				} finally {
+					currentAnalysis.remove();
+				}
+			}
+		});
+
+		running.add(analysis);
+		try {
+			long start = System.nanoTime();
+			long liveHeapAtStart = (memory > 0) ? getLiveHeap() : -1;
+			while(true) {
+				try {
+					return future.get(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+				} catch (TimeoutException e) {
+					String reason = null;
+					long elapsedTime = System.nanoTime() - start;
+					if(timeout > 0 && elapsedTime > timeout) {
+						reason = "time budget exceeded ("
+								+ TimeUnit.SECONDS.convert(elapsedTime, TimeUnit.NANOSECONDS) + " sec.)";
+					}
+					else if(liveHeapAtStart >= 0 && analysis.threadId != -1) {
+						long growth = getLiveHeap() - liveHeapAtStart;
+						if(growth > memory && isLargestAllocator(analysis)) {
+							reason = "memory budget exceeded (live heap grown by " + (growth / (1024 * 1024)) + " MB)";
+						}
+					}
+					// Note: a file publishing its results is not abandoned (it is about to finish)
+					if(reason != null && analysis.state.compareAndSet(RUNNING, ABANDONED)) {
+						// Note: the thread may not stop, it is then abandoned (not reused by the executor)
+						future.cancel(true);
+						throw new BudgetExceededException(reason);
+					}
+				} catch (InterruptedException e) {
+					analysis.state.compareAndSet(RUNNING, ABANDONED);
+					future.cancel(true);
+					Thread.currentThread().interrupt();
+					return null;
+				} catch (ExecutionException e) {
+					return null;
+				}
+			}
+		} finally {
+			running.remove(analysis);
+		}
+	}
+
+	/**
+	 * @return true if the thread of an analysis allocated the most bytes of the running analyses
+	 * (or if the allocations of the threads cannot be measured)
+	 */
+	private boolean isLargestAllocator(Analysis analysis) {
+		if(threadBean == null) {
+			return true;
+		}
+		long allocated = threadBean.getThreadAllocatedBytes(analysis.threadId) - analysis.allocatedAtStart;
+		for(Analysis other : running) {
+			if(other != analysis && other.threadId != -1
+					&& threadBean.getThreadAllocatedBytes(other.threadId) - other.allocatedAtStart > allocated) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the size of the live heap (used after the last garbage collection of each pool), or -1 if it cannot be measured
+	 */
+	private static long getLiveHeap() {
+		long live = -1;
+		for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			MemoryUsage usage = (pool.getType() == MemoryType.HEAP) ? pool.getCollectionUsage() : null;
+			if(usage != null) {
+				live = Math.max(live, 0) + usage.getUsed();
+			}
+		}
+		return live;
+	}
+
+	/**
+	 * Adds a file to the quarantine list (path, reason and date, separated by tabs).
+	 *
+	 * @param file the file
+	 * @param reason the reason of the quarantine
+	 * @throws IOException
+	 */
+	public synchronized void quarantine(File file, String reason) throws IOException {
+		BufferedWriter writer = new BufferedWriter(new FileWriter(quarantineFile, true));
+		try {
+			writer.write(file.getPath() + "\t" + reason + "\t" + new SimpleDateFormat("dd/MM/yyyy - HH:mm:ss").format(new Date()));
+			writer.newLine();
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * Stops the threads of the analysis.
+	 */
+	public void close() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Creates the executor of the analysis. Its threads are daemons: an abandoned thread
+	 * does not prevent the parser from exiting.
+	 */
+	private static ExecutorService newExecutor() {
+		return Executors.newCachedThreadPool(new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "parser-file");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+}
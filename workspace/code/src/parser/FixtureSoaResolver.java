@@ -0,0 +1,47 @@
+package parser;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Resolves the SOA records from a file instead of DNS (offline runs: benchmarks, tests).
+ *
+ * Format: one line "domain&lt;tab&gt;administrator of the SOA" per domain having a SOA record,
+ * the lines starting with "#" are ignored. The other domains have no SOA record.
+ */
+public class FixtureSoaResolver implements SoaResolver {
+	private Map<String, String> records = new HashMap<String, String>();
+
+	/**
+	 * Constructor: loads the SOA records.
+	 *
+	 * @param file the file of the SOA records
+	 * @throws IOException if the file cannot be read or is malformed
+	 */
+	public FixtureSoaResolver(File file) throws IOException {
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			while((line = reader.readLine()) != null) {
+				if(line.isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+				String[] record = line.split("\t");
+				if(record.length != 2) {
+					throw new IOException("Malformed line in " + file.getPath() + ": " + line);
+				}
+				records.put(record[0], record[1]);
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	public String lookup(String domain) {
+		return records.get(domain);
+	}
+}
@@ -0,0 +1,476 @@
+package parser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import utils.BloomFilter;
+import utils.HyperLogLog;
+import utils.LruCache;
+import utils.Metrics;
+import utils.UrlScanner;
+
+/**
+ * Shortcut of the Ghostery matching for the hosts which are never matched by the patterns
+ * (e.g. the CDNs of the websites): matches a URL as RegexGhostery.match, with the same result.
+ *
+ * Safe host: no pattern can match a part of a URL starting in "scheme://host", whatever the rest
+ * of the URL (port, path, query). The criterion is proven once per host for the patterns of the bugs:
+ * from each position of "scheme://host" followed by each delimiter ("/", "?", etc.), no pattern
+ * matches nor needs more input (Matcher.hitEnd). The safe hosts are kept in Bloom filters (utils.BloomFilter, a new filter
+ * when the last one is full: the hosts proven in a run are never proven again), written in a file per version of the bugs
+ * (the file of other patterns is ignored). The files of several workers are merged at the loading.
+ *
+ * The URLs of a safe host can only be matched after the host (e.g. a pattern on a path, or a pattern
+ * on a host in the query): a pattern is only tested if its longest literal (e.g. "track" in "/track[0-9]+\.js")
+ * appears in the rest of the URL, so most URLs of the safe hosts are not tested at all.
+ * The patterns without literal (2 characters at least, not in an alternation) and the patterns with
+ * a group "(?...)" (flags, lookarounds) are not proven and are always tested.
+ * A false positive of the Bloom filter (about 2 in 10^7 hosts) can only miss a match starting in the host.
+ *
+ * Thread-safe.
+ */
+public class GhosteryHostFilter {
+	private static final int MAGIC = 0x47484246;
+	private static final int VERSION = 2;
+	// Safe hosts kept in each filter (32 bits each: 4 MB)
+	private static final int CAPACITY = 1 << 20;
+	private static final int BITS_PER_HOST = 32;
+	// Hosts proven unsafe in this run (not proven again)
+	private static final int UNSAFE_CACHE_SIZE = 100000;
+	private static final int LITERAL_BUCKETS = 4096;
+	private static final int MIN_LITERAL = 2;
+	private static final int ASCII = 128;
+	// Results of the matching of a position of a host
+	private static final int NO_MATCH = 0;
+	private static final int NEED_MORE = 1;
+	private static final int MATCH = 2;
+	// What may follow the host in a URL: nothing, a port, a path, a query or a fragment
+	private static final String[] HOST_DELIMITERS = {":", "/", "?", "#"};
+
+	private final RegexGhostery regexGhostery;
+	private final Pattern[] patterns;
+	private final String[] names;
+	// Longest literal of each pattern, or null if the pattern is always tested
+	private final String[] literals;
+	private final BitSet alwaysTested;
+	// Alternations of the patterns proven for the hosts, by first character (ASCII) and for the others
+	private final Pattern[] proofPatterns = new Pattern[ASCII];
+	private final Pattern otherProofPattern;
+	// Patterns by the first two characters of their literal
+	private final int[][] literalIndex = new int[LITERAL_BUCKETS][];
+	private final long fingerprint;
+	private final int capacity;
+	// Filters of the safe hosts (only the last one is not full)
+	private final List<BloomFilter> safeHosts = new CopyOnWriteArrayList<BloomFilter>();
+	private final Map<String, Boolean> unsafeHosts = Collections.synchronizedMap(new LruCache<String, Boolean>(UNSAFE_CACHE_SIZE));
+
+	private static final Metrics.Counter urlsMetric = Metrics.counter("parser.ghostery.urls");
+	private static final Metrics.Counter safeUrlsMetric = Metrics.counter("parser.ghostery.safe_host_urls");
+	private static final Metrics.Counter skipsMetric = Metrics.counter("parser.ghostery.skips");
+	private static final Metrics.Counter proofsMetric = Metrics.counter("parser.ghostery.host_proofs");
+
+	/**
+	 * Constructor: indexes the patterns of the trackers (the filter is empty).
+	 *
+	 * @param regexGhostery the patterns of the trackers
+	 */
+	public GhosteryHostFilter(RegexGhostery regexGhostery) {
+		this(regexGhostery, CAPACITY);
+	}
+
+	/**
+	 * Constructor with the number of safe hosts of each filter (tests).
+	 */
+	GhosteryHostFilter(RegexGhostery regexGhostery, int capacity) {
+		this.regexGhostery = regexGhostery;
+		this.capacity = capacity;
+		patterns = regexGhostery.getPatterns();
+		names = regexGhostery.getNames();
+		literals = new String[patterns.length];
+		alwaysTested = new BitSet(patterns.length);
+		List<List<Integer>> buckets = new ArrayList<List<Integer>>();
+		for(int i = 0; i < LITERAL_BUCKETS; i++) {
+			buckets.add(null);
+		}
+		long sum = 0;
+		StringBuilder[] alternations = new StringBuilder[ASCII + 1];
+		for(int i = 0; i < patterns.length; i++) {
+			String pattern = patterns[i].pattern();
+			sum += HyperLogLog.hash(pattern, 0, pattern.length());
+			literals[i] = isProvable(pattern) ? getLongestLiteral(pattern) : null;
+			if(literals[i] == null) {
+				alwaysTested.set(i);
+				continue;
+			}
+			int first = getFirstCharacter(pattern);
+			int group = (first >= 0 && first < ASCII) ? first : ASCII;
+			if(alternations[group] == null) {
+				alternations[group] = new StringBuilder();
+			}
+			else {
+				alternations[group].append('|');
+			}
+			alternations[group].append("(?:").append(pattern).append(')');
+			int bucket = bucketOf(literals[i].charAt(0), literals[i].charAt(1));
+			if(buckets.get(bucket) == null) {
+				buckets.set(bucket, new ArrayList<Integer>());
+			}
+			buckets.get(bucket).add(i);
+		}
+		for(int i = 0; i < LITERAL_BUCKETS; i++) {
+			if(buckets.get(i) != null) {
+				literalIndex[i] = new int[buckets.get(i).size()];
+				for(int j = 0; j < literalIndex[i].length; j++) {
+					literalIndex[i][j] = buckets.get(i).get(j);
+				}
+			}
+		}
+		// Note: the safety of a host depends on the set of the patterns (not on their order)
+		fingerprint = sum;
+		for(int i = 0; i < ASCII; i++) {
+			proofPatterns[i] = (alternations[i] != null) ? Pattern.compile(alternations[i].toString()) : null;
+		}
+		otherProofPattern = (alternations[ASCII] != null) ? Pattern.compile(alternations[ASCII].toString()) : null;
+		safeHosts.add(new BloomFilter(capacity, BITS_PER_HOST));
+	}
+
+	/**
+	 * Matches a URL against the patterns of the trackers.
+	 *
+	 * @param url the URL
+	 * @param scanner the scanner of the thread
+	 * @return the name of the first tracker matching the URL, or null if none
+	 */
+	public String match(String url, UrlScanner scanner) {
+		urlsMetric.increment();
+		if(!scanner.scan(url)) {
+			return regexGhostery.match(url);
+		}
+		int hostEnd = scanner.getHostEnd();
+		long hash = HyperLogLog.hash(url, 0, hostEnd);
+		if(!isSafeHost(hash)) {
+			String prefix = url.substring(0, hostEnd);
+			if(unsafeHosts.containsKey(prefix)) {
+				return regexGhostery.match(url);
+			}
+			proofsMetric.increment();
+			if(!isSafe(prefix)) {
+				unsafeHosts.put(prefix, Boolean.TRUE);
+				return regexGhostery.match(url);
+			}
+			addSafeHost(hash);
+		}
+		safeUrlsMetric.increment();
+
+		// Patterns whose literal appears after the host, and patterns always tested
+		BitSet candidates = null;
+		int length = url.length();
+		for(int i = hostEnd; i < length - 1; i++) {
+			int[] bucket = literalIndex[bucketOf(url.charAt(i), url.charAt(i + 1))];
+			if(bucket == null) {
+				continue;
+			}
+			for(int pattern : bucket) {
+				if(url.startsWith(literals[pattern], i)) {
+					if(candidates == null) {
+						candidates = (BitSet) alwaysTested.clone();
+					}
+					candidates.set(pattern);
+				}
+			}
+		}
+		if(candidates == null) {
+			if(alwaysTested.isEmpty()) {
+				skipsMetric.increment();
+				return null;
+			}
+			candidates = alwaysTested;
+		}
+		for(int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+			if(patterns[i].matcher(url).find()) {
+				return names[i];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return the number of safe hosts in the filters
+	 */
+	public long getSafeHosts() {
+		long count = 0;
+		for(BloomFilter filter : safeHosts) {
+			count += filter.getCount();
+		}
+		return count;
+	}
+
+	/**
+	 * @return the number of Bloom filters of the safe hosts
+	 */
+	public int getFilters() {
+		return safeHosts.size();
+	}
+
+	private boolean isSafeHost(long hash) {
+		for(BloomFilter filter : safeHosts) {
+			if(filter.mightContain(hash)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void addSafeHost(long hash) {
+		while(!safeHosts.get(safeHosts.size() - 1).add(hash)) {
+			synchronized(safeHosts) {
+				if(safeHosts.get(safeHosts.size() - 1).getCount() >= capacity) {
+					safeHosts.add(new BloomFilter(capacity, BITS_PER_HOST));
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the number of patterns always tested (not proven)
+	 */
+	public int getAlwaysTested() {
+		return alwaysTested.cardinality();
+	}
+
+	/**
+	 * Adds the safe hosts of a previous run (or of another worker) to the filters.
+	 * A loaded filter is merged in a filter of this run if their union fits in the capacity, or added to the filters.
+	 *
+	 * @param file the file of the filters
+	 * @return false if the file was written for other patterns or in another format (nothing is loaded)
+	 * @throws IOException if the file cannot be read
+	 */
+	public boolean load(File file) throws IOException {
+		DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if(input.readInt() != MAGIC || input.readInt() != VERSION || input.readLong() != fingerprint) {
+				return false;
+			}
+			int count = input.readInt();
+			List<BloomFilter> loaded = new ArrayList<BloomFilter>();
+			for(int i = 0; i < count; i++) {
+				loaded.add(BloomFilter.read(input));
+			}
+			synchronized(safeHosts) {
+				for(BloomFilter filter : loaded) {
+					if(filter.getCapacity() != capacity || filter.getCount() == 0) {
+						continue;
+					}
+					boolean merged = false;
+					for(int i = 0; i < safeHosts.size() && !merged; i++) {
+						merged = safeHosts.get(i).merge(filter);
+					}
+					if(!merged) {
+						// Note: the last filter stays the one which is not full
+						safeHosts.add(safeHosts.size() - 1, filter);
+					}
+				}
+			}
+			return true;
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * Writes the safe hosts (written next to the file and then renamed).
+	 *
+	 * @param file the file of the filters (one per worker, see load)
+	 * @throws IOException
+	 */
+	public void save(File file) throws IOException {
+		File temporaryFile = new File(file.getPath() + ".tmp");
+		DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)));
+		try {
+			output.writeInt(MAGIC);
+			output.writeInt(VERSION);
+			output.writeLong(fingerprint);
+			List<BloomFilter> filters = new ArrayList<BloomFilter>(safeHosts);
+			output.writeInt(filters.size());
+			for(BloomFilter filter : filters) {
+				filter.write(output);
+			}
+		} finally {
+			output.close();
+		}
+		if(!temporaryFile.renameTo(file)) {
+			file.delete();
+			if(!temporaryFile.renameTo(file)) {
+				throw new IOException("Cannot rename " + temporaryFile.getPath());
+			}
+		}
+	}
+
+	/**
+	 * Proves that a host is safe: no pattern (except the patterns always tested) matches
+	 * from a position of "scheme://host", whatever follows the host.
+	 * A URL is "scheme://host" alone, or followed by a delimiter (HOST_DELIMITERS) and any characters:
+	 * - "scheme://host" must not be matched from any of its positions;
+	 * - at the positions where a pattern needs more characters (Matcher.hitEnd), "scheme://host" and
+	 *   each delimiter must not be matched, and no pattern may need more characters.
+	 *
+	 * @param prefix "scheme://host" (the start of the URLs of the host)
+	 */
+	private boolean isSafe(String prefix) {
+		List<Integer> needMore = new ArrayList<Integer>();
+		for(int start = 0; start < prefix.length(); start++) {
+			int result = lookingAt(prefix, start);
+			if(result == MATCH) {
+				return false;
+			}
+			if(result == NEED_MORE) {
+				needMore.add(start);
+			}
+		}
+		for(String delimiter : HOST_DELIMITERS) {
+			String input = prefix + delimiter;
+			for(int start : needMore) {
+				if(lookingAt(input, start) != NO_MATCH) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Matches the proven patterns which may start with the character at a position of the input.
+	 *
+	 * @return MATCH, NEED_MORE (no match, but a pattern needs more characters) or NO_MATCH
+	 */
+	private int lookingAt(String input, int start) {
+		char c = input.charAt(start);
+		int result = lookingAt((c < ASCII) ? proofPatterns[c] : null, input, start);
+		if(result == MATCH) {
+			return MATCH;
+		}
+		return Math.max(result, lookingAt(otherProofPattern, input, start));
+	}
+
+	private static int lookingAt(Pattern pattern, String input, int start) {
+		if(pattern == null) {
+			return NO_MATCH;
+		}
+		Matcher matcher = pattern.matcher(input);
+		// Note: "^" only matches at the start of the URL ("$" at the end of the input is a match: not safe)
+		matcher.useAnchoringBounds(false);
+		matcher.region(start, input.length());
+		// Note: the engine tries all the alternatives, hitEnd is set if one of them needs more input
+		if(matcher.lookingAt()) {
+			return MATCH;
+		}
+		return matcher.hitEnd() ? NEED_MORE : NO_MATCH;
+	}
+
+	/**
+	 * @return the first character of every match of the pattern, or -1 if it is not fixed
+	 */
+	private static int getFirstCharacter(String pattern) {
+		if(pattern.isEmpty() || ".^$?*+{}[]()|\\".indexOf(pattern.charAt(0)) >= 0) {
+			return -1;
+		}
+		char next = (pattern.length() > 1) ? pattern.charAt(1) : 0;
+		return (next == '?' || next == '*' || next == '{') ? -1 : pattern.charAt(0);
+	}
+
+	/**
+	 * @return false if the pattern has a group "(?...)" (not proven: a lookaround sees out of the region of the matcher)
+	 */
+	private static boolean isProvable(String pattern) {
+		return !pattern.contains("(?");
+	}
+
+	/**
+	 * Gets the longest literal of a pattern: characters which are in every match of the pattern
+	 * (outside of the groups, the classes and the quantified characters).
+	 * Note: the backslashes are removed from the patterns of Ghostery (see RegexGhostery), "\." is ".".
+	 *
+	 * @return the literal, or null if it is shorter than MIN_LITERAL
+	 */
+	private static String getLongestLiteral(String pattern) {
+		String longest = "";
+		StringBuilder current = new StringBuilder();
+		int depth = 0;
+		int i = 0;
+		while(i < pattern.length()) {
+			char c = pattern.charAt(i);
+			if(c == '\\' || (c == '|' && depth == 0)) {
+				return null;
+			}
+			if(c == '[') {
+				// Class (may be nested): the first "]" (after "[" or "[^") is a character of the class
+				i += (i + 1 < pattern.length() && pattern.charAt(i + 1) == '^') ? 3 : 2;
+				int classDepth = 1;
+				while(i < pattern.length() && classDepth > 0) {
+					if(pattern.charAt(i) == '[') {
+						classDepth++;
+					}
+					else if(pattern.charAt(i) == ']') {
+						classDepth--;
+					}
+					i++;
+				}
+				current.setLength(0);
+				continue;
+			}
+			if(c == '(' || c == ')') {
+				depth += (c == '(') ? 1 : -1;
+				current.setLength(0);
+				i++;
+				continue;
+			}
+			if(c == '{') {
+				// Bounds of a quantifier (e.g. "{2,3}"): not characters of the matches
+				int end = pattern.indexOf('}', i);
+				current.setLength(0);
+				i = (end >= 0) ? end + 1 : pattern.length();
+				continue;
+			}
+			if(".^$?*+}]".indexOf(c) >= 0 || depth > 0) {
+				current.setLength(0);
+				i++;
+				continue;
+			}
+			char next = (i + 1 < pattern.length()) ? pattern.charAt(i + 1) : 0;
+			if(next == '?' || next == '*' || next == '{') {
+				// Optional character
+				current.setLength(0);
+			}
+			else {
+				current.append(c);
+				if(current.length() > longest.length()) {
+					longest = current.toString();
+				}
+				if(next == '+') {
+					current.setLength(0);
+				}
+			}
+			i++;
+		}
+		return (longest.length() >= MIN_LITERAL) ? longest : null;
+	}
+
+	private static int bucketOf(char first, char second) {
+		return (first * 31 + second) & (LITERAL_BUCKETS - 1);
+	}
+}
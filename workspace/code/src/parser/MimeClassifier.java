@@ -0,0 +1,74 @@
+package parser;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Classifies the mimetypes of the entries for the detectors of trackers.
+ *
+ * A mimetype is normalized (parameters such as "; charset=utf-8" removed, lowercase) and
+ * classified once: the category of each distinct raw mimetype is kept in a table, so the
+ * next entries with the same mimetype only cost a lookup.
+ */
+public class MimeClassifier {
+	/**
+	 * Categories of mimetypes used by the detectors.
+	 */
+	public enum Category {
+		JAVASCRIPT, FLASH, IMAGE, OTHER
+	}
+
+	// Note: the number of distinct mimetypes is small, the limit only protects against malformed files
+	private static final int MAX_CACHED = 4096;
+	private static ConcurrentHashMap<String, Category> categories = new ConcurrentHashMap<String, Category>();
+
+	/**
+	 * Gets the category of a mimetype.
+	 *
+	 * @param mimeType the mimetype (raw, as in the HAR file)
+	 * @return the category (OTHER if the mimetype is null)
+	 */
+	public static Category classify(String mimeType) {
+		if(mimeType == null) {
+			return Category.OTHER;
+		}
+		Category category = categories.get(mimeType);
+		if(category == null) {
+			category = classifyNormalized(normalize(mimeType));
+			if(categories.size() < MAX_CACHED) {
+				categories.put(mimeType, category);
+			}
+		}
+		return category;
+	}
+
+	/**
+	 * Normalizes a mimetype: removes its parameters and the spaces, converts it to lowercase.
+	 *
+	 * @param mimeType the mimetype (e.g. "Text/JavaScript; charset=UTF-8")
+	 * @return the normalized mimetype (e.g. "text/javascript")
+	 */
+	public static String normalize(String mimeType) {
+		int semicolon = mimeType.indexOf(';');
+		return ((semicolon >= 0) ? mimeType.substring(0, semicolon) : mimeType).trim().toLowerCase();
+	}
+
+	private static Category classifyNormalized(String type) {
+		switch(type) {
+		case "application/x-javascript":
+		case "application/javascript":
+		case "text/javascript":
+			return Category.JAVASCRIPT;
+		case "application/x-shockwave-flash":
+			return Category.FLASH;
+		case "image/jpeg":
+		case "image/jpg":
+		case "image/png":
+		case "image/gif":
+		case "image/bmp":
+		case "image/x-icon":
+			return Category.IMAGE;
+		default:
+			return Category.OTHER;
+		}
+	}
+}
@@ -2,75 +2,153 @@ package parser;
 
 import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileWriter;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.net.UnknownHostException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.Random;
 import java.util.Scanner;
+import java.util.concurrent.Callable;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
 
 import javax.imageio.ImageIO;
 import javax.imageio.ImageReader;
 import javax.imageio.stream.ImageInputStream;
 
 import org.xbill.DNS.Address;
-import org.xbill.DNS.Lookup;
-import org.xbill.DNS.Name;
-import org.xbill.DNS.Record;
-import org.xbill.DNS.SOARecord;
-import org.xbill.DNS.Type;
 
 import com.google.common.net.InetAddresses;
 import com.google.common.net.InternetDomainName;
 
 import edu.umass.cs.benchlab.har.HarCookie;
-import edu.umass.cs.benchlab.har.HarCookies;
 import edu.umass.cs.benchlab.har.HarEntries;
 import edu.umass.cs.benchlab.har.HarEntry;
 import edu.umass.cs.benchlab.har.HarLog;
 import edu.umass.cs.benchlab.har.HarWarning;
 import edu.umass.cs.benchlab.har.tools.HarFileReader;
 
+import crawler.HarManifest;
+import crawler.RecordedEntry;
+import utils.AsyncLogger;
+import utils.Counters;
+import utils.HyperLogLog;
+import utils.LruCache;
+import utils.Metrics;
+import utils.ShardedLayout;
+import utils.SpaceSaving;
+import utils.UrlScanner;
+
 public class Parser {
 
 	private static boolean debug;
 	private static boolean showTrackers;
 	private static String directory;
-	private static BufferedWriter logsFile;
-	private static SimpleDateFormat dateFormat = new SimpleDateFormat("dd/MM/yyyy - HH:mm:ss");
+	private static AsyncLogger logger;
+	// Note: SimpleDateFormat is not thread-safe (the crawler and the parser may run in the same process)
+	private static final ThreadLocal<SimpleDateFormat> dateFormat = new ThreadLocal<SimpleDateFormat>() {
+		protected SimpleDateFormat initialValue() {
+			return new SimpleDateFormat("dd/MM/yyyy - HH:mm:ss");
+		}
+	};
 	private static RegexGhostery regexGhostery;
+	// Hosts never matched by the patterns of Ghostery (see GhosteryHostFilter), null without Ghostery file
+	private static GhosteryHostFilter ghosteryHostFilter;
 	private static String ghosteryFile;
 	private static Map<String, Integer> filesLatest;
-	private static Map<String, Integer> trackersGhosteryStats;
+	// Suffix of the latest file of each website (".har" or ".har.gz")
+	private static Map<String, String> filesSuffix;
+	private static Counters trackersGhosteryStats;
 	private static Map<String, int[]> websitesDetailedStats;
-	private static Map<String, String> cacheSOA;
+	private static SoaResolver soaResolver = new DnsSoaResolver();
 	private static long startTime;
 	private static int filesAnalyzed = 0;
 	private static int totalFiles;
 	private static int countSuccesses = 0;
 	private static ArrayList<String> filesFailed = new ArrayList<String>();
+	private static RunManifest manifest;
+	private static boolean recordFacts;
+	private static boolean sharded;
+	private static boolean scanExtra;
+	// Suffixes of the HAR files (plain or compressed with gzip)
+	public static final String HAR_SUFFIX = ".har";
+	public static final String COMPRESSED_HAR_SUFFIX = ".har.gz";
+	private static int totalTrackers = 0;
+	private static int filesReused = 0;
+	private static int filesResumed = 0;
+	private static StatsSnapshot snapshot;
+	private static File snapshotFile;
+	private static long lastCheckpoint;
+	// Interval between two checkpoints of the snapshot (in minutes)
+	private static final int CHECKPOINT_INTERVAL = 5;
+	private static FileWatchdog watchdog;
+	private static String workerId;
+	private static boolean reanalysis;
+	private static ScheduledExecutorService statusExecutor;
+	// Lock of the global statistics (the files may be analyzed by several threads)
+	private static final Object statsLock = new Object();
+	private static ResultSink resultSink;
+	// Index of the values of the third-party cookies (null if not built)
+	private static CookieIndex cookieIndex;
+	// Cache of the SOAs and of the image dimensions (off-heap, persistent with -cache)
+	private static ClassificationCache classificationCache;
+	// Size (MB) of the cache of initializeAnalysis
+	private static final int ANALYSIS_CACHE_SIZE = 64;
+	// Cache of the Ghostery verdicts (bounded: kept warm by the daemon)
+	private static final int CACHE_SIZE = 100000;
+	private static Map<String, String> cacheVerdicts;
+	// Images which could not be downloaded (not persistent: a failure may be transient)
+	private static Map<String, Boolean> failedImages;
+	// Metrics (see utils.Metrics), written in logs/metrics.csv every minute
+	private static final int METRICS_INTERVAL = 60;
+	private static final Metrics.Counter filesMetric = Metrics.counter("parser.files");
+	private static final Metrics.Counter entriesMetric = Metrics.counter("parser.entries");
+	private static final Metrics.Counter bytesReadMetric = Metrics.counter("parser.bytes_read");
+	private static final Metrics.Counter soaHitsMetric = Metrics.counter("parser.soa_cache.hits");
+	private static final Metrics.Counter soaMissesMetric = Metrics.counter("parser.soa_cache.misses");
+	private static final Metrics.Histogram dnsLookupMetric = Metrics.histogram("parser.dns_lookup");
+	private static final Metrics.Histogram imageProbeMetric = Metrics.histogram("parser.image_probe");
+	// Stages of the analysis of a file (one value per file)
+	private static final Metrics.Histogram harReadMetric = Metrics.histogram("parser.har_read");
+	private static final Metrics.Histogram ghosteryMetric = Metrics.histogram("parser.ghostery");
+	private static final Metrics.Histogram exportMetric = Metrics.histogram("parser.export");
+	private static final Metrics.Histogram mergeMetric = Metrics.histogram("parser.merge");
+	// Scanners of the URLs (one per thread: a scanner keeps a cache of the hosts)
+	private static final ThreadLocal<UrlScanner> scanners = new ThreadLocal<UrlScanner>() {
+		protected UrlScanner initialValue() {
+			return new UrlScanner();
+		}
+	};
 
-	private static Map<String, Integer> mimetypeSOA_allWebsites;
-	private static Map<String, Integer> mimetypeGhostery;
+	private static Counters mimetypeSOA_allWebsites;
+	private static Counters mimetypeGhostery;
+	// Live rankings (see writeTopK): bounded memory, approximate counts
+	private static final int TOP_K_CAPACITY = 1000;
+	private static final int TOP_K = 100;
+	private static SpaceSaving topTrackers;
+	private static SpaceSaving topHosts;
+	private static SpaceSaving topMimetypes;
 
 	/**
 	 * Starts the parser
@@ -79,9 +157,65 @@ public class Parser {
 	 * @param showDebug
 	 * @param trackers
 	 * @param ghostery
+	 * @param options the optional settings (incremental, facts, re-analysis, sharded layout, worker, merge)
+	 */
+	public static void launchParser(String directoryName, boolean showDebug, boolean trackers, String ghostery, ParserOptions options) {
+		final ArrayList<File> filesList = initialize(directoryName, showDebug, trackers, ghostery, options, true);
+
+		if(options.isMerge()) {
+			mergePartialResults(directory, ghosteryFile.equals("") ? -1 : snapshot.getBugsVersion());
+		}
+		else if(workerId != null) {
+			// Parse the files not claimed by the other workers
+			try {
+				WorkCoordinator coordinator = new WorkCoordinator(new File(directory+"/work"), workerId, options.getLeaseDuration());
+				// No partial results (discarded or deleted): the files marked as parsed by this worker are parsed again
+				if(manifest.size() == 0) {
+					int cleared = coordinator.clearDone();
+					if(cleared > 0) {
+						logMessage("Info: " + cleared + " files marked as parsed by this worker without partial results, parsed again", 2);
+					}
+				}
+				parseClaimedFiles(filesList, coordinator, reanalysis);
+				coordinator.close();
+			} catch (IOException ioe) {
+				logMessage("Error: cannot coordinate the work with the other workers.", 3);
+				if(debug) ioe.printStackTrace();
+				closeLogFile();
+				System.exit(1);
+			}
+		}
+		else {
+			// Parse each file
+			for (File file : filesList) {
+				analyzeFile(file, reanalysis);
+			}
+		}
+
+		finish();
+	}
+
+	/**
+	 * Initializes the parser: checks the directories, opens the log file, loads the Ghostery database,
+	 * the snapshot and the manifest. The files are analyzed with analyzeFile, then finish must be called.
+	 *
+	 * @param directoryName
+	 * @param showDebug
+	 * @param trackers
+	 * @param ghostery
+	 * @param options the optional settings
+	 * @param listFiles true to load the list of files of the directory (false if the files are received later, e.g. daemon)
+	 * @return the list of files to analyze (empty if listFiles is false)
 	 */
-	public static void launchParser(String directoryName, boolean showDebug, boolean trackers, String ghostery) {
+	public static ArrayList<File> initialize(String directoryName, boolean showDebug, boolean trackers, String ghostery, ParserOptions options, boolean listFiles) {
+		final boolean incremental = options.isIncremental();
+		final boolean merge = options.isMerge();
+		reanalysis = options.isReanalysis();
+		workerId = merge ? null : options.getWorkerId();
 		debug = showDebug;
+		sharded = options.isSharded();
+		scanExtra = options.isScanExtra();
+		recordFacts = options.isFacts() && !reanalysis && !merge;
 		directory = directoryName;
 		showTrackers = trackers;
 		startTime = System.nanoTime();
@@ -108,37 +242,78 @@ public class Parser {
 				System.out.println(time
 						+ filesAnalyzed + " files analyzed out of " + totalFiles + " files"
 						+ " (" + new DecimalFormat("#.#").format(percentageAccomplished) + "%).");
+				writeTopK();
 			}
 		};
-		ScheduledExecutorService executor = Executors.newScheduledThreadPool(1);
+		statusExecutor = Executors.newScheduledThreadPool(1);
 		// Note: initialDelay not equal to zero because the number of files is not already calculated.
-		executor.scheduleAtFixedRate(statusRunnable, 5, 5, TimeUnit.MINUTES);
+		statusExecutor.scheduleAtFixedRate(statusRunnable, 5, 5, TimeUnit.MINUTES);
 
 		// Show start message
-		String start = dateFormat.format(new Date()) + " - Launching parser...\n"
+		String start = dateFormat.get().format(new Date()) + " - Launching parser...\n"
 				+ "   directory: " + directory + "\n"
 				+ "   Ghostery file: " + ghosteryFile + "\n"
+				+ "   incremental: " + incremental + "\n"
+				+ "   facts: " + recordFacts + ", re-analysis: " + reanalysis + "\n"
+				+ "   sharded layout: " + sharded + ", output: " + options.getOutput() + "\n"
+				+ "   worker: " + ((workerId != null) ? workerId : "none") + ", merge: " + merge + "\n"
+				+ "   budget per file: " + ((options.getFileTimeout() > 0) ? options.getFileTimeout() + " sec." : "no time limit")
+				+ ", " + ((options.getFileMemory() > 0) ? options.getFileMemory() + " MB" : "no memory limit") + "\n"
+				+ "   cache: " + ((options.getCacheFile() != null) ? options.getCacheFile() : "in memory") + " (" + options.getCacheSize() + " MB)\n"
 				+ "   debug: " + debug;
 		System.out.println(start);
 
 		// Check the file system permissions
 		try {
-			if(!checkDirectories(directory)) {
-				System.out.println(dateFormat.format(new Date()) + " - Error: cannot create the required directories.\n"
+			// No confirmation in incremental, re-analysis, worker, merge and resume modes: the results are expected to be overwritten
+			if(!checkDirectories(directory, listFiles && !incremental && !reanalysis && workerId == null && !merge && !options.isResume())) {
+				System.out.println(dateFormat.get().format(new Date()) + " - Error: cannot create the required directories.\n"
 						+ "> Please check your file system permissions.");
 				System.exit(1);
 			}
-			logsFile = new BufferedWriter(new FileWriter(directory+"/logs/log_parser.txt", true));
-			logsFile.write(start);
-			logsFile.newLine();
+			logger = new AsyncLogger(new File(directory+"/logs/log_parser.txt"), "parser-log");
+			logger.logToFile(start);
 		} catch (IOException ioe) {
-			System.out.println(dateFormat.format(new Date()) + " - Error: cannot write the log file.\n"
+			System.out.println(dateFormat.get().format(new Date()) + " - Error: cannot write the log file.\n"
 					+ "> Please check your file system permissions.");
 			System.exit(1);
 		}
 
 		// Load the list of files
-		final ArrayList<File> filesList = loadFiles(directory);
+		// Note: the merge step does not read the files (only the partial results of the workers)
+		final ArrayList<File> filesList;
+		if(merge || !listFiles) {
+			filesList = new ArrayList<File>();
+			totalFiles = 0;
+		}
+		else {
+			filesList = reanalysis ? loadFactsFiles(directory) : loadFiles(directory);
+		}
+		if(recordFacts && !new File(directory+"/facts/").isDirectory() && !new File(directory+"/facts/").mkdirs()) {
+			logMessage("Error: cannot create the subdirectory named \"facts\".", 3);
+			closeLogFile();
+			System.exit(1);
+		}
+
+		// Output of the results of the websites
+		if(!options.getOutput().equals("csv")) {
+			try {
+				if(options.getOutput().equals("sqlite")) {
+					resultSink = new SqliteResultSink(directory, workerId);
+				}
+				else {
+					resultSink = new SegmentResultSink(directory, workerId);
+				}
+			} catch (IOException ioe) {
+				logMessage("Error: cannot open the output of the results (" + options.getOutput() + ").", 3);
+				if(debug) ioe.printStackTrace();
+				closeLogFile();
+				System.exit(1);
+			}
+		}
+		else {
+			resultSink = new CsvResultSink();
+		}
 
 		// Load the regex from Ghostery
 		if(!ghosteryFile.equals("")) {
@@ -151,52 +326,353 @@ public class Parser {
 			}
 			logMessage("Version of bugs: " + regexGhostery.getBugsVersion(), 2);
 			logMessage("Number of elements: " + regexGhostery.getRegex().size(), 2);
+			loadGhosteryHostFilter();
+		}
+		int bugsVersion = ghosteryFile.equals("") ? 0 : regexGhostery.getBugsVersion();
 
-			// Initialize the Map for the trackers statistics
-			trackersGhosteryStats = new HashMap<String, Integer>();
-			for(String trackerName : regexGhostery.getRegex().values()) {
-				trackersGhosteryStats.put(trackerName, 0);
+		// Initialize the snapshot of the statistics (or resume it)
+		// Note: the trackers found by the workers are merged even if the Ghostery file is not given
+		snapshotFile = new File(directory+"/logs/" + ((workerId != null) ? "snapshot_" + workerId + ".bin" : "snapshot.bin"));
+		if(options.isResume() && !merge && snapshotFile.isFile()) {
+			try {
+				snapshot = StatsSnapshot.read(snapshotFile);
+			} catch (IOException ioe) {
+				logMessage("Error: cannot read the snapshot " + snapshotFile.getName() + " (" + ioe.getMessage() + ").", 3);
+				if(debug) ioe.printStackTrace();
+				closeLogFile();
+				System.exit(1);
+			}
+			if(snapshot.getBugsVersion() != bugsVersion) {
+				logMessage("Error: the snapshot was produced with another version of the bugs (" + snapshot.getBugsVersion() + ").", 3);
+				closeLogFile();
+				System.exit(1);
 			}
+			logMessage("Info: resuming from the snapshot (" + snapshot.getProcessedFiles().size() + " files processed)", 2);
 		}
+		else {
+			snapshot = new StatsSnapshot(bugsVersion, !ghosteryFile.equals("") || merge);
+		}
+		trackersGhosteryStats = snapshot.getTrackersGhosteryStats();
+		mimetypeGhostery = snapshot.getMimetypesGhostery();
+		mimetypeSOA_allWebsites = snapshot.getMimetypesSOA();
+		websitesDetailedStats = snapshot.getWebsitesDetailedStats();
+		// Note: the rankings only cover the websites analyzed by this run (not the resumed ones),
+		// and the ranking of the hosts only the files parsed by this run (including the abandoned ones)
+		topTrackers = new SpaceSaving(TOP_K_CAPACITY);
+		topHosts = new SpaceSaving(TOP_K_CAPACITY);
+		topMimetypes = new SpaceSaving(TOP_K_CAPACITY);
+		lastCheckpoint = System.nanoTime();
 
-		// Initialize the Map for the websites statistics
-		websitesDetailedStats = new HashMap<String, int[]>();
-		mimetypeSOA_allWebsites = new HashMap<String, Integer>();
-		mimetypeGhostery = new HashMap<String, Integer>();
+		if(!ghosteryFile.equals("")) {
+			internTrackerNames();
+		}
 
-		// Initialize the Map of the SOA cache
-		cacheSOA = new HashMap<String, String>();
+		// Watchdog of the time and memory budgets of the files
+		if(options.getFileTimeout() > 0 || options.getFileMemory() > 0) {
+			watchdog = new FileWatchdog(options.getFileTimeout(), options.getFileMemory(), new File(directory+"/logs/quarantine.txt"));
+			if(!watchdog.isMemorySupported()) {
+				logMessage("Warning: the live heap cannot be measured by this JVM, the memory budget is ignored.", 3);
+			}
+		}
 
-		// Total number of trackers for the entire analysis
-		int totalTrackers = 0;
+		String cacheFile = options.getCacheFile();
+		if(cacheFile != null && workerId != null) {
+			// Note: a file of the cache is used by one process only
+			cacheFile = cacheFile + "_" + workerId;
+		}
+		createCaches(cacheFile, options.getCacheSize());
+		if(classificationCache.isLoaded()) {
+			logMessage("Info: " + classificationCache.size() + " entries loaded from the cache " + cacheFile, 2);
+		}
 
-		// Parse each file
-		for (File file : filesList) {
-			logMessage("Parsing " + file.getName() + "...", 1);
-			int websiteTrackers = parseHARfile(file);
-			if(websiteTrackers != -1) {
-				totalTrackers += websiteTrackers;
+		// Index of the values of the third-party cookies
+		// Note: the index is kept by the resumptions, the incremental runs and the runs of a worker (committed with the snapshot)
+		cookieIndex = null;
+		if(options.isCookieIndex() && !merge) {
+			File indexDirectory = new File(directory + "/" + CookieIndex.DIRECTORY + ((workerId != null) ? "_" + workerId : ""));
+			boolean keep = options.isResume() || incremental || workerId != null;
+			try {
+				cookieIndex = new CookieIndex(indexDirectory, keep);
+			} catch (IOException ioe) {
+				if(debug) ioe.printStackTrace();
+				if(keep) {
+					logMessage("Error: cannot read the index of the cookies (" + ioe.getMessage() + "), a new index is started.", 3);
+					try {
+						cookieIndex = new CookieIndex(indexDirectory, false);
+					} catch (IOException ioe2) {
+						if(debug) ioe2.printStackTrace();
+					}
+				}
+				if(cookieIndex == null) {
+					logMessage("Error: cannot create the index of the cookies, the cookies are not indexed.", 3);
+				}
 			}
-			else {
-				filesFailed.add(file.getName());
+			if(cookieIndex != null && cookieIndex.getSites() == 0 && snapshot.getProcessedFiles().size() > 0) {
+				logMessage("Warning: the " + snapshot.getProcessedFiles().size() + " files processed before the resumption are not in the index of the cookies.", 3);
 			}
-			filesAnalyzed++;
+		}
+
+		// Metrics
+		Metrics.gauge("parser.soa_cache.hit_ratio", new Metrics.Gauge() {
+			public double getValue() {
+				long lookups = soaHitsMetric.get() + soaMissesMetric.get();
+				return (lookups == 0) ? 0 : (double) soaHitsMetric.get() / lookups;
+			}
+		});
+		Metrics.gauge("parser.soa_cache.size", new Metrics.Gauge() {
+			public double getValue() {
+				return classificationCache.size();
+			}
+		});
+		Metrics.gauge("parser.soa_cache.evictions", new Metrics.Gauge() {
+			public double getValue() {
+				return classificationCache.getEvictions();
+			}
+		});
+		Metrics.gauge("parser.ghostery.skip_rate", new Metrics.Gauge() {
+			public double getValue() {
+				long urls = Metrics.counter("parser.ghostery.urls").get();
+				return (urls == 0) ? 0 : (double) Metrics.counter("parser.ghostery.skips").get() / urls;
+			}
+		});
+		Metrics.start(new File(directory+"/logs/" + ((workerId != null) ? "metrics_" + workerId : "metrics") + ".csv"), METRICS_INTERVAL);
+
+		// Load the manifest of the previous runs
+		// Note: a worker records its results in its own manifest, read by the merge step
+		if(workerId != null) {
+			File partialFile = new File(directory+"/logs/partial_" + workerId + ".txt");
+			// The results of a previous parsing cannot be mixed with the results of a re-analysis
+			if(reanalysis && partialFile.exists() && !partialFile.delete()) {
+				logMessage("Error: cannot delete the partial results " + partialFile.getName() + ".", 3);
+				closeLogFile();
+				System.exit(1);
+			}
+			manifest = openManifest(partialFile, bugsVersion);
+		}
+		else if(incremental && !reanalysis && !merge) {
+			manifest = openManifest(new File(directory+"/logs/manifest_parser.txt"), bugsVersion);
+		}
+
+		return filesList;
+	}
+
+	/**
+	 * Initializes the analysis only, without a run: no log file, manifest, snapshot or metrics file.
+	 * analyzeEntries, checkRegexGhostery, resolveSOA and exportTrackers can then be called directly
+	 * (e.g. by the benchmarks).
+	 *
+	 * @param directoryName the directory of the results (the CSV files are written in its subdirectory "results")
+	 * @param ghostery the Ghostery file ("" for none)
+	 * @param sink the output of the results of the websites
+	 * @param resolver the resolver of the SOA records
+	 * @throws IOException if the Ghostery file cannot be loaded
+	 */
+	public static void initializeAnalysis(String directoryName, String ghostery, ResultSink sink, SoaResolver resolver) throws IOException {
+		directory = directoryName;
+		ghosteryFile = ghostery;
+		resultSink = sink;
+		soaResolver = resolver;
+		if(!ghosteryFile.equals("")) {
+			regexGhostery = new RegexGhostery(debug, ghosteryFile);
+			if(!regexGhostery.isSuccess()) {
+				throw new IOException("Cannot load the Ghostery file " + ghosteryFile);
+			}
+			ghosteryHostFilter = new GhosteryHostFilter(regexGhostery);
+			internTrackerNames();
+		}
+		createCaches(null, ANALYSIS_CACHE_SIZE);
+	}
+
+	/**
+	 * Creates the caches of the SOA, of the image dimensions, of the failed images and of the Ghostery verdicts.
+	 * If the cache of the SOA and of the image dimensions cannot be opened, an empty cache is kept in memory.
+	 *
+	 * @param cacheFile the file of the cache of the SOA and of the image dimensions, or null (in memory)
+	 * @param cacheSize the size of this cache (MB)
+	 */
+	private static void createCaches(String cacheFile, int cacheSize) {
+		closeClassificationCache();
+		long capacity = cacheSize * 1024L * 1024L;
+		try {
+			classificationCache = new ClassificationCache((cacheFile != null) ? new File(cacheFile) : null, capacity);
+		} catch (IOException ioe) {
+			logMessage("Error: cannot open the cache " + cacheFile + " (" + ioe.getMessage() + "), the cache is kept in memory.", 3);
+			if(debug) ioe.printStackTrace();
+			try {
+				classificationCache = new ClassificationCache(null, capacity);
+			} catch (IOException ioe2) {
+				throw new IllegalStateException(ioe2);
+			}
+		}
+		cacheVerdicts = Collections.synchronizedMap(new LruCache<String, String>(CACHE_SIZE));
+		failedImages = Collections.synchronizedMap(new LruCache<String, Boolean>(CACHE_SIZE));
+	}
+
+	/**
+	 * Writes the cache of the SOA and of the image dimensions in its file and closes it.
+	 * Note: the mapping remains valid (a file abandoned by the watchdog may still use the cache).
+	 */
+	private static void closeClassificationCache() {
+		if(classificationCache == null) {
+			return;
+		}
+		try {
+			classificationCache.close();
+		} catch (IOException ioe) {
+			logMessage("Error: cannot close the cache.", 3);
+			if(debug) ioe.printStackTrace();
+		}
+	}
+
+	/**
+	 * Merges the runs of the index of the cookies (and the indexes of the workers) in its files.
+	 */
+	private static void closeCookieIndex() {
+		if(cookieIndex == null) {
+			return;
+		}
+		try {
+			cookieIndex.close();
+			logMessage("Info: index of the cookies: " + cookieIndex.getPostings() + " cookies, " + cookieIndex.getSharedValues()
+					+ " values shared by several cookies (see parser.CookieIndex)", 2);
+		} catch (IOException ioe) {
+			logMessage("Error: cannot write the index of the cookies.", 3);
+			if(debug) ioe.printStackTrace();
+		}
+		cookieIndex = null;
+	}
+
+	/**
+	 * @return the file of the hosts never matched by the patterns of the current version of the bugs (one per worker)
+	 */
+	private static File getGhosteryHostFilterFile() {
+		return new File(directory+"/logs/ghostery_hosts_" + regexGhostery.getBugsVersion() + ((workerId != null) ? "_" + workerId : "") + ".bloom");
+	}
+
+	/**
+	 * Creates the filter of the hosts never matched by Ghostery, with the hosts of the previous runs of all the workers
+	 * (same version and same patterns of the bugs).
+	 */
+	private static void loadGhosteryHostFilter() {
+		ghosteryHostFilter = new GhosteryHostFilter(regexGhostery);
+		logMessage("Info: " + ghosteryHostFilter.getAlwaysTested() + " patterns of Ghostery are tested for all the hosts", 2);
+		final String prefix = "ghostery_hosts_" + regexGhostery.getBugsVersion();
+		File[] files = new File(directory+"/logs").listFiles(new FilenameFilter() {
+			public boolean accept(File dir, String name) {
+				return name.equals(prefix + ".bloom") || (name.startsWith(prefix + "_") && name.endsWith(".bloom"));
+			}
+		});
+		if(files == null) {
+			return;
+		}
+		for(File file : files) {
+			try {
+				if(!ghosteryHostFilter.load(file)) {
+					logMessage("Warning: " + file.getName() + " was written for other patterns of Ghostery, it is ignored.", 3);
+				}
+			} catch (IOException ioe) {
+				logMessage("Error: cannot read " + file.getName() + ".", 3);
+				if(debug) ioe.printStackTrace();
+			}
+		}
+		if(ghosteryHostFilter.getSafeHosts() > 0) {
+			logMessage("Info: " + ghosteryHostFilter.getSafeHosts() + " hosts never matched by Ghostery loaded from " + files.length + " file(s)", 2);
+		}
+	}
+
+	/**
+	 * Writes the filter of the hosts never matched by Ghostery and logs the rate of the URLs skipped.
+	 */
+	private static void saveGhosteryHostFilter() {
+		if(ghosteryHostFilter == null) {
+			return;
+		}
+		long urls = Metrics.counter("parser.ghostery.urls").get();
+		if(urls > 0) {
+			logMessage("Info: Ghostery: " + urls + " URLs checked, " + formatRate(Metrics.counter("parser.ghostery.safe_host_urls").get(), urls)
+					+ " of safe hosts, " + formatRate(Metrics.counter("parser.ghostery.skips").get(), urls) + " skipped ("
+					+ ghosteryHostFilter.getSafeHosts() + " safe hosts in " + ghosteryHostFilter.getFilters() + " filter(s))", 2);
+		}
+		try {
+			ghosteryHostFilter.save(getGhosteryHostFilterFile());
+		} catch (IOException ioe) {
+			logMessage("Error: cannot write " + getGhosteryHostFilterFile().getName() + ".", 3);
+			if(debug) ioe.printStackTrace();
+		}
+	}
+
+	private static String formatRate(long count, long total) {
+		return new DecimalFormat("#.#").format(100.0 * count / total) + "%";
+	}
+
+	/**
+	 * Interns the names of the trackers (dense ids of the counters).
+	 */
+	private static void internTrackerNames() {
+		for(String trackerName : regexGhostery.getRegex().values()) {
+			WebsiteResults.TRACKERS.getId(trackerName);
+		}
+	}
+
+	/**
+	 * Finishes the parser: closes the manifest, writes the final snapshot and the statistics,
+	 * shows the summary and closes the log file.
+	 */
+	public static void finish() {
+		if(manifest != null) {
+			try {
+				manifest.close();
+			} catch (IOException ioe) {
+				logMessage("Error: cannot close the manifest.", 3);
+				if(debug) ioe.printStackTrace();
+			}
+			logMessage("Info: " + filesReused + " unchanged files reused from the manifest", 2);
+		}
+		if(filesResumed > 0) {
+			logMessage("Info: " + filesResumed + " files already processed before the resumption", 2);
+		}
+
+		if(watchdog != null) {
+			watchdog.close();
+		}
+
+		// Final snapshot
+		writeSnapshot();
+		saveGhosteryHostFilter();
+		closeCookieIndex();
+		closeClassificationCache();
+		writeTopK();
+		Metrics.dump();
+		try {
+			// Note: the statistics of the workers are written by the merge step (in CSV files)
+			if(resultSink instanceof SqliteResultSink && workerId == null) {
+				((SqliteResultSink) resultSink).writeStatistics(snapshot);
+			}
+			resultSink.close();
+		} catch (IOException ioe) {
+			logMessage("Error: the results of the websites were not closed successfully.", 3);
+			if(debug) ioe.printStackTrace();
 		}
 
 		logMessage("Info: the parsing of the files is done!", 1);
 		logMessage("Total number of saved elements: " + totalTrackers, 2);
 
 		// Stats
-		computeStats(directory);
+		if(workerId != null) {
+			logMessage("Info: the statistics of the workers are computed by the parser in merge mode (-merge).", 2);
+		}
+		else {
+			computeStats(directory, snapshot);
+		}
 
 		// Summary
 		logMessage("", 0);
 		logMessage("----- Summary -----", 0);
-		if(filesList.size() > 1) {
-			logMessage("> " + filesList.size() + " files", 0);
+		if(totalFiles > 1) {
+			logMessage("> " + totalFiles + " files", 0);
 		}
 		else {
-			logMessage("> " + filesList.size() + " file", 0);
+			logMessage("> " + totalFiles + " file", 0);
 		}
 		if(filesFailed.size() > 1) {
 			logMessage(filesFailed.size() + " fails", 0);
@@ -234,18 +710,460 @@ public class Parser {
 		else {
 			time = elapsedTimeSeconds + " sec.";
 		}
-		logMessage("Total time: " + time, 0);
-		executor.shutdown();
-		closeLogFile();
+		logMessage("Total time: " + time, 0);
+		statusExecutor.shutdown();
+		closeLogFile();
+	}
+
+	/**
+	 * Opens (or creates) a manifest. Exits if the manifest cannot be loaded.
+	 *
+	 * @param file the manifest file
+	 * @param bugsVersion the version of the Ghostery bugs used for this run (0 if none)
+	 * @return the manifest
+	 */
+	private static RunManifest openManifest(File file, int bugsVersion) {
+		try {
+			RunManifest runManifest = new RunManifest(file, bugsVersion);
+			logMessage("Info: " + runManifest.size() + " files recorded in the manifest " + file.getName(), 2);
+			return runManifest;
+		} catch (IOException ioe) {
+			logMessage("Error: cannot load the manifest " + file.getName() + ".", 3);
+			if(debug) ioe.printStackTrace();
+			closeLogFile();
+			System.exit(1);
+			return null;
+		}
+	}
+
+	/**
+	 * Analyzes a file: reuses its results from the manifest if it did not change,
+	 * otherwise parses it (or re-analyzes its facts). Merges the results in the global statistics.
+	 * Thread-safe: several files can be analyzed at the same time (only the merge is serialized).
+	 *
+	 * @param file the HAR file (or the facts file in re-analysis mode)
+	 * @param reanalysis true if the file is a facts file
+	 * @return true if the file has been analyzed successfully, false otherwise
+	 */
+	public static boolean analyzeFile(final File file, final boolean reanalysis) {
+		WebsiteResults results;
+		synchronized(statsLock) {
+			// Skip the files processed before the resumption (already in the snapshot)
+			// Note: a file written again since then (other size or date) is analyzed again
+			if(snapshot.getProcessedFiles().contains(getFileKey(file))) {
+				filesResumed++;
+				countSuccesses++;
+				filesAnalyzed++;
+				return true;
+			}
+
+			// Reuse the results of the previous runs if the file did not change
+			results = (manifest != null && !reanalysis) ? manifest.lookup(file) : null;
+			// Note: the cookies are not in the manifest, a website which is not in the index of the cookies is parsed again
+			if(results != null && cookieIndex != null && !cookieIndex.contains(results.getWebsite())) {
+				results = null;
+			}
+			if(results != null) {
+				filesReused++;
+				countSuccesses++;
+			}
+		}
+		String failure = null;
+		boolean reused = (results != null);
+		if(!reused) {
+			logMessage((reanalysis ? "Re-analyzing " : "Parsing ") + file.getName() + "...", 1);
+			if(watchdog != null) {
+				// Analyze the file within the time and memory budgets
+				try {
+					results = watchdog.run(new Callable<WebsiteResults>() {
+						public WebsiteResults call() {
+							return reanalysis ? reanalyzeFactsFile(file) : parseHARfile(file);
+						}
+					});
+				} catch (FileWatchdog.BudgetExceededException bee) {
+					failure = bee.getMessage();
+					logMessage("Error: " + failure + ", the file is quarantined.", 3);
+					try {
+						watchdog.quarantine(file, failure);
+					} catch (IOException ioe) {
+						logMessage("Error: cannot write the quarantine list.", 3);
+						if(debug) ioe.printStackTrace();
+					}
+				}
+			}
+			else {
+				results = reanalysis ? reanalyzeFactsFile(file) : parseHARfile(file);
+			}
+		}
+
+		// Merge the results in the global statistics (the files may be analyzed by several threads)
+		synchronized(statsLock) {
+			if(!reused && results != null) {
+				countSuccesses++;
+				if(manifest != null) {
+					try {
+						manifest.record(file, results);
+					} catch (IOException ioe) {
+						logMessage("Error: cannot write the manifest.", 3);
+						if(debug) ioe.printStackTrace();
+					}
+				}
+			}
+			addResults(getFileKey(file), file.getName(), results, failure, reused);
+		}
+		return results != null;
+	}
+
+	/**
+	 * Gets the key of a file in the list of processed files: its path, size and last modification time.
+	 *
+	 * @param path the path of the file
+	 * @param length the size of the file
+	 * @param lastModified the last modification time of the file
+	 * @return the key
+	 */
+	public static String getFileKey(String path, long length, long lastModified) {
+		return path + "|" + length + "|" + lastModified;
+	}
+
+	/**
+	 * @return the key of a file in the list of processed files
+	 */
+	public static String getFileKey(File file) {
+		return getFileKey(file.getPath(), file.length(), file.lastModified());
+	}
+
+	/**
+	 * Analyzes the entries of a page recorded by the crawler (recording proxy), without HAR file.
+	 * Merges the results in the global statistics. Thread-safe (see analyzeFile).
+	 * A page is skipped if it was analyzed by the run being resumed (same crawl and same website):
+	 * the pages of a website visited again by a later crawl are analyzed.
+	 *
+	 * @param crawlId the id of the crawl which recorded the page
+	 * @param website the name of the website (host of the page)
+	 * @param entries the entries of the page
+	 * @return true if the page has been analyzed successfully, false otherwise
+	 */
+	public static boolean analyzePage(String crawlId, final String website, final List<EntryFacts> entries) {
+		// Key of the page in the list of processed files (no file)
+		String key = "page:" + crawlId + ":" + website;
+		synchronized(statsLock) {
+			if(snapshot.getProcessedFiles().contains(key)) {
+				filesResumed++;
+				countSuccesses++;
+				filesAnalyzed++;
+				return true;
+			}
+		}
+		logMessage("Analyzing the page of " + website + "...", 1);
+		WebsiteResults results = null;
+		String failure = null;
+		Callable<WebsiteResults> task = new Callable<WebsiteResults>() {
+			public WebsiteResults call() {
+				try {
+					return analyzeEntries(website, entries);
+				} catch (Exception e) {
+					logMessage("Error: cannot analyze the page.", 3);
+					if(debug) e.printStackTrace();
+					return null;
+				}
+			}
+		};
+		if(watchdog != null) {
+			try {
+				results = watchdog.run(task);
+			} catch (FileWatchdog.BudgetExceededException bee) {
+				failure = bee.getMessage();
+				logMessage("Error: " + failure + ", the page is skipped.", 3);
+			}
+		}
+		else {
+			try {
+				results = task.call();
+			} catch (Exception e) {
+				// Never thrown: the errors are handled by the task
+			}
+		}
+
+		synchronized(statsLock) {
+			if(results != null) {
+				countSuccesses++;
+			}
+			addResults(key, website, results, failure, false);
+		}
+		return results != null;
+	}
+
+	/**
+	 * Adds the results of a file (or of a page) to the global statistics and writes a checkpoint if needed.
+	 * Must be called while holding statsLock.
+	 *
+	 * @param key the key of the file in the list of processed files (see getFileKey)
+	 * @param name the name of the file, for the list of failed files
+	 * @param results the results, or null if the analysis failed
+	 * @param failure the reason of the failure (may be null)
+	 * @param reused true if the results are reused from the manifest (their cookies are already in the index)
+	 */
+	private static void addResults(String key, String name, WebsiteResults results, String failure, boolean reused) {
+		if(results != null) {
+			long mergeStart = System.nanoTime();
+			mergeResults(results);
+			mergeMetric.record(System.nanoTime() - mergeStart);
+			if(cookieIndex != null && !reused) {
+				try {
+					cookieIndex.addWebsite(results.getWebsite(), results.getCookies());
+				} catch (IOException ioe) {
+					logMessage("Error: cannot write the index of the cookies, the cookies are not indexed anymore.", 3);
+					if(debug) ioe.printStackTrace();
+					cookieIndex = null;
+				}
+			}
+			totalTrackers += results.getTotalTrackers();
+			snapshot.getProcessedFiles().add(key);
+		}
+		else {
+			filesFailed.add((failure != null) ? name + ": " + failure : name);
+		}
+		filesAnalyzed++;
+		filesMetric.increment();
+
+		// Checkpoint
+		if(System.nanoTime() - lastCheckpoint > TimeUnit.NANOSECONDS.convert(CHECKPOINT_INTERVAL, TimeUnit.MINUTES)) {
+			writeSnapshot();
+		}
+	}
+
+	/**
+	 * Counts a file received after the initialization (e.g. by the daemon), for the status.
+	 */
+	public static void addFileToAnalyze() {
+		synchronized(statsLock) {
+			totalFiles++;
+		}
+	}
+
+	/**
+	 * Gets the progress of the parser (e.g. for the combined progress of the crawler and the parser).
+	 *
+	 * @return the progress (one line)
+	 */
+	public static String getProgress() {
+		synchronized(statsLock) {
+			return filesAnalyzed + " files analyzed out of " + totalFiles + " (" + filesFailed.size() + " failed)";
+		}
+	}
+
+	/**
+	 * Gets the current status of the parser: number of files, caches and top trackers.
+	 *
+	 * @param topTrackers the number of trackers to show
+	 * @return the status (plain text)
+	 */
+	public static String getStatus(int topTrackers) {
+		synchronized(statsLock) {
+			return buildStatus(topTrackers);
+		}
+	}
+
+	private static String buildStatus(int topTrackers) {
+		StringBuilder status = new StringBuilder();
+		status.append("files: ").append(totalFiles).append("\n");
+		status.append("analyzed: ").append(filesAnalyzed).append("\n");
+		status.append("successes: ").append(countSuccesses).append("\n");
+		status.append("fails: ").append(filesFailed.size()).append("\n");
+		status.append("websites: ").append(websitesDetailedStats.size()).append("\n");
+		status.append("elements saved: ").append(totalTrackers).append("\n");
+		status.append("cache SOA and images: ").append(classificationCache.size())
+				.append(" (evictions: ").append(classificationCache.getEvictions()).append(")")
+				.append(", cache verdicts: ").append(cacheVerdicts.size()).append("\n");
+		if(ghosteryHostFilter != null) {
+			status.append("Ghostery safe hosts: ").append(ghosteryHostFilter.getSafeHosts())
+					.append(", URLs skipped: ").append(Metrics.counter("parser.ghostery.skips").get())
+					.append(" out of ").append(Metrics.counter("parser.ghostery.urls").get()).append("\n");
+		}
+		if(trackersGhosteryStats != null) {
+			status.append("top trackers:\n");
+			int count = 0;
+			for(int id : trackersGhosteryStats.getSortedIds()) {
+				if(count++ >= topTrackers) {
+					break;
+				}
+				status.append(WebsiteResults.TRACKERS.getName(id)).append(",").append(trackersGhosteryStats.get(id)).append("\n");
+			}
+		}
+		return status.toString();
+	}
+
+	/**
+	 * Writes the snapshot and the statistics files of the files analyzed so far.
+	 */
+	public static void writeReports() {
+		synchronized(statsLock) {
+			writeSnapshot();
+			computeStats(directory, snapshot);
+		}
+	}
+
+	/**
+	 * Writes the snapshot of the statistics.
+	 * Called periodically (checkpoint) and at the end of the parsing.
+	 */
+	private static void writeSnapshot() {
+		try {
+			// The results of the websites in the snapshot must be durable
+			if(resultSink != null) {
+				resultSink.flush();
+			}
+			// The cache is written with the snapshot (a resumed run starts with a warm cache)
+			classificationCache.flush();
+			// The websites of the snapshot must be in the index of the cookies of a resumed run
+			if(cookieIndex != null) {
+				cookieIndex.commit();
+			}
+			snapshot.write(snapshotFile);
+			logMessage("Info: snapshot written (" + snapshot.getProcessedFiles().size() + " files)", 2);
+		} catch (IOException ioe) {
+			logMessage("Error: cannot write the snapshot " + snapshotFile.getName() + ".", 3);
+			if(debug) ioe.printStackTrace();
+		}
+		lastCheckpoint = System.nanoTime();
+	}
+
+	/**
+	 * Analyzes the files claimed by this worker until all the files are done.
+	 * The files are visited in an order specific to the worker to limit the contention on the leases.
+	 * When the remaining files are all leased by other workers, waits for them to be done
+	 * (or for their leases to expire).
+	 *
+	 * @param filesList the list of files
+	 * @param coordinator the coordinator of the workers
+	 * @param reanalysis true if the files are facts files
+	 * @throws IOException if a file cannot be marked as done
+	 */
+	private static void parseClaimedFiles(ArrayList<File> filesList, WorkCoordinator coordinator, boolean reanalysis) throws IOException {
+		List<File> remainingFiles = new ArrayList<File>(filesList);
+		Collections.shuffle(remainingFiles, new Random(coordinator.getWorkerId().hashCode()));
+		while(!remainingFiles.isEmpty()) {
+			boolean claimed = false;
+			Iterator<File> iterator = remainingFiles.iterator();
+			while(iterator.hasNext()) {
+				File file = iterator.next();
+				String key = file.getName();
+				if(coordinator.isDone(key)) {
+					iterator.remove();
+				}
+				else if(coordinator.claim(key)) {
+					claimed = true;
+					coordinator.complete(key, analyzeFile(file, reanalysis));
+					iterator.remove();
+				}
+			}
+			if(!claimed && !remainingFiles.isEmpty()) {
+				logMessage("Info: " + remainingFiles.size() + " files leased by other workers, waiting...", 2);
+				try {
+					Thread.sleep(TimeUnit.MILLISECONDS.convert(10, TimeUnit.SECONDS));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Merges the partial results of the workers ("logs/partial_<worker>.txt").
+	 * A file parsed by several workers (expired lease) is counted once.
+	 *
+	 * @param directory the directory of the parser
+	 * @param bugsVersion the expected version of the Ghostery bugs, or -1 to accept any version
+	 */
+	private static void mergePartialResults(String directory, int bugsVersion) {
+		File[] partialFiles = new File(directory+"/logs/").listFiles(new FilenameFilter() {
+			public boolean accept(File file, String name) {
+				return name.startsWith("partial_") && name.endsWith(".txt");
+			}
+		});
+		if(partialFiles == null || partialFiles.length == 0) {
+			logMessage("Error: no partial results found in the directory \"logs\".", 3);
+			closeLogFile();
+			System.exit(1);
+		}
+		Arrays.sort(partialFiles);
+
+		Map<String, WebsiteResults> results = new LinkedHashMap<String, WebsiteResults>();
+		for(File partialFile : partialFiles) {
+			logMessage("Merging " + partialFile.getName() + "...", 1);
+			try {
+				results.putAll(RunManifest.readResults(partialFile, bugsVersion));
+			} catch (IOException ioe) {
+				logMessage("Error: cannot read the partial results " + partialFile.getName() + ".", 3);
+				if(debug) ioe.printStackTrace();
+				closeLogFile();
+				System.exit(1);
+			}
+		}
+		totalFiles = results.size();
+		snapshot.getProcessedFiles().addAll(results.keySet());
+		for(WebsiteResults websiteResults : results.values()) {
+			mergeResults(websiteResults);
+			totalTrackers += websiteResults.getTotalTrackers();
+			countSuccesses++;
+			filesAnalyzed++;
+		}
+		logMessage("Info: " + results.size() + " files merged from " + partialFiles.length + " workers", 2);
+		mergeCookieIndexes(directory);
+		try {
+			int done = WorkCoordinator.countDone(new File(directory+"/work"));
+			if(done > results.size()) {
+				logMessage("Warning: " + (done - results.size()) + " files marked as parsed in \"work/done\" have no partial results"
+						+ " (discarded or deleted): run their workers again, or delete \"work/done\" to parse them again.", 3);
+			}
+		} catch (IOException ioe) {
+			logMessage("Error: cannot read the markers of the files parsed (\"work/done\").", 3);
+			if(debug) ioe.printStackTrace();
+		}
+	}
+
+	/**
+	 * Combines the indexes of the cookies of the workers (if any) in the index of the directory, closed by finish.
+	 */
+	private static void mergeCookieIndexes(String directory) {
+		final File mergedDirectory = new File(directory + "/" + CookieIndex.DIRECTORY);
+		File[] indexDirectories = mergedDirectory.getParentFile().listFiles(new FilenameFilter() {
+			public boolean accept(File parent, String name) {
+				return name.startsWith(mergedDirectory.getName() + "_") && new File(parent, name).isDirectory();
+			}
+		});
+		if(indexDirectories == null || indexDirectories.length == 0) {
+			return;
+		}
+		Arrays.sort(indexDirectories);
+		try {
+			cookieIndex = new CookieIndex(mergedDirectory, false);
+		} catch (IOException ioe) {
+			logMessage("Error: cannot create the index of the cookies, the indexes of the workers are not merged.", 3);
+			if(debug) ioe.printStackTrace();
+			return;
+		}
+		for(File indexDirectory : indexDirectories) {
+			try {
+				cookieIndex.addIndex(indexDirectory);
+			} catch (IOException ioe) {
+				logMessage("Error: cannot merge the index of the cookies " + indexDirectory.getName() + " (" + ioe.getMessage() + ").", 3);
+				if(debug) ioe.printStackTrace();
+			}
+		}
+		logMessage("Info: " + indexDirectories.length + " indexes of the cookies merged (" + cookieIndex.getSites() + " websites)", 2);
 	}
 
 	/**
 	 * Checks if the directories exist and creates them if needed
 	 *
 	 * @param directoryName the directory to check
+	 * @param confirm ask for a confirmation before overwriting the existing results
 	 * @return true if the directories exists (or have been created), false otherwise
 	 */
-	public static boolean checkDirectories(String directoryName) {
+	public static boolean checkDirectories(String directoryName, boolean confirm) {
 		boolean directoriesOK = true;
 
 		File directory = new File(directoryName);
@@ -299,6 +1217,9 @@ public class Parser {
 					directoriesOK = false;
 				}
 			}
+			else if(!confirm) {
+				System.out.println("Info: the results will be saved in the subdirectory named \"results\".");
+			}
 			else {
 				System.out.println("Info: the results will be saved in the subdirectory named \"results\".\n"
 						+ "BE CAREFUL THAT FILES MAY BE OVERWRITTEN!");
@@ -316,7 +1237,10 @@ public class Parser {
 	}
 
 	/**
-	 * Loads the files from a directory
+	 * Loads the files from a directory.
+	 * If the crawler wrote a manifest of the HAR files, the files are read from the manifest
+	 * instead of listing the directory (the directory is also listed with -scanextra).
+	 * Note: the files of the manifest are not checked here, a file deleted since the crawl fails at its parsing.
 	 *
 	 * @param directoryName: the directory containing the files to load
 	 * @return an ArrayList<File> containing all the files of the directory to analyze
@@ -330,49 +1254,80 @@ public class Parser {
 			System.exit(1);
 		}
 
-		//File[] files = directory.listFiles();
-		File[] files = directory.listFiles(new FilenameFilter() {
-			public boolean accept(File file, String name) {
-				return name.endsWith(".har");
-			}
-		});
 		filesLatest = new HashMap<String, Integer>();
+		filesSuffix = new HashMap<String, String>();
 		ArrayList<File> filesList = new ArrayList<File>();
 
-		for (File file : files) {
-			if(file.isFile()) {
-				String website = file.getName();
-				// Remove ".har" from the filename
-				website = website.substring(0, website.length()-4);
-				// Get the current version of the file
-				String version = website.substring(website.lastIndexOf("-")+1, website.length());
-				int currentVersion;
-				try {
-					currentVersion = Integer.parseInt(version);
-					website = website.substring(0, website.lastIndexOf("-"));
-				} catch (NumberFormatException nfe) {
-					currentVersion = 0;
-				}
-				// Update the map with the latest version
-				if(!filesLatest.containsKey(website)) {
-					filesLatest.put(website, currentVersion);
+		boolean manifestRead = false;
+		if(HarManifest.exists(directoryName)) {
+			try {
+				ArrayList<HarManifest.Visit> visits = HarManifest.read(directoryName);
+				for(HarManifest.Visit visit : visits) {
+					String suffix = getHarSuffix(visit.getHarFile());
+					if(suffix != null) {
+						String website = new File(visit.getHarFile()).getName();
+						// Remove ".har" (or ".har.gz") and the version from the filename
+						website = website.substring(0, website.length() - suffix.length());
+						if(visit.getVersion() > 0) {
+							website = website.substring(0, website.lastIndexOf("-"));
+						}
+						updateLatestVersion(website, visit.getVersion(), suffix);
+					}
 				}
-				else {
-					int latestVersion = filesLatest.get(website);
-					if(currentVersion > latestVersion) {
-						filesLatest.put(website, currentVersion);
+				manifestRead = true;
+				logMessage("Info: " + visits.size() + " visits read from the manifest of the crawler", 2);
+			} catch (IOException ioe) {
+				logMessage("Error: cannot read the manifest of the crawler, the directory will be listed.", 3);
+				if(debug) ioe.printStackTrace();
+				filesLatest.clear();
+				filesSuffix.clear();
+			}
+		}
+
+		// No manifest (or -scanextra: the files which are not in the manifest, e.g. copied from another crawl)
+		if(!manifestRead || scanExtra) {
+			ArrayList<File> files = new ArrayList<File>();
+			if(sharded) {
+				files = ShardedLayout.listFiles(directory, HAR_SUFFIX);
+				files.addAll(ShardedLayout.listFiles(directory, COMPRESSED_HAR_SUFFIX));
+			}
+			else {
+				//File[] files = directory.listFiles();
+				Collections.addAll(files, directory.listFiles(new FilenameFilter() {
+					public boolean accept(File file, String name) {
+						return getHarSuffix(name) != null;
+					}
+				}));
+			}
+
+			for (File file : files) {
+				if(file.isFile()) {
+					String website = file.getName();
+					String suffix = getHarSuffix(website);
+					// Remove ".har" (or ".har.gz") from the filename
+					website = website.substring(0, website.length() - suffix.length());
+					// Get the current version of the file
+					String version = website.substring(website.lastIndexOf("-")+1, website.length());
+					int currentVersion;
+					try {
+						currentVersion = Integer.parseInt(version);
+						website = website.substring(0, website.lastIndexOf("-"));
+					} catch (NumberFormatException nfe) {
+						currentVersion = 0;
 					}
+					updateLatestVersion(website, currentVersion, suffix);
 				}
 			}
 		}
 
 		for (String website : filesLatest.keySet()) {
 			int version = filesLatest.get(website);
+			String suffix = filesSuffix.get(website);
 			if(version == 0) {
-				filesList.add(new File(directoryName + "/" + website + ".har"));
+				filesList.add(ShardedLayout.getFile(directory, website, website + suffix, sharded));
 			}
 			else {
-				filesList.add(new File(directoryName + "/"+ website + "-" + version + ".har"));
+				filesList.add(ShardedLayout.getFile(directory, website, website + "-" + version + suffix, sharded));
 			}
 		}
 
@@ -398,411 +1353,679 @@ public class Parser {
 		return filesList;
 	}
 
+	/**
+	 * Updates the Map filesLatest with the version of a file if it is the latest one.
+	 *
+	 * @param website the name of the website
+	 * @param currentVersion the version of the file
+	 * @param suffix the suffix of the file (".har" or ".har.gz")
+	 */
+	private static void updateLatestVersion(String website, int currentVersion, String suffix) {
+		if(!filesLatest.containsKey(website)) {
+			filesLatest.put(website, currentVersion);
+			filesSuffix.put(website, suffix);
+		}
+		else {
+			int latestVersion = filesLatest.get(website);
+			if(currentVersion > latestVersion) {
+				filesLatest.put(website, currentVersion);
+				filesSuffix.put(website, suffix);
+			}
+		}
+	}
+
+	/**
+	 * Loads the facts files saved by a previous run (re-analysis mode)
+	 *
+	 * @param directoryName the directory containing the subdirectory "facts"
+	 * @return an ArrayList<File> containing all the facts files, sorted by alphabetical order
+	 */
+	public static ArrayList<File> loadFactsFiles(String directoryName) {
+		logMessage("Loading the facts files from directory \"" + directoryName + "/facts\"... ", 1);
+		ArrayList<File> filesList = new ArrayList<File>();
+		if(sharded) {
+			filesList = ShardedLayout.listFiles(new File(directoryName + "/facts/"), ".facts");
+		}
+		else {
+			File[] files = new File(directoryName + "/facts/").listFiles(new FilenameFilter() {
+				public boolean accept(File file, String name) {
+					return name.endsWith(".facts");
+				}
+			});
+			if(files != null) {
+				Collections.addAll(filesList, files);
+			}
+		}
+		if(filesList.size() < 1) {
+			logMessage("Error: no facts file found! Run the parser with -facts first.", 3);
+			closeLogFile();
+			System.exit(1);
+		}
+		Collections.sort(filesList, new Comparator<File>() {
+			@Override
+			public int compare(File website1, File website2) {
+				return  website1.getName().compareTo(website2.getName());
+			}
+		});
+		totalFiles = filesList.size();
+		logMessage("Info: " + totalFiles + " facts files to re-analyze", 2);
+		return filesList;
+	}
+
 	/**
 	 * Called for each website: parses its HAR file.
-	 * Saves the detailed number of trackers in the Map websitesDetailedStats.
+	 * The statistics are not added to the global statistics: see mergeResults.
 	 *
 	 * @param file the HAR file
-	 * @return the number of trackers found on the website
+	 * @return the results of the website, or null if the file could not be parsed
 	 */
-	public static int parseHARfile(File file) {
+	public static WebsiteResults parseHARfile(File file) {
 		try {
-			int[] results = {0, 0, 0, 0, 0, 0, 0};
 			/* ----- NAME OF THE WEBSITE ----- */
-			String website = file.getName();
-			// Remove ".har" from the filename
-			website = website.substring(0, website.length()-4);
-			// Remove the version
-			String version = website.substring(website.lastIndexOf("-")+1, website.length());
-			try {
-				Integer.parseInt(version); // If there is no version, throw an error
-				website = website.substring(0, website.lastIndexOf("-"));
-			} catch (NumberFormatException nfe) {
-				// Nothing to do
-			}
+			String website = getWebsiteName(file);
 			logMessage("Website: " + website, 2);
 
-			/* ----- RESULTS ----- */
-			Map<String, Integer> mimetypeSOA_website = new HashMap<String, Integer>();
-
-			ArrayList<String> urlsSOA_website = new ArrayList<String>();
-			ArrayList<String> trackersGhostery = new ArrayList<String>();
-			ArrayList<String> trackersCookies = new ArrayList<String>();
-			ArrayList<String> trackersJavaScript = new ArrayList<String>();
-			ArrayList<String> trackersJavaScriptWithQuery = new ArrayList<String>();
-			ArrayList<String> trackersFlash = new ArrayList<String>();
-			ArrayList<String> trackersPixels = new ArrayList<String>();
-			ArrayList<String> trackersURLsParameters = new ArrayList<String>();
-
 			/* ----- READER ----- */
+			long readStart = System.nanoTime();
 			HarFileReader harReader = new HarFileReader();
 			List<HarWarning> warnings = new ArrayList<HarWarning>();
-			HarLog log = harReader.readHarFile(file, warnings);
+			HarLog log;
+			if(file.getName().endsWith(COMPRESSED_HAR_SUFFIX)) {
+				InputStream input = new GZIPInputStream(new FileInputStream(file), 65536);
+				try {
+					log = harReader.readHarFile(input, warnings);
+				} finally {
+					input.close();
+				}
+			}
+			else {
+				log = harReader.readHarFile(file, warnings);
+			}
+			bytesReadMetric.add(file.length());
 			for (HarWarning warning : warnings) {
-				logMessage("Warning: " + warning, 3);
+				logMessage("Warning: " + warning, 3, AsyncLogger.WARN);
 			}
 			// Access all elements as objects
 			HarEntries entries = log.getEntries();
 			List<HarEntry> entriesList = entries.getEntries();
 
-			/* Explanations
-			 *
-			 * For every website (it is the file's name):
-			 *   => get the SOA of the website. If it fails, we skip the analysis of the website's file.
-			 *
-			 * For every URL in the website's file:
-			 *   => check it with fast means (the regular expressions from Ghostery)
-			 *   => if it fails, get the DNS SOA of the URL
-			 *   => if the SOAs are different: determine if the URL is a tracker according to the criteria
-			 */
-
-			/* ----- SOA OF THE WEBSITE ----- */
-			String mainHost = new URL("http://" + website).getHost();
-			String mainSOA = cacheSOA.get(mainHost);
-			// Not in the cache
-			if(mainSOA == null) {
-				// If the URL is an IP, try to get the associated domain
-				if(InetAddresses.isInetAddress(mainHost)) {
-					try {
-						String message = "Info: transformed IP " + mainHost + " to ";
-						mainHost = Address.getHostName(Address.getByAddress(mainHost));
-						message = message + mainHost;
-						if(debug) System.out.println(message);
-					} catch (UnknownHostException uhe) {
-						// Skip this website: cannot get its hostname
-						logMessage("Error: cannot get the website's hostname.", 3);
-						return -1;
-					}
+			List<EntryFacts> factsList = new ArrayList<EntryFacts>(entriesList.size());
+			int opaqueEntries = 0;
+			for (HarEntry entry : entriesList) {
+				// HTTPS tunnel recorded by the proxy: no path, mimetype or size
+				if(RecordedEntry.isOpaque(entry.getRequest().getMethod())) {
+					opaqueEntries++;
+					continue;
 				}
-				try {
-					InternetDomainName mainDomain = InternetDomainName.from(mainHost);
-
-					Record mainRecords[];
-					do {
-						Name mainName = Name.fromString(mainDomain.toString());
-						Lookup mainLookup = new Lookup(mainName, Type.SOA);
-						mainRecords = mainLookup.run();
-						// Try to get the SOA via the parent
-						if(mainRecords == null) {
-							mainDomain = mainDomain.parent();
-
-							// SOA of the parent found in the cache
-							if(cacheSOA.containsKey(mainDomain.toString())) {
-								mainSOA = cacheSOA.get(mainDomain.toString());
-								// Fill up the cache (put the original host)
-								cacheSOA.put(new URL("http://" + website).getHost(), mainSOA);
-							}
-						}
-						else if(mainRecords != null && mainRecords.length > 0 && mainRecords[0] instanceof SOARecord) {
-							mainSOA = ((SOARecord)mainRecords[0]).getAdmin().toString();
-							// Fill up the cache with the current domain (which is a parent of the original host)
-							cacheSOA.put(mainDomain.toString(), mainSOA);
-							// Fill up the cache (don't put mainHost because it is modified if it's an IP => put the original host)
-							cacheSOA.put(new URL("http://" + website).getHost(), mainSOA);
-						}
-						// Skip this website: cannot get its SOA
-						else {
-							logMessage("Error (skip website): cannot get the website's SOA.", 3);
-							return -1;
-						}
-					}
-					while(mainSOA == null && mainDomain.hasParent());
-					if(mainSOA == null) {
-						logMessage("Error (skip website): the DNS resolver is unable to get the SOA of the website.", 3);
-						return -1;
-					}
-				} catch (Exception e) {
-					if(debug) e.printStackTrace();
-					logMessage("Error (skip website): an unexpected problem occurred while getting the SOA of the website.", 3);
-					return -1;
+				EntryFacts facts = new EntryFacts(entry.getRequest().getUrl(), entry.getResponse().getContent().getMimeType());
+				for(HarCookie cookie : entry.getResponse().getCookies().getCookies()) {
+					facts.addCookie(cookie.getDomain(), cookie.getName(), cookie.getValue(), cookie.getPath());
 				}
+				factsList.add(facts);
+			}
+			if(opaqueEntries > 0) {
+				logMessage("Warning: " + opaqueEntries + " HTTPS tunnels of " + website + " excluded (opaque, recorded by the proxy).", 3, AsyncLogger.WARN);
+			}
+			harReadMetric.record(System.nanoTime() - readStart);
+			return analyzeEntries(website, factsList);
+		}
+		catch (Exception e) {
+			logMessage("Error: cannot parse the file.", 3);
+			if(debug) e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * Analyzes the entries of a website (read from its HAR file or recorded by the crawler)
+	 * and exports its results.
+	 * The statistics are not added to the global statistics: see mergeResults.
+	 *
+	 * @param website the name of the website
+	 * @param entriesList the entries: URL, mimetype and cookies (the other facts are resolved here)
+	 * @return the results of the website, or null if its SOA cannot be resolved or if the analysis is cancelled
+	 * @throws Exception
+	 */
+	public static WebsiteResults analyzeEntries(String website, List<EntryFacts> entriesList) throws Exception {
+		/* ----- RESULTS ----- */
+		WebsiteResults results = new WebsiteResults(website);
+
+		/* Explanations
+		 *
+		 * For every website (it is the file's name):
+		 *   => get the SOA of the website. If it fails, we skip the analysis of the website's file.
+		 *
+		 * For every URL in the website's file:
+		 *   => check it with fast means (the regular expressions from Ghostery)
+		 *   => if it fails, get the DNS SOA of the URL
+		 *   => if the SOAs are different: determine if the URL is a tracker according to the criteria
+		 *
+		 * When the facts are recorded, the SOA (and the dimensions of the images) are resolved
+		 * for every URL, even the Ghostery trackers: a later re-analysis may use other rules.
+		 */
+
+		/* ----- SOA OF THE WEBSITE ----- */
+		String mainSOA = resolveSOA(getHost("http://" + website), "website");
+		if(mainSOA == null) {
+			return null;
+		}
+		WebsiteFacts websiteFacts = new WebsiteFacts(website, mainSOA);
+
+		/* ----- ANALYZE EVERY ENTRY ----- */
+		logMessage(" > Number of entries to analyze: " + entriesList.size() + ".", 2);
+		long ghosteryTime = 0;
+		for (EntryFacts facts : entriesList) {
+			// Cancelled by the watchdog
+			if(Thread.currentThread().isInterrupted()) {
+				return null;
 			}
 
-			/* ----- ANALYZE EVERY ENTRY ----- */
-			logMessage(" > Number of entries to analyze: " + entriesList.size() + ".", 2);
-			for (HarEntry entry : entriesList) {
-				String currentUrl = entry.getRequest().getUrl();
-				// Check if the URL is a tracker with the Ghostery database
-				if(!ghosteryFile.equals("") && checkRegexGhostery(currentUrl)) {
-					trackersGhostery.add(currentUrl);
-					int value = 0;
-					if(mimetypeGhostery.containsKey(entry.getResponse().getContent().getMimeType())){
-						value = mimetypeGhostery.get(entry.getResponse().getContent().getMimeType());
+			// Check if the URL is a tracker with the Ghostery database
+			long ghosteryStart = System.nanoTime();
+			String trackerName = ghosteryFile.equals("") ? null : checkRegexGhostery(facts.getUrl());
+			ghosteryTime += System.nanoTime() - ghosteryStart;
+
+			// Resolve the facts needed to determine if the URL is a tracker via other means
+			if(trackerName == null || recordFacts) {
+				facts.setSOA(resolveSOA(getHost(facts.getUrl()), "URL"));
+				if(facts.getSOA() != null && !mainSOA.equals(facts.getSOA()) && facts.getMimeCategory() == MimeClassifier.Category.IMAGE) {
+					int[] dimensions = getImageDimensions(facts.getUrl());
+					if(dimensions != null) {
+						facts.setImageDimensions(dimensions[0], dimensions[1]);
 					}
-					mimetypeGhostery.put(entry.getResponse().getContent().getMimeType(), value+1);
 				}
-				// Try to determine if the URL is a tracker via other means
-				else {
-					/* ----- SOA OF THE URL ----- */
-					String currentHost = new URL(currentUrl).getHost();
-					String currentSOA = cacheSOA.get(currentHost);
-					// Not in the cache
-					if(currentSOA == null) {
-						// If the URL is an IP, try to get the associated domain
-						if(InetAddresses.isInetAddress(currentHost)) {
-							try {
-								String message = "Info: transformed IP " + currentHost + " to ";
-								currentHost = Address.getHostName(Address.getByAddress(currentHost));
-								message = message + currentHost;
-								if(debug) System.out.println(message);
-							} catch (UnknownHostException uhe) {
-								// Skip this URL: cannot get its hostname
-								logMessage("Error: cannot get the URL's (" + currentHost + ") hostname.", 3);
-								continue;
-							}
-						}
-						try {
-							InternetDomainName currentDomain = InternetDomainName.from(currentHost);
-
-							Record currentRecords[];
-							do {
-								Name currentName = Name.fromString(currentDomain.toString());
-								Lookup currentLookup = new Lookup(currentName, Type.SOA);
-								currentRecords = currentLookup.run();
-								// Try to get the SOA via the parent
-								if(currentRecords == null) {
-									currentDomain = currentDomain.parent();
-
-									// SOA of the parent found in the cache
-									if(cacheSOA.containsKey(currentDomain.toString())) {
-										currentSOA = cacheSOA.get(currentDomain.toString());
-										// Fill up the cache (put the original host)
-										cacheSOA.put(new URL(currentUrl).getHost(), currentSOA);
-									}
-								}
-								else if(currentRecords != null && currentRecords.length > 0 && currentRecords[0] instanceof SOARecord) {
-									currentSOA = ((SOARecord)currentRecords[0]).getAdmin().toString();
-									// Fill up the cache with the current domain (which is a parent of the original host)
-									cacheSOA.put(currentDomain.toString(), currentSOA);
-									// Fill up the cache (don't put currentHost because it is modified if it's an IP => put the original host)
-									cacheSOA.put(new URL(currentUrl).getHost(), currentSOA);
-								}
-								// Skip this URL: cannot get its SOA
-								else {
-									logMessage("Error (skip URL): cannot get the URL's (" + currentHost + ") SOA.", 3);
-									continue;
-								}
-							}
-							while(currentSOA == null && currentDomain.hasParent());
-							if(currentSOA == null) {
-								logMessage("Error (skip URL): the DNS resolver is unable to get the SOA of the URL: " + currentHost, 3);
-								continue;
-							}
-						} catch (Exception e) {
-							if(debug) e.printStackTrace();
-							logMessage("Error (skip URL): an unexpected problem occurred while getting the SOA of the URL: " + currentHost + ".", 3);
-							continue;
-						}
-					}
-
-					//System.out.println("-- Entry (request) : " + entry.getRequest());
-					//System.out.println("-- Entry (response) : " + entry.getResponse());
-					//System.out.println("> Entry (response CONTENT MIMETYPE) : " + entry.getResponse().getContent().getMimeType());
-
-					if(!mainSOA.equals(currentSOA)) {
-						int value = 0;
-						if(mimetypeSOA_allWebsites.containsKey(entry.getResponse().getContent().getMimeType())){
-							value = mimetypeSOA_allWebsites.get(entry.getResponse().getContent().getMimeType());
-						}
-						mimetypeSOA_allWebsites.put(entry.getResponse().getContent().getMimeType(), value+1);
+			}
 
-						value = 0;
-						if(mimetypeSOA_website.containsKey(entry.getResponse().getContent().getMimeType())){
-							value = mimetypeSOA_website.get(entry.getResponse().getContent().getMimeType());
-						}
-						mimetypeSOA_website.put(entry.getResponse().getContent().getMimeType(), value+1);
+			classifyEntry(results, mainSOA, facts, trackerName);
+			if(recordFacts) {
+				websiteFacts.getEntries().add(facts);
+			}
+		} // END of for (analysis of each entry)
+		ghosteryMetric.record(ghosteryTime);
 
-						urlsSOA_website.add(entry.getRequest().getUrl());
+		// Abandoned by the watchdog: nothing is written
+		if(!FileWatchdog.startPublishing()) {
+			return null;
+		}
+		if(recordFacts) {
+			websiteFacts.save(getOutputFile("facts", website, ".facts"));
+		}
 
-						// Type of the resource of the current URL
-						String type = entry.getResponse().getContent().getMimeType();
+		long exportStart = System.nanoTime();
+		exportResults(results);
+		exportMetric.record(System.nanoTime() - exportStart);
+		return results;
+	}
 
-						// Cookies
-						HarCookies cookies = entry.getResponse().getCookies();
+	/**
+	 * Called for each website in re-analysis mode: classifies the entries again from the facts
+	 * saved by a previous run. No DNS lookup and no download is done.
+	 *
+	 * @param file the facts file
+	 * @return the results of the website, or null if the file could not be read
+	 */
+	public static WebsiteResults reanalyzeFactsFile(File file) {
+		try {
+			String website = file.getName().substring(0, file.getName().length() - ".facts".length());
+			logMessage("Website: " + website, 2);
+			WebsiteFacts websiteFacts = WebsiteFacts.load(website, file);
+			WebsiteResults results = new WebsiteResults(website);
+			for(EntryFacts facts : websiteFacts.getEntries()) {
+				// Cancelled by the watchdog
+				if(Thread.currentThread().isInterrupted()) {
+					return null;
+				}
+				String trackerName = ghosteryFile.equals("") ? null : checkRegexGhostery(facts.getUrl());
+				classifyEntry(results, websiteFacts.getMainSOA(), facts, trackerName);
+			}
+			// Abandoned by the watchdog: nothing is written
+			if(!FileWatchdog.startPublishing()) {
+				return null;
+			}
+			exportResults(results);
+			return results;
+		}
+		catch (Exception e) {
+			logMessage("Error: cannot re-analyze the file.", 3);
+			if(debug) e.printStackTrace();
+			return null;
+		}
+	}
 
-						// CHECK : JS from another domain
-						if(type.equals("application/x-javascript") || type.equals("application/javascript") || type.equals("text/javascript")) {
-							trackersJavaScript.add(currentUrl);
-							if(currentUrl.contains("?")) {
-								trackersJavaScriptWithQuery.add(currentUrl);
-							}
-						}
+	/**
+	 * Gets the name of the website from the name of its HAR file.
+	 *
+	 * @param file the HAR file
+	 * @return the name of the website (without ".har" or ".har.gz" and without the version)
+	 */
+	public static String getWebsiteName(File file) {
+		String website = file.getName();
+		// Remove ".har" (or ".har.gz") from the filename
+		String suffix = getHarSuffix(website);
+		website = website.substring(0, website.length() - ((suffix != null) ? suffix.length() : 4));
+		// Remove the version
+		String version = website.substring(website.lastIndexOf("-")+1, website.length());
+		try {
+			Integer.parseInt(version); // If there is no version, throw an error
+			website = website.substring(0, website.lastIndexOf("-"));
+		} catch (NumberFormatException nfe) {
+			// Nothing to do
+		}
+		return website;
+	}
 
-						// CHECK : Flash from another domain
-						else if(type.equals("application/x-shockwave-flash")) {
-							trackersFlash.add(currentUrl);
-						}
+	/**
+	 * Gets the suffix of a HAR file: the HAR files may be compressed with gzip (e.g. by crawler.HarGenerator).
+	 *
+	 * @param filename the name of the file
+	 * @return ".har", ".har.gz", or null if the file is not a HAR file
+	 */
+	public static String getHarSuffix(String filename) {
+		if(filename.endsWith(HAR_SUFFIX)) {
+			return HAR_SUFFIX;
+		}
+		if(filename.endsWith(COMPRESSED_HAR_SUFFIX)) {
+			return COMPRESSED_HAR_SUFFIX;
+		}
+		return null;
+	}
 
-						// CHECK : size of images
-						else if(type.equals("image/jpeg") || type.equals("image/jpg") || type.equals("image/png") ||
-								type.equals("image/gif") || type.equals("image/bmp") || type.equals("image/x-icon")) {
-							ImageInputStream imageInputStream = null;
-							try {
-								URL url = new URL(entry.getRequest().getUrl());
-								URLConnection connection = url.openConnection();
-								connection.setConnectTimeout(10000);
-								connection.setReadTimeout(10000);
-								imageInputStream = ImageIO.createImageInputStream(connection.getInputStream());
-								//BufferedImage image = ImageIO.read(in);
-								//int width = image.getWidth();
-								//int height = image.getHeight();
-								final Iterator<ImageReader> readers = ImageIO.getImageReaders(imageInputStream);
-								if(readers.hasNext()) {
-									ImageReader imageReader = readers.next();
-									try {
-										imageReader.setInput(imageInputStream);
-										int width = imageReader.getWidth(0);
-										int height = imageReader.getHeight(0);
-										if(width == 1 && height == 1) {
-											trackersPixels.add(currentUrl);
-										}
-									} catch (Exception e) {
-										logMessage("Cannot get the dimensions of the image: " + entry.getRequest().getUrl(), 3);
-									} finally {
-										imageReader.dispose();
-									}
-								}
-							} catch (Exception e) {
-								logMessage("Cannot get the image: " + entry.getRequest().getUrl(), 3);
-							} finally {
-								if(imageInputStream != null) imageInputStream.close();
-							}
-						}
+	/**
+	 * Classifies an entry from its facts.
+	 * This step only uses the memory: the facts must already be resolved.
+	 *
+	 * @param results the results of the website
+	 * @param mainSOA the SOA of the website
+	 * @param facts the facts of the entry
+	 * @param trackerName the name of the Ghostery tracker matching the URL (null if none)
+	 */
+	public static void classifyEntry(WebsiteResults results, String mainSOA, EntryFacts facts, String trackerName) {
+		entriesMetric.increment();
+		String currentUrl = facts.getUrl();
+		// Type of the resource of the current URL (the HAR files may have no mimetype: counted as "")
+		String type = (facts.getMimeType() != null) ? facts.getMimeType() : "";
+
+		// Ghostery tracker
+		if(trackerName != null) {
+			results.getTrackersGhostery().add(currentUrl);
+			results.getTrackersGhosteryStats().increment(trackerName);
+			results.getMimetypesGhostery().increment(type);
+			results.getDistinctTrackerUrls().offer(currentUrl);
+		}
+		// Try to determine if the URL is a tracker via other means
+		// Note: the URLs for which the SOA could not be resolved are skipped
+		else if(facts.getSOA() != null && !mainSOA.equals(facts.getSOA())) {
+			results.getMimetypesSOA().increment(type);
+			results.getUrlsSOA().add(currentUrl);
+			UrlScanner scanner = scanners.get();
+			boolean validUrl = scanner.scan(currentUrl);
+			if(validUrl) {
+				results.getDistinctHosts().offer(currentUrl, scanner.getHostStart(), scanner.getHostEnd());
+				// Fed while parsing: the hosts are not kept in the results (nor in the manifest)
+				if(topHosts != null) {
+					synchronized(topHosts) {
+						topHosts.offer(scanner.getHost());
+					}
+				}
+			}
+			boolean hasQuery = validUrl ? scanner.hasQuery() : currentUrl.contains("?");
+			boolean tracker = true;
+
+			switch(facts.getMimeCategory()) {
+			// CHECK : JS from another domain
+			case JAVASCRIPT:
+				results.getTrackersJavaScript().add(currentUrl);
+				if(hasQuery) {
+					results.getTrackersJavaScriptWithQuery().add(currentUrl);
+				}
+				break;
 
-						// CHECK : cookies
-						else if(cookies.getCookies().size() != 0) {
-							for(HarCookie cookie : cookies.getCookies()) {
-								trackersCookies.add(currentUrl + "," + cookie.getDomain() + "," + cookie.getName() + "," + cookie.getValue() + "," + cookie.getPath());
-							}
-						}
+			// CHECK : Flash from another domain
+			case FLASH:
+				results.getTrackersFlash().add(currentUrl);
+				break;
 
-						// CHECK : parameters
-						else if(currentUrl.contains("?")) {
-							trackersURLsParameters.add(currentUrl);
+			// CHECK : size of images
+			case IMAGE:
+				if(facts.getImageWidth() == 1 && facts.getImageHeight() == 1) {
+					results.getTrackersPixels().add(currentUrl);
+				}
+				else {
+					tracker = false;
+				}
+				break;
+
+			default:
+				// CHECK : cookies
+				if(facts.getCookies().size() != 0) {
+					for(String[] cookie : facts.getCookies()) {
+						results.getTrackersCookies().add(currentUrl + "," + cookie[0] + "," + cookie[1] + "," + cookie[2] + "," + cookie[3]);
+						if(cookieIndex != null) {
+							results.getCookies().add(cookie);
 						}
+					}
+				}
 
+				// CHECK : parameters
+				else if(hasQuery) {
+					results.getTrackersURLsParameters().add(currentUrl);
+				}
+				else {
+					tracker = false;
+				}
+			}
+			if(tracker) {
+				results.getDistinctTrackerUrls().offer(currentUrl);
+			}
+		}
+	}
 
-					} // END of check if different SOA
-				} // END of check by other means
-			} // END of for (analysis of each entry)
-
+	/**
+	 * Gets the host of a URL (as java.net.URL.getHost, without building the URL).
+	 *
+	 * @param url the URL
+	 * @return the host
+	 * @throws MalformedURLException if the URL has no scheme or no host
+	 */
+	public static String getHost(String url) throws MalformedURLException {
+		UrlScanner scanner = scanners.get();
+		if(!scanner.scan(url)) {
+			throw new MalformedURLException("Invalid URL: " + url);
+		}
+		return scanner.getHost();
+	}
 
-			// Write mimetypes of URLs with different SOA
-			BufferedWriter mimetypeDifferentSOA_websiteFile = new BufferedWriter(new FileWriter(new File(directory+"/results/" + website + "_mimetypes.csv"), false));
-			Map<String, Integer> sortedMimetypeDifferentSOA_website = sortByValueInDescendingOrder(mimetypeSOA_website);
-			for(String name : sortedMimetypeDifferentSOA_website.keySet()) {
-				int number = sortedMimetypeDifferentSOA_website.get(name);
-				mimetypeDifferentSOA_websiteFile.write(name + "," + number);
-				mimetypeDifferentSOA_websiteFile.newLine();
+	/**
+	 * Gets the SOA of a host (from the cache or via DNS lookups).
+	 * If the host has no SOA, the SOA of its parents is searched.
+	 *
+	 * @param originalHost the host
+	 * @param kind "website" or "URL" (used in the log messages)
+	 * @return the SOA, or null if it cannot be resolved
+	 */
+	public static String resolveSOA(String originalHost, String kind) {
+		// The errors of the entries are warnings (they may be numerous), the errors of the websites are errors
+		int entryLevel = kind.equals("website") ? AsyncLogger.ERROR : AsyncLogger.WARN;
+		String host = originalHost;
+		String soa = classificationCache.getSOA(host);
+		// In the cache
+		if(soa != null) {
+			soaHitsMetric.increment();
+			return soa;
+		}
+		soaMissesMetric.increment();
+		// If the URL is an IP, try to get the associated domain
+		if(InetAddresses.isInetAddress(host)) {
+			try {
+				String message = "Info: transformed IP " + host + " to ";
+				host = Address.getHostName(Address.getByAddress(host));
+				message = message + host;
+				if(debug) System.out.println(message);
+			} catch (UnknownHostException uhe) {
+				logMessage("Error: cannot get the " + kind + "'s (" + host + ") hostname.", 3, entryLevel);
+				return null;
 			}
-			mimetypeDifferentSOA_websiteFile.close();
+		}
+		try {
+			InternetDomainName domain = InternetDomainName.from(host);
 
-			// Write URLs of different SOA
-			BufferedWriter urlsDifferentSOA_websiteFile = new BufferedWriter(new FileWriter(new File(directory+"/results/" + website + "_urls.csv"), false));
-			for (String url : urlsSOA_website) {
-				urlsDifferentSOA_websiteFile.write(url);
-				urlsDifferentSOA_websiteFile.newLine();
+			do {
+				String domainSOA;
+				long lookupStart = System.nanoTime();
+				try {
+					domainSOA = soaResolver.lookup(domain.toString());
+				} catch (IOException ioe) {
+					// Skip: cannot get the SOA
+					logMessage("Error (skip " + kind + "): cannot get the " + kind + "'s (" + host + ") SOA.", 3, entryLevel);
+					return null;
+				} finally {
+					dnsLookupMetric.record(System.nanoTime() - lookupStart);
+				}
+				// Try to get the SOA via the parent
+				if(domainSOA == null) {
+					domain = domain.parent();
+
+					// SOA of the parent found in the cache
+					soa = classificationCache.getSOA(domain.toString());
+					if(soa != null) {
+						// Fill up the cache (put the original host)
+						classificationCache.putSOA(originalHost, soa);
+					}
+				}
+				else {
+					soa = domainSOA;
+					// Fill up the cache with the current domain (which is a parent of the original host)
+					classificationCache.putSOA(domain.toString(), soa);
+					// Fill up the cache (don't put host because it is modified if it's an IP => put the original host)
+					classificationCache.putSOA(originalHost, soa);
+				}
 			}
-			urlsDifferentSOA_websiteFile.close();
-
-			// Ghostery
-			int countGhostery = exportTrackers(website, "ghostery", trackersGhostery);
+			while(soa == null && domain.hasParent());
+			if(soa == null) {
+				logMessage("Error (skip " + kind + "): the DNS resolver is unable to get the SOA of the " + kind + ": " + host, 3, entryLevel);
+			}
+			return soa;
+		} catch (Exception e) {
+			if(debug) e.printStackTrace();
+			logMessage("Error (skip " + kind + "): an unexpected problem occurred while getting the SOA of the " + kind + ": " + host + ".", 3, entryLevel);
+			return null;
+		}
+	}
 
-			// JavaScript
-			int countJavaScript = exportTrackers(website, "js", trackersJavaScript);
+	/**
+	 * Downloads an image and gets its dimensions.
+	 *
+	 * @param imageUrl the URL of the image
+	 * @return an array {width, height}, or null if the dimensions cannot be retrieved
+	 */
+	public static int[] getImageDimensions(String imageUrl) {
+		int[] dimensions = classificationCache.getImageDimensions(imageUrl);
+		if(dimensions == null && !failedImages.containsKey(imageUrl)) {
+			long probeStart = System.nanoTime();
+			dimensions = downloadImageDimensions(imageUrl);
+			imageProbeMetric.record(System.nanoTime() - probeStart);
+			if(dimensions != null && dimensions.length == 2) {
+				classificationCache.putImageDimensions(imageUrl, dimensions);
+			}
+			else {
+				// Note: the failures are only cached for this run
+				failedImages.put(imageUrl, Boolean.TRUE);
+				dimensions = null;
+			}
+		}
+		return dimensions;
+	}
 
-			// JavaScript with query
-			int countJavaScriptWithQuery = exportTrackers(website, "js-query", trackersJavaScriptWithQuery);
+	/**
+	 * Downloads an image and reads its dimensions.
+	 *
+	 * @param imageUrl the URL of the image
+	 * @return an array {width, height}, or null if the dimensions cannot be retrieved
+	 */
+	private static int[] downloadImageDimensions(String imageUrl) {
+		ImageInputStream imageInputStream = null;
+		try {
+			URL url = new URL(imageUrl);
+			URLConnection connection = url.openConnection();
+			connection.setConnectTimeout(10000);
+			connection.setReadTimeout(10000);
+			imageInputStream = ImageIO.createImageInputStream(connection.getInputStream());
+			final Iterator<ImageReader> readers = ImageIO.getImageReaders(imageInputStream);
+			if(readers.hasNext()) {
+				ImageReader imageReader = readers.next();
+				try {
+					imageReader.setInput(imageInputStream);
+					return new int[] {imageReader.getWidth(0), imageReader.getHeight(0)};
+				} catch (Exception e) {
+					logMessage("Cannot get the dimensions of the image: " + imageUrl, 3, AsyncLogger.WARN);
+				} finally {
+					imageReader.dispose();
+				}
+			}
+		} catch (Exception e) {
+			logMessage("Cannot get the image: " + imageUrl, 3, AsyncLogger.WARN);
+		} finally {
+			try {
+				if(imageInputStream != null) imageInputStream.close();
+			} catch (IOException ioe) {
+				// Nothing to do
+			}
+		}
+		return null;
+	}
 
-			// Flash
-			int countFlash = exportTrackers(website, "flash", trackersFlash);
+	/**
+	 * Writes the results of a website with the result sink (CSV files or segments).
+	 * Saves the detailed number of trackers in the results.
+	 *
+	 * @param results the results of the website
+	 * @throws IOException
+	 */
+	public static void exportResults(WebsiteResults results) throws IOException {
+		resultSink.write(results);
+
+		int countGhostery = results.getTrackersGhostery().size();
+		int countJavaScript = results.getTrackersJavaScript().size();
+		int countJavaScriptWithQuery = results.getTrackersJavaScriptWithQuery().size();
+		int countFlash = results.getTrackersFlash().size();
+		int countTrackingPixels = results.getTrackersPixels().size();
+		int countCookies = results.getTrackersCookies().size();
+		int countOtherURLsParameters = results.getTrackersURLsParameters().size();
+
+		if(showTrackers) {
+			System.out.println("                             Number of Ghostery trackers: " + countGhostery);
+			System.out.println("                             Number of JavaScript: " + countJavaScript);
+			System.out.println("                             Number of JavaScript with query: " + countJavaScriptWithQuery);
+			System.out.println("                             Number of Flash: " + countFlash);
+			System.out.println("                             Number of tracking pixels: " + countTrackingPixels);
+			System.out.println("                             Number of cookies: " + countCookies);
+			System.out.println("                             Number of other URLs with parameters: " + countOtherURLsParameters);
+		}
 
-			// Tracking pixels
-			int countTrackingPixels = exportTrackers(website, "pixels", trackersPixels);
+		results.setDetailedStats(new int[] {countGhostery, countJavaScript, countJavaScriptWithQuery,
+				countFlash, countTrackingPixels, countCookies, countOtherURLsParameters,
+				(int) results.getDistinctHosts().estimate(), (int) results.getDistinctTrackerUrls().estimate()});
+	}
 
-			// Cookies
-			int countCookies = exportTrackers(website, "cookies", trackersCookies);
+	/**
+	 * Adds the results of a website to the global statistics.
+	 *
+	 * @param results the results of the website
+	 */
+	public static void mergeResults(WebsiteResults results) {
+		if(trackersGhosteryStats != null) {
+			trackersGhosteryStats.addAll(results.getTrackersGhosteryStats());
+		}
+		mimetypeGhostery.addAll(results.getMimetypesGhostery());
+		mimetypeSOA_allWebsites.addAll(results.getMimetypesSOA());
+		websitesDetailedStats.put(results.getWebsite(), results.getDetailedStats());
+		snapshot.getDistinctHosts().merge(results.getDistinctHosts());
+		snapshot.getDistinctTrackerUrls().merge(results.getDistinctTrackerUrls());
+		updateTopK(results);
+	}
 
-			// Other URLs with parameters
-			int countOtherURLsParameters = exportTrackers(website, "parameters", trackersURLsParameters);
+	/**
+	 * Adds the results of a website to the live rankings of the trackers and the mimetypes (counted by entry).
+	 * The third-party hosts are ranked by classifyEntry, also by entry: the results reused from the manifest
+	 * or merged from the workers do not add to their ranking.
+	 *
+	 * @param results the results of the website
+	 */
+	private static void updateTopK(WebsiteResults results) {
+		Counters trackers = results.getTrackersGhosteryStats();
+		for(int id : trackers.getSortedIds()) {
+			topTrackers.offer(trackers.getInterner().getName(id), trackers.get(id));
+		}
+		for(Counters mimetypes : new Counters[] {results.getMimetypesGhostery(), results.getMimetypesSOA()}) {
+			for(int id : mimetypes.getSortedIds()) {
+				topMimetypes.offer(mimetypes.getInterner().getName(id), mimetypes.get(id));
+			}
+		}
+	}
 
-			countSuccesses++;
-			if(showTrackers) {
-				System.out.println("                             Number of Ghostery trackers: " + countGhostery);
-				System.out.println("                             Number of JavaScript: " + countJavaScript);
-				System.out.println("                             Number of JavaScript with query: " + countJavaScriptWithQuery);
-				System.out.println("                             Number of Flash: " + countFlash);
-				System.out.println("                             Number of tracking pixels: " + countTrackingPixels);
-				System.out.println("                             Number of cookies: " + countCookies);
-				System.out.println("                             Number of other URLs with parameters: " + countOtherURLsParameters);
-			}
-
-			results[0] = countGhostery;
-			results[1] = countJavaScript;
-			results[2] = countJavaScriptWithQuery;
-			results[3] = countFlash;
-			results[4] = countTrackingPixels;
-			results[5] = countCookies;
-			results[6] = countOtherURLsParameters;
-
-			int totalNumberTrackers = countGhostery + countCookies + countJavaScript + countJavaScriptWithQuery + countFlash + countTrackingPixels + countOtherURLsParameters;
-			websitesDetailedStats.put(website, results);
-			return totalNumberTrackers;
+	/**
+	 * Writes the live rankings in logs/topk_trackers.csv, logs/topk_hosts.csv and logs/topk_mimetypes.csv
+	 * (with the identifier of the worker, if any). Called with the status (every 5 minutes) and at the end.
+	 * Each line is "name,count,error": the real count is between count-error and count,
+	 * and the error is at most 1/1000 of the total (see SpaceSaving).
+	 */
+	private static void writeTopK() {
+		String[] names = {"trackers", "hosts", "mimetypes"};
+		SpaceSaving[] sketches = {topTrackers, topHosts, topMimetypes};
+		String[] contents = new String[sketches.length];
+		synchronized(statsLock) {
+			for(int i = 0; i < sketches.length; i++) {
+				StringBuilder content = new StringBuilder();
+				// Note: the ranking of the hosts is fed by the parsing threads, outside of the lock of the statistics
+				synchronized(sketches[i]) {
+					for(String item : sketches[i].getTop(TOP_K)) {
+						content.append(item).append(",").append(sketches[i].getCount(item))
+								.append(",").append(sketches[i].getError(item)).append("\n");
+					}
+				}
+				contents[i] = content.toString();
+			}
 		}
-		catch (Exception e) {
-			logMessage("Error: cannot parse the file.", 3);
-			if(debug) e.printStackTrace();
-			return -1;
+		String suffix = (workerId != null) ? "_" + workerId : "";
+		for(int i = 0; i < names.length; i++) {
+			try {
+				// Written next to the ranking and then renamed: a reader never sees a partial ranking
+				File file = new File(directory+"/logs/topk_" + names[i] + suffix + ".csv");
+				File temporaryFile = new File(file.getPath() + ".tmp");
+				BufferedWriter topFile = new BufferedWriter(new FileWriter(temporaryFile, false));
+				try {
+					topFile.write(contents[i]);
+				} finally {
+					topFile.close();
+				}
+				Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (IOException ioe) {
+				logMessage("Error: cannot write the ranking of the " + names[i] + ".", 3);
+				if(debug) ioe.printStackTrace();
+			}
 		}
 	}
 
 	/**
 	 * Called for each URL: checks if the URL is known as a tracker in the Ghostery database.
-	 * If the URL is a tracker, increments the counter of this tracker.
 	 *
 	 * @param url the URL to check.
-	 * @return true if the URL is a tracker, false otherwise.
-	 */
-	public static boolean checkRegexGhostery(String url) {
-		Map<String, String> regex = regexGhostery.getRegex();
-		for(String singleRegex : regex.keySet()) {
-			Pattern pattern = Pattern.compile(singleRegex);
-			Matcher matcher = pattern.matcher(url);
-			if(matcher.find()) {
-				// Increment the counter of this tracker
-				int trackerCount = trackersGhosteryStats.get(regex.get(singleRegex));
-				trackersGhosteryStats.put(regex.get(singleRegex), trackerCount+1);
-				/*if(showTrackers) {
-					logMessage("    Tracker found (Ghostery): " + url + "\n"
-							+ "        " + singleRegex + " from " + regex.get(singleRegex), 0);
-				}*/
-				return true;
+	 * @return the name of the tracker if the URL is a tracker, null otherwise.
+	 */
+	public static String checkRegexGhostery(String url) {
+		String trackerName = cacheVerdicts.get(url);
+		if(trackerName == null) {
+			// Note: the URLs which are not trackers are cached as an empty name
+			trackerName = matchRegexGhostery(url);
+			if(trackerName == null) {
+				trackerName = "";
 			}
+			cacheVerdicts.put(url, trackerName);
 		}
-		return false;
+		return trackerName.isEmpty() ? null : trackerName;
 	}
 
 	/**
-	 * Orders a Map in a descending order
+	 * Matches a URL against the regular expressions of the Ghostery database.
 	 *
-	 * @param mapToSort the map to sort
-	 * @return a LinkedHashMap containing the values of the map
+	 * @param url the URL to check.
+	 * @return the name of the tracker if the URL is a tracker, null otherwise.
 	 */
-	public static LinkedHashMap<String, Integer> sortByValueInDescendingOrder (Map<String, Integer> mapToSort) {
-		List<Map.Entry<String, Integer>> entries = new LinkedList<Map.Entry<String, Integer>>(mapToSort.entrySet());
-		Collections.sort(entries, new Comparator<Map.Entry<String, Integer>>() {
-			@Override
-			public int compare(Entry<String, Integer> o1, Entry<String, Integer> o2) {
-				return o2.getValue().compareTo(o1.getValue());
-			}
-		});
-
-		LinkedHashMap<String, Integer> sortedMap = new LinkedHashMap<String, Integer>();
-		for(Map.Entry<String, Integer> entry: entries){
-			sortedMap.put(entry.getKey(), entry.getValue());
-		}
+	private static String matchRegexGhostery(String url) {
+		return ghosteryHostFilter.match(url, scanners.get());
+	}
 
-		return sortedMap;
+	/**
+	 * Gets an output file of a website (in the sharded or flat layout).
+	 *
+	 * @param subdirectory the subdirectory of the output ("results" or "facts")
+	 * @param website the name of the website
+	 * @param suffix the end of the filename
+	 * @return the file
+	 * @throws IOException if the directory of the file cannot be created
+	 */
+	public static File getOutputFile(String subdirectory, String website, String suffix) throws IOException {
+		return ShardedLayout.getFileForWriting(new File(directory, subdirectory), website, website + suffix, sharded);
 	}
 
 	/**
@@ -815,7 +2038,7 @@ public class Parser {
 	 */
 	public static int exportTrackers (String website, String type, ArrayList<String> data) {
 		try {
-			BufferedWriter file = new BufferedWriter(new FileWriter(new File(directory+"/results/" + website + "_" + type + ".csv"), false));
+			BufferedWriter file = new BufferedWriter(new FileWriter(getOutputFile("results", website, "_" + type + ".csv"), false));
 			for (String element : data) {
 				file.write(element);
 				file.newLine();
@@ -828,24 +2051,25 @@ public class Parser {
 	}
 
 	/**
-	 * Writes the statistics in several files
+	 * Writes the statistics in several files (projection of a snapshot)
 	 *
 	 * @param directoryName
+	 * @param snapshot the snapshot of the statistics
 	 */
-	public static void computeStats(String directoryName) {
+	public static void computeStats(String directoryName, StatsSnapshot snapshot) {
+		Counters trackersGhosteryStats = snapshot.getTrackersGhosteryStats();
+		Counters mimetypeGhostery = snapshot.getMimetypesGhostery();
+		Counters mimetypeSOA_allWebsites = snapshot.getMimetypesSOA();
+		Map<String, int[]> websitesDetailedStats = snapshot.getWebsitesDetailedStats();
 		try {
-			if(!ghosteryFile.equals("")) {
+			if(trackersGhosteryStats != null) {
 				// TRACKERS
 				BufferedWriter trackersStatsFile = new BufferedWriter(new FileWriter(new File(directoryName+"/logs/stats_trackers.csv"), false));
 
-				Map<String, Integer> sortedTrackersGhosteryStats = sortByValueInDescendingOrder(trackersGhosteryStats);
-
-				for(String name : sortedTrackersGhosteryStats.keySet()) {
-					int trackerCount = sortedTrackersGhosteryStats.get(name);
-					if(trackerCount != 0) {
-						trackersStatsFile.write(name + "," + trackerCount);
-						trackersStatsFile.newLine();
-					}
+				// Note: the trackers not found (zero) are not written
+				for(int id : trackersGhosteryStats.getSortedIds()) {
+					trackersStatsFile.write(WebsiteResults.TRACKERS.getName(id) + "," + trackersGhosteryStats.get(id));
+					trackersStatsFile.newLine();
 				}
 				trackersStatsFile.close();
 
@@ -853,11 +2077,8 @@ public class Parser {
 				// MIMETYPE OF GHOSTERY TRACKERS DETECTED
 				BufferedWriter mimetypeGhosteryFile = new BufferedWriter(new FileWriter(new File(directoryName+"/logs/stats_mimetypes_ghostery.csv"), false));
 
-				Map<String, Integer> sortedMimetypeGhostery = sortByValueInDescendingOrder(mimetypeGhostery);
-
-				for(String name : sortedMimetypeGhostery.keySet()) {
-					int number = sortedMimetypeGhostery.get(name);
-					mimetypeGhosteryFile.write(name + "," + number);
+				for(int id : mimetypeGhostery.getSortedIds()) {
+					mimetypeGhosteryFile.write(WebsiteResults.MIMETYPES.getName(id) + "," + mimetypeGhostery.get(id));
 					mimetypeGhosteryFile.newLine();
 				}
 				mimetypeGhosteryFile.close();
@@ -867,11 +2088,8 @@ public class Parser {
 			// MIMETYPE OF URLS OF DIFFERENT SOA
 			BufferedWriter mimetypeSOA_allWebsitesFile = new BufferedWriter(new FileWriter(new File(directoryName+"/logs/stats_mimetypes_soa.csv"), false));
 
-			Map<String, Integer> sortedMimetypeSOA_allWebsites = sortByValueInDescendingOrder(mimetypeSOA_allWebsites);
-
-			for(String name : sortedMimetypeSOA_allWebsites.keySet()) {
-				int number = sortedMimetypeSOA_allWebsites.get(name);
-				mimetypeSOA_allWebsitesFile.write(name + "," + number);
+			for(int id : mimetypeSOA_allWebsites.getSortedIds()) {
+				mimetypeSOA_allWebsitesFile.write(WebsiteResults.MIMETYPES.getName(id) + "," + mimetypeSOA_allWebsites.get(id));
 				mimetypeSOA_allWebsitesFile.newLine();
 			}
 			mimetypeSOA_allWebsitesFile.close();
@@ -891,6 +2109,17 @@ public class Parser {
 			}
 			websitesDetailedStatsFile.close();
 
+
+			// DISTINCT HOSTS AND TRACKER URLS OF ALL THE WEBSITES (estimates)
+			BufferedWriter distinctFile = new BufferedWriter(new FileWriter(new File(directoryName+"/logs/stats_distinct.csv"), false));
+			distinctFile.write("websites," + websitesDetailedStats.size());
+			distinctFile.newLine();
+			distinctFile.write("third-party hosts," + snapshot.getDistinctHosts().estimate());
+			distinctFile.newLine();
+			distinctFile.write("tracker URLs," + snapshot.getDistinctTrackerUrls().estimate());
+			distinctFile.newLine();
+			distinctFile.close();
+
 		} catch (IOException e) {
 			logMessage("Error: cannot create the stats file", 1);
 			if(debug) e.printStackTrace();
@@ -898,8 +2127,9 @@ public class Parser {
 	}
 
 	/**
-	 * Prints a message in the console and writes a message in the log file.
-	 * @param message the message to print and write
+	 * Prints a message in the console and writes a message in the log file (asynchronously, see AsyncLogger).
+	 * The messages of type 3 are errors, the others are information.
+	 * @param message the message to print and write.
 	 * @param type type of the message:<br>
 	 * 		- 0 (normal): just show the message.<br>
 	 *		- 1 (show time): add the time before the message.<br>
@@ -907,21 +2137,25 @@ public class Parser {
 	 *		- 3 (focus): add spaces and ">" to focus on a message.<br>
 	 */
 	public static void logMessage(String message, int type) {
-		switch(type) {
-		case 1: message = dateFormat.format(new Date()) + " - " + message; break;
-		case 2: message = "                        " + message; break;
-		case 3: message = "             >>>>>>>>>> " + message; break;
-		}
+		logMessage(message, type, (type == 3) ? AsyncLogger.ERROR : AsyncLogger.INFO);
+	}
 
-		System.out.println(message);
-		try {
-			logsFile.write(message);
-			logsFile.newLine();
-			logsFile.flush();
-		} catch (IOException ioe) {
-			System.out.println("The message was not successfully written in the log file.");
-			if(debug) ioe.printStackTrace();
+	/**
+	 * Prints a message in the console and writes a message in the log file, if its level is enabled.
+	 *
+	 * @param message the message to print and write.
+	 * @param type type of the message (see logMessage(String, int))
+	 * @param level the level of the message (AsyncLogger.DEBUG, INFO, WARN or ERROR)
+	 */
+	public static void logMessage(String message, int type, int level) {
+		// No log file when the reports are computed from a snapshot (see StatsSnapshot)
+		if(logger == null) {
+			if(AsyncLogger.isEnabled(level)) {
+				System.out.println(AsyncLogger.format(message, type, System.currentTimeMillis(), new SimpleDateFormat("dd/MM/yyyy - HH:mm:ss")));
+			}
+			return;
 		}
+		logger.log(message, type, level);
 	}
 
 	/**
@@ -929,12 +2163,13 @@ public class Parser {
 	 * If a problem occurs, prints a message in the console.
 	 */
 	public static void closeLogFile() {
+		if(logger == null) {
+			return;
+		}
 		try {
-			logsFile.write("----------------------------------------");
-			logsFile.newLine();
-			logsFile.close();
+			logger.close("----------------------------------------");
 		} catch (IOException ioe) {
-			System.out.println(dateFormat.format(new Date()) + " - Error: cannot close the logs file.\n> It may be corrupted.");
+			System.out.println(dateFormat.get().format(new Date()) + " - Error: cannot close the logs file.\n> It may be corrupted.");
 			if(debug) ioe.printStackTrace();
 		}
 	}
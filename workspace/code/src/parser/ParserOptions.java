@@ -0,0 +1,188 @@
+package parser;
+
+/**
+ * Object containing the optional settings of the parser.
+ *
+ */
+public class ParserOptions {
+	private boolean incremental;
+	private boolean facts;
+	private boolean reanalysis;
+	private boolean sharded;
+	private boolean scanExtra;
+	private String workerId;
+	private int leaseDuration = 600;
+	private boolean merge;
+	private boolean resume;
+	private int fileTimeout;
+	private int fileMemory;
+	private String output = "csv";
+	private String cacheFile;
+	private int cacheSize = 64;
+	private boolean cookieIndex;
+
+	/**
+	 * @return true to reuse the results of the files which did not change since the previous run
+	 */
+	public boolean isIncremental() {
+		return incremental;
+	}
+
+	public void setIncremental(boolean incremental) {
+		this.incremental = incremental;
+	}
+
+	/**
+	 * @return true to save the facts resolved for every entry (needed by the re-analysis mode)
+	 */
+	public boolean isFacts() {
+		return facts;
+	}
+
+	public void setFacts(boolean facts) {
+		this.facts = facts;
+	}
+
+	/**
+	 * @return true to classify the entries again from the saved facts instead of parsing the HAR files
+	 */
+	public boolean isReanalysis() {
+		return reanalysis;
+	}
+
+	public void setReanalysis(boolean reanalysis) {
+		this.reanalysis = reanalysis;
+	}
+
+	/**
+	 * @return true to read and write the files in hash-prefixed subdirectories (see ShardedLayout)
+	 */
+	public boolean isSharded() {
+		return sharded;
+	}
+
+	public void setSharded(boolean sharded) {
+		this.sharded = sharded;
+	}
+
+	/**
+	 * @return true to list the directory in addition to the manifest of the crawler (files copied without a crawl)
+	 */
+	public boolean isScanExtra() {
+		return scanExtra;
+	}
+
+	public void setScanExtra(boolean scanExtra) {
+		this.scanExtra = scanExtra;
+	}
+
+	/**
+	 * @return the identifier of the worker (null if the parser does not share the files with other processes)
+	 */
+	public String getWorkerId() {
+		return workerId;
+	}
+
+	public void setWorkerId(String workerId) {
+		this.workerId = workerId;
+	}
+
+	/**
+	 * @return the duration (in seconds) after which the lease of a file claimed by a worker expires
+	 */
+	public int getLeaseDuration() {
+		return leaseDuration;
+	}
+
+	public void setLeaseDuration(int leaseDuration) {
+		this.leaseDuration = leaseDuration;
+	}
+
+	/**
+	 * @return true to merge the partial results of the workers instead of parsing the files
+	 */
+	public boolean isMerge() {
+		return merge;
+	}
+
+	public void setMerge(boolean merge) {
+		this.merge = merge;
+	}
+
+	/**
+	 * @return true to resume from the snapshot of a previous run (the files already processed are skipped)
+	 */
+	public boolean isResume() {
+		return resume;
+	}
+
+	public void setResume(boolean resume) {
+		this.resume = resume;
+	}
+
+	/**
+	 * @return the time budget of a file (in seconds, 0 for no limit)
+	 */
+	public int getFileTimeout() {
+		return fileTimeout;
+	}
+
+	public void setFileTimeout(int fileTimeout) {
+		this.fileTimeout = fileTimeout;
+	}
+
+	/**
+	 * @return the memory budget of a file (growth of the live heap in megabytes, 0 for no limit)
+	 */
+	public int getFileMemory() {
+		return fileMemory;
+	}
+
+	public void setFileMemory(int fileMemory) {
+		this.fileMemory = fileMemory;
+	}
+
+	/**
+	 * @return the output of the results of the websites: "csv" (files per website), "segments" (see SegmentResultSink) or "sqlite" (see SqliteResultSink)
+	 */
+	public String getOutput() {
+		return output;
+	}
+
+	public void setOutput(String output) {
+		this.output = output;
+	}
+
+	/**
+	 * @return the file of the cache of the SOAs and of the images, kept across the runs (null for a cache in memory)
+	 */
+	public String getCacheFile() {
+		return cacheFile;
+	}
+
+	public void setCacheFile(String cacheFile) {
+		this.cacheFile = cacheFile;
+	}
+
+	/**
+	 * @return the maximum size of the cache of the SOAs and of the images (in megabytes, outside of the heap)
+	 */
+	public int getCacheSize() {
+		return cacheSize;
+	}
+
+	public void setCacheSize(int cacheSize) {
+		this.cacheSize = cacheSize;
+	}
+
+	/**
+	 * @return true to build the index of the values of the third-party cookies (see CookieIndex)
+	 */
+	public boolean isCookieIndex() {
+		return cookieIndex;
+	}
+
+	public void setCookieIndex(boolean cookieIndex) {
+		this.cookieIndex = cookieIndex;
+	}
+}
@@ -0,0 +1,154 @@
+package parser;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import crawler.Crawler;
+import crawler.HarListener;
+import crawler.RecordedEntry;
+
+/**
+ * Pool of threads parsing the HAR files (or the pages recorded by the proxy of the crawler)
+ * while the crawler visits the next websites (streaming mode: crawler and parser in the same process).
+ *
+ * The parser must be initialized (Parser.initialize) before the crawler starts.
+ * When the crawler stops, the pool waits for the files received and finishes the parser.
+ * A combined progress of the crawler and the parser is shown every minute.
+ */
+public class ParserPool implements HarListener {
+	// Time (in milliseconds) without modification after which a file is considered fully written
+	private static final long STABLE_DELAY = 2000;
+	// Time (in minutes) without any file finished after which the pool stops waiting (e.g. blocked threads)
+	private static final long STALL_DELAY = 10;
+	// Time (in seconds) given to the threads to stop after an interruption
+	private static final long STOP_DELAY = 60;
+
+	private ExecutorService executor;
+	private ScheduledExecutorService progressExecutor;
+	private AtomicInteger filesQueued = new AtomicInteger();
+	private AtomicInteger filesFinished = new AtomicInteger();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param threads the number of files parsed at the same time
+	 */
+	public ParserPool(int threads) {
+		executor = Executors.newFixedThreadPool(threads);
+		progressExecutor = Executors.newScheduledThreadPool(1);
+		progressExecutor.scheduleAtFixedRate(new Runnable() {
+			public void run() {
+				Parser.logMessage("Progress - crawler: " + Crawler.getProgress()
+						+ " - parser: " + Parser.getProgress() + ", " + filesQueued.get() + " waiting", 1);
+			}
+		}, 1, 1, TimeUnit.MINUTES);
+	}
+
+	public void harWritten(final File harFile, String website) {
+		Parser.addFileToAnalyze();
+		filesQueued.incrementAndGet();
+		executor.submit(new Runnable() {
+			public void run() {
+				filesQueued.decrementAndGet();
+				try {
+					if(waitUntilWritten(harFile)) {
+						Parser.analyzeFile(harFile, false);
+					}
+				} finally {
+					filesFinished.incrementAndGet();
+				}
+			}
+		});
+	}
+
+	public void pageRecorded(final String crawlId, final String host, List<RecordedEntry> entries) {
+		final List<EntryFacts> factsList = new ArrayList<EntryFacts>(entries.size());
+		for(RecordedEntry entry : entries) {
+			if(entry.isOpaque()) {
+				continue;
+			}
+			EntryFacts facts = new EntryFacts(entry.getUrl(), entry.getMimeType());
+			for(String[] cookie : entry.getCookies()) {
+				facts.addCookie(cookie[0], cookie[1], cookie[2], cookie[3]);
+			}
+			factsList.add(facts);
+		}
+		Parser.addFileToAnalyze();
+		filesQueued.incrementAndGet();
+		executor.submit(new Runnable() {
+			public void run() {
+				filesQueued.decrementAndGet();
+				try {
+					Parser.analyzePage(crawlId, host, factsList);
+				} finally {
+					filesFinished.incrementAndGet();
+				}
+			}
+		});
+	}
+
+	public void crawlFinished(boolean interrupted) {
+		progressExecutor.shutdownNow();
+		if(interrupted) {
+			// The files not parsed yet are parsed by the next run (-resume)
+			executor.shutdownNow();
+		}
+		else {
+			Parser.logMessage("Info: waiting for the parser (" + Parser.getProgress() + ")...", 1);
+			executor.shutdown();
+		}
+		try {
+			// Wait as long as the files are finished
+			int finished;
+			do {
+				finished = filesFinished.get();
+			}
+			while(!executor.awaitTermination(STALL_DELAY, TimeUnit.MINUTES) && filesFinished.get() > finished);
+			if(!executor.isTerminated()) {
+				Parser.logMessage("Warning: no file finished for " + STALL_DELAY + " minutes, the parser is stopped"
+						+ " (the files left are parsed by the next run with -resume).", 3);
+				executor.shutdownNow();
+				executor.awaitTermination(STOP_DELAY, TimeUnit.SECONDS);
+			}
+		} catch (InterruptedException e) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+		Parser.finish();
+	}
+
+	/**
+	 * Waits until a file has not been modified for a while (the file may still be written by NetExport).
+	 *
+	 * @param file the file
+	 * @return true if the file is ready, false if the thread is interrupted
+	 */
+	public static boolean waitUntilWritten(File file) {
+		try {
+			long delay;
+			while((delay = getWriteDelay(file)) > 0) {
+				Thread.sleep(delay);
+			}
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * Gets the time left before a file is considered fully written (not modified for a while).
+	 *
+	 * @param file the file
+	 * @return the time left in milliseconds, 0 if the file is ready
+	 */
+	public static long getWriteDelay(File file) {
+		return Math.max(0, STABLE_DELAY - (System.currentTimeMillis() - file.lastModified()));
+	}
+}
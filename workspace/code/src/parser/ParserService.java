@@ -0,0 +1,252 @@
+package parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Long-running parser (daemon mode).
+ *
+ * The Ghostery database is loaded once and the caches (SOA, images, verdicts) stay warm between
+ * the files. The files are received by watching a spool directory (new HAR files) or via a local
+ * HTTP endpoint, and the aggregated statistics are updated after each file.
+ *
+ * HTTP endpoints (localhost only):
+ * - /stats: current status of the parser (plain text)
+ * - /parse?file=<path>: queues a HAR file
+ * - /report: writes the snapshot and the statistics files of the files analyzed so far
+ *
+ * The files are analyzed one at a time by a single thread. /stats and /report wait for the end
+ * of the current file: the statistics are never read while they are modified.
+ * A file still written is analyzed later (the thread does not wait for it: it analyzes the other files).
+ * A file written again in the spool directory (other size or date) is analyzed again.
+ */
+public class ParserService {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static ScheduledExecutorService analysisExecutor;
+	private static ReentrantLock analysisLock = new ReentrantLock();
+	private static Set<String> filesQueued = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	/**
+	 * Starts the parser in daemon mode. Returns when the process is stopped.
+	 *
+	 * @param directoryName the directory of the results
+	 * @param showDebug
+	 * @param trackers
+	 * @param ghostery
+	 * @param options the optional settings of the parser
+	 * @param spoolDirectoryName the directory watched for new HAR files
+	 * @param port the port of the HTTP endpoint (on localhost), or 0 to disable it
+	 */
+	public static void launchService(String directoryName, boolean showDebug, boolean trackers, String ghostery,
+			ParserOptions options, String spoolDirectoryName, int port) {
+		final boolean debug = showDebug;
+		Parser.initialize(directoryName, showDebug, trackers, ghostery, options, false);
+		analysisExecutor = Executors.newSingleThreadScheduledExecutor();
+
+		// HTTP endpoint
+		final HttpServer server;
+		if(port > 0) {
+			try {
+				server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+			} catch (IOException ioe) {
+				Parser.logMessage("Error: cannot listen on the port " + port + ".", 3);
+				if(debug) ioe.printStackTrace();
+				Parser.closeLogFile();
+				System.exit(1);
+				return;
+			}
+			server.createContext("/stats", new HttpHandler() {
+				public void handle(HttpExchange exchange) throws IOException {
+					String status = runBetweenFiles(new Callable<String>() {
+						public String call() {
+							return Parser.getStatus(20);
+						}
+					});
+					reply(exchange, (status != null) ? 200 : 503, (status != null) ? status : "busy, try again later\n");
+				}
+			});
+			server.createContext("/report", new HttpHandler() {
+				public void handle(HttpExchange exchange) throws IOException {
+					String done = runBetweenFiles(new Callable<String>() {
+						public String call() {
+							Parser.writeReports();
+							return "reports written\n";
+						}
+					});
+					reply(exchange, (done != null) ? 200 : 503, (done != null) ? done : "busy, try again later\n");
+				}
+			});
+			server.createContext("/parse", new HttpHandler() {
+				public void handle(HttpExchange exchange) throws IOException {
+					String query = exchange.getRequestURI().getRawQuery();
+					if(query == null || !query.startsWith("file=")) {
+						reply(exchange, 400, "usage: /parse?file=<path of the HAR file>\n");
+						return;
+					}
+					File file = new File(URLDecoder.decode(query.substring("file=".length()), "UTF-8"));
+					if(!file.isFile() || Parser.getHarSuffix(file.getName()) == null) {
+						reply(exchange, 404, "HAR file not found: " + file.getPath() + "\n");
+						return;
+					}
+					reply(exchange, 202, queue(file) ? "queued\n" : "already queued\n");
+				}
+			});
+			server.start();
+			Parser.logMessage("Info: HTTP endpoint listening on http://localhost:" + port + "/ (stats, parse, report)", 2);
+		}
+		else {
+			server = null;
+		}
+
+		// Stop cleanly: finish the current file, then write the statistics
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			public void run() {
+				if(server != null) {
+					server.stop(0);
+				}
+				analysisExecutor.shutdown();
+				try {
+					analysisExecutor.awaitTermination(1, TimeUnit.MINUTES);
+				} catch (InterruptedException e) {
+					// Nothing to do
+				}
+				Parser.finish();
+			}
+		});
+
+		// Spool directory
+		File spoolDirectory = new File(spoolDirectoryName);
+		try {
+			WatchService watchService = FileSystems.getDefault().newWatchService();
+			spoolDirectory.toPath().register(watchService,
+					StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+			Parser.logMessage("Info: watching the spool directory " + spoolDirectory.getPath(), 2);
+
+			// The files already in the spool directory
+			File[] files = spoolDirectory.listFiles();
+			if(files != null) {
+				for(File file : files) {
+					if(Parser.getHarSuffix(file.getName()) != null) {
+						queue(file);
+					}
+				}
+			}
+
+			while(true) {
+				WatchKey key = watchService.take();
+				for(WatchEvent<?> event : key.pollEvents()) {
+					if(event.kind() == StandardWatchEventKinds.OVERFLOW) {
+						continue;
+					}
+					Path name = (Path) event.context();
+					if(Parser.getHarSuffix(name.toString()) != null) {
+						queue(new File(spoolDirectory, name.toString()));
+					}
+				}
+				if(!key.reset()) {
+					Parser.logMessage("Error: the spool directory is no longer accessible.", 3);
+					break;
+				}
+			}
+		} catch (IOException ioe) {
+			Parser.logMessage("Error: cannot watch the spool directory " + spoolDirectory.getPath() + ".", 3);
+			if(debug) ioe.printStackTrace();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Queues a HAR file for the analysis (once).
+	 * The analysis starts when the file has not been modified for a while (still written by NetExport):
+	 * until then, the file is queued again after the time left.
+	 *
+	 * @param file the HAR file
+	 * @return true if the file has been queued, false if it is already queued
+	 */
+	private static boolean queue(final File file) {
+		if(!filesQueued.add(file.getPath())) {
+			return false;
+		}
+		Parser.addFileToAnalyze();
+		analysisExecutor.submit(new Runnable() {
+			public void run() {
+				long delay = ParserPool.getWriteDelay(file);
+				if(delay > 0) {
+					try {
+						analysisExecutor.schedule(this, delay, TimeUnit.MILLISECONDS);
+					} catch (RejectedExecutionException ree) {
+						// Stopped: the file is analyzed by the next start (still in the spool directory)
+					}
+					return;
+				}
+				// Note: a file modified during the analysis is queued again
+				filesQueued.remove(file.getPath());
+				analysisLock.lock();
+				try {
+					Parser.analyzeFile(file, false);
+				} finally {
+					analysisLock.unlock();
+				}
+			}
+		});
+		return true;
+	}
+
+	/**
+	 * Runs a task between two files.
+	 *
+	 * @return the result, or null if the current file takes too long
+	 */
+	private static String runBetweenFiles(Callable<String> task) {
+		try {
+			if(!analysisLock.tryLock(30, TimeUnit.SECONDS)) {
+				return null;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+		try {
+			return task.call();
+		} catch (Exception e) {
+			return null;
+		} finally {
+			analysisLock.unlock();
+		}
+	}
+
+	private static void reply(HttpExchange exchange, int code, String body) throws IOException {
+		byte[] bytes = body.getBytes(UTF8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		exchange.sendResponseHeaders(code, bytes.length);
+		OutputStream output = exchange.getResponseBody();
+		output.write(bytes);
+		output.close();
+	}
+}
@@ -6,6 +6,9 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -16,6 +19,9 @@ import com.fasterxml.jackson.databind.ObjectMapper;
  */
 public class RegexGhostery {
 	private Map<String, String> regex;
+	// Compiled patterns and names of the trackers (in the order of the keys of "regex")
+	private Pattern[] patterns;
+	private String[] names;
 	private int bugsVersion;
 	private boolean success;
 
@@ -35,6 +41,22 @@ public class RegexGhostery {
 		return regex;
 	}
 
+	/**
+	 *
+	 * @return the compiled patterns of the trackers (in the order of the matching)
+	 */
+	public Pattern[] getPatterns() {
+		return patterns;
+	}
+
+	/**
+	 *
+	 * @return the names of the trackers (same index as the patterns)
+	 */
+	public String[] getNames() {
+		return names;
+	}
+
 	/**
 	 *
 	 * @return the version of the bugs file
@@ -51,6 +73,22 @@ public class RegexGhostery {
 		return success;
 	}
 
+	/**
+	 * Matches a URL against the patterns of the trackers.
+	 *
+	 * @param url the URL
+	 * @return the name of the first tracker matching the URL, or null if none
+	 */
+	public String match(String url) {
+		for(int i = 0; i < patterns.length; i++) {
+			Matcher matcher = patterns[i].matcher(url);
+			if(matcher.find()) {
+				return names[i];
+			}
+		}
+		return null;
+	}
+
 	/**
 	 * Loads the list of trackers from the Ghostery website.
 	 *
@@ -71,6 +109,15 @@ public class RegexGhostery {
 				String name = bug.get("name").asText().replace(",", " "); // Remove the commas
 				regex.put(pattern, name);
 			}
+			// The patterns are compiled once (not at each URL)
+			patterns = new Pattern[regex.size()];
+			names = new String[regex.size()];
+			int index = 0;
+			for(Map.Entry<String, String> entry : regex.entrySet()) {
+				patterns[index] = Pattern.compile(entry.getKey());
+				names[index] = entry.getValue();
+				index++;
+			}
 
 			success = true;
 			bugsVersion = rootNode.get("bugsVersion").intValue();
@@ -79,5 +126,9 @@ public class RegexGhostery {
 			if(debug) e.printStackTrace();
 			success = false;
 		}
+		catch (PatternSyntaxException pse) {
+			if(debug) pse.printStackTrace();
+			success = false;
+		}
 	}
 }
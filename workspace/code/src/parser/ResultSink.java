@@ -0,0 +1,38 @@
+package parser;
+
+import java.io.IOException;
+
+/**
+ * Output of the results of the websites (the URLs of the trackers found on every website).
+ * The global statistics are not written by the sink: see Parser.computeStats.
+ *
+ * The sinks must be thread-safe: several websites may be analyzed at the same time.
+ */
+public interface ResultSink {
+	/**
+	 * The types of records of a website (one file per type with CsvResultSink).
+	 */
+	String[] RECORD_TYPES = {"mimetypes", "urls", "ghostery", "js", "js-query", "flash", "pixels", "cookies", "parameters"};
+
+	/**
+	 * Writes the results of a website.
+	 *
+	 * @param results the results of the website
+	 * @throws IOException
+	 */
+	void write(WebsiteResults results) throws IOException;
+
+	/**
+	 * Makes the results written so far durable (called before each snapshot of the statistics).
+	 *
+	 * @throws IOException
+	 */
+	void flush() throws IOException;
+
+	/**
+	 * Closes the sink.
+	 *
+	 * @throws IOException
+	 */
+	void close() throws IOException;
+}
@@ -0,0 +1,359 @@
+package parser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import utils.Counters;
+import utils.HyperLogLog;
+
+/**
+ * Manifest of a parser run.
+ *
+ * Records, for every HAR file successfully parsed, its path, size and last modification time
+ * together with the statistics it produced. A later run can reuse these statistics
+ * for the files which did not change instead of parsing them again.
+ *
+ * Only the path, size, modification time and position of each record are kept in memory
+ * (about 100 bytes per file plus the path): the statistics stay in the file and are read when a file is reused.
+ *
+ * The records of the previous versions (without the sketches of the distinct counts, or with the third-party hosts)
+ * are stale: their files are parsed again.
+ *
+ * The header holds the version of the Ghostery bugs and the version of the records (VERSION): the records
+ * of another version are stale.
+ *
+ * The manifest is an append-only text file (one line per file, the last line of a path wins)
+ * so that the records written before a crash are not lost. It is rewritten without the
+ * outdated lines at the end of a run.
+ */
+public class RunManifest {
+	private static final String HEADER = "#manifest";
+	private static final String SEPARATOR = "\t";
+	// Version of the records: to increment when the classification of the entries or the content of the records changes
+	private static final int VERSION = 4;
+
+	private File file;
+	private int bugsVersion;
+	// Path of the HAR file -> {size, last modification time, position of the record in the manifest}
+	private Map<String, long[]> records;
+	private RandomAccessFile reader;
+	private OutputStream writer;
+	private long length;
+
+	/**
+	 * Constructor.
+	 * Loads the existing manifest (if any). The records are discarded if they were produced
+	 * with another version of the Ghostery bugs or of the records.
+	 *
+	 * @param file the manifest file
+	 * @param bugsVersion the version of the Ghostery bugs used for this run (0 if none)
+	 * @throws IOException
+	 */
+	public RunManifest(File file, int bugsVersion) throws IOException {
+		this.file = file;
+		this.bugsVersion = bugsVersion;
+		records = new LinkedHashMap<String, long[]>();
+		load();
+		rewrite();
+		writer = new FileOutputStream(file, true);
+		reader = new RandomAccessFile(file, "r");
+	}
+
+	/**
+	 * Gets the number of records loaded from the previous runs.
+	 *
+	 * @return the number of records
+	 */
+	public int size() {
+		return records.size();
+	}
+
+	/**
+	 * Gets the stored results of a file if the file did not change since it was recorded.
+	 *
+	 * @param harFile the HAR file
+	 * @return the stored results, or null if the file is new or has changed (or if its record is malformed)
+	 */
+	public synchronized WebsiteResults lookup(File harFile) {
+		long[] record = records.get(harFile.getPath());
+		if(record == null || record[0] != harFile.length() || record[1] != harFile.lastModified()) {
+			return null;
+		}
+		try {
+			String[] fields = new String(readLine(reader, record[2]), "UTF-8").split(SEPARATOR, -1);
+			return isComplete(fields) ? toResults(fields) : null;
+		} catch (NumberFormatException nfe) {
+			// Malformed record (e.g. edited or corrupted): stale, the file is parsed again
+			return null;
+		} catch (IOException ioe) {
+			return null;
+		}
+	}
+
+	/**
+	 * Reads all the records of a manifest file (e.g. the partial results of a worker).
+	 *
+	 * @param file the manifest file
+	 * @param bugsVersion the expected version of the Ghostery bugs, or -1 to accept any version
+	 * @return the results, indexed by the key of the HAR files (see Parser.getFileKey)
+	 * @throws IOException if the file cannot be read or was produced with another version of the bugs or of the records
+	 */
+	public static LinkedHashMap<String, WebsiteResults> readResults(File file, int bugsVersion) throws IOException {
+		LinkedHashMap<String, WebsiteResults> results = new LinkedHashMap<String, WebsiteResults>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+		try {
+			String line = reader.readLine();
+			if(line == null || !line.startsWith(HEADER + SEPARATOR)) {
+				throw new IOException("Not a manifest: " + file.getPath());
+			}
+			String[] header = line.split(SEPARATOR, -1);
+			if(header.length != 3 || !header[2].equals(String.valueOf(VERSION))) {
+				throw new IOException("The manifest " + file.getPath() + " was produced by another version of the parser");
+			}
+			if(bugsVersion != -1 && !header[1].equals(String.valueOf(bugsVersion))) {
+				throw new IOException("The manifest " + file.getPath() + " was produced with another version of the bugs");
+			}
+			while((line = reader.readLine()) != null) {
+				String[] record = line.split(SEPARATOR, -1);
+				if(isComplete(record)) {
+					try {
+						results.put(Parser.getFileKey(record[0], Long.parseLong(record[1]), Long.parseLong(record[2])), toResults(record));
+					} catch (NumberFormatException nfe) {
+						// Skip the malformed record
+					}
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return results;
+	}
+
+	/**
+	 * @return true if a record has all its fields (the records of the previous versions have another number of fields)
+	 */
+	private static boolean isComplete(String[] record) {
+		return record.length == 10;
+	}
+
+	/**
+	 * Converts a record into results.
+	 */
+	private static WebsiteResults toResults(String[] record) {
+		WebsiteResults results = new WebsiteResults(record[3]);
+		String[] numbers = record[4].split(",");
+		int[] detailedStats = new int[Math.max(numbers.length, results.getDetailedStats().length)];
+		for(int i = 0; i < numbers.length; i++) {
+			detailedStats[i] = Integer.parseInt(numbers[i]);
+		}
+		results.setDetailedStats(detailedStats);
+		decodeMap(record[5], results.getTrackersGhosteryStats());
+		decodeMap(record[6], results.getMimetypesGhostery());
+		decodeMap(record[7], results.getMimetypesSOA());
+		results.setDistinctHosts(HyperLogLog.decode(WebsiteResults.DISTINCT_PRECISION, record[8]));
+		results.setDistinctTrackerUrls(HyperLogLog.decode(WebsiteResults.DISTINCT_PRECISION, record[9]));
+		return results;
+	}
+
+	/**
+	 * Records the results of a file.
+	 * The line is written immediately so that it survives a crash of the parser.
+	 *
+	 * @param harFile the HAR file
+	 * @param results the results produced by the file
+	 * @throws IOException
+	 */
+	public synchronized void record(File harFile, WebsiteResults results) throws IOException {
+		StringBuilder numbers = new StringBuilder();
+		for(int number : results.getDetailedStats()) {
+			if(numbers.length() > 0) numbers.append(",");
+			numbers.append(number);
+		}
+		String[] record = {
+				harFile.getPath(),
+				String.valueOf(harFile.length()),
+				String.valueOf(harFile.lastModified()),
+				results.getWebsite(),
+				numbers.toString(),
+				encodeMap(results.getTrackersGhosteryStats()),
+				encodeMap(results.getMimetypesGhostery()),
+				encodeMap(results.getMimetypesSOA()),
+				results.getDistinctHosts().encode(),
+				results.getDistinctTrackerUrls().encode()
+		};
+		byte[] line = (join(record) + "\n").getBytes("UTF-8");
+		writer.write(line);
+		records.put(record[0], new long[] {harFile.length(), harFile.lastModified(), length});
+		length += line.length;
+	}
+
+	/**
+	 * Closes the manifest: rewrites it without the outdated lines.
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void close() throws IOException {
+		writer.close();
+		reader.close();
+		rewrite();
+	}
+
+	/**
+	 * Loads the positions of the records of the manifest file.
+	 *
+	 * @throws IOException
+	 */
+	private void load() throws IOException {
+		if(!file.isFile()) {
+			return;
+		}
+		InputStream input = new BufferedInputStream(new FileInputStream(file));
+		try {
+			ByteArrayOutputStream line = new ByteArrayOutputStream();
+			long position = 0;
+			long start = 0;
+			boolean header = true;
+			int b;
+			while((b = input.read()) != -1) {
+				position++;
+				if(b != '\n') {
+					line.write(b);
+					continue;
+				}
+				String[] record = line.toString("UTF-8").split(SEPARATOR, -1);
+				line.reset();
+				if(header) {
+					// Records produced with another list of trackers or another version of the parser cannot be reused
+					if(!join(record).equals(getHeader(bugsVersion))) {
+						return;
+					}
+					header = false;
+				}
+				// Skip the truncated lines (crash while writing) and the malformed ones
+				else if(isComplete(record)) {
+					try {
+						records.put(record[0], new long[] {Long.parseLong(record[1]), Long.parseLong(record[2]), start});
+					} catch (NumberFormatException nfe) {
+						records.remove(record[0]);
+					}
+				}
+				start = position;
+			}
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * Rewrites the manifest file with the current records only (copied from the manifest file).
+	 * The file is written next to the manifest and then renamed.
+	 *
+	 * @throws IOException
+	 */
+	private void rewrite() throws IOException {
+		File temporaryFile = new File(file.getPath() + ".tmp");
+		OutputStream temporaryWriter = new BufferedOutputStream(new FileOutputStream(temporaryFile, false));
+		RandomAccessFile previous = records.isEmpty() ? null : new RandomAccessFile(file, "r");
+		try {
+			byte[] header = (getHeader(bugsVersion) + "\n").getBytes("UTF-8");
+			temporaryWriter.write(header);
+			length = header.length;
+			for(long[] record : records.values()) {
+				byte[] line = readLine(previous, record[2]);
+				temporaryWriter.write(line);
+				temporaryWriter.write('\n');
+				record[2] = length;
+				length += line.length + 1;
+			}
+		} finally {
+			temporaryWriter.close();
+			if(previous != null) {
+				previous.close();
+			}
+		}
+		if(file.exists() && !file.delete()) {
+			throw new IOException("Cannot replace the manifest " + file.getPath());
+		}
+		if(!temporaryFile.renameTo(file)) {
+			throw new IOException("Cannot rename the manifest " + temporaryFile.getPath());
+		}
+	}
+
+	/**
+	 * Reads the line starting at a position of the manifest file (without the end of line).
+	 */
+	private static byte[] readLine(RandomAccessFile input, long position) throws IOException {
+		input.seek(position);
+		ByteArrayOutputStream line = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+		while((read = input.read(buffer)) != -1) {
+			for(int i = 0; i < read; i++) {
+				if(buffer[i] == '\n') {
+					line.write(buffer, 0, i);
+					return line.toByteArray();
+				}
+			}
+			line.write(buffer, 0, read);
+		}
+		return line.toByteArray();
+	}
+
+	private static String getHeader(int bugsVersion) {
+		return HEADER + SEPARATOR + bugsVersion + SEPARATOR + VERSION;
+	}
+
+	private static String join(String[] record) {
+		StringBuilder line = new StringBuilder();
+		for(int i = 0; i < record.length; i++) {
+			if(i > 0) line.append(SEPARATOR);
+			line.append(record[i]);
+		}
+		return line.toString();
+	}
+
+	/**
+	 * Encodes counters as "key:value;key:value" (the keys are URL-encoded).
+	 */
+	private static String encodeMap(Counters counters) throws UnsupportedEncodingException {
+		StringBuilder encoded = new StringBuilder();
+		for(int id = 0; id < counters.getInterner().size(); id++) {
+			if(counters.get(id) == 0) continue;
+			if(encoded.length() > 0) encoded.append(";");
+			encoded.append(URLEncoder.encode(counters.getInterner().getName(id), "UTF-8")).append(":").append(counters.get(id));
+		}
+		return encoded.toString();
+	}
+
+	/**
+	 * Decodes counters encoded by encodeMap.
+	 */
+	private static void decodeMap(String encoded, Counters counters) {
+		if(encoded.isEmpty()) {
+			return;
+		}
+		try {
+			for(String element : encoded.split(";")) {
+				int colon = element.lastIndexOf(':');
+				counters.set(URLDecoder.decode(element.substring(0, colon), "UTF-8"), Long.parseLong(element.substring(colon+1)));
+			}
+		} catch (UnsupportedEncodingException e) {
+			// UTF-8 is always supported
+		}
+	}
+}
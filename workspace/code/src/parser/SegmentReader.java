@@ -0,0 +1,216 @@
+package parser;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import utils.ShardedLayout;
+
+/**
+ * Reads the segment files written by SegmentResultSink and reproduces the CSV files of the websites.
+ *
+ * Usage: SegmentReader <directory> [-sharded] [website...]
+ * Without website, the CSV files of all the websites are written (in the subdirectory "results").
+ */
+public class SegmentReader {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * Location of the records of a website in the segments.
+	 */
+	public static class Location {
+		private int siteId;
+		private String segment;
+		private long offset;
+		private int length;
+		private long time;
+
+		public Location(int siteId, String segment, long offset, int length, long time) {
+			this.siteId = siteId;
+			this.segment = segment;
+			this.offset = offset;
+			this.length = length;
+			this.time = time;
+		}
+
+		public int getSiteId() {
+			return siteId;
+		}
+
+		public String getSegment() {
+			return segment;
+		}
+
+		public long getOffset() {
+			return offset;
+		}
+
+		public int getLength() {
+			return length;
+		}
+
+		/**
+		 * @return the time of the write (in milliseconds), 0 for the indexes written without time
+		 */
+		public long getTime() {
+			return time;
+		}
+	}
+
+	/**
+	 * Reads the indexes of the segments (of every worker).
+	 * If a website has been written several times, its location written last is kept: the latest time
+	 * (the workers write their own indexes), then the last line of an index.
+	 *
+	 * @param segmentsDirectory the directory of the segments
+	 * @return the websites and the locations of their records
+	 * @throws IOException
+	 */
+	public static LinkedHashMap<String, Location> readIndex(File segmentsDirectory) throws IOException {
+		LinkedHashMap<String, Location> index = new LinkedHashMap<String, Location>();
+		File[] indexFiles = segmentsDirectory.listFiles(new FilenameFilter() {
+			public boolean accept(File directory, String name) {
+				return name.endsWith(".idx");
+			}
+		});
+		if(indexFiles == null) {
+			throw new IOException("Cannot list the directory " + segmentsDirectory.getPath());
+		}
+		Arrays.sort(indexFiles);
+		for(File indexFile : indexFiles) {
+			BufferedReader reader = new BufferedReader(new FileReader(indexFile));
+			try {
+				String line;
+				while((line = reader.readLine()) != null) {
+					String[] fields = line.split("\t");
+					// Note: an incomplete last line (crash) is ignored (the lines without time are from a previous version)
+					if(fields.length != 5 && fields.length != 6) {
+						continue;
+					}
+					Location location = new Location(Integer.parseInt(fields[0]), fields[2],
+							Long.parseLong(fields[3]), Integer.parseInt(fields[4]), (fields.length == 6) ? Long.parseLong(fields[5]) : 0);
+					Location previous = index.get(fields[1]);
+					if(previous == null || location.getTime() >= previous.getTime()) {
+						index.remove(fields[1]);
+						index.put(fields[1], location);
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Reads the records of a website.
+	 *
+	 * @param segmentsDirectory the directory of the segments
+	 * @param location the location of the records of the website
+	 * @return the lines of every type of records (all the types are present, even if empty)
+	 * @throws IOException
+	 */
+	public static LinkedHashMap<String, List<String>> readWebsite(File segmentsDirectory, Location location) throws IOException {
+		LinkedHashMap<String, List<String>> records = new LinkedHashMap<String, List<String>>();
+		for(String type : ResultSink.RECORD_TYPES) {
+			records.put(type, new ArrayList<String>());
+		}
+
+		byte[] bytes = new byte[location.getLength()];
+		RandomAccessFile segment = new RandomAccessFile(new File(segmentsDirectory, location.getSegment()), "r");
+		try {
+			segment.seek(location.getOffset());
+			segment.readFully(bytes);
+		} finally {
+			segment.close();
+		}
+
+		String siteId = String.valueOf(location.getSiteId());
+		for(String line : new String(bytes, UTF8).split("\n")) {
+			if(line.isEmpty()) {
+				continue;
+			}
+			String[] fields = line.split("\t", 3);
+			if(fields.length != 3 || !fields[1].equals(siteId) || !records.containsKey(fields[0])) {
+				throw new IOException("Corrupted record in the segment " + location.getSegment() + " at the offset " + location.getOffset());
+			}
+			records.get(fields[0]).add(SegmentResultSink.unescape(fields[2]));
+		}
+		return records;
+	}
+
+	/**
+	 * Writes the CSV files of a website (as CsvResultSink).
+	 *
+	 * @param resultsDirectory the directory of the results
+	 * @param website the name of the website
+	 * @param records the records of the website
+	 * @param sharded true to use the sharded layout
+	 * @throws IOException
+	 */
+	public static void writeCsvFiles(File resultsDirectory, String website, Map<String, List<String>> records, boolean sharded) throws IOException {
+		for(Map.Entry<String, List<String>> type : records.entrySet()) {
+			File file = ShardedLayout.getFileForWriting(resultsDirectory, website, website + "_" + type.getKey() + ".csv", sharded);
+			BufferedWriter writer = new BufferedWriter(new FileWriter(file, false));
+			try {
+				for(String line : type.getValue()) {
+					writer.write(line);
+					writer.newLine();
+				}
+			} finally {
+				writer.close();
+			}
+		}
+	}
+
+	public static void main(String[] args) {
+		if(args.length < 1) {
+			System.out.println("Usage: SegmentReader <directory> [-sharded] [website...]");
+			System.exit(1);
+		}
+		File resultsDirectory = new File(args[0], "results");
+		File segmentsDirectory = new File(args[0], SegmentResultSink.DIRECTORY);
+		boolean sharded = false;
+		List<String> websites = new ArrayList<String>();
+		for(int i = 1; i < args.length; i++) {
+			if(args[i].equals("-sharded")) {
+				sharded = true;
+			}
+			else {
+				websites.add(args[i]);
+			}
+		}
+
+		try {
+			LinkedHashMap<String, Location> index = readIndex(segmentsDirectory);
+			if(websites.isEmpty()) {
+				websites.addAll(index.keySet());
+			}
+			int written = 0;
+			for(String website : websites) {
+				Location location = index.get(website);
+				if(location == null) {
+					System.out.println("Website not found in the segments: " + website);
+					continue;
+				}
+				writeCsvFiles(resultsDirectory, website, readWebsite(segmentsDirectory, location), sharded);
+				written++;
+			}
+			System.out.println("CSV files written for " + written + " websites in " + resultsDirectory.getPath());
+		} catch (IOException ioe) {
+			System.out.println("Error: cannot read the segments: " + ioe.getMessage());
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,161 @@
+package parser;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * Appends the results of all the websites to a few large segment files
+ * instead of writing nine CSV files per website (see CsvResultSink).
+ *
+ * Files (in the subdirectory "results/segments"):
+ * - prefix-N.seg: the records, one per line: type, id of the website and value, separated by tabs.
+ *   The value is a line of the CSV file of this type (backslashes and line breaks are escaped).
+ *   The records of a website are contiguous. A new segment is started every 256 MB and at every run
+ *   (at the first website written: a run without website does not leave an empty segment).
+ * - prefix.idx: the index, one line per website: id, name of the website, segment, offset and length
+ *   (in bytes) of its records, and time of the write (in milliseconds). A website analyzed again is appended
+ *   again: the line written last is the valid one, whatever the index (see SegmentReader.readIndex).
+ *
+ * The prefix is "segment", or "segment_worker" for a worker (the workers never share a file).
+ * The CSV files of the websites can be reproduced with SegmentReader.
+ */
+public class SegmentResultSink implements ResultSink {
+	public static final String DIRECTORY = "results/segments";
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final long SEGMENT_SIZE = 256L * 1024 * 1024;
+
+	private File segmentsDirectory;
+	private String prefix;
+	private BufferedWriter indexWriter;
+	private FileOutputStream segmentStream;
+	private String segmentName;
+	private long segmentOffset;
+	private int nextSegment;
+	private int nextSiteId;
+	private long lastWriteTime;
+
+	/**
+	 * Constructor: opens the index (appends to it). The segment is created by the first write.
+	 *
+	 * @param directoryName the directory of the results
+	 * @param workerId the identifier of the worker (null if none)
+	 * @throws IOException
+	 */
+	public SegmentResultSink(String directoryName, String workerId) throws IOException {
+		segmentsDirectory = new File(directoryName, DIRECTORY);
+		if(!segmentsDirectory.isDirectory() && !segmentsDirectory.mkdirs()) {
+			throw new IOException("Cannot create the directory " + segmentsDirectory.getPath());
+		}
+		prefix = (workerId != null) ? "segment_" + workerId : "segment";
+
+		// Continue the numbering of the websites and of the segments of the previous runs
+		File indexFile = new File(segmentsDirectory, prefix + ".idx");
+		if(indexFile.isFile()) {
+			BufferedReader reader = new BufferedReader(new FileReader(indexFile));
+			try {
+				String line;
+				while((line = reader.readLine()) != null) {
+					if(!line.isEmpty()) {
+						nextSiteId = Math.max(nextSiteId, Integer.parseInt(line.substring(0, line.indexOf('\t'))) + 1);
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		}
+		while(new File(segmentsDirectory, prefix + "-" + nextSegment + ".seg").exists()) {
+			nextSegment++;
+		}
+		indexWriter = new BufferedWriter(new FileWriter(indexFile, true));
+	}
+
+	public synchronized void write(WebsiteResults results) throws IOException {
+		int siteId = nextSiteId++;
+
+		ByteArrayOutputStream records = new ByteArrayOutputStream();
+		for(String type : RECORD_TYPES) {
+			for(String line : results.getRecords(type)) {
+				records.write((type + "\t" + siteId + "\t" + escape(line) + "\n").getBytes(UTF8));
+			}
+		}
+
+		if(segmentStream == null) {
+			openSegment();
+		}
+		else if(segmentOffset > 0 && segmentOffset + records.size() > SEGMENT_SIZE) {
+			segmentStream.close();
+			openSegment();
+		}
+		long offset = segmentOffset;
+		records.writeTo(segmentStream);
+		segmentOffset += records.size();
+
+		// Note: the time never decreases in an index (the last line of a website stays the valid one)
+		lastWriteTime = Math.max(lastWriteTime, System.currentTimeMillis());
+		indexWriter.write(siteId + "\t" + results.getWebsite() + "\t" + segmentName + "\t" + offset + "\t" + records.size()
+				+ "\t" + lastWriteTime);
+		indexWriter.newLine();
+	}
+
+	public synchronized void flush() throws IOException {
+		if(segmentStream != null) {
+			segmentStream.flush();
+			segmentStream.getFD().sync();
+		}
+		indexWriter.flush();
+	}
+
+	public synchronized void close() throws IOException {
+		flush();
+		if(segmentStream != null) {
+			segmentStream.close();
+		}
+		indexWriter.close();
+	}
+
+	private void openSegment() throws IOException {
+		segmentName = prefix + "-" + nextSegment + ".seg";
+		nextSegment++;
+		// Note: written in blocks (one website at a time), no buffer needed
+		segmentStream = new FileOutputStream(new File(segmentsDirectory, segmentName));
+		segmentOffset = 0;
+	}
+
+	/**
+	 * Escapes the backslashes and the line breaks of a value.
+	 */
+	static String escape(String value) {
+		if(value.indexOf('\\') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+			return value;
+		}
+		return value.replace("\\", "\\\\").replace("\n", "\\n").replace("\r", "\\r");
+	}
+
+	/**
+	 * Reverses escape.
+	 */
+	static String unescape(String value) {
+		if(value.indexOf('\\') < 0) {
+			return value;
+		}
+		StringBuilder builder = new StringBuilder(value.length());
+		for(int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if(c == '\\' && i+1 < value.length()) {
+				char next = value.charAt(++i);
+				builder.append((next == 'n') ? '\n' : (next == 'r') ? '\r' : next);
+			}
+			else {
+				builder.append(c);
+			}
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,18 @@
+package parser;
+
+import java.io.IOException;
+
+/**
+ * Resolver of the SOA records used by Parser.resolveSOA (one query, no cache:
+ * the cache and the search of the parents are done by the parser).
+ */
+public interface SoaResolver {
+	/**
+	 * Gets the SOA of a domain.
+	 *
+	 * @param domain the domain (e.g. "www.example.com")
+	 * @return the administrator of the SOA, or null if the domain has no SOA record (its parent is tried)
+	 * @throws IOException if the answer is not a SOA record (the URL is skipped)
+	 */
+	String lookup(String domain) throws IOException;
+}
@@ -0,0 +1,304 @@
+package parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import utils.Counters;
+
+/**
+ * Writes the results of the websites and the global statistics in a SQLite database
+ * (results/results.sqlite, or results/results_worker.sqlite for a worker).
+ *
+ * Tables:
+ * - websites (id, name, ghostery, js, js_query, flash, pixels, cookies, parameters, distinct_hosts, distinct_tracker_urls):
+ *   the detailed numbers of trackers and the estimated numbers of distinct third-party hosts and tracker URLs
+ * - mimetypes (website_id, mimetype, count): the mimetypes of the URLs of different SOA
+ * - records (website_id, type, value): the URLs of different SOA ("urls") and the trackers (one type per kind of tracker)
+ * - stats_trackers, stats_mimetypes_ghostery, stats_mimetypes_soa (name, count): the global statistics
+ * - stats_distinct (name, count): the number of websites and the estimated numbers of distinct third-party hosts
+ *   and tracker URLs of all the websites (as logs/stats_distinct.csv)
+ *
+ * The rows are inserted in batches by prepared statements, in large transactions (committed every
+ * 100000 rows and at every snapshot of the statistics). The indexes are created when the sink is closed.
+ * The rows of a website are inserted after a savepoint: a website which fails leaves no row.
+ * A website analyzed again is inserted again: the view latest_websites gives its last id.
+ */
+public class SqliteResultSink implements ResultSink {
+	public static final String FILENAME = "results.sqlite";
+	private static final int BATCH_SIZE = 1000;
+	private static final int TRANSACTION_SIZE = 100000;
+
+	private Connection connection;
+	private PreparedStatement insertWebsite;
+	private PreparedStatement insertMimetype;
+	private PreparedStatement insertRecord;
+	private int nextWebsiteId;
+	private int batchRows;
+	private int transactionRows;
+
+	/**
+	 * Constructor: opens (or creates) the database.
+	 *
+	 * @param directoryName the directory of the results
+	 * @param workerId the identifier of the worker (null if none)
+	 * @throws IOException
+	 */
+	public SqliteResultSink(String directoryName, String workerId) throws IOException {
+		File resultsDirectory = new File(directoryName, "results");
+		if(!resultsDirectory.isDirectory() && !resultsDirectory.mkdirs()) {
+			throw new IOException("Cannot create the directory " + resultsDirectory.getPath());
+		}
+		File database = new File(resultsDirectory, (workerId != null) ? "results_" + workerId + ".sqlite" : FILENAME);
+		try {
+			Class.forName("org.sqlite.JDBC");
+			connection = DriverManager.getConnection("jdbc:sqlite:" + database.getPath());
+			Statement statement = connection.createStatement();
+			try {
+				// A crash loses at most the last transaction (the snapshot is written after the commit)
+				statement.execute("PRAGMA journal_mode = WAL");
+				statement.execute("PRAGMA synchronous = NORMAL");
+				statement.executeUpdate("CREATE TABLE IF NOT EXISTS websites (id INTEGER PRIMARY KEY, name TEXT NOT NULL,"
+						+ " ghostery INTEGER, js INTEGER, js_query INTEGER, flash INTEGER, pixels INTEGER, cookies INTEGER, parameters INTEGER,"
+						+ " distinct_hosts INTEGER, distinct_tracker_urls INTEGER)");
+				// Database of a previous version: without the distinct counts
+				ResultSet columns = statement.executeQuery("PRAGMA table_info(websites)");
+				boolean distinctCounts = false;
+				while(columns.next()) {
+					distinctCounts |= columns.getString("name").equals("distinct_hosts");
+				}
+				columns.close();
+				if(!distinctCounts) {
+					statement.executeUpdate("ALTER TABLE websites ADD COLUMN distinct_hosts INTEGER");
+					statement.executeUpdate("ALTER TABLE websites ADD COLUMN distinct_tracker_urls INTEGER");
+				}
+				statement.executeUpdate("CREATE TABLE IF NOT EXISTS mimetypes (website_id INTEGER NOT NULL, mimetype TEXT, count INTEGER)");
+				statement.executeUpdate("CREATE TABLE IF NOT EXISTS records (website_id INTEGER NOT NULL, type TEXT NOT NULL, value TEXT)");
+				for(String table : new String[] {"stats_trackers", "stats_mimetypes_ghostery", "stats_mimetypes_soa", "stats_distinct"}) {
+					statement.executeUpdate("CREATE TABLE IF NOT EXISTS " + table + " (name TEXT, count INTEGER)");
+				}
+				// Continue the numbering of the previous runs
+				ResultSet rs = statement.executeQuery("SELECT COALESCE(MAX(id), -1) + 1 AS next FROM websites");
+				nextWebsiteId = rs.getInt("next");
+				rs.close();
+			} finally {
+				statement.close();
+			}
+			connection.setAutoCommit(false);
+			insertWebsite = connection.prepareStatement("INSERT INTO websites (id, name, ghostery, js, js_query, flash, pixels, cookies,"
+					+ " parameters, distinct_hosts, distinct_tracker_urls) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+			insertMimetype = connection.prepareStatement("INSERT INTO mimetypes VALUES (?, ?, ?)");
+			insertRecord = connection.prepareStatement("INSERT INTO records VALUES (?, ?, ?)");
+		} catch (ClassNotFoundException cnfe) {
+			throw new IOException("Cannot use sqlite-jdbc", cnfe);
+		} catch (SQLException sqle) {
+			throw new IOException("Cannot open the database " + database.getPath(), sqle);
+		}
+	}
+
+	public synchronized void write(WebsiteResults results) throws IOException {
+		int websiteId = nextWebsiteId++;
+		int previousRows = transactionRows;
+		boolean savepoint = false;
+		try {
+			// Note: SQL savepoints (the savepoints of JDBC are not supported by sqlite-jdbc 3.7)
+			executeStatement("SAVEPOINT website");
+			savepoint = true;
+			insertWebsite.setInt(1, websiteId);
+			insertWebsite.setString(2, results.getWebsite());
+			insertWebsite.setInt(3, results.getTrackersGhostery().size());
+			insertWebsite.setInt(4, results.getTrackersJavaScript().size());
+			insertWebsite.setInt(5, results.getTrackersJavaScriptWithQuery().size());
+			insertWebsite.setInt(6, results.getTrackersFlash().size());
+			insertWebsite.setInt(7, results.getTrackersPixels().size());
+			insertWebsite.setInt(8, results.getTrackersCookies().size());
+			insertWebsite.setInt(9, results.getTrackersURLsParameters().size());
+			// Note: as the detailed statistics (set by Parser.exportResults after the sink)
+			insertWebsite.setLong(10, results.getDistinctHosts().estimate());
+			insertWebsite.setLong(11, results.getDistinctTrackerUrls().estimate());
+			insertWebsite.addBatch();
+			addRow();
+
+			Counters mimetypes = results.getMimetypesSOA();
+			for(int id : mimetypes.getSortedIds()) {
+				insertMimetype.setInt(1, websiteId);
+				insertMimetype.setString(2, mimetypes.getInterner().getName(id));
+				insertMimetype.setLong(3, mimetypes.get(id));
+				insertMimetype.addBatch();
+				addRow();
+			}
+
+			// Note: "mimetypes" is stored in its own table
+			for(int i = 1; i < RECORD_TYPES.length; i++) {
+				for(String value : results.getRecords(RECORD_TYPES[i])) {
+					insertRecord.setInt(1, websiteId);
+					insertRecord.setString(2, RECORD_TYPES[i]);
+					insertRecord.setString(3, value);
+					insertRecord.addBatch();
+					addRow();
+				}
+			}
+			// The batches never hold the rows of several websites (rolled back together)
+			executeBatches();
+			executeStatement("RELEASE website");
+			if(transactionRows >= TRANSACTION_SIZE) {
+				commit();
+			}
+		} catch (SQLException sqle) {
+			// The rows of the website already added or executed are discarded: the next write starts clean
+			try {
+				clearBatches();
+				transactionRows = previousRows;
+				if(savepoint) {
+					executeStatement("ROLLBACK TO website");
+					executeStatement("RELEASE website");
+				}
+			} catch (SQLException rollbackException) {
+				sqle.addSuppressed(rollbackException);
+			}
+			throw new IOException("Cannot insert the results of " + results.getWebsite(), sqle);
+		}
+	}
+
+	/**
+	 * Writes the global statistics (replaces the statistics of the previous runs).
+	 *
+	 * @param snapshot the snapshot of the statistics
+	 * @throws IOException
+	 */
+	public synchronized void writeStatistics(StatsSnapshot snapshot) throws IOException {
+		try {
+			if(snapshot.getTrackersGhosteryStats() != null) {
+				replaceStatistics("stats_trackers", snapshot.getTrackersGhosteryStats());
+			}
+			replaceStatistics("stats_mimetypes_ghostery", snapshot.getMimetypesGhostery());
+			replaceStatistics("stats_mimetypes_soa", snapshot.getMimetypesSOA());
+			replaceDistinctCounts(snapshot);
+			commit();
+		} catch (SQLException sqle) {
+			throw new IOException("Cannot write the statistics in the database", sqle);
+		}
+	}
+
+	public synchronized void flush() throws IOException {
+		try {
+			commit();
+		} catch (SQLException sqle) {
+			throw new IOException("Cannot commit the results", sqle);
+		}
+	}
+
+	public synchronized void close() throws IOException {
+		try {
+			commit();
+			Statement statement = connection.createStatement();
+			try {
+				statement.executeUpdate("CREATE INDEX IF NOT EXISTS websites_name ON websites (name)");
+				statement.executeUpdate("CREATE INDEX IF NOT EXISTS mimetypes_website ON mimetypes (website_id)");
+				statement.executeUpdate("CREATE INDEX IF NOT EXISTS records_website ON records (website_id)");
+				statement.executeUpdate("CREATE INDEX IF NOT EXISTS records_type_value ON records (type, value)");
+				statement.executeUpdate("CREATE VIEW IF NOT EXISTS latest_websites AS SELECT name, MAX(id) AS id FROM websites GROUP BY name");
+			} finally {
+				statement.close();
+			}
+			connection.commit();
+			connection.close();
+		} catch (SQLException sqle) {
+			throw new IOException("Cannot close the database", sqle);
+		}
+	}
+
+	/**
+	 * Counts a row added to a batch: executes the batches when they are large enough
+	 * (the transaction is committed by write, after the rows of the website).
+	 */
+	private void addRow() throws SQLException {
+		batchRows++;
+		transactionRows++;
+		if(batchRows >= BATCH_SIZE) {
+			executeBatches();
+		}
+	}
+
+	private void executeBatches() throws SQLException {
+		// Note: the websites first (the other rows refer to them)
+		insertWebsite.executeBatch();
+		insertMimetype.executeBatch();
+		insertRecord.executeBatch();
+		batchRows = 0;
+	}
+
+	private void executeStatement(String sql) throws SQLException {
+		Statement statement = connection.createStatement();
+		try {
+			statement.executeUpdate(sql);
+		} finally {
+			statement.close();
+		}
+	}
+
+	private void clearBatches() throws SQLException {
+		insertWebsite.clearBatch();
+		insertMimetype.clearBatch();
+		insertRecord.clearBatch();
+		batchRows = 0;
+	}
+
+	private void commit() throws SQLException {
+		executeBatches();
+		connection.commit();
+		transactionRows = 0;
+	}
+
+	private void replaceStatistics(String table, Counters statistics) throws SQLException {
+		executeBatches();
+		Statement statement = connection.createStatement();
+		try {
+			statement.executeUpdate("DELETE FROM " + table);
+		} finally {
+			statement.close();
+		}
+		PreparedStatement insert = connection.prepareStatement("INSERT INTO " + table + " VALUES (?, ?)");
+		try {
+			for(int id : statistics.getSortedIds()) {
+				insert.setString(1, statistics.getInterner().getName(id));
+				insert.setLong(2, statistics.get(id));
+				insert.addBatch();
+			}
+			insert.executeBatch();
+		} finally {
+			insert.close();
+		}
+	}
+
+	/**
+	 * Writes the number of websites and the distinct counts of all the websites (stats_distinct).
+	 */
+	private void replaceDistinctCounts(StatsSnapshot snapshot) throws SQLException {
+		Statement statement = connection.createStatement();
+		try {
+			statement.executeUpdate("DELETE FROM stats_distinct");
+		} finally {
+			statement.close();
+		}
+		String[] names = {"websites", "third-party hosts", "tracker URLs"};
+		long[] counts = {snapshot.getWebsitesDetailedStats().size(),
+				snapshot.getDistinctHosts().estimate(), snapshot.getDistinctTrackerUrls().estimate()};
+		PreparedStatement insert = connection.prepareStatement("INSERT INTO stats_distinct VALUES (?, ?)");
+		try {
+			for(int i = 0; i < names.length; i++) {
+				insert.setString(1, names[i]);
+				insert.setLong(2, counts[i]);
+				insert.addBatch();
+			}
+			insert.executeBatch();
+		} finally {
+			insert.close();
+		}
+	}
+}
@@ -0,0 +1,315 @@
+package parser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import utils.Counters;
+import utils.HyperLogLog;
+
+/**
+ * Snapshot of the aggregated statistics of the parser: trackers, mimetypes, detailed statistics
+ * of the websites and the list of the files already processed.
+ *
+ * The snapshot is checkpointed periodically during a run (so that a run which dies can be resumed)
+ * and the final reports are a projection of the snapshot (see Parser.computeStats).
+ * Snapshots of different runs or workers can be merged: the counters are summed and the lists
+ * of files are united, so the order of the merges does not matter. Snapshots with files in common
+ * are not merged: the statistics of a file cannot be subtracted (it would be counted twice).
+ *
+ * Binary format (DataOutputStream, version 3):
+ * magic, version, bugs version, trackers (count or -1 if disabled, then name/value pairs),
+ * mimetypes of Ghostery, mimetypes of the URLs of different SOA, detailed statistics
+ * (count, then website/length/values), processed files (count, then keys: see Parser.getFileKey),
+ * sketches of the distinct third-party hosts and tracker URLs (see HyperLogLog.write), magic.
+ * The snapshots of the previous versions are rejected: the distinct counts of version 1 cannot be merged
+ * and the processed files of version 2 are only known by their paths.
+ * The strings are written as a length followed by their UTF-8 bytes.
+ *
+ * Usage: java parser.StatsSnapshot <directory> <snapshot> [<snapshot>...]
+ * Merges the snapshots and writes the reports in the subdirectory "logs" of the directory.
+ */
+public class StatsSnapshot {
+	private static final int MAGIC = 0x50534e50; // "PSNP"
+	private static final int VERSION = 3;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private int bugsVersion;
+	private Counters trackersGhosteryStats;
+	private Counters mimetypesGhostery;
+	private Counters mimetypesSOA;
+	private Map<String, int[]> websitesDetailedStats;
+	private Set<String> processedFiles;
+	private HyperLogLog distinctHosts;
+	private HyperLogLog distinctTrackerUrls;
+
+	/**
+	 * Constructor: empty snapshot.
+	 *
+	 * @param bugsVersion the version of the Ghostery bugs (0 if none)
+	 * @param trackers true if the trackers are detected (Ghostery file given)
+	 */
+	public StatsSnapshot(int bugsVersion, boolean trackers) {
+		this.bugsVersion = bugsVersion;
+		trackersGhosteryStats = trackers ? new Counters(WebsiteResults.TRACKERS) : null;
+		mimetypesGhostery = new Counters(WebsiteResults.MIMETYPES);
+		mimetypesSOA = new Counters(WebsiteResults.MIMETYPES);
+		websitesDetailedStats = new HashMap<String, int[]>();
+		processedFiles = new HashSet<String>();
+		distinctHosts = new HyperLogLog(WebsiteResults.DISTINCT_PRECISION);
+		distinctTrackerUrls = new HyperLogLog(WebsiteResults.DISTINCT_PRECISION);
+	}
+
+	public int getBugsVersion() {
+		return bugsVersion;
+	}
+
+	/**
+	 * @return the number of elements found for each tracker, or null if the trackers are not detected
+	 */
+	public Counters getTrackersGhosteryStats() {
+		return trackersGhosteryStats;
+	}
+
+	public Counters getMimetypesGhostery() {
+		return mimetypesGhostery;
+	}
+
+	public Counters getMimetypesSOA() {
+		return mimetypesSOA;
+	}
+
+	public Map<String, int[]> getWebsitesDetailedStats() {
+		return websitesDetailedStats;
+	}
+
+	/**
+	 * @return the sketch of the distinct third-party hosts of all the websites
+	 */
+	public HyperLogLog getDistinctHosts() {
+		return distinctHosts;
+	}
+
+	/**
+	 * @return the sketch of the distinct tracker URLs of all the websites
+	 */
+	public HyperLogLog getDistinctTrackerUrls() {
+		return distinctTrackerUrls;
+	}
+
+	/**
+	 * @return the keys of the files already processed (path, size and last modification time, see Parser.getFileKey)
+	 */
+	public Set<String> getProcessedFiles() {
+		return processedFiles;
+	}
+
+	/**
+	 * Merges another snapshot in this snapshot.
+	 * The detailed statistics of a website present in both snapshots are the ones of the other snapshot
+	 * (the statistics of a website are not summed: the distinct counts cannot be).
+	 *
+	 * @param other the snapshot to merge
+	 * @throws IllegalArgumentException if the snapshots were produced with different versions of the bugs
+	 * or have files in common (the snapshot is not modified)
+	 */
+	public void merge(StatsSnapshot other) {
+		if(bugsVersion != other.bugsVersion && bugsVersion != 0 && other.bugsVersion != 0) {
+			throw new IllegalArgumentException("Snapshots of different versions of the bugs: " + bugsVersion + " and " + other.bugsVersion);
+		}
+		int common = 0;
+		String example = null;
+		for(String file : other.processedFiles) {
+			if(processedFiles.contains(file)) {
+				common++;
+				example = file;
+			}
+		}
+		if(common > 0) {
+			throw new IllegalArgumentException(common + " files are in both snapshots (e.g. " + example + "): they would be counted twice");
+		}
+		if(bugsVersion == 0) {
+			bugsVersion = other.bugsVersion;
+		}
+		if(other.trackersGhosteryStats != null) {
+			if(trackersGhosteryStats == null) {
+				trackersGhosteryStats = new Counters(WebsiteResults.TRACKERS);
+			}
+			trackersGhosteryStats.addAll(other.trackersGhosteryStats);
+		}
+		mimetypesGhostery.addAll(other.mimetypesGhostery);
+		mimetypesSOA.addAll(other.mimetypesSOA);
+		// Note: a website in both snapshots (e.g. analyzed again by another worker) keeps one row, as in Parser.mergeResults
+		for(Map.Entry<String, int[]> entry : other.websitesDetailedStats.entrySet()) {
+			websitesDetailedStats.put(entry.getKey(), entry.getValue().clone());
+		}
+		distinctHosts.merge(other.distinctHosts);
+		distinctTrackerUrls.merge(other.distinctTrackerUrls);
+		processedFiles.addAll(other.processedFiles);
+	}
+
+	/**
+	 * Writes the snapshot.
+	 * The snapshot is written next to the file and then renamed, so that the previous snapshot
+	 * is kept if the parser dies while writing.
+	 *
+	 * @param file the snapshot file
+	 * @throws IOException
+	 */
+	public void write(File file) throws IOException {
+		File temporaryFile = new File(file.getPath() + ".tmp");
+		DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)));
+		try {
+			output.writeInt(MAGIC);
+			output.writeInt(VERSION);
+			output.writeInt(bugsVersion);
+			if(trackersGhosteryStats == null) {
+				output.writeInt(-1);
+			}
+			else {
+				writeMap(output, trackersGhosteryStats);
+			}
+			writeMap(output, mimetypesGhostery);
+			writeMap(output, mimetypesSOA);
+			output.writeInt(websitesDetailedStats.size());
+			for(Map.Entry<String, int[]> entry : websitesDetailedStats.entrySet()) {
+				writeString(output, entry.getKey());
+				output.writeInt(entry.getValue().length);
+				for(int value : entry.getValue()) {
+					output.writeInt(value);
+				}
+			}
+			output.writeInt(processedFiles.size());
+			for(String processedFile : processedFiles) {
+				writeString(output, processedFile);
+			}
+			distinctHosts.write(output);
+			distinctTrackerUrls.write(output);
+			output.writeInt(MAGIC);
+		} finally {
+			output.close();
+		}
+		Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Reads a snapshot.
+	 *
+	 * @param file the snapshot file
+	 * @return the snapshot
+	 * @throws IOException if the file cannot be read, is truncated or has an unknown version
+	 */
+	public static StatsSnapshot read(File file) throws IOException {
+		DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if(input.readInt() != MAGIC) {
+				throw new IOException("Not a snapshot: " + file.getPath());
+			}
+			int version = input.readInt();
+			if(version != VERSION) {
+				throw new IOException("Unsupported version of snapshot (" + version + ", expected " + VERSION + "): " + file.getPath());
+			}
+			StatsSnapshot snapshot = new StatsSnapshot(input.readInt(), false);
+			int trackers = input.readInt();
+			if(trackers >= 0) {
+				snapshot.trackersGhosteryStats = new Counters(WebsiteResults.TRACKERS);
+				readMap(input, trackers, snapshot.trackersGhosteryStats);
+			}
+			readMap(input, input.readInt(), snapshot.mimetypesGhostery);
+			readMap(input, input.readInt(), snapshot.mimetypesSOA);
+			int websites = input.readInt();
+			for(int i = 0; i < websites; i++) {
+				String website = readString(input);
+				int[] stats = new int[input.readInt()];
+				for(int j = 0; j < stats.length; j++) {
+					stats[j] = input.readInt();
+				}
+				snapshot.websitesDetailedStats.put(website, stats);
+			}
+			int files = input.readInt();
+			for(int i = 0; i < files; i++) {
+				snapshot.processedFiles.add(readString(input));
+			}
+			snapshot.distinctHosts = HyperLogLog.read(input);
+			snapshot.distinctTrackerUrls = HyperLogLog.read(input);
+			if(input.readInt() != MAGIC) {
+				throw new IOException("Corrupted snapshot: " + file.getPath());
+			}
+			return snapshot;
+		} finally {
+			input.close();
+		}
+	}
+
+	private static void writeMap(DataOutputStream output, Counters counters) throws IOException {
+		output.writeInt(counters.size());
+		for(int id = 0; id < counters.getInterner().size(); id++) {
+			if(counters.get(id) != 0) {
+				writeString(output, counters.getInterner().getName(id));
+				output.writeInt((int) counters.get(id));
+			}
+		}
+	}
+
+	private static void readMap(DataInputStream input, int size, Counters counters) throws IOException {
+		for(int i = 0; i < size; i++) {
+			String key = readString(input);
+			counters.add(key, input.readInt());
+		}
+	}
+
+	/**
+	 * Writes a string as its length and its UTF-8 bytes (writeUTF is limited to 64 KB).
+	 * A null string is written as "".
+	 */
+	private static void writeString(DataOutputStream output, String value) throws IOException {
+		byte[] bytes = (value != null) ? value.getBytes(UTF8) : new byte[0];
+		output.writeInt(bytes.length);
+		output.write(bytes);
+	}
+
+	private static String readString(DataInputStream input) throws IOException {
+		byte[] bytes = new byte[input.readInt()];
+		input.readFully(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	/**
+	 * Merges snapshots and writes the reports.
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length < 2) {
+			System.out.println("Usage: java parser.StatsSnapshot <directory> <snapshot> [<snapshot>...]");
+			System.exit(1);
+		}
+		File logsDirectory = new File(args[0], "logs");
+		if(!logsDirectory.isDirectory() && !logsDirectory.mkdirs()) {
+			System.out.println("Cannot create the directory " + logsDirectory.getPath());
+			System.exit(1);
+		}
+		StatsSnapshot merged = read(new File(args[1]));
+		for(int i = 2; i < args.length; i++) {
+			try {
+				merged.merge(read(new File(args[i])));
+			} catch (IllegalArgumentException iae) {
+				System.out.println("Cannot merge " + args[i] + ": " + iae.getMessage());
+				System.exit(1);
+			}
+		}
+		merged.write(new File(logsDirectory, "snapshot.bin"));
+		Parser.computeStats(args[0], merged);
+		System.out.println(merged.getProcessedFiles().size() + " files, " + merged.getWebsitesDetailedStats().size() + " websites");
+	}
+}
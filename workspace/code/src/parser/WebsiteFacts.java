@@ -0,0 +1,93 @@
+package parser;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Object containing the facts resolved for all the entries of a website.
+ *
+ * The facts are saved in a file (one per website): the first line contains the SOA
+ * of the website, the next lines contain the facts of the entries (see EntryFacts).
+ */
+public class WebsiteFacts {
+	private static final String HEADER = "#facts";
+
+	private String website;
+	private String mainSOA;
+	private List<EntryFacts> entries;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param website the name of the website
+	 * @param mainSOA the SOA of the website
+	 */
+	public WebsiteFacts(String website, String mainSOA) {
+		this.website = website;
+		this.mainSOA = mainSOA;
+		entries = new ArrayList<EntryFacts>();
+	}
+
+	public String getWebsite() {
+		return website;
+	}
+
+	public String getMainSOA() {
+		return mainSOA;
+	}
+
+	public List<EntryFacts> getEntries() {
+		return entries;
+	}
+
+	/**
+	 * Writes the facts in a file.
+	 *
+	 * @param file the facts file
+	 * @throws IOException
+	 */
+	public void save(File file) throws IOException {
+		BufferedWriter writer = new BufferedWriter(new FileWriter(file, false));
+		try {
+			writer.write(HEADER + "\t" + mainSOA);
+			writer.newLine();
+			for(EntryFacts entry : entries) {
+				writer.write(entry.toLine());
+				writer.newLine();
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * Reads the facts of a website from a file.
+	 *
+	 * @param website the name of the website
+	 * @param file the facts file
+	 * @return the facts
+	 * @throws IOException if the file cannot be read or is not a facts file
+	 */
+	public static WebsiteFacts load(String website, File file) throws IOException {
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			String line = reader.readLine();
+			if(line == null || !line.startsWith(HEADER + "\t")) {
+				throw new IOException("Not a facts file: " + file.getPath());
+			}
+			WebsiteFacts facts = new WebsiteFacts(website, line.substring(HEADER.length() + 1));
+			while((line = reader.readLine()) != null) {
+				facts.getEntries().add(EntryFacts.fromLine(line));
+			}
+			return facts;
+		} finally {
+			reader.close();
+		}
+	}
+}
@@ -0,0 +1,216 @@
+package parser;
+
+import java.util.ArrayList;
+
+import utils.Counters;
+import utils.HyperLogLog;
+import utils.Interner;
+
+/**
+ * Object containing the results of the analysis of a website.
+ *
+ */
+public class WebsiteResults {
+	// Ids of the names of the trackers and of the mimetypes (shared by all the counters of the process)
+	public static final Interner TRACKERS = new Interner();
+	public static final Interner MIMETYPES = new Interner();
+	// Number of kinds of trackers in the detailed statistics (followed by the distinct counts)
+	public static final int TRACKER_KINDS = 7;
+	// Precision of the sketches of the distinct counts (4 KB per sketch, standard error of 1.6%)
+	public static final int DISTINCT_PRECISION = 12;
+
+	private String website;
+	private int[] detailedStats;
+
+	private Counters mimetypesSOA;
+	private Counters trackersGhosteryStats;
+	private Counters mimetypesGhostery;
+	private HyperLogLog distinctHosts;
+	private HyperLogLog distinctTrackerUrls;
+
+	private ArrayList<String> urlsSOA;
+	private ArrayList<String> trackersGhostery;
+	private ArrayList<String> trackersCookies;
+	private ArrayList<String> trackersJavaScript;
+	private ArrayList<String> trackersJavaScriptWithQuery;
+	private ArrayList<String> trackersFlash;
+	private ArrayList<String> trackersPixels;
+	private ArrayList<String> trackersURLsParameters;
+	// Cookies of trackersCookies: domain, name, value and path (see CookieIndex)
+	private ArrayList<String[]> cookies;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param website the name of the website.
+	 */
+	public WebsiteResults(String website) {
+		this.website = website;
+		detailedStats = new int[] {0, 0, 0, 0, 0, 0, 0, 0, 0};
+
+		mimetypesSOA = new Counters(MIMETYPES);
+		trackersGhosteryStats = new Counters(TRACKERS);
+		mimetypesGhostery = new Counters(MIMETYPES);
+		distinctHosts = new HyperLogLog(DISTINCT_PRECISION);
+		distinctTrackerUrls = new HyperLogLog(DISTINCT_PRECISION);
+
+		urlsSOA = new ArrayList<String>();
+		trackersGhostery = new ArrayList<String>();
+		trackersCookies = new ArrayList<String>();
+		trackersJavaScript = new ArrayList<String>();
+		trackersJavaScriptWithQuery = new ArrayList<String>();
+		trackersFlash = new ArrayList<String>();
+		trackersPixels = new ArrayList<String>();
+		trackersURLsParameters = new ArrayList<String>();
+		cookies = new ArrayList<String[]>();
+	}
+
+	/**
+	 * Gets the name of the website.
+	 *
+	 * @return a String containing the name.
+	 */
+	public String getWebsite() {
+		return website;
+	}
+
+	/**
+	 * Gets the detailed number of trackers (Ghostery, JavaScript, JavaScript with query,
+	 * Flash, tracking pixels, cookies and other URLs with parameters), followed by the estimated
+	 * numbers of distinct third-party hosts and of distinct tracker URLs.
+	 *
+	 * @return an array containing the numbers.
+	 */
+	public int[] getDetailedStats() {
+		return detailedStats;
+	}
+
+	/**
+	 * Sets the detailed number of trackers.
+	 *
+	 * @param detailedStats an array containing the numbers.
+	 */
+	public void setDetailedStats(int[] detailedStats) {
+		this.detailedStats = detailedStats;
+	}
+
+	/**
+	 * Gets the total number of trackers of the website.
+	 *
+	 * @return the sum of the detailed numbers of trackers.
+	 */
+	public int getTotalTrackers() {
+		int total = 0;
+		for(int i = 0; i < TRACKER_KINDS && i < detailedStats.length; i++) {
+			total += detailedStats[i];
+		}
+		return total;
+	}
+
+	/**
+	 * @return the sketch of the distinct hosts of the URLs of different SOA
+	 */
+	public HyperLogLog getDistinctHosts() {
+		return distinctHosts;
+	}
+
+	public void setDistinctHosts(HyperLogLog distinctHosts) {
+		this.distinctHosts = distinctHosts;
+	}
+
+	/**
+	 * @return the sketch of the distinct URLs detected as trackers (by any criterion)
+	 */
+	public HyperLogLog getDistinctTrackerUrls() {
+		return distinctTrackerUrls;
+	}
+
+	public void setDistinctTrackerUrls(HyperLogLog distinctTrackerUrls) {
+		this.distinctTrackerUrls = distinctTrackerUrls;
+	}
+
+	/**
+	 * @return the numbers of URLs of different SOA per mimetype.
+	 */
+	public Counters getMimetypesSOA() {
+		return mimetypesSOA;
+	}
+
+	/**
+	 * @return the numbers of elements per Ghostery tracker.
+	 */
+	public Counters getTrackersGhosteryStats() {
+		return trackersGhosteryStats;
+	}
+
+	/**
+	 * @return the numbers of Ghostery trackers per mimetype.
+	 */
+	public Counters getMimetypesGhostery() {
+		return mimetypesGhostery;
+	}
+
+	public ArrayList<String> getUrlsSOA() {
+		return urlsSOA;
+	}
+
+	public ArrayList<String> getTrackersGhostery() {
+		return trackersGhostery;
+	}
+
+	public ArrayList<String> getTrackersCookies() {
+		return trackersCookies;
+	}
+
+	/**
+	 * @return the cookies of the trackers (domain, name, value and path), not exported
+	 */
+	public ArrayList<String[]> getCookies() {
+		return cookies;
+	}
+
+	public ArrayList<String> getTrackersJavaScript() {
+		return trackersJavaScript;
+	}
+
+	public ArrayList<String> getTrackersJavaScriptWithQuery() {
+		return trackersJavaScriptWithQuery;
+	}
+
+	public ArrayList<String> getTrackersFlash() {
+		return trackersFlash;
+	}
+
+	public ArrayList<String> getTrackersPixels() {
+		return trackersPixels;
+	}
+
+	public ArrayList<String> getTrackersURLsParameters() {
+		return trackersURLsParameters;
+	}
+
+	/**
+	 * Gets the lines of one of the results files of the website (see ResultSink.RECORD_TYPES).
+	 *
+	 * @param type the type of the records ("mimetypes", "urls" or a type of tracker)
+	 * @return the lines ("mimetype,number" for the mimetypes, sorted in descending order)
+	 */
+	public ArrayList<String> getRecords(String type) {
+		if(type.equals("mimetypes")) {
+			ArrayList<String> lines = new ArrayList<String>();
+			for(int id : mimetypesSOA.getSortedIds()) {
+				lines.add(MIMETYPES.getName(id) + "," + mimetypesSOA.get(id));
+			}
+			return lines;
+		}
+		else if(type.equals("urls")) return urlsSOA;
+		else if(type.equals("ghostery")) return trackersGhostery;
+		else if(type.equals("js")) return trackersJavaScript;
+		else if(type.equals("js-query")) return trackersJavaScriptWithQuery;
+		else if(type.equals("flash")) return trackersFlash;
+		else if(type.equals("pixels")) return trackersPixels;
+		else if(type.equals("cookies")) return trackersCookies;
+		else if(type.equals("parameters")) return trackersURLsParameters;
+		throw new IllegalArgumentException("Unknown type of records: " + type);
+	}
+}
@@ -0,0 +1,211 @@
+package parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coordinates several parser processes (on one or several hosts sharing a file system)
+ * working on the same directory.
+ *
+ * A worker claims a file by creating its lease file ("work/leases/<file>.lease"): the creation
+ * is atomic, so only one worker can succeed. The lease is refreshed (last modification time)
+ * while the file is parsed. A lease which has not been refreshed for the duration of the lease
+ * belongs to a crashed worker: it is removed and the file can be claimed again.
+ * When a file is parsed, a marker is created in "work/done/" and the lease is removed.
+ * The markers of a worker are only valid with its partial results: they are cleared when
+ * its partial results are discarded (see clearDone).
+ *
+ * Note: in the rare case where two workers steal the same expired lease at the same time,
+ * a file may be parsed twice. This is harmless: the results of a file are identical
+ * and the merge keeps a single record per file.
+ */
+public class WorkCoordinator {
+	private File leasesDirectory;
+	private File doneDirectory;
+	private String workerId;
+	private long leaseDuration;
+	private volatile File currentLease;
+	private ScheduledExecutorService heartbeat;
+
+	/**
+	 * Constructor.
+	 * Starts refreshing the current lease three times per lease duration.
+	 *
+	 * @param workDirectory the shared work directory
+	 * @param workerId the identifier of this worker
+	 * @param leaseSeconds the duration of a lease (in seconds)
+	 * @throws IOException if the work directory cannot be created
+	 */
+	public WorkCoordinator(File workDirectory, String workerId, int leaseSeconds) throws IOException {
+		this.workerId = workerId;
+		this.leaseDuration = TimeUnit.MILLISECONDS.convert(leaseSeconds, TimeUnit.SECONDS);
+		leasesDirectory = new File(workDirectory, "leases");
+		doneDirectory = new File(workDirectory, "done");
+		for(File subdirectory : new File[] {leasesDirectory, doneDirectory}) {
+			if(!subdirectory.isDirectory() && !subdirectory.mkdirs() && !subdirectory.isDirectory()) {
+				throw new IOException("Cannot create the directory " + subdirectory.getPath());
+			}
+		}
+
+		heartbeat = Executors.newSingleThreadScheduledExecutor();
+		long period = Math.max(1, leaseDuration / 3);
+		heartbeat.scheduleAtFixedRate(new Runnable() {
+			public void run() {
+				File lease = currentLease;
+				if(lease != null) {
+					lease.setLastModified(System.currentTimeMillis());
+				}
+			}
+		}, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @return the identifier of this worker
+	 */
+	public String getWorkerId() {
+		return workerId;
+	}
+
+	/**
+	 * Checks if a file has already been parsed by a worker.
+	 *
+	 * @param key the name of the file
+	 * @return true if the file has been parsed, false otherwise
+	 */
+	public boolean isDone(String key) {
+		return new File(doneDirectory, key).exists();
+	}
+
+	/**
+	 * Removes the markers written by this worker (e.g. its partial results were discarded:
+	 * another version of the bugs or a re-analysis), so that their files are parsed again.
+	 *
+	 * @return the number of markers removed
+	 * @throws IOException if the markers cannot be read
+	 */
+	public int clearDone() throws IOException {
+		int count = 0;
+		String prefix = workerId + ",";
+		DirectoryStream<Path> markers = Files.newDirectoryStream(doneDirectory.toPath());
+		try {
+			for(Path marker : markers) {
+				if(new String(Files.readAllBytes(marker), Charset.forName("UTF-8")).startsWith(prefix)) {
+					Files.delete(marker);
+					count++;
+				}
+			}
+		} finally {
+			markers.close();
+		}
+		return count;
+	}
+
+	/**
+	 * Counts the files marked as parsed successfully (by all the workers).
+	 *
+	 * @param workDirectory the shared work directory
+	 * @return the number of markers of success
+	 * @throws IOException if the markers cannot be read
+	 */
+	public static int countDone(File workDirectory) throws IOException {
+		File doneDirectory = new File(workDirectory, "done");
+		if(!doneDirectory.isDirectory()) {
+			return 0;
+		}
+		int count = 0;
+		DirectoryStream<Path> markers = Files.newDirectoryStream(doneDirectory.toPath());
+		try {
+			for(Path marker : markers) {
+				if(new String(Files.readAllBytes(marker), Charset.forName("UTF-8")).endsWith(",success")) {
+					count++;
+				}
+			}
+		} finally {
+			markers.close();
+		}
+		return count;
+	}
+
+	/**
+	 * Tries to claim a file.
+	 *
+	 * @param key the name of the file
+	 * @return true if this worker now holds the lease of the file, false if the file is done or leased by another worker
+	 */
+	public boolean claim(String key) {
+		if(isDone(key)) {
+			return false;
+		}
+		File lease = new File(leasesDirectory, key + ".lease");
+		try {
+			Files.createFile(lease.toPath());
+			Files.write(lease.toPath(), workerId.getBytes(Charset.forName("UTF-8")));
+			currentLease = lease;
+			// The file may have been completed between the check and the creation of the lease
+			if(isDone(key)) {
+				release(key);
+				return false;
+			}
+			return true;
+		} catch (FileAlreadyExistsException e) {
+			long lastModified = lease.lastModified();
+			if(lastModified != 0 && System.currentTimeMillis() - lastModified > leaseDuration) {
+				// Expired lease (crashed worker): remove it with an atomic rename, then claim the file again
+				File expired = new File(leasesDirectory, key + ".expired." + workerId);
+				try {
+					Files.move(lease.toPath(), expired.toPath(), StandardCopyOption.ATOMIC_MOVE);
+					Files.delete(expired.toPath());
+				} catch (IOException ioe) {
+					// Another worker removed it first
+					return false;
+				}
+				return claim(key);
+			}
+			return false;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Marks a file as parsed and releases its lease.
+	 *
+	 * @param key the name of the file
+	 * @param success true if the file has been parsed successfully
+	 * @throws IOException
+	 */
+	public void complete(String key, boolean success) throws IOException {
+		Files.write(new File(doneDirectory, key).toPath(),
+				(workerId + "," + (success ? "success" : "fail")).getBytes(Charset.forName("UTF-8")));
+		release(key);
+	}
+
+	/**
+	 * Releases the lease of a file without marking it as parsed.
+	 *
+	 * @param key the name of the file
+	 */
+	public void release(String key) {
+		File lease = new File(leasesDirectory, key + ".lease");
+		if(lease.equals(currentLease)) {
+			currentLease = null;
+		}
+		lease.delete();
+	}
+
+	/**
+	 * Stops refreshing the leases.
+	 */
+	public void close() {
+		heartbeat.shutdownNow();
+	}
+}
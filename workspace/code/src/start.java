@@ -8,16 +8,22 @@ import org.apache.commons.cli.ParseException;
 import org.apache.commons.cli.PosixParser;
 
 import parser.Parser;
+import parser.ParserOptions;
+import parser.ParserPool;
+import parser.ParserService;
 import crawler.Crawler;
+import utils.AsyncLogger;
 
 public class start {
 	public static void main (String[] args) {
 		CommandLine cmd;
 		Options options = new Options();
 		// General
-		options.addOption("mode", true, "required: c (crawler) or p (parser)");
+		options.addOption("mode", true, "required: c (crawler), p (parser), cp (crawler and parser in the same process) or d (parser daemon)");
 		options.addOption("dir", true, "required: directory containing the files generated (crawler mode) or the files to parse (parser mode)");
 		options.addOption("debug", false, "enable the debug messages");
+		options.addOption("sharded", false, "store the HAR and results files in hash-prefixed subdirectories (for millions of files)");
+		options.addOption("loglevel", true, "minimum level of the messages: debug, info (by default), warn or error (error hides the errors of the entries, logged as warnings)");
 		options.addOption("h", false, "help");
 
 		// Crawler
@@ -28,10 +34,29 @@ public class start {
 		options.addOption("attempts", true, "crawler (optional): number of attempts per website");
 		options.addOption("restart", true, "crawler (required): number of websites to visit before restarting Firefox");
 		options.addOption("timeout", true, "crawler (optional): timeout for the visit of the websites");
+		options.addOption("proxy", true, "crawler (optional): record the pages with a local proxy on this port (0 for any free port) instead of Firebug and NetExport (plain HTTP only: the HTTPS requests are opaque)");
+		options.addOption("proxyhar", false, "crawler (optional): with -proxy in mode cp, also write the HAR files (always written in mode c)");
 
 		// Parser
 		options.addOption("trackers", false, "parser (optional): show all trackers (print a lot)");
 		options.addOption("ghostery", true, "parser (optional): path to the Ghostery file");
+		options.addOption("scanextra", false, "parser (optional): also list the directory when the crawler wrote a manifest of the HAR files (e.g. files copied without a crawl)");
+		options.addOption("incremental", false, "parser (optional): only parse the new or changed files (reuses the manifest of the previous runs)");
+		options.addOption("facts", false, "parser (optional): save the facts resolved for every entry (SOA, images, cookies) in the subdirectory \"facts\"");
+		options.addOption("reanalyze", false, "parser (optional): classify the entries again from the saved facts (no DNS lookup, no download)");
+		options.addOption("worker", true, "parser (optional): identifier of this worker when several parsers share the directory (results merged with -merge)");
+		options.addOption("lease", true, "parser (optional): duration (in seconds) of the lease of a file claimed by a worker (600 by default)");
+		options.addOption("merge", false, "parser (optional): merge the partial results of the workers and compute the statistics");
+		options.addOption("filetimeout", true, "parser (optional): maximum time (in seconds) to analyze a file, the file is quarantined if exceeded");
+		options.addOption("filememory", true, "parser (optional): maximum growth of the live heap (in MB) to analyze a file, the file is quarantined if exceeded");
+		options.addOption("parsers", true, "crawler and parser (optional): number of HAR files parsed at the same time (2 by default)");
+		options.addOption("spool", true, "parser daemon (optional): directory watched for new HAR files (the directory by default)");
+		options.addOption("port", true, "parser daemon (optional): port of the local HTTP endpoint (stats, parse, report), 0 to disable (8765 by default)");
+		options.addOption("output", true, "parser (optional): output of the results of the websites: csv (files per website, by default), segments (few large files, see SegmentReader) or sqlite (results/results.sqlite)");
+		options.addOption("resume", false, "parser (optional): resume a run which died from its last snapshot (logs/snapshot.bin)");
+		options.addOption("cache", true, "parser (optional): file of the cache of the SOAs and of the image dimensions, kept across the runs (in memory by default)");
+		options.addOption("cachesize", true, "parser (optional): maximum size (in MB) of the cache of the SOAs and of the image dimensions, outside of the heap (64 by default)");
+		options.addOption("cookieindex", false, "parser (optional): index the values of the third-party cookies to find the values shared across websites (results/cookie_index, see parser.CookieIndex; kept by the resumptions and the incremental runs, the indexes of the workers are combined by -merge)");
 
 
 		CommandLineParser parser = new PosixParser();
@@ -53,9 +78,17 @@ public class start {
 			else {
 				String mode = cmd.getOptionValue("mode");
 				String directory = cmd.getOptionValue("dir");
+				if(cmd.hasOption("loglevel")) {
+					int level = AsyncLogger.parseLevel(cmd.getOptionValue("loglevel"));
+					if(level == -1) {
+						System.out.println("The log level must be debug, info, warn or error!");
+						System.exit(1);
+					}
+					AsyncLogger.setLevel(level);
+				}
 
-				// Mode: parser
-				if(mode.equals("p")) {
+				// Mode: parser (or parser daemon)
+				if(mode.equals("p") || mode.equals("d")) {
 					//if(checkRequiredArgsParser(cmd.hasOption("ghostery"))) {
 					try {
 						// Check if the directory exists
@@ -68,7 +101,22 @@ public class start {
 							if(cmd.hasOption("ghostery")) {
 								ghostery = parseFile(cmd.getOptionValue("ghostery"), "ghostery");
 							}
-							Parser.launchParser(directory, cmd.hasOption("debug"), cmd.hasOption("trackers"), ghostery);
+							ParserOptions parserOptions = parseParserOptions(cmd);
+							if(mode.equals("d")) {
+								String spool = cmd.hasOption("spool") ? cmd.getOptionValue("spool") : directory;
+								if(!new File(spool).isDirectory()) {
+									System.out.println("Spool directory not found! " + new File(spool).getCanonicalPath() + "\nCheck your -spool argument.");
+									System.exit(1);
+								}
+								int port = 8765; // 8765 by default
+								if(cmd.hasOption("port")) {
+									port = parsePort(cmd.getOptionValue("port"));
+								}
+								ParserService.launchService(directory, cmd.hasOption("debug"), cmd.hasOption("trackers"), ghostery, parserOptions, spool, port);
+							}
+							else {
+								Parser.launchParser(directory, cmd.hasOption("debug"), cmd.hasOption("trackers"), ghostery, parserOptions);
+							}
 						}
 					} catch (Exception e) {
 						System.out.println("An error occurred with the parser.");
@@ -77,8 +125,8 @@ public class start {
 					}
 					//}
 				}
-				// Mode: crawler
-				else if(mode.equals("c")) {
+				// Mode: crawler (or crawler and parser in the same process)
+				else if(mode.equals("c") || mode.equals("cp")) {
 					if(checkRequiredArgsCrawler(cmd.hasOption("ffprofile"), cmd.hasOption("websites"), cmd.hasOption("start"), cmd.hasOption("end"), cmd.hasOption("restart"))) {
 						try {
 							String websites = parseFile(cmd.getOptionValue("websites"), "websites");
@@ -94,7 +142,30 @@ public class start {
 								timeout = parseTimeout(cmd.getOptionValue("timeout"));
 							}
 
-							Crawler.launchCrawler(directory, cmd.getOptionValue("ffprofile"), websites, startIndex, endIndex, attempts, cmd.hasOption("debug"), restart, timeout);
+							int proxyPort = -1; // Firebug and NetExport by default
+							if(cmd.hasOption("proxy")) {
+								proxyPort = parsePort(cmd.getOptionValue("proxy"));
+							}
+
+							// Streaming: the HAR files are parsed while the next websites are visited
+							if(mode.equals("cp")) {
+								String ghostery = "";
+								if(cmd.hasOption("ghostery")) {
+									ghostery = parseFile(cmd.getOptionValue("ghostery"), "ghostery");
+								}
+								int parsers = 2; // 2 threads by default
+								if(cmd.hasOption("parsers")) {
+									parsers = parseParsers(cmd.getOptionValue("parsers"));
+								}
+								if(proxyPort != -1) {
+									System.out.println("Warning: the proxy does not decrypt the HTTPS requests (recorded as opaque)."
+											+ "\nThe statistics of this crawl only cover the plain HTTP requests.");
+								}
+								Parser.initialize(directory, cmd.hasOption("debug"), cmd.hasOption("trackers"), ghostery, parseParserOptions(cmd), false);
+								Crawler.setHarListener(new ParserPool(parsers));
+							}
+
+							Crawler.launchCrawler(directory, cmd.getOptionValue("ffprofile"), websites, startIndex, endIndex, attempts, cmd.hasOption("debug"), restart, timeout, cmd.hasOption("sharded"), proxyPort, cmd.hasOption("proxyhar"));
 						} catch (Exception e) {
 							System.out.println("An error occurred with the crawler.");
 							if(cmd.hasOption("debug")) e.printStackTrace();
@@ -115,6 +186,43 @@ public class start {
 		}
 	}
 
+	/**
+	 * Parses the optional settings of the parser.
+	 *
+	 * @param cmd the command line
+	 * @return the settings
+	 * @throws Exception
+	 */
+	public static ParserOptions parseParserOptions(CommandLine cmd) throws Exception {
+		ParserOptions parserOptions = new ParserOptions();
+		parserOptions.setIncremental(cmd.hasOption("incremental"));
+		parserOptions.setFacts(cmd.hasOption("facts"));
+		parserOptions.setReanalysis(cmd.hasOption("reanalyze"));
+		parserOptions.setSharded(cmd.hasOption("sharded"));
+		parserOptions.setScanExtra(cmd.hasOption("scanextra"));
+		parserOptions.setWorkerId(cmd.getOptionValue("worker"));
+		if(cmd.hasOption("lease")) {
+			parserOptions.setLeaseDuration(parseLease(cmd.getOptionValue("lease")));
+		}
+		parserOptions.setMerge(cmd.hasOption("merge"));
+		parserOptions.setResume(cmd.hasOption("resume"));
+		if(cmd.hasOption("filetimeout")) {
+			parserOptions.setFileTimeout(parseBudget(cmd.getOptionValue("filetimeout"), "time"));
+		}
+		if(cmd.hasOption("filememory")) {
+			parserOptions.setFileMemory(parseBudget(cmd.getOptionValue("filememory"), "memory"));
+		}
+		if(cmd.hasOption("output")) {
+			parserOptions.setOutput(parseOutput(cmd.getOptionValue("output")));
+		}
+		parserOptions.setCacheFile(cmd.getOptionValue("cache"));
+		if(cmd.hasOption("cachesize")) {
+			parserOptions.setCacheSize(parseCacheSize(cmd.getOptionValue("cachesize")));
+		}
+		parserOptions.setCookieIndex(cmd.hasOption("cookieindex"));
+		return parserOptions;
+	}
+
 	/**
 	 * Checks if required arguments are missing for the crawler mode.
 	 * Prints the list of missing arguments in the console.
@@ -264,4 +372,129 @@ public class start {
 			throw new Exception();
 		}
 	}
+
+	/**
+	 * Parses the duration of the leases of the workers (parser).
+	 *
+	 * @param lease
+	 * @return the duration (in seconds)
+	 * @throws Exception
+	 */
+	public static int parseLease(String lease) throws Exception {
+		try {
+			int value = Integer.parseInt(lease);
+			if(value < 10) {
+				System.out.println("The lease must be greater than 10 seconds");
+				throw new Exception();
+			}
+			return value;
+		} catch (Exception e) {
+			System.out.println("The lease must be an integer!");
+			throw new Exception();
+		}
+	}
+
+	/**
+	 * Parses the maximum size of the cache of the parser.
+	 *
+	 * @param size the size (in MB) as a String
+	 * @return the size if it is valid, throws an exception otherwise
+	 * @throws Exception
+	 */
+	public static int parseCacheSize(String size) throws Exception {
+		int value;
+		try {
+			value = Integer.parseInt(size);
+		} catch (Exception e) {
+			System.out.println("The size of the cache must be an integer!");
+			throw new Exception();
+		}
+		if(value < 1 || value > 2047) {
+			System.out.println("The size of the cache must be between 1 and 2047 MB");
+			throw new Exception();
+		}
+		return value;
+	}
+
+	/**
+	 * Parses a budget per file (parser).
+	 *
+	 * @param budget the budget as a String
+	 * @param kind "time" or "memory" (used in the messages)
+	 * @return the budget
+	 * @throws Exception
+	 */
+	public static int parseBudget(String budget, String kind) throws Exception {
+		int value;
+		try {
+			value = Integer.parseInt(budget);
+		} catch (Exception e) {
+			System.out.println("The " + kind + " budget must be an integer!");
+			throw new Exception();
+		}
+		if(value < 1) {
+			System.out.println("The " + kind + " budget must be positive");
+			throw new Exception();
+		}
+		return value;
+	}
+
+	/**
+	 * Parses the port of the HTTP endpoint (parser daemon).
+	 *
+	 * @param port the port as a String
+	 * @return the port (0 to disable the endpoint)
+	 * @throws Exception
+	 */
+	public static int parsePort(String port) throws Exception {
+		int value;
+		try {
+			value = Integer.parseInt(port);
+		} catch (Exception e) {
+			System.out.println("The port must be an integer!");
+			throw new Exception();
+		}
+		if(value < 0 || value > 65535) {
+			System.out.println("The port must be between 0 and 65535");
+			throw new Exception();
+		}
+		return value;
+	}
+
+	/**
+	 * Parses the output of the results of the websites (parser).
+	 *
+	 * @param output the output as a String
+	 * @return the output
+	 * @throws Exception
+	 */
+	public static String parseOutput(String output) throws Exception {
+		if(!output.equals("csv") && !output.equals("segments") && !output.equals("sqlite")) {
+			System.out.println("The output must be csv, segments or sqlite!");
+			throw new Exception();
+		}
+		return output;
+	}
+
+	/**
+	 * Parses the number of parser threads (crawler and parser).
+	 *
+	 * @param parsers the number as a String
+	 * @return the number of threads
+	 * @throws Exception
+	 */
+	public static int parseParsers(String parsers) throws Exception {
+		int value;
+		try {
+			value = Integer.parseInt(parsers);
+		} catch (Exception e) {
+			System.out.println("The number of parsers must be an integer!");
+			throw new Exception();
+		}
+		if(value < 1) {
+			System.out.println("The number of parsers must be positive");
+			throw new Exception();
+		}
+		return value;
+	}
 }
@@ -0,0 +1,307 @@
+package utils;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Asynchronous logger of the crawler and of the parser.
+ *
+ * The messages are put in a bounded queue and written by a background thread, in batches:
+ * the console and the log file are written once per batch (one flush per batch instead of one
+ * per line). The date of a message is taken when it is logged but formatted by the background
+ * thread. If the queue is full, the threads logging wait for the background thread
+ * (even if they are interrupted: the message is not lost).
+ *
+ * The messages below the level (see setLevel) are dropped before being queued.
+ * The queue is flushed at the exit of the JVM and by close.
+ */
+public class AsyncLogger {
+	public static final int DEBUG = 0;
+	public static final int INFO = 1;
+	public static final int WARN = 2;
+	public static final int ERROR = 3;
+	private static final String[] LEVELS = {"debug", "info", "warn", "error"};
+
+	private static final int QUEUE_SIZE = 8192;
+	private static final int BATCH_SIZE = 512;
+	private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+	private static volatile int level = INFO;
+
+	private BlockingQueue<Message> queue = new ArrayBlockingQueue<Message>(QUEUE_SIZE);
+	private BufferedWriter file;
+	private Thread writer;
+	private SimpleDateFormat dateFormat = new SimpleDateFormat("dd/MM/yyyy - HH:mm:ss");
+	private volatile boolean closed = false;
+	// Number of messages queued and written (for flush)
+	private final AtomicLong queued = new AtomicLong();
+	private long written = 0;
+
+	/**
+	 * Message waiting to be written.
+	 */
+	private static class Message {
+		private long time;
+		private int type;
+		private String text;
+		private boolean console;
+
+		private Message(long time, int type, String text, boolean console) {
+			this.time = time;
+			this.type = type;
+			this.text = text;
+			this.console = console;
+		}
+	}
+
+	/**
+	 * Constructor: opens the log file (appends to it) and starts the background thread.
+	 *
+	 * @param logFile the log file
+	 * @param name the name of the background thread
+	 * @throws IOException if the log file cannot be opened
+	 */
+	public AsyncLogger(File logFile, String name) throws IOException {
+		file = new BufferedWriter(new FileWriter(logFile, true));
+		writer = new Thread(new Runnable() {
+			public void run() {
+				writeMessages();
+			}
+		}, name);
+		writer.setDaemon(true);
+		writer.start();
+
+		// Write the messages left at the exit of the JVM (e.g. System.exit without close)
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			public void run() {
+				flush(5000);
+			}
+		});
+	}
+
+	/**
+	 * Sets the minimum level of the messages written (INFO by default), for all the loggers.
+	 *
+	 * @param minimumLevel DEBUG, INFO, WARN or ERROR
+	 */
+	public static void setLevel(int minimumLevel) {
+		level = minimumLevel;
+	}
+
+	/**
+	 * Parses the name of a level.
+	 *
+	 * @param name debug, info, warn or error
+	 * @return the level, or -1 if the name is unknown
+	 */
+	public static int parseLevel(String name) {
+		for(int i = 0; i < LEVELS.length; i++) {
+			if(LEVELS[i].equalsIgnoreCase(name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return true if the messages of this level are written
+	 */
+	public static boolean isEnabled(int messageLevel) {
+		return messageLevel >= level;
+	}
+
+	/**
+	 * Logs a message in the console and in the log file.
+	 *
+	 * @param message the message
+	 * @param type the presentation of the message (see format)
+	 * @param messageLevel the level of the message
+	 */
+	public void log(String message, int type, int messageLevel) {
+		if(messageLevel < level) {
+			return;
+		}
+		enqueue(new Message(System.currentTimeMillis(), type, message, true));
+	}
+
+	/**
+	 * Writes a text in the log file only (e.g. the settings already shown in the console).
+	 *
+	 * @param text the text
+	 */
+	public void logToFile(String text) {
+		enqueue(new Message(0, 0, text, false));
+	}
+
+	/**
+	 * Formats a message.
+	 *
+	 * @param message the message
+	 * @param type type of the message:<br>
+	 * 		- 0 (normal): just show the message.<br>
+	 *		- 1 (show time): add the time before the message.<br>
+	 *		- 2 (add spaces): add spaces to offset the lack of time before the message.<br>
+	 *		- 3 (focus): add spaces and ">" to focus on a message.<br>
+	 * @param time the time of the message
+	 * @param dateFormat the format of the time (not shared between threads)
+	 * @return the formatted message
+	 */
+	public static String format(String message, int type, long time, SimpleDateFormat dateFormat) {
+		switch(type) {
+		case 1: return dateFormat.format(new Date(time)) + " - " + message;
+		case 2: return "                        " + message;
+		case 3: return "             >>>>>>>>>> " + message;
+		}
+		return message;
+	}
+
+	/**
+	 * Waits until the messages logged so far are written.
+	 *
+	 * @param timeout the maximum time to wait (in milliseconds)
+	 */
+	public void flush(long timeout) {
+		long deadline = System.currentTimeMillis() + timeout;
+		synchronized(this) {
+			long target = queued.get();
+			while(written < target && writer.isAlive()) {
+				long remaining = deadline - System.currentTimeMillis();
+				if(remaining <= 0) {
+					return;
+				}
+				try {
+					wait(remaining);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes the messages left (including the messages queued after the flush) and closes the log file.
+	 * The messages logged after are only shown in the console.
+	 *
+	 * @param lastLine the last line written in the log file
+	 * @throws IOException if the log file cannot be closed
+	 */
+	public void close(String lastLine) throws IOException {
+		logToFile(lastLine);
+		flush(60000);
+		closed = true;
+		writer.interrupt();
+		try {
+			writer.join(5000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if(!writer.isAlive()) {
+			List<Message> left = new ArrayList<Message>();
+			queue.drainTo(left);
+			if(!left.isEmpty()) {
+				writeBatch(left, new StringBuilder(), new StringBuilder());
+			}
+		}
+		synchronized(file) {
+			file.close();
+		}
+	}
+
+	private void enqueue(Message message) {
+		if(closed) {
+			if(message.console) {
+				System.out.println(format(message.text, message.type, message.time, new SimpleDateFormat("dd/MM/yyyy - HH:mm:ss")));
+			}
+			return;
+		}
+		queued.incrementAndGet();
+		// Note: an interrupted thread waits too (its interruption is restored after)
+		boolean interrupted = false;
+		try {
+			while(true) {
+				try {
+					if(queue.offer(message, 1, TimeUnit.SECONDS)) {
+						break;
+					}
+					if(!writer.isAlive()) {
+						// The message is lost: count it as written
+						messagesWritten(1);
+						break;
+					}
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		} finally {
+			if(interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Loop of the background thread: writes the messages by batches.
+	 */
+	private void writeMessages() {
+		List<Message> batch = new ArrayList<Message>(BATCH_SIZE);
+		StringBuilder console = new StringBuilder();
+		StringBuilder text = new StringBuilder();
+		while(true) {
+			try {
+				batch.add(queue.poll(1, TimeUnit.SECONDS));
+			} catch (InterruptedException e) {
+				if(closed) {
+					return;
+				}
+				continue;
+			}
+			if(batch.get(0) == null) {
+				batch.clear();
+				continue;
+			}
+			queue.drainTo(batch, BATCH_SIZE - 1);
+			writeBatch(batch, console, text);
+		}
+	}
+
+	/**
+	 * Writes a batch of messages in the console and in the log file, then clears the batch and the buffers.
+	 */
+	private void writeBatch(List<Message> batch, StringBuilder console, StringBuilder text) {
+		for(Message message : batch) {
+			String line = message.console ? format(message.text, message.type, message.time, dateFormat) : message.text;
+			if(message.console) {
+				console.append(line).append(LINE_SEPARATOR);
+			}
+			text.append(line).append(LINE_SEPARATOR);
+		}
+		System.out.print(console);
+		try {
+			synchronized(file) {
+				file.write(text.toString());
+				file.flush();
+			}
+		} catch (IOException ioe) {
+			System.out.println("The messages were not successfully written in the log file.");
+		}
+		messagesWritten(batch.size());
+		batch.clear();
+		console.setLength(0);
+		text.setLength(0);
+	}
+
+	private synchronized void messagesWritten(int count) {
+		written += count;
+		notifyAll();
+	}
+}
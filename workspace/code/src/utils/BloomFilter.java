@@ -0,0 +1,162 @@
+package utils;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter (Bloom, 1970) of 64-bit hashes (see HyperLogLog.hash): a set without false negatives,
+ * with a false positive rate fixed by the number of bits per item.
+ * The filter accepts a given number of items (its capacity): beyond it, the items are not added
+ * (the false positive rate is kept). Two filters of the same size can be merged (union of their items).
+ *
+ * With b bits per item and k = b * ln(2) hash functions, the false positive rate is about 0.6185^b
+ * (32 bits per item: about 2 in 10^7).
+ * The k positions of an item are derived from its 64-bit hash (Kirsch and Mitzenmacher).
+ * Thread-safe.
+ */
+public class BloomFilter {
+	private final AtomicLongArray words;
+	private final long bits;
+	private final int hashes;
+	private final int capacity;
+	private final int bitsPerItem;
+	private final AtomicLong count = new AtomicLong();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param capacity the maximum number of items
+	 * @param bitsPerItem the number of bits per item (1 to 64)
+	 */
+	public BloomFilter(int capacity, int bitsPerItem) {
+		if(capacity < 1 || bitsPerItem < 1 || bitsPerItem > 64) {
+			throw new IllegalArgumentException("Invalid capacity or bits per item: " + capacity + ", " + bitsPerItem);
+		}
+		this.capacity = capacity;
+		this.bitsPerItem = bitsPerItem;
+		this.words = new AtomicLongArray((int) (((long) capacity * bitsPerItem + 63) / 64));
+		this.bits = words.length() * 64L;
+		this.hashes = Math.max(1, (int) Math.round(bitsPerItem * Math.log(2)));
+	}
+
+	/**
+	 * @param hash the 64-bit hash of the item
+	 * @return false if the item is not in the filter, true if it is probably in the filter
+	 */
+	public boolean mightContain(long hash) {
+		long h1 = hash;
+		long h2 = (hash >>> 32) | 1;
+		for(int i = 0; i < hashes; i++) {
+			long bit = ((h1 + i * h2) & Long.MAX_VALUE) % bits;
+			if((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Adds an item.
+	 *
+	 * @param hash the 64-bit hash of the item
+	 * @return false if the filter is full (the item is not added)
+	 */
+	public boolean add(long hash) {
+		if(count.get() >= capacity) {
+			return false;
+		}
+		long h1 = hash;
+		long h2 = (hash >>> 32) | 1;
+		for(int i = 0; i < hashes; i++) {
+			long bit = ((h1 + i * h2) & Long.MAX_VALUE) % bits;
+			int index = (int) (bit >>> 6);
+			long mask = 1L << bit;
+			long word;
+			do {
+				word = words.get(index);
+			}
+			while((word & mask) == 0 && !words.compareAndSet(index, word, word | mask));
+		}
+		count.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * @return the number of items added
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Adds the items of another filter of the same size, if the union fits in the capacity.
+	 * The number of items of the union is estimated from its number of bits set (Swamidass and Baldi):
+	 * the items of both filters are only counted once.
+	 *
+	 * @param other a filter of the same capacity and bits per item
+	 * @return false if the union exceeds the capacity (the filter is not modified)
+	 */
+	public synchronized boolean merge(BloomFilter other) {
+		if(other.capacity != capacity || other.bitsPerItem != bitsPerItem) {
+			throw new IllegalArgumentException("Filters of different sizes: " + capacity + ", " + other.capacity);
+		}
+		long bitsSet = 0;
+		for(int i = 0; i < words.length(); i++) {
+			bitsSet += Long.bitCount(words.get(i) | other.words.get(i));
+		}
+		long union = Math.max(Math.max(count.get(), other.count.get()), estimateCount(bitsSet));
+		if(union > capacity) {
+			return false;
+		}
+		for(int i = 0; i < words.length(); i++) {
+			long word;
+			do {
+				word = words.get(i);
+			}
+			while(!words.compareAndSet(i, word, word | other.words.get(i)));
+		}
+		count.set(union);
+		return true;
+	}
+
+	/**
+	 * @return the estimated number of items of a filter with the given number of bits set
+	 */
+	private long estimateCount(long bitsSet) {
+		if(bitsSet >= bits) {
+			return Long.MAX_VALUE;
+		}
+		return Math.round(-((double) bits / hashes) * Math.log(1 - (double) bitsSet / bits));
+	}
+
+	/**
+	 * Writes the filter: capacity, bits per item, number of items, then the bits.
+	 */
+	public void write(DataOutputStream output) throws IOException {
+		output.writeInt(capacity);
+		output.writeInt(bitsPerItem);
+		output.writeLong(count.get());
+		for(int i = 0; i < words.length(); i++) {
+			output.writeLong(words.get(i));
+		}
+	}
+
+	/**
+	 * Reads a filter written by write.
+	 */
+	public static BloomFilter read(DataInputStream input) throws IOException {
+		BloomFilter filter = new BloomFilter(input.readInt(), input.readInt());
+		filter.count.set(input.readLong());
+		for(int i = 0; i < filter.words.length(); i++) {
+			filter.words.set(i, input.readLong());
+		}
+		return filter;
+	}
+}
@@ -0,0 +1,107 @@
+package utils;
+
+import java.util.Arrays;
+
+/**
+ * Counters indexed by the ids of an Interner, stored in a primitive array
+ * (replaces a Map&lt;String, Integer&gt;: no boxing, no allocation to increment a known key).
+ * A counter equal to zero is considered absent.
+ *
+ * Not thread-safe: the counters of a website are used by one thread, the global counters
+ * are updated while holding the lock of the statistics.
+ */
+public class Counters {
+	private Interner interner;
+	private long[] counts = new long[0];
+
+	/**
+	 * Constructor.
+	 *
+	 * @param interner the interner of the keys
+	 */
+	public Counters(Interner interner) {
+		this.interner = interner;
+	}
+
+	public Interner getInterner() {
+		return interner;
+	}
+
+	public void increment(String key) {
+		add(interner.getId(key), 1);
+	}
+
+	public void add(String key, long value) {
+		add(interner.getId(key), value);
+	}
+
+	public void add(int id, long value) {
+		if(id >= counts.length) {
+			counts = Arrays.copyOf(counts, Math.max(id + 1, Math.max(8, counts.length * 2)));
+		}
+		counts[id] += value;
+	}
+
+	/**
+	 * Sets the value of a counter (replaces the previous value).
+	 */
+	public void set(String key, long value) {
+		int id = interner.getId(key);
+		add(id, value - get(id));
+	}
+
+	public long get(String key) {
+		return get(interner.getId(key));
+	}
+
+	public long get(int id) {
+		return (id < counts.length) ? counts[id] : 0;
+	}
+
+	/**
+	 * Adds all the counters of other counters.
+	 *
+	 * @param other the other counters (with the same interner or not)
+	 */
+	public void addAll(Counters other) {
+		for(int id = 0; id < other.counts.length; id++) {
+			if(other.counts[id] != 0) {
+				add((other.interner == interner) ? id : interner.getId(other.interner.getName(id)), other.counts[id]);
+			}
+		}
+	}
+
+	/**
+	 * @return the number of counters different from zero
+	 */
+	public int size() {
+		int size = 0;
+		for(long count : counts) {
+			if(count != 0) size++;
+		}
+		return size;
+	}
+
+	/**
+	 * Gets the ids of the counters different from zero, sorted by value in descending order.
+	 * Sorts a primitive array: the value and the id of each counter are packed in a long.
+	 *
+	 * @return the ids
+	 */
+	public int[] getSortedIds() {
+		long[] packed = new long[size()];
+		int n = 0;
+		for(int id = 0; id < counts.length; id++) {
+			if(counts[id] != 0) {
+				// Note: the values are smaller than 2^31 (numbers of URLs)
+				packed[n++] = (counts[id] << 32) | id;
+			}
+		}
+		Arrays.sort(packed);
+		int[] ids = new int[packed.length];
+		for(int i = 0; i < packed.length; i++) {
+			ids[i] = (int) packed[packed.length - 1 - i];
+		}
+		return ids;
+	}
+}
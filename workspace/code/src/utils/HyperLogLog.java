@@ -0,0 +1,198 @@
+package utils;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * HyperLogLog sketch (Flajolet et al.): estimates the number of distinct items of a stream
+ * in a fixed memory of 2^precision bytes, whatever the number of items.
+ * The standard error of the estimate is about 1.04 / sqrt(2^precision)
+ * (1.6% with the precision 12, i.e. 4 KB).
+ *
+ * Sketches of the same precision are mergeable: the merge estimates the number of distinct items
+ * of the union of the streams (e.g. the websites of several workers).
+ * The registers are allocated at the first item: an empty sketch takes no memory.
+ * Not thread-safe.
+ */
+public class HyperLogLog {
+	private int precision;
+	private byte[] registers;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param precision the number of bits of the index of the registers (4 to 16)
+	 */
+	public HyperLogLog(int precision) {
+		if(precision < 4 || precision > 16) {
+			throw new IllegalArgumentException("Invalid precision: " + precision);
+		}
+		this.precision = precision;
+	}
+
+	public int getPrecision() {
+		return precision;
+	}
+
+	/**
+	 * Adds a string.
+	 *
+	 * @param value the string
+	 */
+	public void offer(CharSequence value) {
+		offerHash(hash(value, 0, value.length()));
+	}
+
+	/**
+	 * Adds a part of a string (e.g. the host of a URL) without extracting it.
+	 *
+	 * @param value the string
+	 * @param start the index of the first character
+	 * @param end the index after the last character
+	 */
+	public void offer(CharSequence value, int start, int end) {
+		offerHash(hash(value, start, end));
+	}
+
+	/**
+	 * Adds an item from its 64-bit hash.
+	 *
+	 * @param hash the hash of the item (uniformly distributed)
+	 */
+	public void offerHash(long hash) {
+		if(registers == null) {
+			registers = new byte[1 << precision];
+		}
+		int index = (int) (hash >>> (64 - precision));
+		// Rank of the first 1 in the remaining bits (a sentinel bit bounds it)
+		int rank = Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1;
+		if(rank > registers[index]) {
+			registers[index] = (byte) rank;
+		}
+	}
+
+	/**
+	 * @return the estimated number of distinct items
+	 */
+	public long estimate() {
+		if(registers == null) {
+			return 0;
+		}
+		int m = registers.length;
+		double sum = 0;
+		int zeros = 0;
+		for(byte register : registers) {
+			sum += 1.0 / (1L << register);
+			if(register == 0) zeros++;
+		}
+		double alpha = (m == 16) ? 0.673 : (m == 32) ? 0.697 : (m == 64) ? 0.709 : 0.7213 / (1 + 1.079 / m);
+		double estimate = alpha * m * m / sum;
+		// Small cardinalities: linear counting
+		if(estimate <= 2.5 * m && zeros > 0) {
+			estimate = m * Math.log((double) m / zeros);
+		}
+		return Math.round(estimate);
+	}
+
+	/**
+	 * Merges another sketch in this sketch.
+	 *
+	 * @param other the other sketch (same precision)
+	 */
+	public void merge(HyperLogLog other) {
+		if(other.precision != precision) {
+			throw new IllegalArgumentException("Sketches of different precisions: " + precision + " and " + other.precision);
+		}
+		if(other.registers == null) {
+			return;
+		}
+		if(registers == null) {
+			registers = new byte[1 << precision];
+		}
+		for(int i = 0; i < registers.length; i++) {
+			if(other.registers[i] > registers[i]) {
+				registers[i] = other.registers[i];
+			}
+		}
+	}
+
+	/**
+	 * Encodes the non-zero registers in a short text: "index:value" pairs (hexadecimal) separated by commas.
+	 * Used for the sketches of the websites, which have few non-zero registers.
+	 *
+	 * @return the text (empty if the sketch is empty)
+	 */
+	public String encode() {
+		StringBuilder text = new StringBuilder();
+		if(registers != null) {
+			for(int i = 0; i < registers.length; i++) {
+				if(registers[i] != 0) {
+					if(text.length() > 0) text.append(",");
+					text.append(Integer.toHexString(i)).append(":").append(Integer.toHexString(registers[i]));
+				}
+			}
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Decodes a sketch encoded by encode.
+	 *
+	 * @param precision the precision of the sketch
+	 * @param text the text
+	 * @return the sketch
+	 * @throws NumberFormatException if the text is malformed
+	 */
+	public static HyperLogLog decode(int precision, String text) {
+		HyperLogLog sketch = new HyperLogLog(precision);
+		if(!text.isEmpty()) {
+			sketch.registers = new byte[1 << precision];
+			for(String pair : text.split(",")) {
+				int colon = pair.indexOf(':');
+				sketch.registers[Integer.parseInt(pair.substring(0, colon), 16)] = (byte) Integer.parseInt(pair.substring(colon + 1), 16);
+			}
+		}
+		return sketch;
+	}
+
+	/**
+	 * Writes the sketch: precision, then the registers (or 0 if the sketch is empty).
+	 */
+	public void write(DataOutputStream output) throws IOException {
+		output.writeByte(precision);
+		output.writeBoolean(registers != null);
+		if(registers != null) {
+			output.write(registers);
+		}
+	}
+
+	/**
+	 * Reads a sketch written by write.
+	 */
+	public static HyperLogLog read(DataInputStream input) throws IOException {
+		HyperLogLog sketch = new HyperLogLog(input.readByte());
+		if(input.readBoolean()) {
+			sketch.registers = new byte[1 << sketch.precision];
+			input.readFully(sketch.registers);
+		}
+		return sketch;
+	}
+
+	/**
+	 * 64-bit hash of a part of a string (FNV-1a on the characters, then the finalizer of MurmurHash3).
+	 */
+	public static long hash(CharSequence value, int start, int end) {
+		long hash = 0xcbf29ce484222325L;
+		for(int i = start; i < end; i++) {
+			hash ^= value.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+}
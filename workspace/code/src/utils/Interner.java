@@ -0,0 +1,62 @@
+package utils;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Assigns dense integer ids (0, 1, 2...) to strings, e.g. the names of the trackers or the mimetypes.
+ * The ids are used as indexes in the arrays of Counters. They are only valid in the current process:
+ * the names are written in the files, not the ids.
+ *
+ * Thread-safe. Getting the id of a known string does not allocate.
+ */
+public class Interner {
+	private ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+	private volatile String[] names = new String[16];
+	private volatile int size = 0;
+
+	/**
+	 * Gets the id of a string (assigns a new id if the string is unknown).
+	 *
+	 * @param name the string (not null)
+	 * @return the id
+	 */
+	public int getId(String name) {
+		Integer id = ids.get(name);
+		if(id != null) {
+			return id;
+		}
+		return add(name);
+	}
+
+	/**
+	 * Gets the string of an id.
+	 *
+	 * @param id the id
+	 * @return the string
+	 */
+	public String getName(int id) {
+		return names[id];
+	}
+
+	/**
+	 * @return the number of ids assigned
+	 */
+	public int size() {
+		return size;
+	}
+
+	private synchronized int add(String name) {
+		Integer id = ids.get(name);
+		if(id != null) {
+			return id;
+		}
+		if(size == names.length) {
+			names = Arrays.copyOf(names, names.length * 2);
+		}
+		names[size] = name;
+		// Note: the name is stored before the id is published
+		ids.put(name, size);
+		return size++;
+	}
+}
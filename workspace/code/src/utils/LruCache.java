@@ -0,0 +1,32 @@
+package utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Map keeping at most a given number of entries: the least recently used entry is removed
+ * when the map is full. Not synchronized (see Collections.synchronizedMap).
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public class LruCache<K, V> extends LinkedHashMap<K, V> {
+	private static final long serialVersionUID = 1L;
+
+	private int maximumSize;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param maximumSize the maximum number of entries
+	 */
+	public LruCache(int maximumSize) {
+		super(16, 0.75f, true);
+		this.maximumSize = maximumSize;
+	}
+
+	@Override
+	protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+		return size() > maximumSize;
+	}
+}
@@ -0,0 +1,249 @@
+package utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hash table from 64-bit keys (e.g. fingerprints of URLs) to 64-bit values, stored outside of the heap:
+ * in a memory-mapped file (persistent across runs) or in a direct buffer.
+ * Millions of entries cost no object to the garbage collector.
+ *
+ * The size is fixed: the table is set-associative (a key can only be in the 8 slots of its bucket)
+ * and a random slot of the bucket is evicted when the bucket is full.
+ *
+ * Thread-safe. The readers take no lock: each slot holds a check value computed from its key and
+ * its value, and a slot being written (key and value not consistent) is read as a miss.
+ * The writers lock their bucket (striped locks). Only one table may use a file at a time:
+ * the file is locked until the table is closed (another process or table opening it fails).
+ *
+ * File: a header (magic, version, geometry, tag, number of entries), then the buckets.
+ * A file with another geometry or another tag is reset.
+ */
+public class MappedHashTable {
+	private static final int MAGIC = 0x54484854;
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 64;
+	private static final int WAYS = 8;
+	// Slot: key, value, check
+	private static final int SLOT_SIZE = 24;
+	private static final int BUCKET_SIZE = WAYS * SLOT_SIZE;
+	// Note: a single mapping is limited to 2 GB
+	private static final int MAX_BUCKETS = 1 << 23;
+	private static final int LOCKS = 256;
+	// Offsets in the header
+	private static final int HEADER_SIZE_OFFSET = 24;
+
+	private final ByteBuffer buffer;
+	private final RandomAccessFile file;
+	private final int buckets;
+	private final Object[] locks = new Object[LOCKS];
+	private final AtomicLong size = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final boolean loaded;
+
+	/**
+	 * Constructor: opens (or creates) a table.
+	 *
+	 * @param path the file of the table, or null to keep the table in memory (not persistent)
+	 * @param capacityBytes the maximum size of the table (rounded down to a power of two of buckets)
+	 * @param tag a value identifying the content of the table (a file with another tag is reset)
+	 * @throws IOException if the file cannot be opened or mapped, or if it is used by another table
+	 */
+	public MappedHashTable(File path, long capacityBytes, long tag) throws IOException {
+		long maximumBuckets = Math.max(1, Math.min(MAX_BUCKETS, (capacityBytes - HEADER_SIZE) / BUCKET_SIZE));
+		buckets = Integer.highestOneBit((int) maximumBuckets);
+		int length = HEADER_SIZE + buckets * BUCKET_SIZE;
+		for(int i = 0; i < LOCKS; i++) {
+			locks[i] = new Object();
+		}
+
+		if(path == null) {
+			file = null;
+			buffer = ByteBuffer.allocateDirect(length);
+			loaded = false;
+		}
+		else {
+			file = new RandomAccessFile(path, "rw");
+			lock(path);
+			boolean valid = false;
+			if(file.length() == length) {
+				file.seek(0);
+				valid = file.readInt() == MAGIC && file.readInt() == VERSION && file.readInt() == buckets
+						&& file.readInt() == WAYS && file.readLong() == tag;
+			}
+			if(!valid) {
+				// New file, or another geometry or content: the table is reset (zeros)
+				file.setLength(0);
+				file.setLength(length);
+			}
+			buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+			loaded = valid;
+		}
+		buffer.putInt(0, MAGIC);
+		buffer.putInt(4, VERSION);
+		buffer.putInt(8, buckets);
+		buffer.putInt(12, WAYS);
+		buffer.putLong(16, tag);
+		size.set(loaded ? buffer.getLong(HEADER_SIZE_OFFSET) : 0);
+	}
+
+	/**
+	 * @return true if the entries of a previous run have been loaded from the file
+	 */
+	public boolean isLoaded() {
+		return loaded;
+	}
+
+	/**
+	 * Gets the value of a key.
+	 *
+	 * @param key the key
+	 * @return the value, or 0 if the key is not in the table
+	 */
+	public long get(long key) {
+		key = normalize(key);
+		int bucket = HEADER_SIZE + bucketOf(key) * BUCKET_SIZE;
+		for(int slot = bucket; slot < bucket + BUCKET_SIZE; slot += SLOT_SIZE) {
+			if(buffer.getLong(slot) == key) {
+				long value = buffer.getLong(slot + 8);
+				if(buffer.getLong(slot + 16) == check(key, value) && buffer.getLong(slot) == key) {
+					return value;
+				}
+				// Slot being written
+				return 0;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Puts a value (replaces the value of the key if the key is in the table).
+	 *
+	 * @param key the key
+	 * @param value the value (not 0)
+	 */
+	public void put(long key, long value) {
+		if(value == 0) {
+			throw new IllegalArgumentException("The value 0 is reserved");
+		}
+		key = normalize(key);
+		int index = bucketOf(key);
+		int bucket = HEADER_SIZE + index * BUCKET_SIZE;
+		synchronized(locks[index & (LOCKS - 1)]) {
+			int free = -1;
+			for(int slot = bucket; slot < bucket + BUCKET_SIZE; slot += SLOT_SIZE) {
+				long slotKey = buffer.getLong(slot);
+				if(slotKey == key) {
+					write(slot, key, value);
+					return;
+				}
+				if(slotKey == 0 && free < 0) {
+					free = slot;
+				}
+			}
+			if(free >= 0) {
+				size.incrementAndGet();
+			}
+			else {
+				free = bucket + ThreadLocalRandom.current().nextInt(WAYS) * SLOT_SIZE;
+				evictions.incrementAndGet();
+			}
+			write(free, key, value);
+		}
+	}
+
+	/**
+	 * @return the number of entries
+	 */
+	public long size() {
+		return size.get();
+	}
+
+	/**
+	 * @return the maximum number of entries
+	 */
+	public long capacity() {
+		return (long) buckets * WAYS;
+	}
+
+	/**
+	 * @return the number of entries evicted since the opening of the table
+	 */
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	/**
+	 * Writes the table in its file (does nothing if the table is in memory).
+	 */
+	public void flush() {
+		buffer.putLong(HEADER_SIZE_OFFSET, size.get());
+		if(buffer instanceof MappedByteBuffer) {
+			((MappedByteBuffer) buffer).force();
+		}
+	}
+
+	/**
+	 * Writes the table in its file and closes the file.
+	 *
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		flush();
+		if(file != null) {
+			file.close();
+		}
+	}
+
+	/**
+	 * Locks the file (the lock is released when the file is closed).
+	 */
+	private void lock(File path) throws IOException {
+		FileLock lock;
+		try {
+			lock = file.getChannel().tryLock();
+		} catch (OverlappingFileLockException ofle) {
+			// Locked by this process
+			lock = null;
+		}
+		if(lock == null) {
+			file.close();
+			throw new IOException("The file " + path + " is used by another process.");
+		}
+	}
+
+	private void write(int slot, long key, long value) {
+		// Note: a reader seeing a part of the new slot gets a wrong check (miss)
+		buffer.putLong(slot + 16, 0);
+		buffer.putLong(slot, key);
+		buffer.putLong(slot + 8, value);
+		buffer.putLong(slot + 16, check(key, value));
+	}
+
+	private int bucketOf(long key) {
+		return (int) (key ^ (key >>> 32)) & (buckets - 1);
+	}
+
+	/**
+	 * The key 0 marks the empty slots.
+	 */
+	private static long normalize(long key) {
+		return (key == 0) ? 1 : key;
+	}
+
+	private static long check(long key, long value) {
+		long check = key * 0x9e3779b97f4a7c15L ^ value;
+		check ^= check >>> 33;
+		check *= 0xff51afd7ed558ccdL;
+		check ^= check >>> 33;
+		return (check == 0) ? 1 : check;
+	}
+}
@@ -0,0 +1,303 @@
+package utils;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.ObjectName;
+
+/**
+ * Metrics of the crawler and of the parser: counters, latency histograms and gauges.
+ *
+ * The metrics are registered by name in a registry shared by the process (the crawler and the parser
+ * may run in the same process). Updating a counter or a histogram is a few atomic operations.
+ * The values are exposed through JMX (thesis:type=Metrics, attribute Values) and written
+ * periodically in a CSV time series (see start): one line "time,metric,value" per value.
+ *
+ * Values of a counter "name": name (total) and name.per_sec (rate since the previous dump).
+ * Values of a histogram "name": name.count, name.mean_ms, name.p50_ms, name.p90_ms, name.p99_ms
+ * and name.max_ms. The percentiles are the upper bounds of power-of-two buckets (in microseconds):
+ * they are overestimated by at most a factor 2.
+ */
+public class Metrics {
+	private static final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<String, Counter>();
+	private static final ConcurrentHashMap<String, Histogram> histograms = new ConcurrentHashMap<String, Histogram>();
+	private static final ConcurrentHashMap<String, Gauge> gauges = new ConcurrentHashMap<String, Gauge>();
+
+	private static ScheduledExecutorService dumpExecutor;
+	private static File csvFile;
+	// Totals of the counters at the previous dump (for the rates)
+	private static Map<String, Long> previousTotals = new HashMap<String, Long>();
+	private static long previousDump;
+	// Values written by the previous dump (a dump without any change is skipped)
+	private static Map<String, Double> previousValues;
+
+	/**
+	 * Counter (e.g. number of files, of bytes read).
+	 */
+	public static class Counter {
+		private final AtomicLong value = new AtomicLong();
+
+		public void increment() {
+			value.incrementAndGet();
+		}
+
+		public void add(long delta) {
+			value.addAndGet(delta);
+		}
+
+		public long get() {
+			return value.get();
+		}
+	}
+
+	/**
+	 * Histogram of durations, in power-of-two buckets of microseconds
+	 * (bucket i: from 2^(i-1) to 2^i microseconds).
+	 */
+	public static class Histogram {
+		private static final int BUCKETS = 40;
+		private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+		private final AtomicLong count = new AtomicLong();
+		// Note: the sum is in nanoseconds (the durations shorter than a microsecond still count)
+		private final AtomicLong sum = new AtomicLong();
+		private final AtomicLong max = new AtomicLong();
+
+		/**
+		 * Records a duration.
+		 *
+		 * @param nanoseconds the duration (e.g. System.nanoTime() - start)
+		 */
+		public void record(long nanoseconds) {
+			long microseconds = Math.max(0, nanoseconds / 1000);
+			int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(microseconds));
+			buckets.incrementAndGet(bucket);
+			count.incrementAndGet();
+			sum.addAndGet(Math.max(0, nanoseconds));
+			long currentMax;
+			while(microseconds > (currentMax = max.get()) && !max.compareAndSet(currentMax, microseconds)) {
+				// Retry
+			}
+		}
+
+		public long getCount() {
+			return count.get();
+		}
+
+		/**
+		 * @return the mean duration (in milliseconds)
+		 */
+		public double getMean() {
+			long n = count.get();
+			return (n == 0) ? 0 : sum.get() / 1e6 / n;
+		}
+
+		/**
+		 * @return the sum of the durations (in milliseconds)
+		 */
+		public double getTotal() {
+			return sum.get() / 1e6;
+		}
+
+		/**
+		 * @return the maximum duration (in milliseconds)
+		 */
+		public double getMax() {
+			return max.get() / 1000.0;
+		}
+
+		/**
+		 * @param percentile the percentile (between 0 and 1)
+		 * @return the upper bound of the bucket of the percentile (in milliseconds)
+		 */
+		public double getPercentile(double percentile) {
+			long n = count.get();
+			if(n == 0) {
+				return 0;
+			}
+			long rank = (long) Math.ceil(percentile * n);
+			long seen = 0;
+			for(int i = 0; i < BUCKETS; i++) {
+				seen += buckets.get(i);
+				if(seen >= rank) {
+					return Math.min((1L << i), max.get()) / 1000.0;
+				}
+			}
+			return getMax();
+		}
+	}
+
+	/**
+	 * Value computed when the metrics are read (e.g. a ratio or the size of a cache).
+	 */
+	public interface Gauge {
+		double getValue();
+	}
+
+	/**
+	 * JMX interface of the metrics.
+	 */
+	public interface MetricsMXBean {
+		/**
+		 * @return the current values of all the metrics (without the rates)
+		 */
+		Map<String, Double> getValues();
+	}
+
+	/**
+	 * Gets (or creates) a counter.
+	 */
+	public static Counter counter(String name) {
+		Counter counter = counters.get(name);
+		if(counter == null) {
+			counters.putIfAbsent(name, new Counter());
+			counter = counters.get(name);
+		}
+		return counter;
+	}
+
+	/**
+	 * Gets (or creates) a histogram.
+	 */
+	public static Histogram histogram(String name) {
+		Histogram histogram = histograms.get(name);
+		if(histogram == null) {
+			histograms.putIfAbsent(name, new Histogram());
+			histogram = histograms.get(name);
+		}
+		return histogram;
+	}
+
+	/**
+	 * Registers a gauge (replaces the gauge of the same name).
+	 */
+	public static void gauge(String name, Gauge gauge) {
+		gauges.put(name, gauge);
+	}
+
+	/**
+	 * Starts the export of the metrics: registers the JMX bean and writes the values in a CSV file
+	 * at a fixed interval and at the exit of the JVM. Does nothing if the export is already started
+	 * (e.g. by the crawler when the parser runs in the same process).
+	 *
+	 * @param file the CSV file (the lines are appended)
+	 * @param intervalSeconds the interval between two dumps
+	 */
+	public static synchronized void start(File file, int intervalSeconds) {
+		if(dumpExecutor != null) {
+			return;
+		}
+		csvFile = file;
+		previousDump = System.nanoTime();
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMXBean() {
+				public Map<String, Double> getValues() {
+					return values(false);
+				}
+			}, new ObjectName("thesis:type=Metrics"));
+		} catch (Exception e) {
+			System.out.println("Warning: the metrics are not exposed through JMX (" + e + ").");
+		}
+		dumpExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "metrics");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		dumpExecutor.scheduleAtFixedRate(new Runnable() {
+			public void run() {
+				dump();
+			}
+		}, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			public void run() {
+				dump();
+			}
+		});
+	}
+
+	/**
+	 * Writes the current values in the CSV file (if the export is started and if a value changed).
+	 */
+	public static synchronized void dump() {
+		if(csvFile == null) {
+			return;
+		}
+		Map<String, Double> currentValues = values(false);
+		if(currentValues.equals(previousValues)) {
+			return;
+		}
+		previousValues = currentValues;
+		String time = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date());
+		try {
+			BufferedWriter writer = new BufferedWriter(new FileWriter(csvFile, true));
+			try {
+				for(Map.Entry<String, Double> value : values(true).entrySet()) {
+					writer.write(time + "," + value.getKey() + "," + format(value.getValue()));
+					writer.newLine();
+				}
+			} finally {
+				writer.close();
+			}
+		} catch (IOException ioe) {
+			System.out.println("Error: cannot write the metrics in " + csvFile.getPath() + ".");
+		}
+	}
+
+	/**
+	 * Gets the values of all the metrics, sorted by name.
+	 *
+	 * @param rates true to compute the rates of the counters since the previous call (for the dumps)
+	 * @return the values
+	 */
+	private static Map<String, Double> values(boolean rates) {
+		Map<String, Double> values = new TreeMap<String, Double>();
+		long now = System.nanoTime();
+		double seconds = (now - previousDump) / 1e9;
+		for(Map.Entry<String, Counter> counter : counters.entrySet()) {
+			long total = counter.getValue().get();
+			values.put(counter.getKey(), (double) total);
+			if(rates) {
+				Long previous = previousTotals.get(counter.getKey());
+				values.put(counter.getKey() + ".per_sec", (seconds > 0) ? (total - ((previous != null) ? previous : 0)) / seconds : 0);
+				previousTotals.put(counter.getKey(), total);
+			}
+		}
+		for(Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+			Histogram histogram = entry.getValue();
+			values.put(entry.getKey() + ".count", (double) histogram.getCount());
+			values.put(entry.getKey() + ".mean_ms", histogram.getMean());
+			values.put(entry.getKey() + ".p50_ms", histogram.getPercentile(0.5));
+			values.put(entry.getKey() + ".p90_ms", histogram.getPercentile(0.9));
+			values.put(entry.getKey() + ".p99_ms", histogram.getPercentile(0.99));
+			values.put(entry.getKey() + ".max_ms", histogram.getMax());
+		}
+		for(Map.Entry<String, Gauge> gauge : gauges.entrySet()) {
+			values.put(gauge.getKey(), gauge.getValue().getValue());
+		}
+		if(rates) {
+			previousDump = now;
+		}
+		return values;
+	}
+
+	private static String format(double value) {
+		return (value == Math.rint(value) && !Double.isInfinite(value)) ? String.valueOf((long) value) : String.format(Locale.ROOT, "%.3f", value);
+	}
+}
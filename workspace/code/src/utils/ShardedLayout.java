@@ -0,0 +1,145 @@
+package utils;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sharded layout of a directory containing a lot of files.
+ *
+ * The files of a website are stored in a subdirectory named after the hash of the website
+ * (3 hexadecimal digits, i.e. 4096 subdirectories) instead of being stored in a flat directory:
+ * "results/google.com_js.csv" becomes "results/a3f/google.com_js.csv".
+ * All the files of a website are in the same subdirectory.
+ */
+public class ShardedLayout {
+	private static final int SHARD_DIGITS = 3;
+	private static final int SHARD_MASK = (1 << (4 * SHARD_DIGITS)) - 1;
+
+	// Subdirectories already created (avoids a mkdirs for every file)
+	private static Set<String> createdShards = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	/**
+	 * Gets the name of the subdirectory of a website.
+	 *
+	 * @param website the name of the website
+	 * @return the name of the subdirectory (3 hexadecimal digits)
+	 */
+	public static String getShard(String website) {
+		int hash = website.hashCode();
+		// Mix the bits: the hash of similar names only differs in the low bits
+		hash ^= (hash >>> 16);
+		hash *= 0x85ebca6b;
+		hash ^= (hash >>> 13);
+		String shard = Integer.toHexString(hash & SHARD_MASK);
+		while(shard.length() < SHARD_DIGITS) {
+			shard = "0" + shard;
+		}
+		return shard;
+	}
+
+	/**
+	 * Gets a file of a website.
+	 *
+	 * @param directory the base directory
+	 * @param website the name of the website
+	 * @param filename the name of the file
+	 * @param sharded true to use the sharded layout, false to use the flat layout
+	 * @return the file (in the subdirectory of the website if sharded)
+	 */
+	public static File getFile(File directory, String website, String filename, boolean sharded) {
+		if(!sharded) {
+			return new File(directory, filename);
+		}
+		return new File(new File(directory, getShard(website)), filename);
+	}
+
+	/**
+	 * Gets a file of a website and creates its subdirectory if needed.
+	 *
+	 * @param directory the base directory
+	 * @param website the name of the website
+	 * @param filename the name of the file
+	 * @param sharded true to use the sharded layout, false to use the flat layout
+	 * @return the file (in the subdirectory of the website if sharded)
+	 * @throws IOException if the subdirectory cannot be created
+	 */
+	public static File getFileForWriting(File directory, String website, String filename, boolean sharded) throws IOException {
+		File file = getFile(directory, website, filename, sharded);
+		if(sharded) {
+			File shard = file.getParentFile();
+			if(!createdShards.contains(shard.getPath())) {
+				if(!shard.isDirectory() && !shard.mkdirs() && !shard.isDirectory()) {
+					throw new IOException("Cannot create the directory " + shard.getPath());
+				}
+				createdShards.add(shard.getPath());
+			}
+		}
+		return file;
+	}
+
+	/**
+	 * Moves a file into the subdirectory of its website.
+	 *
+	 * @param file the file to move
+	 * @param directory the base directory
+	 * @param website the name of the website
+	 * @param filename the name of the file in the subdirectory
+	 * @return the moved file
+	 * @throws IOException
+	 */
+	public static File moveIntoShard(File file, File directory, String website, String filename) throws IOException {
+		File target = getFileForWriting(directory, website, filename, true);
+		Files.move(file.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		return target;
+	}
+
+	/**
+	 * Lists the subdirectories of a sharded directory.
+	 *
+	 * @param directory the base directory
+	 * @return the subdirectories
+	 */
+	public static ArrayList<File> listShards(File directory) {
+		ArrayList<File> shards = new ArrayList<File>();
+		File[] files = directory.listFiles(new FileFilter() {
+			public boolean accept(File file) {
+				return file.getName().length() == SHARD_DIGITS
+						&& file.getName().matches("[0-9a-f]+")
+						&& file.isDirectory();
+			}
+		});
+		if(files != null) {
+			Collections.addAll(shards, files);
+		}
+		return shards;
+	}
+
+	/**
+	 * Lists the files of a sharded directory.
+	 *
+	 * @param directory the base directory
+	 * @param suffix the suffix of the files to list (e.g. ".har")
+	 * @return the files of all the subdirectories
+	 */
+	public static ArrayList<File> listFiles(File directory, final String suffix) {
+		ArrayList<File> files = new ArrayList<File>();
+		for(File shard : listShards(directory)) {
+			File[] shardFiles = shard.listFiles(new FileFilter() {
+				public boolean accept(File file) {
+					return file.getName().endsWith(suffix);
+				}
+			});
+			if(shardFiles != null) {
+				Collections.addAll(files, shardFiles);
+			}
+		}
+		return files;
+	}
+}
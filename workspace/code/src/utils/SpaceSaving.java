@@ -0,0 +1,183 @@
+package utils;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+
+/**
+ * Space-Saving sketch (Metwally et al.): approximate ranking of the most frequent items of a stream,
+ * in a bounded memory (a fixed number of counters).
+ *
+ * When an unknown item arrives and all the counters are used, the counter of the least frequent item
+ * is given to the new item, which inherits its count (the inherited count is the error of the new item).
+ * With k counters and a total weight N offered:
+ * - the count of an item is never underestimated, and overestimated by at most its error (at most N/k);
+ * - every item whose real count is greater than N/k is in the sketch.
+ *
+ * The counters are kept in a binary min-heap. Offering a known item does not allocate.
+ * Not thread-safe: the sketches of the parser are updated while holding the lock of the statistics.
+ */
+public class SpaceSaving {
+	private int capacity;
+	private int size = 0;
+	private long total = 0;
+	// Min-heap of the counters (ordered by count)
+	private String[] items;
+	private long[] counts;
+	private long[] errors;
+	// Position of each item in the heap (in a holder updated in place: no boxing)
+	private HashMap<String, int[]> positions;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param capacity the number of counters (k)
+	 */
+	public SpaceSaving(int capacity) {
+		this.capacity = capacity;
+		items = new String[capacity];
+		counts = new long[capacity];
+		errors = new long[capacity];
+		positions = new HashMap<String, int[]>(capacity * 2);
+	}
+
+	/**
+	 * Adds an occurrence of an item.
+	 *
+	 * @param item the item
+	 */
+	public void offer(String item) {
+		offer(item, 1);
+	}
+
+	/**
+	 * Adds several occurrences of an item.
+	 *
+	 * @param item the item
+	 * @param weight the number of occurrences
+	 */
+	public void offer(String item, long weight) {
+		if(weight <= 0) {
+			return;
+		}
+		total += weight;
+		int[] position = positions.get(item);
+		if(position != null) {
+			counts[position[0]] += weight;
+			siftDown(position[0]);
+		}
+		else if(size < capacity) {
+			items[size] = item;
+			counts[size] = weight;
+			errors[size] = 0;
+			positions.put(item, new int[] {size});
+			siftUp(size++);
+		}
+		else {
+			// Replace the least frequent item (its holder is reused)
+			position = positions.remove(items[0]);
+			errors[0] = counts[0];
+			counts[0] += weight;
+			items[0] = item;
+			positions.put(item, position);
+			siftDown(0);
+		}
+	}
+
+	/**
+	 * @return the total weight offered (N)
+	 */
+	public long getTotal() {
+		return total;
+	}
+
+	/**
+	 * @return the maximum error of the counts (N/k, or 0 while the sketch is not full)
+	 */
+	public long getMaximumError() {
+		return (size < capacity) ? 0 : total / capacity;
+	}
+
+	/**
+	 * Gets the most frequent items.
+	 *
+	 * @param k the number of items
+	 * @return the items in descending order of count (at most k)
+	 */
+	public String[] getTop(int k) {
+		Integer[] order = new Integer[size];
+		for(int i = 0; i < size; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return Long.compare(counts[b], counts[a]);
+			}
+		});
+		String[] top = new String[Math.min(k, size)];
+		for(int i = 0; i < top.length; i++) {
+			top[i] = items[order[i]];
+		}
+		return top;
+	}
+
+	/**
+	 * @return the estimated count of an item (0 if it is not in the sketch)
+	 */
+	public long getCount(String item) {
+		int[] position = positions.get(item);
+		return (position != null) ? counts[position[0]] : 0;
+	}
+
+	/**
+	 * @return the maximum overestimation of the count of an item (0 if it is not in the sketch)
+	 */
+	public long getError(String item) {
+		int[] position = positions.get(item);
+		return (position != null) ? errors[position[0]] : 0;
+	}
+
+	private void siftUp(int position) {
+		while(position > 0) {
+			int parent = (position - 1) / 2;
+			if(counts[parent] <= counts[position]) {
+				return;
+			}
+			swap(position, parent);
+			position = parent;
+		}
+	}
+
+	private void siftDown(int position) {
+		while(true) {
+			int smallest = position;
+			int left = 2 * position + 1;
+			int right = left + 1;
+			if(left < size && counts[left] < counts[smallest]) {
+				smallest = left;
+			}
+			if(right < size && counts[right] < counts[smallest]) {
+				smallest = right;
+			}
+			if(smallest == position) {
+				return;
+			}
+			swap(position, smallest);
+			position = smallest;
+		}
+	}
+
+	private void swap(int i, int j) {
+		String item = items[i];
+		items[i] = items[j];
+		items[j] = item;
+		long count = counts[i];
+		counts[i] = counts[j];
+		counts[j] = count;
+		long error = errors[i];
+		errors[i] = errors[j];
+		errors[j] = error;
+		positions.get(items[i])[0] = i;
+		positions.get(items[j])[0] = j;
+	}
+}
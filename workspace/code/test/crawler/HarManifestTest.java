@@ -0,0 +1,61 @@
+package crawler;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * The visits written in the manifest must be read again, whatever the characters of their fields.
+ */
+public class HarManifestTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void quotedFields() throws IOException {
+		String directory = folder.getRoot().getPath();
+		new File(directory, "logs").mkdirs();
+		String[] websites = {"http://example.com/", "http://example.com/?a=1,2", "http://example.com/\"x\"", "http://example.com/a\nb"};
+		HarManifest manifest = new HarManifest(directory);
+		for(int i = 0; i < websites.length; i++) {
+			manifest.append(new HarManifest.Visit(websites[i], i + 1, "example.com-" + i + ".har", i, 100 + i, "success"));
+		}
+		manifest.close();
+
+		ArrayList<HarManifest.Visit> visits = HarManifest.read(directory);
+		assertEquals(websites.length, visits.size());
+		for(int i = 0; i < websites.length; i++) {
+			HarManifest.Visit visit = visits.get(i);
+			assertEquals(websites[i], visit.getWebsite());
+			assertEquals(i + 1, visit.getRank());
+			assertEquals("example.com-" + i + ".har", visit.getHarFile());
+			assertEquals(i, visit.getVersion());
+			assertEquals(100 + i, visit.getSize());
+			assertEquals("success", visit.getOutcome());
+		}
+	}
+
+	@Test
+	public void truncatedLine() throws IOException {
+		String directory = folder.getRoot().getPath();
+		new File(directory, "logs").mkdirs();
+		HarManifest manifest = new HarManifest(directory);
+		manifest.append(new HarManifest.Visit("http://example.com/", 1, "example.com.har", 0, 100, "success"));
+		manifest.close();
+		// Crash while writing a quoted field
+		FileWriter writer = new FileWriter(new File(directory, HarManifest.FILENAME), true);
+		try {
+			writer.write("\"http://example.org/?a=1,");
+		} finally {
+			writer.close();
+		}
+		assertEquals(1, HarManifest.read(directory).size());
+	}
+}
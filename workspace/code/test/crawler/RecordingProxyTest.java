@@ -0,0 +1,240 @@
+package crawler;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import edu.umass.cs.benchlab.har.HarEntry;
+import edu.umass.cs.benchlab.har.HarLog;
+import edu.umass.cs.benchlab.har.HarWarning;
+import edu.umass.cs.benchlab.har.tools.HarFileReader;
+
+/**
+ * Requests through the recording proxy to a local server which keeps its connections open (keep-alive).
+ */
+public class RecordingProxyTest {
+	private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+	// Far below the timeout of the proxy (30 seconds)
+	private static final long MAX_REQUEST_TIME = 5000;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private RecordingProxy proxy;
+	private ServerSocket server;
+	private final List<Socket> connections = Collections.synchronizedList(new ArrayList<Socket>());
+
+	@Before
+	public void start() throws IOException {
+		server = new ServerSocket();
+		server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				serve();
+			}
+		});
+		thread.setDaemon(true);
+		thread.start();
+		proxy = new RecordingProxy(0);
+	}
+
+	@After
+	public void stop() throws IOException {
+		proxy.close();
+		server.close();
+		synchronized(connections) {
+			for(Socket connection : connections) {
+				connection.close();
+			}
+		}
+	}
+
+	@Test
+	public void httpResponses() throws IOException {
+		proxy.startPage();
+		String base = "http://127.0.0.1:" + server.getLocalPort();
+		String fixed = request("GET " + base + "/fixed HTTP/1.1\r\nHost: 127.0.0.1\r\nProxy-Connection: keep-alive\r\n\r\n");
+		assertTrue(fixed, fixed.startsWith("HTTP/1.1 200 OK\r\n"));
+		assertTrue(fixed, fixed.endsWith("\r\n\r\nhello"));
+		String chunked = request("GET " + base + "/chunked HTTP/1.1\r\nHost: 127.0.0.1\r\n\r\n");
+		assertTrue(chunked, chunked.endsWith("\r\n\r\n5\r\nhello\r\n6\r\n world\r\n0\r\n\r\n"));
+		String empty = request("GET " + base + "/empty HTTP/1.1\r\nHost: 127.0.0.1\r\n\r\n");
+		assertTrue(empty, empty.startsWith("HTTP/1.1 204 No Content\r\n"));
+		List<RecordedEntry> entries = proxy.endPage();
+
+		Map<String, RecordedEntry> byUrl = byUrl(entries);
+		assertEquals(3, byUrl.size());
+		RecordedEntry entry = byUrl.get(base + "/fixed");
+		assertEquals(200, entry.getStatus());
+		assertEquals("text/html", entry.getMimeType());
+		assertEquals(5, entry.getBodySize());
+		assertEquals(1, entry.getCookies().size());
+		assertArrayEquals(new String[] {".example.com", "uid", "abc", "/"}, entry.getCookies().get(0));
+		assertFalse(entry.isOpaque());
+		entry = byUrl.get(base + "/chunked");
+		assertEquals("application/javascript", entry.getMimeType());
+		assertEquals(11, entry.getBodySize());
+		entry = byUrl.get(base + "/empty");
+		assertEquals(204, entry.getStatus());
+		assertEquals(0, entry.getBodySize());
+	}
+
+	@Test
+	public void failedRequest() throws IOException {
+		ServerSocket closed = new ServerSocket(0);
+		int port = closed.getLocalPort();
+		closed.close();
+		proxy.startPage();
+		request("GET http://127.0.0.1:" + port + "/ HTTP/1.1\r\nHost: 127.0.0.1\r\n\r\n");
+		assertTrue(proxy.endPage().isEmpty());
+	}
+
+	@Test
+	public void httpsTunnel() throws IOException {
+		proxy.startPage();
+		Socket client = new Socket(InetAddress.getLoopbackAddress(), proxy.getPort());
+		try {
+			client.getOutputStream().write(("CONNECT 127.0.0.1:" + server.getLocalPort() + " HTTP/1.1\r\n\r\n").getBytes(ISO_8859_1));
+			InputStream input = client.getInputStream();
+			byte[] expected = "HTTP/1.1 200 Connection established\r\n\r\n".getBytes(ISO_8859_1);
+			byte[] response = new byte[expected.length];
+			for(int read = 0; read < response.length; ) {
+				read += input.read(response, read, response.length - read);
+			}
+			assertArrayEquals(expected, response);
+		} finally {
+			client.close();
+		}
+		List<RecordedEntry> entries = proxy.endPage();
+		assertEquals(1, entries.size());
+		RecordedEntry entry = entries.get(0);
+		assertTrue(entry.isOpaque());
+		assertEquals("https://127.0.0.1:" + server.getLocalPort() + "/", entry.getUrl());
+
+		// The tunnel is marked opaque in the HAR file
+		entries.add(new RecordedEntry(entry.getStartedDateTime(), "GET", "http://127.0.0.1/", "HTTP/1.1"));
+		File file = folder.newFile("page.har");
+		HarJsonWriter.write(file, "http://127.0.0.1/", entry.getStartedDateTime(), entries);
+		HarLog log = new HarFileReader().readHarFile(file, new ArrayList<HarWarning>());
+		List<HarEntry> harEntries = log.getEntries().getEntries();
+		assertEquals(RecordedEntry.OPAQUE_COMMENT, harEntries.get(0).getComment());
+		assertTrue(RecordedEntry.isOpaque(harEntries.get(0).getRequest().getMethod()));
+		assertFalse(RecordedEntry.isOpaque(harEntries.get(1).getRequest().getMethod()));
+	}
+
+	/**
+	 * Sends a request to the proxy and reads its response (the proxy closes the connection).
+	 */
+	private String request(String request) throws IOException {
+		long start = System.currentTimeMillis();
+		Socket client = new Socket(InetAddress.getLoopbackAddress(), proxy.getPort());
+		try {
+			client.setSoTimeout((int) MAX_REQUEST_TIME);
+			client.getOutputStream().write(request.getBytes(ISO_8859_1));
+			ByteArrayOutputStream response = new ByteArrayOutputStream();
+			InputStream input = client.getInputStream();
+			byte[] buffer = new byte[4096];
+			int read;
+			while((read = input.read(buffer)) != -1) {
+				response.write(buffer, 0, read);
+			}
+			assertTrue(System.currentTimeMillis() - start < MAX_REQUEST_TIME);
+			return new String(response.toByteArray(), ISO_8859_1);
+		} finally {
+			client.close();
+		}
+	}
+
+	private static Map<String, RecordedEntry> byUrl(List<RecordedEntry> entries) {
+		Map<String, RecordedEntry> map = new HashMap<String, RecordedEntry>();
+		for(RecordedEntry entry : entries) {
+			map.put(entry.getUrl(), entry);
+		}
+		return map;
+	}
+
+	/**
+	 * Server answering the requests and keeping the connections open (it ignores "Connection: close").
+	 */
+	private void serve() {
+		while(!server.isClosed()) {
+			try {
+				final Socket connection = server.accept();
+				connections.add(connection);
+				Thread thread = new Thread(new Runnable() {
+					public void run() {
+						try {
+							answer(connection);
+						} catch (IOException ioe) {
+							// Connection closed
+						}
+					}
+				});
+				thread.setDaemon(true);
+				thread.start();
+			} catch (IOException ioe) {
+				// Server closed
+			}
+		}
+	}
+
+	private static void answer(Socket connection) throws IOException {
+		InputStream input = connection.getInputStream();
+		OutputStream output = connection.getOutputStream();
+		String path;
+		while((path = readRequest(input)) != null) {
+			String response;
+			if(path.equals("/fixed")) {
+				response = "HTTP/1.1 200 OK\r\nContent-Type: text/html; charset=UTF-8\r\nContent-Length: 5\r\n"
+						+ "Set-Cookie: uid=abc; Domain=.example.com; Path=/\r\n\r\nhello";
+			}
+			else if(path.equals("/chunked")) {
+				response = "HTTP/1.1 200 OK\r\nContent-Type: application/javascript\r\nTransfer-Encoding: chunked\r\n\r\n"
+						+ "5\r\nhello\r\n6\r\n world\r\n0\r\n\r\n";
+			}
+			else {
+				response = "HTTP/1.1 204 No Content\r\n\r\n";
+			}
+			output.write(response.getBytes(ISO_8859_1));
+			output.flush();
+		}
+	}
+
+	/**
+	 * @return the path of the next request, or null if the connection is closed
+	 */
+	private static String readRequest(InputStream input) throws IOException {
+		StringBuilder head = new StringBuilder();
+		int b;
+		while((b = input.read()) != -1) {
+			head.append((char) b);
+			if(head.length() >= 4 && head.substring(head.length() - 4).equals("\r\n\r\n")) {
+				return head.toString().split(" ")[1];
+			}
+		}
+		return null;
+	}
+}
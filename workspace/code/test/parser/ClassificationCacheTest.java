@@ -0,0 +1,107 @@
+package parser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * The entries of ClassificationCache must be found again after a reopening, and never map a host to another SOA.
+ */
+public class ClassificationCacheTest {
+	private static final long CAPACITY = 1 << 20;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void reopened() throws IOException {
+		File file = new File(folder.getRoot(), "cache");
+		ClassificationCache cache = new ClassificationCache(file, CAPACITY);
+		cache.putSOA("a.example.com", "ns.example.com");
+		cache.putSOA("b.example.org", "ns.example.org");
+		cache.putSOA("c.example.com", "ns.example.com");
+		cache.putImageDimensions("http://example.com/pixel.gif", new int[] {1, 1});
+		cache.close();
+
+		cache = new ClassificationCache(file, CAPACITY);
+		assertTrue(cache.isLoaded());
+		assertEquals("ns.example.com", cache.getSOA("a.example.com"));
+		assertEquals("ns.example.org", cache.getSOA("b.example.org"));
+		assertEquals("ns.example.com", cache.getSOA("c.example.com"));
+		assertNull(cache.getSOA("d.example.net"));
+		assertArrayEquals(new int[] {1, 1}, cache.getImageDimensions("http://example.com/pixel.gif"));
+		// The new SOAs are appended after the loaded ones
+		cache.putSOA("d.example.net", "ns.example.net");
+		cache.close();
+
+		cache = new ClassificationCache(file, CAPACITY);
+		assertEquals("ns.example.org", cache.getSOA("b.example.org"));
+		assertEquals("ns.example.net", cache.getSOA("d.example.net"));
+		cache.close();
+	}
+
+	@Test
+	public void tornDictionary() throws IOException {
+		File file = new File(folder.getRoot(), "cache");
+		File soasFile = new File(file.getPath() + ".soa");
+		ClassificationCache cache = new ClassificationCache(file, CAPACITY);
+		cache.putSOA("a.example.com", "ns.example.com");
+		cache.putSOA("b.example.org", "ns.example.org");
+		cache.putSOA("c.example.net", "ns.example.net");
+		cache.close();
+
+		// Crash while writing the last SOA: its line is cut
+		long length = soasFile.length();
+		RandomAccessFile soas = new RandomAccessFile(soasFile, "rw");
+		try {
+			soas.setLength(length - 4);
+		} finally {
+			soas.close();
+		}
+		cache = new ClassificationCache(file, CAPACITY);
+		assertEquals("ns.example.com", cache.getSOA("a.example.com"));
+		assertEquals("ns.example.org", cache.getSOA("b.example.org"));
+		assertNull(cache.getSOA("c.example.net"));
+		// The id of the lost SOA is given to a new SOA: the host of the lost SOA must not get it
+		cache.putSOA("d.example.info", "ns.example.info");
+		assertNull(cache.getSOA("c.example.net"));
+		assertEquals("ns.example.info", cache.getSOA("d.example.info"));
+		cache.close();
+
+		// The torn line has been truncated: the next lines are read
+		cache = new ClassificationCache(file, CAPACITY);
+		assertEquals("ns.example.info", cache.getSOA("d.example.info"));
+		assertNull(cache.getSOA("c.example.net"));
+		cache.close();
+	}
+
+	@Test
+	public void imageDimensions() throws IOException {
+		ClassificationCache cache = new ClassificationCache(null, CAPACITY);
+		cache.putImageDimensions("http://example.com/big.png", new int[] {1 << 24, 1});
+		assertNull(cache.getImageDimensions("http://example.com/big.png"));
+		cache.putImageDimensions("http://example.com/image.png", new int[] {640, 480});
+		assertArrayEquals(new int[] {640, 480}, cache.getImageDimensions("http://example.com/image.png"));
+		cache.close();
+	}
+
+	@Test(expected = IOException.class)
+	public void lockedCache() throws IOException {
+		File file = new File(folder.getRoot(), "cache");
+		ClassificationCache cache = new ClassificationCache(file, CAPACITY);
+		try {
+			new ClassificationCache(file, CAPACITY);
+		} finally {
+			cache.close();
+		}
+	}
+}
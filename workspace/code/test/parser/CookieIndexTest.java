@@ -0,0 +1,248 @@
+package parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * The postings and the shared values of CookieIndex must be those counted by brute force over the cookies of the websites
+ * (the last cookies of each website), whatever the runs, the resumptions and the indexes combined.
+ */
+public class CookieIndexTest {
+	// Small runs: the postings are merged from many runs
+	private static final int RUN_SIZE = 64;
+	private static final int SYNCED_VALUES = 20;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final Random random = new Random(1);
+	private final String[] synced = new String[SYNCED_VALUES];
+
+	public CookieIndexTest() {
+		for(int i = 0; i < SYNCED_VALUES; i++) {
+			synced[i] = "sync" + Long.toHexString(random.nextLong());
+		}
+	}
+
+	@Test
+	public void singleRun() throws IOException {
+		File directory = folder.newFolder();
+		Map<String, List<String[]>> websites = generate(0, 300);
+		CookieIndex index = new CookieIndex(directory, false, RUN_SIZE);
+		add(index, websites);
+		index.close();
+		assertIndex(directory, websites);
+	}
+
+	@Test
+	public void resumedRun() throws IOException {
+		File directory = folder.newFolder();
+		Map<String, List<String[]>> websites = generate(0, 300);
+		List<String> names = new ArrayList<String>(websites.keySet());
+		CookieIndex index = new CookieIndex(directory, false, RUN_SIZE);
+		for(String website : names.subList(0, 150)) {
+			index.addWebsite(website, websites.get(website));
+		}
+		index.commit();
+		// Crash: the websites added after the commit are lost
+		for(String website : names.subList(150, 200)) {
+			index.addWebsite(website, websites.get(website));
+		}
+
+		index = new CookieIndex(directory, true, RUN_SIZE);
+		assertEquals(150, index.getSites());
+		assertTrue(index.contains(names.get(149)));
+		assertFalse(index.contains(names.get(150)));
+		for(String website : names.subList(150, 300)) {
+			index.addWebsite(website, websites.get(website));
+		}
+		// Websites analyzed again with other cookies
+		Map<String, List<String[]>> changed = generate(100, 120);
+		add(index, changed);
+		Map<String, List<String[]>> previous = new HashMap<String, List<String[]>>(websites);
+		websites.putAll(changed);
+		index.close();
+		assertEquals(300, index.getSites());
+		assertIndex(directory, websites);
+		assertReplaced(directory, previous, websites);
+	}
+
+	@Test
+	public void keptIndex() throws IOException {
+		File directory = folder.newFolder();
+		Map<String, List<String[]>> websites = generate(0, 200);
+		CookieIndex index = new CookieIndex(directory, false, RUN_SIZE);
+		add(index, websites);
+		index.close();
+
+		// Incremental run: new and changed websites
+		index = new CookieIndex(directory, true, RUN_SIZE);
+		assertTrue(index.contains("site0.com"));
+		Map<String, List<String[]>> changed = generate(150, 250);
+		add(index, changed);
+		Map<String, List<String[]>> previous = new HashMap<String, List<String[]>>(websites);
+		websites.putAll(changed);
+		index.close();
+		assertIndex(directory, websites);
+		assertReplaced(directory, previous, websites);
+
+		// New index
+		index = new CookieIndex(directory, false, RUN_SIZE);
+		assertFalse(index.contains("site0.com"));
+		index.close();
+		assertIndex(directory, new HashMap<String, List<String[]>>());
+	}
+
+	@Test
+	public void indexesOfWorkers() throws IOException {
+		Map<String, List<String[]>> websites = new LinkedHashMap<String, List<String[]>>();
+		File[] workers = {folder.newFolder(), folder.newFolder()};
+		for(int worker = 0; worker < workers.length; worker++) {
+			// The websites 100 to 149 are analyzed by both workers: the second analysis is kept
+			Map<String, List<String[]>> workerWebsites = generate(worker * 100, worker * 100 + 150);
+			CookieIndex index = new CookieIndex(workers[worker], false, RUN_SIZE);
+			add(index, workerWebsites);
+			index.close();
+			websites.putAll(workerWebsites);
+		}
+		File directory = folder.newFolder();
+		CookieIndex merged = new CookieIndex(directory, false, RUN_SIZE);
+		for(File worker : workers) {
+			merged.addIndex(worker);
+		}
+		merged.close();
+		assertEquals(250, merged.getSites());
+		assertIndex(directory, websites);
+	}
+
+	@Test(expected = IOException.class)
+	public void indexNotClosed() throws IOException {
+		File worker = folder.newFolder();
+		CookieIndex index = new CookieIndex(worker, false, RUN_SIZE);
+		add(index, generate(0, 10));
+		index.commit();
+		new CookieIndex(folder.newFolder(), false, RUN_SIZE).addIndex(worker);
+	}
+
+	/**
+	 * Generates the cookies of the websites "site<first>.com" to "site<last - 1>.com".
+	 */
+	private Map<String, List<String[]>> generate(int first, int last) {
+		Map<String, List<String[]>> websites = new LinkedHashMap<String, List<String[]>>();
+		for(int site = first; site < last; site++) {
+			List<String[]> cookies = new ArrayList<String[]>();
+			for(int i = 0; i < 4; i++) {
+				String value = (random.nextInt(4) == 0) ? synced[random.nextInt(SYNCED_VALUES)] : Long.toHexString(random.nextLong()) + "x";
+				if(random.nextInt(10) == 0) {
+					value = "short";
+				}
+				cookies.add(new String[] {".d" + random.nextInt(30) + ".com", "n" + random.nextInt(5), value, "/"});
+				if(random.nextInt(5) == 0) {
+					// Same cookie twice
+					cookies.add(cookies.get(cookies.size() - 1));
+				}
+			}
+			websites.put("site" + site + ".com", cookies);
+		}
+		return websites;
+	}
+
+	private static void add(CookieIndex index, Map<String, List<String[]>> websites) throws IOException {
+		for(Map.Entry<String, List<String[]>> website : websites.entrySet()) {
+			index.addWebsite(website.getKey(), website.getValue());
+		}
+	}
+
+	/**
+	 * Checks that the values of the websites replaced (and not set again) are not in the index anymore.
+	 */
+	private static void assertReplaced(File directory, Map<String, List<String[]>> previous, Map<String, List<String[]>> websites) throws IOException {
+		Set<String> values = new HashSet<String>();
+		for(List<String[]> cookies : websites.values()) {
+			for(String[] cookie : cookies) {
+				values.add(cookie[2]);
+			}
+		}
+		int replaced = 0;
+		for(List<String[]> cookies : previous.values()) {
+			for(String[] cookie : cookies) {
+				if(cookie[2].length() >= CookieIndex.MIN_VALUE_LENGTH && !values.contains(cookie[2])) {
+					assertEquals(cookie[2], 0, CookieIndex.findPostings(directory, cookie[2]).length);
+					replaced++;
+				}
+			}
+		}
+		assertTrue(replaced > 0);
+	}
+
+	/**
+	 * Compares the index with the postings counted by brute force: website, domain and name of each value.
+	 */
+	private static void assertIndex(File directory, Map<String, List<String[]>> websites) throws IOException {
+		Map<String, Set<String>> expected = new HashMap<String, Set<String>>();
+		for(Map.Entry<String, List<String[]>> website : websites.entrySet()) {
+			for(String[] cookie : website.getValue()) {
+				if(cookie[2].length() < CookieIndex.MIN_VALUE_LENGTH) {
+					continue;
+				}
+				Set<String> postings = expected.get(cookie[2]);
+				if(postings == null) {
+					postings = new HashSet<String>();
+					expected.put(cookie[2], postings);
+				}
+				postings.add(website.getKey() + " " + cookie[0] + " " + cookie[1]);
+			}
+		}
+
+		Map<Integer, String> sites = CookieIndex.readDictionary(new File(directory, "sites.txt"), null);
+		Map<Integer, String> domains = CookieIndex.readDictionary(new File(directory, "domains.txt"), null);
+		Map<Integer, String> names = CookieIndex.readDictionary(new File(directory, "names.txt"), null);
+		int sharedValues = 0;
+		for(Map.Entry<String, Set<String>> value : expected.entrySet()) {
+			int[][] postings = CookieIndex.findPostings(directory, value.getKey());
+			Set<String> found = new HashSet<String>();
+			Set<String> foundSites = new HashSet<String>();
+			for(int[] posting : postings) {
+				found.add(sites.get(posting[0]) + " " + domains.get(posting[1]) + " " + names.get(posting[2]));
+				foundSites.add(sites.get(posting[0]));
+			}
+			assertEquals(value.getKey(), value.getValue(), found);
+			assertEquals("duplicates of " + value.getKey(), found.size(), postings.length);
+			if(foundSites.size() > 1) {
+				sharedValues++;
+			}
+		}
+		assertEquals(0, CookieIndex.findPostings(directory, "not a value").length);
+
+		List<CookieIndex.SharedValue> shared = CookieIndex.findSharedValues(directory, 1, 100000);
+		assertEquals(sharedValues, shared.size());
+		for(CookieIndex.SharedValue value : shared) {
+			Set<String> expectedSites = new HashSet<String>();
+			Set<String> expectedDomains = new HashSet<String>();
+			for(String posting : expected.get(value.getValue())) {
+				String[] fields = posting.split(" ");
+				expectedSites.add(fields[0]);
+				expectedDomains.add(fields[1]);
+			}
+			assertEquals(value.getValue(), expectedSites.size(), value.getSites());
+			assertEquals(value.getValue(), expectedDomains.size(), value.getDomains());
+			assertEquals(value.getValue(), expected.get(value.getValue()).size(), value.getPostings().length);
+		}
+	}
+}
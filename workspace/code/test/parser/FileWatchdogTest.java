@@ -0,0 +1,119 @@
+package parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * The files exceeding their budgets must be abandoned without publishing their results.
+ */
+public class FileWatchdogTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void abandonedAnalysis() throws Exception {
+		FileWatchdog watchdog = new FileWatchdog(1, 0, folder.newFile("quarantine.txt"));
+		final CountDownLatch published = new CountDownLatch(1);
+		final AtomicInteger publications = new AtomicInteger();
+		try {
+			watchdog.run(new Callable<WebsiteResults>() {
+				public WebsiteResults call() {
+					// Ignores the interruption (e.g. blocked in a library)
+					long end = System.currentTimeMillis() + 3000;
+					while(System.currentTimeMillis() < end) {
+						try {
+							Thread.sleep(100);
+						} catch (InterruptedException e) {
+							// Ignored
+						}
+					}
+					if(FileWatchdog.startPublishing()) {
+						publications.incrementAndGet();
+					}
+					published.countDown();
+					return new WebsiteResults("example.com");
+				}
+			});
+			fail("The time budget is exceeded");
+		} catch (FileWatchdog.BudgetExceededException bee) {
+			assertTrue(bee.getMessage(), bee.getMessage().contains("time"));
+		}
+		assertTrue(published.await(10, TimeUnit.SECONDS));
+		assertEquals(0, publications.get());
+		watchdog.close();
+	}
+
+	@Test
+	public void publishedAnalysis() throws Exception {
+		FileWatchdog watchdog = new FileWatchdog(1, 0, folder.newFile("quarantine.txt"));
+		WebsiteResults results = watchdog.run(new Callable<WebsiteResults>() {
+			public WebsiteResults call() throws InterruptedException {
+				assertTrue(FileWatchdog.startPublishing());
+				// Publishing: not abandoned after the time budget
+				Thread.sleep(2500);
+				return new WebsiteResults("example.com");
+			}
+		});
+		assertEquals("example.com", results.getWebsite());
+		// Outside of the watchdog
+		assertTrue(FileWatchdog.startPublishing());
+		watchdog.close();
+	}
+
+	@Test
+	public void liveHeap() throws Exception {
+		FileWatchdog watchdog = new FileWatchdog(0, 16, folder.newFile("quarantine.txt"));
+		assertTrue(watchdog.isMemorySupported());
+		// Allocating much more than the budget without keeping it is not a failure
+		WebsiteResults results = watchdog.run(new Callable<WebsiteResults>() {
+			public WebsiteResults call() {
+				long sum = 0;
+				for(int i = 0; i < 64; i++) {
+					byte[] garbage = new byte[1024 * 1024];
+					sum += garbage.length;
+				}
+				System.gc();
+				return new WebsiteResults("example.com" + (sum > 0 ? "" : "-"));
+			}
+		});
+		assertEquals("example.com", results.getWebsite());
+
+		// Keeping it is
+		final List<byte[]> retained = new ArrayList<byte[]>();
+		try {
+			assertNull(watchdog.run(new Callable<WebsiteResults>() {
+				public WebsiteResults call() throws InterruptedException {
+					for(int i = 0; i < 64; i++) {
+						retained.add(new byte[1024 * 1024]);
+					}
+					long end = System.currentTimeMillis() + 10000;
+					while(System.currentTimeMillis() < end && !Thread.currentThread().isInterrupted()) {
+						System.gc();
+						Thread.sleep(200);
+					}
+					return null;
+				}
+			}));
+			fail("The memory budget is exceeded");
+		} catch (FileWatchdog.BudgetExceededException bee) {
+			assertTrue(bee.getMessage(), bee.getMessage().contains("memory"));
+		}
+		assertFalse(retained.isEmpty());
+		retained.clear();
+		watchdog.close();
+	}
+}
@@ -0,0 +1,171 @@
+package parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import utils.Metrics;
+import utils.UrlScanner;
+
+/**
+ * GhosteryHostFilter.match must return what RegexGhostery.match returns, for every URL.
+ */
+public class GhosteryHostFilterTest {
+	// Patterns as written in the Ghostery file (the backslashes are removed at the loading)
+	private static final String[] QUANTIFIERS = {"trk{2,3}px", "x{2,}y", "ad{1}s\\\\.", "metrics?\\\\.", "\\\\/js\\\\/track[0-9]+\\\\.js", "a*bc",
+		"pix{0,1}el"};
+	private static final String[] CLASSES = {"[]a]bc", "party1[^0-9]", "[a-z]+\\\\.tracker\\\\.org", "beacon[.]gif", "id=[0-9]{4}"};
+	private static final String[] GROUPS = {"(ads|adv)\\\\.example\\\\.com", "stat(s)?counter", "(?i)BEACON", "(?<=\\\\/)collect\\\\?", "ab(cd)+ef",
+		"foo|bar\\\\.js", "(tr){2}ack"};
+	private static final String[] ANCHORS = {"^https:\\\\/\\\\/secure\\\\.", "pixel\\\\.gif$", "^http:\\\\/\\\\/cdn\\\\.", "doubleclick\\\\.net\\\\/",
+		"\\\\.com:8080"};
+
+	private static final String[] HOSTS = {"cdn.example.com", "secure.example.com", "ads.example.com", "adv.example.com", "doubleclick.net",
+		"site1.com", "a.tracker.org", "xxy.net", "trkkkpx.com", "statscounter.io", "party1x.org", "metric.io", "collect.io"};
+	private static final String[] PATHS = {"", "/", "/trkkpx.gif", "/trkpx.gif", "/trkkkkpx.gif", "/js/track12.js", "/img/pixel.gif",
+		"/img/pixel.gif?r=1", "/pixl", "/collect?x=1", "/?q=beacon", "/BEACON", "/beacon.gif", "/abcdcdef", "/abef", "/aabc", "/]bc",
+		"/statcounter", "/xxxy", "/xy", "/ads.example.com/x", "/bar.js", "/foo", ":8080/x", "/?id=1234", "/?id=12", "/trtrack",
+		"/ads.html", "/metrics.js", "#track1.js"};
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void quantifiers() throws IOException {
+		assertSameMatches(QUANTIFIERS);
+	}
+
+	@Test
+	public void classes() throws IOException {
+		assertSameMatches(CLASSES);
+	}
+
+	@Test
+	public void groups() throws IOException {
+		assertSameMatches(GROUPS);
+	}
+
+	@Test
+	public void anchors() throws IOException {
+		assertSameMatches(ANCHORS);
+	}
+
+	@Test
+	public void allPatterns() throws IOException {
+		List<String> patterns = new ArrayList<String>();
+		for(String[] kind : new String[][] {QUANTIFIERS, CLASSES, GROUPS, ANCHORS}) {
+			for(String pattern : kind) {
+				patterns.add(pattern);
+			}
+		}
+		assertSameMatches(patterns.toArray(new String[patterns.size()]));
+	}
+
+	@Test
+	public void savedFilter() throws IOException {
+		RegexGhostery regexGhostery = load(QUANTIFIERS);
+		GhosteryHostFilter filter = new GhosteryHostFilter(regexGhostery);
+		assertSameMatches("the patterns of the quantifiers", regexGhostery, filter);
+		File file = folder.newFile("hosts.bloom");
+		filter.save(file);
+		GhosteryHostFilter loaded = new GhosteryHostFilter(regexGhostery);
+		assertTrue(loaded.load(file));
+		assertEquals(filter.getSafeHosts(), loaded.getSafeHosts());
+		assertSameMatches("the loaded filter", regexGhostery, loaded);
+	}
+
+	@Test
+	public void fullFilter() throws IOException {
+		RegexGhostery regexGhostery = load(ANCHORS);
+		GhosteryHostFilter filter = new GhosteryHostFilter(regexGhostery, 4);
+		assertSameMatches("filters of 4 hosts", regexGhostery, filter);
+		assertTrue(filter.getFilters() > 1);
+		// The hosts proven safe are remembered when the first filter is full
+		long proofs = Metrics.counter("parser.ghostery.host_proofs").get();
+		UrlScanner scanner = new UrlScanner();
+		for(String host : HOSTS) {
+			filter.match("http://" + host + "/", scanner);
+		}
+		assertEquals(0, Metrics.counter("parser.ghostery.host_proofs").get() - proofs);
+	}
+
+	@Test
+	public void filesOfWorkers() throws IOException {
+		RegexGhostery regexGhostery = load(ANCHORS);
+		UrlScanner scanner = new UrlScanner();
+		GhosteryHostFilter first = new GhosteryHostFilter(regexGhostery, 4);
+		GhosteryHostFilter second = new GhosteryHostFilter(regexGhostery, 4);
+		for(int i = 0; i < HOSTS.length; i++) {
+			((i % 2 == 0) ? first : second).match("http://" + HOSTS[i] + "/", scanner);
+		}
+		File firstFile = folder.newFile("hosts_1.bloom");
+		File secondFile = folder.newFile("hosts_2.bloom");
+		first.save(firstFile);
+		second.save(secondFile);
+		GhosteryHostFilter loaded = new GhosteryHostFilter(regexGhostery, 4);
+		assertTrue(loaded.load(firstFile));
+		assertTrue(loaded.load(secondFile));
+		// Loading a file twice does not add its hosts twice
+		assertTrue(loaded.load(firstFile));
+		assertEquals(first.getSafeHosts() + second.getSafeHosts(), loaded.getSafeHosts());
+		long proofs = Metrics.counter("parser.ghostery.host_proofs").get();
+		for(String host : HOSTS) {
+			loaded.match("http://" + host + "/", scanner);
+		}
+		assertEquals(HOSTS.length - loaded.getSafeHosts(), Metrics.counter("parser.ghostery.host_proofs").get() - proofs);
+		assertSameMatches("filters of two workers", regexGhostery, loaded);
+	}
+
+	/**
+	 * Compares the filter with RegexGhostery for each pattern alone (a mismatch is reported with its pattern) and for all of them.
+	 */
+	private void assertSameMatches(String[] patterns) throws IOException {
+		for(String pattern : patterns) {
+			RegexGhostery regexGhostery = load(new String[] {pattern});
+			assertSameMatches(pattern, regexGhostery, new GhosteryHostFilter(regexGhostery));
+		}
+		RegexGhostery regexGhostery = load(patterns);
+		assertSameMatches("all the patterns", regexGhostery, new GhosteryHostFilter(regexGhostery));
+	}
+
+	private static void assertSameMatches(String description, RegexGhostery regexGhostery, GhosteryHostFilter filter) {
+		UrlScanner scanner = new UrlScanner();
+		// Note: the second pass matches the URLs of the hosts already proven safe
+		for(int pass = 0; pass < 2; pass++) {
+			for(String scheme : new String[] {"http://", "https://"}) {
+				for(String host : HOSTS) {
+					for(String path : PATHS) {
+						String url = scheme + host + path;
+						assertEquals(description + " on " + url, regexGhostery.match(url), filter.match(url, scanner));
+					}
+				}
+			}
+		}
+	}
+
+	private RegexGhostery load(String[] patterns) throws IOException {
+		File file = folder.newFile();
+		FileWriter writer = new FileWriter(file);
+		try {
+			writer.write("{\"bugsVersion\": 1, \"bugs\": [");
+			for(int i = 0; i < patterns.length; i++) {
+				writer.write(((i > 0) ? "," : "") + "{\"pattern\": \"" + patterns[i] + "\", \"name\": \"Tracker " + i + "\"}");
+			}
+			writer.write("]}");
+		} finally {
+			writer.close();
+		}
+		RegexGhostery regexGhostery = new RegexGhostery(true, file.getPath());
+		assertTrue(regexGhostery.isSuccess());
+		return regexGhostery;
+	}
+}
@@ -0,0 +1,170 @@
+package parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * The manifest must only reuse the results of the files which did not change, recorded by this version of the parser.
+ */
+public class RunManifestTest {
+	private static final int BUGS_VERSION = 42;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void reused() throws IOException {
+		File harFile = newHarFile("example.com.har", "{}");
+		File manifestFile = new File(folder.getRoot(), "manifest.txt");
+		RunManifest manifest = new RunManifest(manifestFile, BUGS_VERSION);
+		WebsiteResults results = new WebsiteResults("example.com");
+		results.getMimetypesSOA().increment("text/html");
+		results.getDistinctHosts().offer("http://tracker.com/");
+		manifest.record(harFile, results);
+		manifest.close();
+
+		manifest = new RunManifest(manifestFile, BUGS_VERSION);
+		WebsiteResults reused = manifest.lookup(harFile);
+		assertNotNull(reused);
+		assertEquals("example.com", reused.getWebsite());
+		assertEquals(1, reused.getMimetypesSOA().get("text/html"));
+		assertEquals(results.getDistinctHosts().encode(), reused.getDistinctHosts().encode());
+		assertEquals("example.com", RunManifest.readResults(manifestFile, BUGS_VERSION).get(Parser.getFileKey(harFile)).getWebsite());
+		manifest.close();
+
+		// Another version of the bugs
+		manifest = new RunManifest(manifestFile, BUGS_VERSION + 1);
+		assertEquals(0, manifest.size());
+		manifest.close();
+	}
+
+	@Test
+	public void recordsReadFromTheFile() throws IOException {
+		File manifestFile = new File(folder.getRoot(), "manifest.txt");
+		RunManifest manifest = new RunManifest(manifestFile, BUGS_VERSION);
+		File[] harFiles = new File[20];
+		for(int i = 0; i < harFiles.length; i++) {
+			harFiles[i] = newHarFile("example" + i + ".com.har", "{}");
+			WebsiteResults results = new WebsiteResults("example" + i + ".com");
+			results.getTrackersGhosteryStats().set("Tracker \u00e9", i + 1);
+			manifest.record(harFiles[i], results);
+		}
+		// Recorded again: the last line wins
+		manifest.record(harFiles[3], new WebsiteResults("example.net"));
+		assertEquals("example.net", manifest.lookup(harFiles[3]).getWebsite());
+		manifest.close();
+
+		// Read again after the rewriting of the manifest (without the outdated line)
+		manifest = new RunManifest(manifestFile, BUGS_VERSION);
+		assertEquals(harFiles.length, manifest.size());
+		for(int i = 0; i < harFiles.length; i++) {
+			WebsiteResults reused = manifest.lookup(harFiles[i]);
+			if(i == 3) {
+				assertEquals("example.net", reused.getWebsite());
+				continue;
+			}
+			assertEquals("example" + i + ".com", reused.getWebsite());
+			assertEquals(i + 1, reused.getTrackersGhosteryStats().get("Tracker \u00e9"));
+		}
+		manifest.close();
+		assertEquals(harFiles.length + 1, Files.readAllLines(manifestFile.toPath(), Charset.forName("UTF-8")).size());
+	}
+
+	@Test
+	public void changedFile() throws IOException {
+		File harFile = newHarFile("example.com.har", "{}");
+		File manifestFile = new File(folder.getRoot(), "manifest.txt");
+		RunManifest manifest = new RunManifest(manifestFile, BUGS_VERSION);
+		manifest.record(harFile, new WebsiteResults("example.com"));
+		newHarFile("example.com.har", "{\"log\": {}}");
+		assertNull(manifest.lookup(harFile));
+		manifest.close();
+	}
+
+	@Test
+	public void recordsWithoutSketches() throws IOException {
+		File harFile = newHarFile("example.com.har", "{}");
+		File manifestFile = new File(folder.getRoot(), "manifest.txt");
+		RunManifest manifest = new RunManifest(manifestFile, BUGS_VERSION);
+		manifest.close();
+		// Record of a previous version: 8 fields (no distinct counts)
+		FileWriter writer = new FileWriter(manifestFile, true);
+		try {
+			writer.write(harFile.getPath() + "\t" + harFile.length() + "\t" + harFile.lastModified() + "\texample.com\t1,2\t\ttext%2Fhtml:1\t\n");
+		} finally {
+			writer.close();
+		}
+		manifest = new RunManifest(manifestFile, BUGS_VERSION);
+		assertEquals(0, manifest.size());
+		assertNull(manifest.lookup(harFile));
+		manifest.close();
+		assertEquals(0, RunManifest.readResults(manifestFile, BUGS_VERSION).size());
+	}
+
+	@Test
+	public void malformedRecord() throws IOException {
+		File harFile = newHarFile("example.com.har", "{}");
+		File otherFile = newHarFile("example.org.har", "{}");
+		File manifestFile = new File(folder.getRoot(), "manifest.txt");
+		RunManifest manifest = new RunManifest(manifestFile, BUGS_VERSION);
+		manifest.record(harFile, new WebsiteResults("example.com"));
+		manifest.record(otherFile, new WebsiteResults("example.org"));
+		manifest.close();
+		// Size of the first record corrupted
+		List<String> lines = Files.readAllLines(manifestFile.toPath(), Charset.forName("UTF-8"));
+		lines.set(1, lines.get(1).replace("\t" + harFile.length() + "\t", "\t2x\t"));
+		Files.write(manifestFile.toPath(), lines, Charset.forName("UTF-8"));
+
+		manifest = new RunManifest(manifestFile, BUGS_VERSION);
+		assertNull(manifest.lookup(harFile));
+		assertNotNull(manifest.lookup(otherFile));
+		manifest.close();
+		assertEquals(1, RunManifest.readResults(manifestFile, BUGS_VERSION).size());
+	}
+
+	@Test
+	public void previousVersionOfTheRecords() throws IOException {
+		File harFile = newHarFile("example.com.har", "{}");
+		File manifestFile = new File(folder.getRoot(), "manifest.txt");
+		RunManifest manifest = new RunManifest(manifestFile, BUGS_VERSION);
+		manifest.record(harFile, new WebsiteResults("example.com"));
+		manifest.close();
+		// Header of the previous version: version of the bugs only
+		List<String> lines = Files.readAllLines(manifestFile.toPath(), Charset.forName("UTF-8"));
+		lines.set(0, "#manifest\t" + BUGS_VERSION);
+		Files.write(manifestFile.toPath(), lines, Charset.forName("UTF-8"));
+		try {
+			RunManifest.readResults(manifestFile, -1);
+			fail("The partial results of another version are rejected");
+		} catch (IOException ioe) {
+			// Expected
+		}
+		manifest = new RunManifest(manifestFile, BUGS_VERSION);
+		assertEquals(0, manifest.size());
+		manifest.close();
+	}
+
+	private File newHarFile(String name, String content) throws IOException {
+		File file = new File(folder.getRoot(), name);
+		FileWriter writer = new FileWriter(file);
+		try {
+			writer.write(content);
+		} finally {
+			writer.close();
+		}
+		return file;
+	}
+}
@@ -0,0 +1,74 @@
+package parser;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * The index of the segments must give the records written last for each website, whatever the worker.
+ */
+public class SegmentResultSinkTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void noEmptySegment() throws IOException {
+		String directory = folder.getRoot().getPath();
+		SegmentResultSink sink = new SegmentResultSink(directory, null);
+		sink.close();
+		File segments = new File(directory, SegmentResultSink.DIRECTORY);
+		assertEquals(0, segments.list(new FilenameFilter() {
+			public boolean accept(File dir, String name) {
+				return name.endsWith(".seg");
+			}
+		}).length);
+
+		sink = new SegmentResultSink(directory, null);
+		sink.write(newResults("example.com", "http://tracker.com/a.js"));
+		sink.close();
+		assertEquals("http://tracker.com/a.js", readUrl(segments, "example.com"));
+	}
+
+	@Test
+	public void websiteWrittenByTwoWorkers() throws IOException, InterruptedException {
+		String directory = folder.getRoot().getPath();
+		// The index of the worker "b" is read after the index of the worker "a"
+		SegmentResultSink second = new SegmentResultSink(directory, "b");
+		second.write(newResults("example.com", "http://tracker.com/old.js"));
+		second.close();
+		Thread.sleep(20);
+		SegmentResultSink first = new SegmentResultSink(directory, "a");
+		first.write(newResults("example.com", "http://tracker.com/new.js"));
+		first.close();
+
+		File segments = new File(directory, SegmentResultSink.DIRECTORY);
+		assertEquals("http://tracker.com/new.js", readUrl(segments, "example.com"));
+	}
+
+	private static WebsiteResults newResults(String website, String url) {
+		WebsiteResults results = new WebsiteResults(website);
+		results.getUrlsSOA().add(url);
+		return results;
+	}
+
+	/**
+	 * @return the first line of the records of a website which is not empty
+	 */
+	private static String readUrl(File segments, String website) throws IOException {
+		LinkedHashMap<String, SegmentReader.Location> index = SegmentReader.readIndex(segments);
+		for(List<String> lines : SegmentReader.readWebsite(segments, index.get(website)).values()) {
+			if(!lines.isEmpty()) {
+				return lines.get(0);
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,67 @@
+package parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * A website which cannot be inserted must leave no row, and must not prevent the next websites from being inserted.
+ */
+public class SqliteResultSinkTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void failedWebsite() throws IOException, SQLException {
+		String directory = folder.getRoot().getPath();
+		SqliteResultSink sink = new SqliteResultSink(directory, null);
+		sink.write(newResults("example.com"));
+		try {
+			// The name of a website is required
+			sink.write(newResults(null));
+			fail("The website without a name is rejected");
+		} catch (IOException ioe) {
+			// Expected
+		}
+		sink.write(newResults("example.org"));
+		sink.close();
+
+		Connection connection = DriverManager.getConnection("jdbc:sqlite:" + new File(directory, "results/" + SqliteResultSink.FILENAME).getPath());
+		try {
+			assertEquals(2, count(connection, "SELECT COUNT(*) FROM websites"));
+			assertEquals(2, count(connection, "SELECT COUNT(*) FROM mimetypes"));
+			assertEquals(2, count(connection, "SELECT COUNT(*) FROM records"));
+			assertEquals(0, count(connection, "SELECT COUNT(*) FROM mimetypes WHERE website_id NOT IN (SELECT id FROM websites)"));
+		} finally {
+			connection.close();
+		}
+	}
+
+	private static WebsiteResults newResults(String website) {
+		WebsiteResults results = new WebsiteResults(website);
+		results.getMimetypesSOA().increment("text/html");
+		results.getUrlsSOA().add("http://tracker.com/a.js");
+		return results;
+	}
+
+	private static long count(Connection connection, String query) throws SQLException {
+		Statement statement = connection.createStatement();
+		try {
+			ResultSet rs = statement.executeQuery(query);
+			return rs.getLong(1);
+		} finally {
+			statement.close();
+		}
+	}
+}
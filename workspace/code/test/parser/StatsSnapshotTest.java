@@ -0,0 +1,109 @@
+package parser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Snapshots written and read again, and the snapshots of the previous versions.
+ */
+public class StatsSnapshotTest {
+	private static final int MAGIC = 0x50534e50;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void writtenAndRead() throws IOException {
+		StatsSnapshot snapshot = new StatsSnapshot(7, true);
+		snapshot.getTrackersGhosteryStats().add("Tracker", 3);
+		snapshot.getMimetypesSOA().add("image/gif", 2);
+		snapshot.getProcessedFiles().add("/corpus/example.com.har");
+		snapshot.getDistinctHosts().offer("tracker.com");
+		File file = folder.newFile("snapshot.bin");
+		snapshot.write(file);
+
+		StatsSnapshot read = StatsSnapshot.read(file);
+		assertEquals(7, read.getBugsVersion());
+		assertEquals(3, read.getTrackersGhosteryStats().get("Tracker"));
+		assertEquals(2, read.getMimetypesSOA().get("image/gif"));
+		assertTrue(read.getProcessedFiles().contains("/corpus/example.com.har"));
+		assertEquals(snapshot.getDistinctHosts().encode(), read.getDistinctHosts().encode());
+	}
+
+	@Test
+	public void mergedSnapshots() {
+		StatsSnapshot first = new StatsSnapshot(7, true);
+		first.getMimetypesSOA().add("image/gif", 2);
+		first.getProcessedFiles().add("/corpus/example.com.har|10|1");
+		StatsSnapshot second = new StatsSnapshot(7, true);
+		second.getMimetypesSOA().add("image/gif", 3);
+		second.getProcessedFiles().add("/corpus/example.org.har|10|1");
+		first.merge(second);
+		assertEquals(5, first.getMimetypesSOA().get("image/gif"));
+		assertEquals(2, first.getProcessedFiles().size());
+
+		// A file in both snapshots: refused, the snapshot is not modified
+		StatsSnapshot overlapping = new StatsSnapshot(7, true);
+		overlapping.getMimetypesSOA().add("image/gif", 4);
+		overlapping.getProcessedFiles().add("/corpus/example.org.har|10|1");
+		overlapping.getProcessedFiles().add("/corpus/example.net.har|10|1");
+		try {
+			first.merge(overlapping);
+			fail("The snapshots with files in common are not merged");
+		} catch (IllegalArgumentException iae) {
+			// Expected
+		}
+		assertEquals(5, first.getMimetypesSOA().get("image/gif"));
+		assertEquals(2, first.getProcessedFiles().size());
+	}
+
+	@Test
+	public void websiteInBothSnapshots() {
+		StatsSnapshot first = new StatsSnapshot(7, true);
+		first.getWebsitesDetailedStats().put("example.com", new int[] {1, 0, 0, 0, 0, 0, 0, 12, 3});
+		first.getProcessedFiles().add("/shard1/example.com.har|10|1");
+		StatsSnapshot second = new StatsSnapshot(7, true);
+		second.getWebsitesDetailedStats().put("example.com", new int[] {2, 0, 0, 0, 0, 0, 0, 15, 4});
+		second.getProcessedFiles().add("/shard2/example.com.har|10|1");
+		first.merge(second);
+		assertEquals(1, first.getWebsitesDetailedStats().size());
+		assertArrayEquals(new int[] {2, 0, 0, 0, 0, 0, 0, 15, 4}, first.getWebsitesDetailedStats().get("example.com"));
+	}
+
+	@Test
+	public void previousVersion() throws IOException {
+		// Version 1: no sketches of the distinct counts
+		File file = folder.newFile("snapshot.bin");
+		DataOutputStream output = new DataOutputStream(new FileOutputStream(file));
+		try {
+			output.writeInt(MAGIC);
+			output.writeInt(1);
+			output.writeInt(7);
+			output.writeInt(-1);
+			output.writeInt(0);
+			output.writeInt(0);
+			output.writeInt(0);
+			output.writeInt(0);
+			output.writeInt(MAGIC);
+		} finally {
+			output.close();
+		}
+		try {
+			StatsSnapshot.read(file);
+			fail("The snapshots of version 1 are rejected");
+		} catch (IOException ioe) {
+			assertTrue(ioe.getMessage(), ioe.getMessage().contains("version"));
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class WorkCoordinatorTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void claimAndComplete() throws IOException {
+		File work = folder.newFolder("work");
+		WorkCoordinator first = new WorkCoordinator(work, "a", 60);
+		WorkCoordinator second = new WorkCoordinator(work, "b", 60);
+		try {
+			assertTrue(first.claim("site1.har"));
+			assertFalse(second.claim("site1.har"));
+			first.complete("site1.har", true);
+			assertTrue(second.isDone("site1.har"));
+			assertFalse(second.claim("site1.har"));
+			assertTrue(second.claim("site2.har"));
+			second.complete("site2.har", false);
+			assertEquals(1, WorkCoordinator.countDone(work));
+		} finally {
+			first.close();
+			second.close();
+		}
+	}
+
+	@Test
+	public void expiredLease() throws IOException {
+		File work = folder.newFolder("work");
+		WorkCoordinator first = new WorkCoordinator(work, "a", 1);
+		WorkCoordinator second = new WorkCoordinator(work, "b", 1);
+		try {
+			assertTrue(first.claim("site1.har"));
+			first.close();
+			new File(work, "leases/site1.har.lease").setLastModified(System.currentTimeMillis() - 5000);
+			assertTrue(second.claim("site1.har"));
+		} finally {
+			second.close();
+		}
+	}
+
+	@Test
+	public void clearDone() throws IOException {
+		File work = folder.newFolder("work");
+		WorkCoordinator first = new WorkCoordinator(work, "a", 60);
+		WorkCoordinator second = new WorkCoordinator(work, "b", 60);
+		try {
+			for(int i = 0; i < 4; i++) {
+				WorkCoordinator coordinator = (i % 2 == 0) ? first : second;
+				assertTrue(coordinator.claim("site" + i + ".har"));
+				coordinator.complete("site" + i + ".har", true);
+			}
+			assertEquals(4, WorkCoordinator.countDone(work));
+			// Only the markers of the worker are removed
+			assertEquals(2, first.clearDone());
+			assertFalse(first.isDone("site0.har"));
+			assertTrue(first.isDone("site1.har"));
+			assertEquals(2, WorkCoordinator.countDone(work));
+			assertTrue(first.claim("site0.har"));
+		} finally {
+			first.close();
+			second.close();
+		}
+	}
+}
@@ -0,0 +1,43 @@
+package utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * The messages logged must all be in the log file after close, even if the thread logging is interrupted.
+ */
+public class AsyncLoggerTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void interruptedThread() throws IOException {
+		File file = folder.newFile("log.txt");
+		AsyncLogger logger = new AsyncLogger(file, "logger");
+		Thread.currentThread().interrupt();
+		try {
+			for(int i = 0; i < 20000; i++) {
+				logger.logToFile("line " + i);
+			}
+			// The interruption is kept for the caller
+			assertTrue(Thread.currentThread().isInterrupted());
+		} finally {
+			Thread.interrupted();
+		}
+		logger.close("end");
+		List<String> lines = Files.readAllLines(file.toPath(), Charset.forName("UTF-8"));
+		assertEquals(20001, lines.size());
+		assertEquals("line 19999", lines.get(19999));
+		assertEquals("end", lines.get(20000));
+	}
+}
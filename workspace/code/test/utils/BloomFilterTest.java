@@ -0,0 +1,92 @@
+package utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class BloomFilterTest {
+	@Test
+	public void noFalseNegative() {
+		BloomFilter filter = new BloomFilter(10000, 16);
+		Random random = new Random(1);
+		long[] hashes = new long[10000];
+		for(int i = 0; i < hashes.length; i++) {
+			hashes[i] = random.nextLong();
+			assertTrue(filter.add(hashes[i]));
+		}
+		for(long hash : hashes) {
+			assertTrue(filter.mightContain(hash));
+		}
+		assertFalse(filter.add(random.nextLong()));
+		assertEquals(10000, filter.getCount());
+	}
+
+	@Test
+	public void falsePositiveRate() {
+		BloomFilter filter = new BloomFilter(10000, 16);
+		Random random = new Random(2);
+		for(int i = 0; i < 10000; i++) {
+			filter.add(random.nextLong());
+		}
+		int falsePositives = 0;
+		for(int i = 0; i < 100000; i++) {
+			if(filter.mightContain(random.nextLong())) {
+				falsePositives++;
+			}
+		}
+		// 0.6185^16: about 5 in 10^4
+		assertTrue(falsePositives + " false positives", falsePositives < 200);
+	}
+
+	@Test
+	public void merge() {
+		BloomFilter first = new BloomFilter(1000, 32);
+		BloomFilter second = new BloomFilter(1000, 32);
+		for(long i = 0; i < 400; i++) {
+			first.add(HyperLogLog.hash("a" + i, 0, ("a" + i).length()));
+			second.add(HyperLogLog.hash("b" + i, 0, ("b" + i).length()));
+		}
+		assertTrue(first.merge(second));
+		// Union estimated from the bits set (within 5%)
+		assertTrue(Math.abs(first.getCount() - 800) < 40);
+		for(long i = 0; i < 400; i++) {
+			assertTrue(first.mightContain(HyperLogLog.hash("b" + i, 0, ("b" + i).length())));
+		}
+		// The items in both filters are counted once
+		long count = first.getCount();
+		assertTrue(first.merge(second));
+		assertTrue(Math.abs(first.getCount() - count) < 10);
+		// Union beyond the capacity
+		BloomFilter third = new BloomFilter(1000, 32);
+		for(long i = 0; i < 400; i++) {
+			third.add(HyperLogLog.hash("c" + i, 0, ("c" + i).length()));
+		}
+		assertFalse(first.merge(third));
+		assertFalse(first.mightContain(HyperLogLog.hash("c0", 0, 2)) && first.mightContain(HyperLogLog.hash("c1", 0, 2)));
+	}
+
+	@Test
+	public void writeAndRead() throws IOException {
+		BloomFilter filter = new BloomFilter(100, 32);
+		for(long i = 0; i < 50; i++) {
+			filter.add(i * 0x9E3779B97F4A7C15L);
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		filter.write(new DataOutputStream(bytes));
+		BloomFilter read = BloomFilter.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+		assertEquals(50, read.getCount());
+		assertEquals(100, read.getCapacity());
+		for(long i = 0; i < 50; i++) {
+			assertTrue(read.mightContain(i * 0x9E3779B97F4A7C15L));
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * The estimates of HyperLogLog must stay close to the exact numbers of distinct items (HashSet).
+ */
+public class HyperLogLogTest {
+	private static final int PRECISION = 12;
+	// 4 standard errors (1.04 / sqrt(4096) = 1.6%)
+	private static final double MAXIMUM_ERROR = 4 * 1.04 / Math.sqrt(1 << PRECISION);
+
+	@Test
+	public void distinctItems() {
+		Random random = new Random(42);
+		for(int distinct : new int[] {0, 1, 10, 100, 1000, 10000, 100000}) {
+			HyperLogLog sketch = new HyperLogLog(PRECISION);
+			Set<String> exact = new HashSet<String>();
+			// Each item is offered several times
+			for(int i = 0; i < 3 * distinct; i++) {
+				String item = "http://host" + random.nextInt(distinct) + ".example.com/";
+				sketch.offer(item);
+				exact.add(item);
+			}
+			assertClose(exact.size(), sketch.estimate());
+		}
+	}
+
+	@Test
+	public void partsOfStrings() {
+		HyperLogLog hosts = new HyperLogLog(PRECISION);
+		HyperLogLog extracted = new HyperLogLog(PRECISION);
+		for(int i = 0; i < 5000; i++) {
+			String url = "http://host" + (i % 700) + ".example.com/path" + i;
+			int start = "http://".length();
+			int end = url.indexOf('/', start);
+			hosts.offer(url, start, end);
+			extracted.offer(url.substring(start, end));
+		}
+		assertEquals(extracted.encode(), hosts.encode());
+		assertClose(700, hosts.estimate());
+	}
+
+	@Test
+	public void mergedSketches() {
+		HyperLogLog first = new HyperLogLog(PRECISION);
+		HyperLogLog second = new HyperLogLog(PRECISION);
+		HyperLogLog union = new HyperLogLog(PRECISION);
+		Set<String> exact = new HashSet<String>();
+		for(int i = 0; i < 20000; i++) {
+			// Items in common between the two sketches
+			String item = "item" + (i % 15000);
+			((i % 2 == 0) ? first : second).offer(item);
+			union.offer(item);
+			exact.add(item);
+		}
+		first.merge(second);
+		assertEquals(union.encode(), first.encode());
+		assertClose(exact.size(), first.estimate());
+		// Merging an empty sketch changes nothing
+		first.merge(new HyperLogLog(PRECISION));
+		assertEquals(union.encode(), first.encode());
+	}
+
+	@Test
+	public void encodedAndWritten() throws IOException {
+		HyperLogLog sketch = new HyperLogLog(PRECISION);
+		for(int i = 0; i < 300; i++) {
+			sketch.offer("item" + i);
+		}
+		assertEquals(sketch.encode(), HyperLogLog.decode(PRECISION, sketch.encode()).encode());
+		assertEquals(0, HyperLogLog.decode(PRECISION, "").estimate());
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream output = new DataOutputStream(bytes);
+		sketch.write(output);
+		new HyperLogLog(PRECISION).write(output);
+		output.close();
+		DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		assertEquals(sketch.encode(), HyperLogLog.read(input).encode());
+		assertEquals(0, HyperLogLog.read(input).estimate());
+	}
+
+	private static void assertClose(long exact, long estimate) {
+		if(exact == 0) {
+			assertEquals(0, estimate);
+			return;
+		}
+		assertTrue(estimate + " distinct items estimated instead of " + exact,
+				Math.abs(estimate - exact) <= Math.max(1, MAXIMUM_ERROR * exact));
+	}
+}
@@ -0,0 +1,51 @@
+package utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * LongIntMap must give the same values as a HashMap.
+ */
+public class LongIntMapTest {
+	@Test
+	public void sameAsHashMap() {
+		LongIntMap map = new LongIntMap();
+		Map<Long, Integer> exact = new HashMap<Long, Integer>();
+		Random random = new Random(42);
+		for(int i = 0; i < 100000; i++) {
+			// Keys put several times, including 0 and negative keys
+			long key = random.nextInt(50000) - 25000;
+			Integer previous = exact.put(key, i);
+			assertEquals((previous != null) ? (int) previous : -1, map.put(key, i));
+		}
+		assertEquals(exact.size(), map.size());
+		for(Map.Entry<Long, Integer> entry : exact.entrySet()) {
+			assertEquals((int) entry.getValue(), map.get(entry.getKey()));
+		}
+		for(long key = 25000; key < 26000; key++) {
+			assertFalse(map.containsKey(key));
+			assertEquals(-1, map.get(key));
+		}
+	}
+
+	@Test
+	public void collidingKeys() {
+		LongIntMap map = new LongIntMap();
+		// Keys with the same low bits
+		for(int i = 0; i < 1000; i++) {
+			map.put((long) i << 40, i);
+		}
+		for(int i = 0; i < 1000; i++) {
+			assertTrue(map.containsKey((long) i << 40));
+			assertEquals(i, map.get((long) i << 40));
+		}
+		assertEquals(1000, map.size());
+	}
+}
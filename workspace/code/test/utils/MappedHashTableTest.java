@@ -0,0 +1,97 @@
+package utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * MappedHashTable must return what a HashMap returns for the keys it keeps (the evicted keys are misses).
+ */
+public class MappedHashTableTest {
+	private static final long TAG = 7;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void sameAsMap() throws IOException {
+		// 64 buckets of 8 slots for 1000 keys: some keys are evicted
+		MappedHashTable table = new MappedHashTable(null, 64 + 64 * 8 * 24, TAG);
+		assertFalse(table.isLoaded());
+		Map<Long, Long> map = new HashMap<Long, Long>();
+		Random random = new Random(1);
+		for(int i = 0; i < 2000; i++) {
+			long key = random.nextInt(1000) + 1;
+			long value = random.nextLong() | 1;
+			table.put(key, value);
+			map.put(key, value);
+		}
+		int found = 0;
+		for(Map.Entry<Long, Long> entry : map.entrySet()) {
+			long value = table.get(entry.getKey());
+			if(value != 0) {
+				assertEquals(entry.getValue().longValue(), value);
+				found++;
+			}
+		}
+		assertEquals(512, table.capacity());
+		assertEquals(found, table.size());
+		assertTrue(table.getEvictions() > 0);
+		assertEquals(0, table.get(1001));
+	}
+
+	@Test
+	public void persistence() throws IOException {
+		File file = new File(folder.getRoot(), "table");
+		MappedHashTable table = new MappedHashTable(file, 1 << 20, TAG);
+		for(long key = 1; key <= 1000; key++) {
+			table.put(key * 0x9e3779b97f4a7c15L, key);
+		}
+		long size = table.size();
+		table.close();
+
+		table = new MappedHashTable(file, 1 << 20, TAG);
+		assertTrue(table.isLoaded());
+		assertEquals(size, table.size());
+		for(long key = 1; key <= 1000; key++) {
+			long value = table.get(key * 0x9e3779b97f4a7c15L);
+			assertTrue(value == 0 || value == key);
+		}
+		table.close();
+
+		// Another tag resets the table
+		table = new MappedHashTable(file, 1 << 20, TAG + 1);
+		assertFalse(table.isLoaded());
+		assertEquals(0, table.size());
+		assertEquals(0, table.get(0x9e3779b97f4a7c15L));
+		table.close();
+	}
+
+	@Test
+	public void lockedFile() throws IOException {
+		File file = new File(folder.getRoot(), "table");
+		MappedHashTable table = new MappedHashTable(file, 1 << 16, TAG);
+		try {
+			new MappedHashTable(file, 1 << 16, TAG);
+			fail("The file is used by another table");
+		} catch (IOException ioe) {
+			// Expected
+		}
+		table.put(1, 2);
+		table.close();
+		table = new MappedHashTable(file, 1 << 16, TAG);
+		assertEquals(2, table.get(1));
+		table.close();
+	}
+}
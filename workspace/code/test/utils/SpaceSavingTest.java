@@ -0,0 +1,94 @@
+package utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * The counts of SpaceSaving must respect its guarantees against the exact counts (HashMap).
+ */
+public class SpaceSavingTest {
+	@Test
+	public void exactWhileNotFull() {
+		SpaceSaving sketch = new SpaceSaving(100);
+		Map<String, Long> exact = new HashMap<String, Long>();
+		Random random = new Random(42);
+		for(int i = 0; i < 10000; i++) {
+			String item = "tracker" + random.nextInt(50);
+			long weight = 1 + random.nextInt(3);
+			sketch.offer(item, weight);
+			add(exact, item, weight);
+		}
+		assertEquals(0, sketch.getMaximumError());
+		for(Map.Entry<String, Long> entry : exact.entrySet()) {
+			assertEquals(entry.getKey(), (long) entry.getValue(), sketch.getCount(entry.getKey()));
+			assertEquals(0, sketch.getError(entry.getKey()));
+		}
+		String[] top = sketch.getTop(10);
+		for(int i = 1; i < top.length; i++) {
+			assertTrue(sketch.getCount(top[i - 1]) >= sketch.getCount(top[i]));
+		}
+	}
+
+	@Test
+	public void boundedErrors() {
+		int capacity = 50;
+		SpaceSaving sketch = new SpaceSaving(capacity);
+		Map<String, Long> exact = new HashMap<String, Long>();
+		Random random = new Random(7);
+		long total = 0;
+		for(int i = 0; i < 100000; i++) {
+			// Skewed distribution: a few frequent items and a long tail
+			int rank = (int) Math.floor(Math.pow(random.nextDouble(), 3) * 2000);
+			String item = "host" + rank + ".example.com";
+			sketch.offer(item);
+			add(exact, item, 1);
+			total++;
+		}
+		assertEquals(total, sketch.getTotal());
+		long maximumError = total / capacity;
+		assertEquals(maximumError, sketch.getMaximumError());
+		for(String item : sketch.getTop(capacity)) {
+			long real = exact.get(item);
+			long count = sketch.getCount(item);
+			// Never underestimated, overestimated by at most its error (at most N/k)
+			assertTrue(item, count >= real);
+			assertTrue(item, count - sketch.getError(item) <= real);
+			assertTrue(item, sketch.getError(item) <= maximumError);
+		}
+		// Every item more frequent than N/k is in the sketch
+		for(Map.Entry<String, Long> entry : exact.entrySet()) {
+			if(entry.getValue() > maximumError) {
+				assertTrue(entry.getKey(), sketch.getCount(entry.getKey()) > 0);
+			}
+		}
+	}
+
+	@Test
+	public void topItems() {
+		SpaceSaving sketch = new SpaceSaving(3);
+		sketch.offer("a", 10);
+		sketch.offer("b", 5);
+		sketch.offer("c", 1);
+		sketch.offer("d", 2);
+		sketch.offer("ignored", 0);
+		// "d" replaced "c" and inherited its count
+		assertArrayEquals(new String[] {"a", "b", "d"}, sketch.getTop(5));
+		assertEquals(3, sketch.getCount("d"));
+		assertEquals(1, sketch.getError("d"));
+		assertEquals(0, sketch.getCount("c"));
+		assertEquals(0, sketch.getCount("ignored"));
+		assertArrayEquals(new String[] {"a"}, sketch.getTop(1));
+	}
+
+	private static void add(Map<String, Long> counts, String item, long weight) {
+		Long count = counts.get(item);
+		counts.put(item, (count != null) ? count + weight : weight);
+	}
+}